@@ -6,6 +6,7 @@ import android.content.IntentFilter
 import android.net.ConnectivityManager
 import android.net.wifi.WifiManager
 import android.os.Build
+import ch.qos.logback.classic.LoggerContext
 import com.uber.rxdogtag.RxDogTag
 import dagger.android.AndroidInjector
 import dagger.android.DaggerApplication
@@ -41,6 +42,7 @@ import io.reactivex.exceptions.UndeliverableException
 import io.reactivex.plugins.RxJavaPlugins
 import io.reactivex.rxkotlin.plusAssign
 import net.danlew.android.joda.JodaTimeAndroid
+import org.slf4j.LoggerFactory
 import java.io.IOException
 import java.net.SocketException
 import javax.inject.Inject
@@ -71,6 +73,7 @@ class MainApp : DaggerApplication() {
         aapsLogger.debug("onCreate")
         RxDogTag.install()
         setRxErrorHandler()
+        flushLogOnCrash()
         LocaleHelper.update(this)
 
         var gitRemote: String? = BuildConfig.REMOTE
@@ -139,6 +142,16 @@ class MainApp : DaggerApplication() {
         }
     }
 
+    // file appender is asynchronous and buffered, write queued events before the process dies
+    private fun flushLogOnCrash() {
+        val defaultHandler = Thread.getDefaultUncaughtExceptionHandler()
+        Thread.setDefaultUncaughtExceptionHandler { thread, throwable ->
+            aapsLogger.error("Uncaught exception in ${thread.name}", throwable)
+            (LoggerFactory.getILoggerFactory() as? LoggerContext)?.stop()
+            defaultHandler?.uncaughtException(thread, throwable)
+        }
+    }
+
     private fun doMigrations() {
         // set values for different builds
         if (!sp.contains(R.string.key_ns_alarms)) sp.putBoolean(R.string.key_ns_alarms, config.NSCLIENT)
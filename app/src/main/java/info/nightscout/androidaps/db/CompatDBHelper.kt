@@ -4,11 +4,13 @@ import info.nightscout.androidaps.database.AppRepository
 import info.nightscout.androidaps.database.entities.*
 import info.nightscout.androidaps.database.entities.ExtendedBolus
 import info.nightscout.androidaps.database.entities.TemporaryBasal
+import info.nightscout.androidaps.database.interfaces.DBEntryWithTime
 import info.nightscout.androidaps.events.*
 import info.nightscout.androidaps.logging.AAPSLogger
 import info.nightscout.androidaps.logging.LTag
 import info.nightscout.androidaps.plugins.bus.RxBus
 import info.nightscout.androidaps.plugins.iob.iobCobCalculator.events.EventNewHistoryData
+import info.nightscout.androidaps.utils.tracing.LoopTracer
 import io.reactivex.disposables.Disposable
 import javax.inject.Inject
 import javax.inject.Singleton
@@ -17,7 +19,8 @@ import javax.inject.Singleton
 class CompatDBHelper @Inject constructor(
     val aapsLogger: AAPSLogger,
     val repository: AppRepository,
-    val rxBus: RxBus
+    val rxBus: RxBus,
+    val loopTracer: LoopTracer
 ) {
 
     fun dbChangeDisposable(): Disposable = repository
@@ -27,41 +30,34 @@ class CompatDBHelper @Inject constructor(
         }
         .subscribe {
             /**
-             * GlucoseValues can come in batch
-             * oldest one should be used for invalidation, newest one for for triggering Loop.
-             * Thus we need to collect both
+             * GlucoseValues and treatments can come in batch (NS sync)
+             * oldest record should be used for invalidation, newest GlucoseValue for triggering Loop.
+             * Thus we need to collect both and fire only one EventNewHistoryData for the whole change
              *
              */
-            var newestGlucoseValue: GlucoseValue? = null
-            it.filterIsInstance<GlucoseValue>().lastOrNull()?.let { gv ->
+            val glucoseValues = it.filterIsInstance<GlucoseValue>()
+            val newestGlucoseValue = glucoseValues.lastOrNull()?.also { gv ->
                 aapsLogger.debug(LTag.DATABASE, "Firing EventNewBg")
+                loopTracer.bgArrived()
                 rxBus.send(EventNewBG(gv))
-                newestGlucoseValue = gv
             }
-            it.filterIsInstance<GlucoseValue>().map { gv -> gv.timestamp }.minOrNull()?.let { timestamp ->
-                aapsLogger.debug(LTag.DATABASE, "Firing EventNewHistoryData")
-                rxBus.send(EventNewHistoryData(timestamp, true, newestGlucoseValue))
-            }
-            it.filterIsInstance<Carbs>().map { t -> t.timestamp }.minOrNull()?.let { timestamp ->
-                aapsLogger.debug(LTag.DATABASE, "Firing EventTreatmentChange")
-                rxBus.send(EventTreatmentChange())
-                rxBus.send(EventNewHistoryData(timestamp, false))
-            }
-            it.filterIsInstance<Bolus>().map { t -> t.timestamp }.minOrNull()?.let { timestamp ->
+            if (it.any { t -> t is Carbs || t is Bolus }) {
                 aapsLogger.debug(LTag.DATABASE, "Firing EventTreatmentChange")
                 rxBus.send(EventTreatmentChange())
-                rxBus.send(EventNewHistoryData(timestamp, false))
             }
-            it.filterIsInstance<TemporaryBasal>().map { t -> t.timestamp }.minOrNull()?.let { timestamp ->
+            if (it.any { t -> t is TemporaryBasal }) {
                 aapsLogger.debug(LTag.DATABASE, "Firing EventTempBasalChange")
                 rxBus.send(EventTempBasalChange())
-                rxBus.send(EventNewHistoryData(timestamp, false))
             }
-            it.filterIsInstance<ExtendedBolus>().map { t -> t.timestamp }.minOrNull()?.let { timestamp ->
+            if (it.any { t -> t is ExtendedBolus }) {
                 aapsLogger.debug(LTag.DATABASE, "Firing EventExtendedBolusChange")
                 rxBus.send(EventExtendedBolusChange())
-                rxBus.send(EventNewHistoryData(timestamp, false))
             }
+            it.filter { t -> t is GlucoseValue || t is Carbs || t is Bolus || t is TemporaryBasal || t is ExtendedBolus }
+                .minOfOrNull { t -> (t as DBEntryWithTime).timestamp }?.let { timestamp ->
+                    aapsLogger.debug(LTag.DATABASE, "Firing EventNewHistoryData")
+                    rxBus.send(EventNewHistoryData(timestamp, glucoseValues.isNotEmpty(), newestGlucoseValue))
+                }
             it.filterIsInstance<TemporaryTarget>().firstOrNull()?.let {
                 aapsLogger.debug(LTag.DATABASE, "Firing EventTempTargetChange")
                 rxBus.send(EventTempTargetChange())
@@ -59,6 +59,7 @@ import info.nightscout.androidaps.plugins.aps.events.EventLoopInvoked
 import info.nightscout.androidaps.utils.resources.ResourceHelper
 import info.nightscout.androidaps.utils.rx.AapsSchedulers
 import info.nightscout.androidaps.utils.sharedPreferences.SP
+import info.nightscout.androidaps.utils.tracing.LoopTracer
 import io.reactivex.disposables.CompositeDisposable
 import io.reactivex.rxkotlin.plusAssign
 import javax.inject.Inject
@@ -87,7 +88,8 @@ class LoopPlugin @Inject constructor(
     private val dateUtil: DateUtil,
     private val uel: UserEntryLogger,
     private val repository: AppRepository,
-    private val runningConfiguration: RunningConfiguration
+    private val runningConfiguration: RunningConfiguration,
+    private val loopTracer: LoopTracer
 ) : PluginBase(PluginDescription()
     .mainType(PluginType.LOOP)
     .fragmentClass(LoopFragment::class.java.name)
@@ -225,6 +227,7 @@ class LoopPlugin @Inject constructor(
 
     @Synchronized
     operator fun invoke(initiator: String, allowNotification: Boolean, tempBasalFallback: Boolean) {
+        val traceStart = loopTracer.begin()
         try {
             aapsLogger.debug(LTag.APS, "invoke from $initiator")
             val loopEnabled = constraintChecker.isLoopInvocationAllowed()
@@ -251,7 +254,7 @@ class LoopPlugin @Inject constructor(
             if (pump.baseBasalRate < 0.01) return
             val usedAPS = activePlugin.activeAPS
             if ((usedAPS as PluginBase).isEnabled()) {
-                usedAPS.invoke(initiator, tempBasalFallback)
+                loopTracer.trace(LoopTracer.Span.APS) { usedAPS.invoke(initiator, tempBasalFallback) }
                 apsResult = usedAPS.lastAPSResult
             }
 
@@ -390,6 +393,7 @@ class LoopPlugin @Inject constructor(
                                     lastRun.tbrSetByPump = result
                                     lastRun.lastTBRRequest = lastRun.lastAPSRun
                                     lastRun.lastTBREnact = dateUtil.now()
+                                    loopTracer.enacted()
                                     rxBus.send(EventLoopUpdateGui())
                                     applySMBRequest(resultAfterConstraints, object : Callback() {
                                         override fun run() {
@@ -439,6 +443,7 @@ class LoopPlugin @Inject constructor(
                 rxBus.send(EventLoopUpdateGui())
             }
         } finally {
+            loopTracer.end(LoopTracer.Span.LOOP, traceStart)
             aapsLogger.debug(LTag.APS, "invoke end")
         }
     }
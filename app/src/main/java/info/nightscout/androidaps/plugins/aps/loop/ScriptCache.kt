@@ -0,0 +1,73 @@
+package info.nightscout.androidaps.plugins.aps.loop
+
+import android.content.Context
+import info.nightscout.androidaps.plugins.aps.logger.LoggerCallback
+import org.mozilla.javascript.Script
+import org.mozilla.javascript.Scriptable
+import org.mozilla.javascript.ScriptableObject
+import java.io.IOException
+import java.nio.charset.StandardCharsets
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Determine-basal scripts are parsed and compiled only once and standard JS objects
+ * are created only once in sealed shared scope.
+ *
+ * Every loop run gets its own lightweight scope (prototype is shared scope)
+ * and executes precompiled scripts in it, so globals from previous run are never visible.
+ *
+ * All methods must be called inside entered Rhino context with optimization level -1
+ * (bytecode generation is not possible on Android)
+ */
+@Singleton
+class ScriptCache @Inject constructor(context: Context) {
+
+    private val scriptReader = ScriptReader(context)
+    private val scripts = HashMap<String, Script>()
+    private var sharedScope: ScriptableObject? = null
+
+    @Synchronized
+    fun newScope(rhino: org.mozilla.javascript.Context): Scriptable {
+        val shared = sharedScope ?: rhino.initStandardObjects(null, true).also {
+            ScriptableObject.defineClass(it, LoggerCallback::class.java)
+            it.sealObject()
+            sharedScope = it
+        }
+        return rhino.newObject(shared).also {
+            it.prototype = shared
+            it.parentScope = null
+        }
+    }
+
+    /**
+     * Execute script from assets in scope
+     */
+    @Throws(IOException::class)
+    fun execFile(rhino: org.mozilla.javascript.Context, scope: Scriptable, fileName: String, sourceName: String = "JavaScript") {
+        val script = synchronized(this) {
+            scripts[fileName] ?: rhino.compileString(readFile(fileName), sourceName, 0, null).also { scripts[fileName] = it }
+        }
+        script.exec(rhino, scope)
+    }
+
+    /**
+     * Execute inline source in scope
+     */
+    fun exec(rhino: org.mozilla.javascript.Context, scope: Scriptable, source: String) {
+        val script = synchronized(this) {
+            scripts[source] ?: rhino.compileString(source, "JavaScript", 0, null).also { scripts[source] = it }
+        }
+        script.exec(rhino, scope)
+    }
+
+    @Throws(IOException::class)
+    private fun readFile(fileName: String): String {
+        val bytes = scriptReader.readFile(fileName)
+        var string = String(bytes, StandardCharsets.UTF_8)
+        if (string.startsWith("#!/usr/bin/env node")) {
+            string = string.substring(20)
+        }
+        return string
+    }
+}
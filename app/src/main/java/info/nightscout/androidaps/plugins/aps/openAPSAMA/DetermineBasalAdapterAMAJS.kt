@@ -14,7 +14,7 @@ import info.nightscout.androidaps.interfaces.ProfileFunction
 import info.nightscout.androidaps.logging.AAPSLogger
 import info.nightscout.androidaps.logging.LTag
 import info.nightscout.androidaps.plugins.aps.logger.LoggerCallback
-import info.nightscout.androidaps.plugins.aps.loop.ScriptReader
+import info.nightscout.androidaps.plugins.aps.loop.ScriptCache
 import info.nightscout.androidaps.plugins.aps.openAPSSMB.SMBDefaults
 import info.nightscout.androidaps.plugins.configBuilder.ConstraintChecker
 import info.nightscout.androidaps.plugins.iob.iobCobCalculator.GlucoseStatus
@@ -26,11 +26,10 @@ import org.mozilla.javascript.*
 import org.mozilla.javascript.Function
 import java.io.IOException
 import java.lang.reflect.InvocationTargetException
-import java.nio.charset.StandardCharsets
 import javax.inject.Inject
 import kotlin.math.min
 
-class DetermineBasalAdapterAMAJS internal constructor(scriptReader: ScriptReader, injector: HasAndroidInjector) {
+class DetermineBasalAdapterAMAJS internal constructor(injector: HasAndroidInjector) {
 
     private val injector: HasAndroidInjector
 
@@ -39,8 +38,8 @@ class DetermineBasalAdapterAMAJS internal constructor(scriptReader: ScriptReader
     @Inject lateinit var sp: SP
     @Inject lateinit var profileFunction: ProfileFunction
     @Inject lateinit var iobCobCalculator: IobCobCalculator
+    @Inject lateinit var scriptCache: ScriptCache
 
-    private val mScriptReader: ScriptReader
     private var profile = JSONObject()
     private var glucoseStatus = JSONObject()
     private var iobData: JSONArray? = null
@@ -72,25 +71,25 @@ class DetermineBasalAdapterAMAJS internal constructor(scriptReader: ScriptReader
         aapsLogger.debug(LTag.APS, "Autosens data:  $autosensData")
         var determineBasalResultAMA: DetermineBasalResultAMA? = null
         val rhino = Context.enter()
-        val scope: Scriptable = rhino.initStandardObjects()
         // Turn off optimization to make Rhino Android compatible
         rhino.optimizationLevel = -1
         try {
+            // standard objects are shared, scripts are compiled only once
+            val scope = scriptCache.newScope(rhino)
 
             //register logger callback for console.log and console.error
-            ScriptableObject.defineClass(scope, LoggerCallback::class.java)
             val myLogger = rhino.newObject(scope, "LoggerCallback", null)
             scope.put("console2", scope, myLogger)
-            rhino.evaluateString(scope, readFile("OpenAPSAMA/loggerhelper.js"), "JavaScript", 0, null)
+            scriptCache.execFile(rhino, scope, "OpenAPSAMA/loggerhelper.js")
 
             //set module parent
-            rhino.evaluateString(scope, "var module = {\"parent\":Boolean(1)};", "JavaScript", 0, null)
-            rhino.evaluateString(scope, "var round_basal = function round_basal(basal, profile) { return basal; };", "JavaScript", 0, null)
-            rhino.evaluateString(scope, "require = function() {return round_basal;};", "JavaScript", 0, null)
+            scriptCache.exec(rhino, scope, "var module = {\"parent\":Boolean(1)};")
+            scriptCache.exec(rhino, scope, "var round_basal = function round_basal(basal, profile) { return basal; };")
+            scriptCache.exec(rhino, scope, "require = function() {return round_basal;};")
 
             //generate functions "determine_basal" and "setTempBasal"
-            rhino.evaluateString(scope, readFile("OpenAPSAMA/determine-basal.js"), "JavaScript", 0, null)
-            rhino.evaluateString(scope, readFile("OpenAPSAMA/basal-set-temp.js"), "setTempBasal.js", 0, null)
+            scriptCache.execFile(rhino, scope, "OpenAPSAMA/determine-basal.js")
+            scriptCache.execFile(rhino, scope, "OpenAPSAMA/basal-set-temp.js", "setTempBasal.js")
             val determineBasalObj = scope["determine_basal", scope]
             val setTempBasalFunctionsObj = scope["tempBasalFunctions", scope]
 
@@ -218,18 +217,8 @@ class DetermineBasalAdapterAMAJS internal constructor(scriptReader: ScriptReader
         return NativeJSON.parse(rhino, scope, jsonArray.toString()) { _: Context?, _: Scriptable?, _: Scriptable?, objects: Array<Any?> -> objects[1] }
     }
 
-    @Throws(IOException::class) private fun readFile(filename: String): String {
-        val bytes = mScriptReader.readFile(filename)
-        var string = String(bytes, StandardCharsets.UTF_8)
-        if (string.startsWith("#!/usr/bin/env node")) {
-            string = string.substring(20)
-        }
-        return string
-    }
-
     init {
         injector.androidInjector().inject(this)
-        mScriptReader = scriptReader
         this.injector = injector
     }
 }
\ No newline at end of file
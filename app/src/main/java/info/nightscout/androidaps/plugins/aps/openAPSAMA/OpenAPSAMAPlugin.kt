@@ -12,7 +12,6 @@ import info.nightscout.androidaps.logging.AAPSLogger
 import info.nightscout.androidaps.logging.LTag
 import info.nightscout.androidaps.plugins.aps.events.EventOpenAPSUpdateGui
 import info.nightscout.androidaps.plugins.aps.events.EventOpenAPSUpdateResultGui
-import info.nightscout.androidaps.plugins.aps.loop.ScriptReader
 import info.nightscout.androidaps.plugins.bus.RxBus
 import info.nightscout.androidaps.plugins.configBuilder.ConstraintChecker
 import info.nightscout.androidaps.plugins.iob.iobCobCalculator.AutosensResult
@@ -24,6 +23,7 @@ import info.nightscout.androidaps.utils.Profiler
 import info.nightscout.androidaps.utils.Round
 import info.nightscout.androidaps.extensions.target
 import info.nightscout.androidaps.utils.resources.ResourceHelper
+import info.nightscout.androidaps.utils.tracing.LoopTracer
 import org.json.JSONException
 import javax.inject.Inject
 import javax.inject.Singleton
@@ -45,7 +45,8 @@ class OpenAPSAMAPlugin @Inject constructor(
     private val fabricPrivacy: FabricPrivacy,
     private val dateUtil: DateUtil,
     private val repository: AppRepository,
-    private val glucoseStatusProvider: GlucoseStatusProvider
+    private val glucoseStatusProvider: GlucoseStatusProvider,
+    private val loopTracer: LoopTracer
 ) : PluginBase(PluginDescription()
     .mainType(PluginType.APS)
     .fragmentClass(OpenAPSAMAFragment::class.java.name)
@@ -81,7 +82,7 @@ class OpenAPSAMAPlugin @Inject constructor(
     override fun invoke(initiator: String, tempBasalFallback: Boolean) {
         aapsLogger.debug(LTag.APS, "invoke from $initiator tempBasalFallback: $tempBasalFallback")
         lastAPSResult = null
-        val determineBasalAdapterAMAJS = DetermineBasalAdapterAMAJS(ScriptReader(context), injector)
+        val determineBasalAdapterAMAJS = DetermineBasalAdapterAMAJS(injector)
         val glucoseStatus = glucoseStatusProvider.glucoseStatusData
         val profile = profileFunction.getProfile()
         val pump = activePlugin.activePump
@@ -153,7 +154,7 @@ class OpenAPSAMAPlugin @Inject constructor(
             fabricPrivacy.logException(e)
             return
         }
-        val determineBasalResultAMA = determineBasalAdapterAMAJS.invoke()
+        val determineBasalResultAMA = loopTracer.trace(LoopTracer.Span.DETERMINE_BASAL) { determineBasalAdapterAMAJS.invoke() }
         profiler.log(LTag.APS, "AMA calculation", start)
         // Fix bug determine basal
         if (determineBasalResultAMA == null) {
@@ -15,9 +15,11 @@ import info.nightscout.androidaps.interfaces.ProfileFunction
 import info.nightscout.androidaps.logging.AAPSLogger
 import info.nightscout.androidaps.logging.LTag
 import info.nightscout.androidaps.plugins.aps.logger.LoggerCallback
-import info.nightscout.androidaps.plugins.aps.loop.ScriptReader
+import info.nightscout.androidaps.plugins.aps.loop.ScriptCache
 import info.nightscout.androidaps.plugins.configBuilder.ConstraintChecker
 import info.nightscout.androidaps.plugins.iob.iobCobCalculator.GlucoseStatus
+import info.nightscout.androidaps.utils.DateUtil
+import info.nightscout.androidaps.utils.FabricPrivacy
 import info.nightscout.androidaps.utils.SafeParse
 import info.nightscout.androidaps.utils.resources.ResourceHelper
 import info.nightscout.androidaps.utils.sharedPreferences.SP
@@ -28,10 +30,9 @@ import org.mozilla.javascript.*
 import org.mozilla.javascript.Function
 import java.io.IOException
 import java.lang.reflect.InvocationTargetException
-import java.nio.charset.StandardCharsets
 import javax.inject.Inject
 
-class DetermineBasalAdapterSMBJS internal constructor(private val scriptReader: ScriptReader, private val injector: HasAndroidInjector) {
+class DetermineBasalAdapterSMBJS internal constructor(private val injector: HasAndroidInjector) {
 
     @Inject lateinit var aapsLogger: AAPSLogger
     @Inject lateinit var constraintChecker: ConstraintChecker
@@ -40,7 +41,19 @@ class DetermineBasalAdapterSMBJS internal constructor(private val scriptReader:
     @Inject lateinit var profileFunction: ProfileFunction
     @Inject lateinit var iobCobCalculator: IobCobCalculator
     @Inject lateinit var activePlugin: ActivePlugin
+    @Inject lateinit var scriptCache: ScriptCache
+    @Inject lateinit var dateUtil: DateUtil
+    @Inject lateinit var fabricPrivacy: FabricPrivacy
 
+    // inputs of native determine-basal
+    private lateinit var oapsProfile: OapsProfile
+    private lateinit var oapsCurrentTemp: CurrentTemp
+    private lateinit var glucoseStatus: GlucoseStatus
+    private lateinit var iobArray: Array<IobTotal>
+    private lateinit var meal: MealData
+    private var autosensRatio = 1.0
+
+    // the same inputs for JS determine-basal and logging
     private var profile = JSONObject()
     private var mGlucoseStatus = JSONObject()
     private var iobData: JSONArray? = null
@@ -78,27 +91,31 @@ class DetermineBasalAdapterSMBJS internal constructor(private val scriptReader:
         aapsLogger.debug(LTag.APS, "SMBAlwaysAllowed:  $smbAlwaysAllowed")
         aapsLogger.debug(LTag.APS, "CurrentTime: $currentTime")
         aapsLogger.debug(LTag.APS, "isSaveCgmSource: $saveCgmSource")
+        if (sp.getBoolean(R.string.key_openapssmb_native, false)) {
+            invokeNative()?.let { return it }
+            aapsLogger.error(LTag.APS, "Native determine_basal failed. Falling back to JS")
+        }
         var determineBasalResultSMB: DetermineBasalResultSMB? = null
         val rhino = Context.enter()
-        val scope: Scriptable = rhino.initStandardObjects()
         // Turn off optimization to make Rhino Android compatible
         rhino.optimizationLevel = -1
         try {
+            // standard objects are shared, scripts are compiled only once
+            val scope = scriptCache.newScope(rhino)
 
             //register logger callback for console.log and console.error
-            ScriptableObject.defineClass(scope, LoggerCallback::class.java)
             val myLogger = rhino.newObject(scope, "LoggerCallback", null)
             scope.put("console2", scope, myLogger)
-            rhino.evaluateString(scope, readFile("OpenAPSAMA/loggerhelper.js"), "JavaScript", 0, null)
+            scriptCache.execFile(rhino, scope, "OpenAPSAMA/loggerhelper.js")
 
             //set module parent
-            rhino.evaluateString(scope, "var module = {\"parent\":Boolean(1)};", "JavaScript", 0, null)
-            rhino.evaluateString(scope, "var round_basal = function round_basal(basal, profile) { return basal; };", "JavaScript", 0, null)
-            rhino.evaluateString(scope, "require = function() {return round_basal;};", "JavaScript", 0, null)
+            scriptCache.exec(rhino, scope, "var module = {\"parent\":Boolean(1)};")
+            scriptCache.exec(rhino, scope, "var round_basal = function round_basal(basal, profile) { return basal; };")
+            scriptCache.exec(rhino, scope, "require = function() {return round_basal;};")
 
             //generate functions "determine_basal" and "setTempBasal"
-            rhino.evaluateString(scope, readFile("OpenAPSSMB/determine-basal.js"), "JavaScript", 0, null)
-            rhino.evaluateString(scope, readFile("OpenAPSSMB/basal-set-temp.js"), "setTempBasal.js", 0, null)
+            scriptCache.execFile(rhino, scope, "OpenAPSSMB/determine-basal.js")
+            scriptCache.execFile(rhino, scope, "OpenAPSSMB/basal-set-temp.js", "setTempBasal.js")
             val determineBasalObj = scope["determine_basal", scope]
             val setTempBasalFunctionsObj = scope["tempBasalFunctions", scope]
 
@@ -155,6 +172,19 @@ class DetermineBasalAdapterSMBJS internal constructor(private val scriptReader:
         return determineBasalResultSMB
     }
 
+    private fun invokeNative(): DetermineBasalResultSMB? =
+        try {
+            val determineBasal = DetermineBasalSMB(dateUtil)
+            val result = determineBasal.determineBasal(glucoseStatus, oapsCurrentTemp, iobArray, oapsProfile, autosensRatio, meal, microBolusAllowed, currentTime, saveCgmSource)
+            scriptDebug = determineBasal.scriptDebug
+            aapsLogger.debug(LTag.APS, "Result: $result")
+            DetermineBasalResultSMB(injector, result)
+        } catch (e: Exception) {
+            aapsLogger.error(LTag.APS, "Unhandled exception in native determine_basal", e)
+            fabricPrivacy.logException(e)
+            null
+        }
+
     @Suppress("SpellCheckingInspection") fun setData(profile: Profile,
                                                      maxIob: Double,
                                                      maxBasal: Double,
@@ -174,87 +204,82 @@ class DetermineBasalAdapterSMBJS internal constructor(private val scriptReader:
     ) {
         val pump = activePlugin.activePump
         val pumpBolusStep = pump.pumpDescription.bolusStep
-        this.profile.put("max_iob", maxIob)
-        //mProfile.put("dia", profile.getDia());
-        this.profile.put("type", "current")
-        this.profile.put("max_daily_basal", profile.getMaxDailyBasal())
-        this.profile.put("max_basal", maxBasal)
-        this.profile.put("min_bg", minBg)
-        this.profile.put("max_bg", maxBg)
-        this.profile.put("target_bg", targetBg)
-        this.profile.put("carb_ratio", profile.getIc())
-        this.profile.put("sens", profile.getIsfMgdl())
-        this.profile.put("max_daily_safety_multiplier", sp.getInt(R.string.key_openapsama_max_daily_safety_multiplier, 3))
-        this.profile.put("current_basal_safety_multiplier", sp.getDouble(R.string.key_openapsama_current_basal_safety_multiplier, 4.0))
-
-        //mProfile.put("high_temptarget_raises_sensitivity", SP.getBoolean(R.string.key_high_temptarget_raises_sensitivity, SMBDefaults.high_temptarget_raises_sensitivity));
-        this.profile.put("high_temptarget_raises_sensitivity", false)
-        //mProfile.put("low_temptarget_lowers_sensitivity", SP.getBoolean(R.string.key_low_temptarget_lowers_sensitivity, SMBDefaults.low_temptarget_lowers_sensitivity));
-        this.profile.put("low_temptarget_lowers_sensitivity", false)
-        this.profile.put("sensitivity_raises_target", sp.getBoolean(R.string.key_sensitivity_raises_target, SMBDefaults.sensitivity_raises_target))
-        this.profile.put("resistance_lowers_target", sp.getBoolean(R.string.key_resistance_lowers_target, SMBDefaults.resistance_lowers_target))
-        this.profile.put("adv_target_adjustments", SMBDefaults.adv_target_adjustments)
-        this.profile.put("exercise_mode", SMBDefaults.exercise_mode)
-        this.profile.put("half_basal_exercise_target", SMBDefaults.half_basal_exercise_target)
-        this.profile.put("maxCOB", SMBDefaults.maxCOB)
-        this.profile.put("skip_neutral_temps", pump.setNeutralTempAtFullHour())
-        // min_5m_carbimpact is not used within SMB determinebasal
-        //if (mealData.usedMinCarbsImpact > 0) {
-        //    mProfile.put("min_5m_carbimpact", mealData.usedMinCarbsImpact);
-        //} else {
-        //    mProfile.put("min_5m_carbimpact", SP.getDouble(R.string.key_openapsama_min_5m_carbimpact, SMBDefaults.min_5m_carbimpact));
-        //}
-        this.profile.put("remainingCarbsCap", SMBDefaults.remainingCarbsCap)
-        this.profile.put("enableUAM", uamAllowed)
-        this.profile.put("A52_risk_enable", SMBDefaults.A52_risk_enable)
         val smbEnabled = sp.getBoolean(R.string.key_use_smb, false)
-        this.profile.put("SMBInterval", sp.getInt(R.string.key_smbinterval, SMBDefaults.SMBInterval))
-        this.profile.put("enableSMB_with_COB", smbEnabled && sp.getBoolean(R.string.key_enableSMB_with_COB, false))
-        this.profile.put("enableSMB_with_temptarget", smbEnabled && sp.getBoolean(R.string.key_enableSMB_with_temptarget, false))
-        this.profile.put("allowSMB_with_high_temptarget", smbEnabled && sp.getBoolean(R.string.key_allowSMB_with_high_temptarget, false))
-        this.profile.put("enableSMB_always", smbEnabled && sp.getBoolean(R.string.key_enableSMB_always, false) && advancedFiltering)
-        this.profile.put("enableSMB_after_carbs", smbEnabled && sp.getBoolean(R.string.key_enableSMB_after_carbs, false) && advancedFiltering)
-        this.profile.put("maxSMBBasalMinutes", sp.getInt(R.string.key_smbmaxminutes, SMBDefaults.maxSMBBasalMinutes))
-        this.profile.put("maxUAMSMBBasalMinutes", sp.getInt(R.string.key_uamsmbmaxminutes, SMBDefaults.maxUAMSMBBasalMinutes))
-        //set the min SMB amount to be the amount set by the pump.
-        this.profile.put("bolus_increment", pumpBolusStep)
-        this.profile.put("carbsReqThreshold", sp.getInt(R.string.key_carbsReqThreshold, SMBDefaults.carbsReqThreshold))
-        this.profile.put("current_basal", basalRate)
-        this.profile.put("temptargetSet", tempTargetSet)
-        this.profile.put("autosens_max", SafeParse.stringToDouble(sp.getString(R.string.key_openapsama_autosens_max, "1.2")))
-        if (profileFunction.getUnits() == GlucoseUnit.MMOL) {
-            this.profile.put("out_units", "mmol/L")
-        }
+        oapsProfile = OapsProfile(
+            max_iob = maxIob,
+            max_daily_basal = profile.getMaxDailyBasal(),
+            max_basal = maxBasal,
+            min_bg = minBg,
+            max_bg = maxBg,
+            target_bg = targetBg,
+            carb_ratio = profile.getIc(),
+            sens = profile.getIsfMgdl(),
+            max_daily_safety_multiplier = sp.getInt(R.string.key_openapsama_max_daily_safety_multiplier, 3),
+            current_basal_safety_multiplier = sp.getDouble(R.string.key_openapsama_current_basal_safety_multiplier, 4.0),
+            //high_temptarget_raises_sensitivity = SP.getBoolean(R.string.key_high_temptarget_raises_sensitivity, SMBDefaults.high_temptarget_raises_sensitivity)
+            high_temptarget_raises_sensitivity = false,
+            //low_temptarget_lowers_sensitivity = SP.getBoolean(R.string.key_low_temptarget_lowers_sensitivity, SMBDefaults.low_temptarget_lowers_sensitivity)
+            low_temptarget_lowers_sensitivity = false,
+            sensitivity_raises_target = sp.getBoolean(R.string.key_sensitivity_raises_target, SMBDefaults.sensitivity_raises_target),
+            resistance_lowers_target = sp.getBoolean(R.string.key_resistance_lowers_target, SMBDefaults.resistance_lowers_target),
+            adv_target_adjustments = SMBDefaults.adv_target_adjustments,
+            exercise_mode = SMBDefaults.exercise_mode,
+            half_basal_exercise_target = SMBDefaults.half_basal_exercise_target,
+            maxCOB = SMBDefaults.maxCOB,
+            skip_neutral_temps = pump.setNeutralTempAtFullHour(),
+            // min_5m_carbimpact is not used within SMB determinebasal
+            remainingCarbsCap = SMBDefaults.remainingCarbsCap,
+            enableUAM = uamAllowed,
+            A52_risk_enable = SMBDefaults.A52_risk_enable,
+            SMBInterval = sp.getInt(R.string.key_smbinterval, SMBDefaults.SMBInterval),
+            enableSMB_with_COB = smbEnabled && sp.getBoolean(R.string.key_enableSMB_with_COB, false),
+            enableSMB_with_temptarget = smbEnabled && sp.getBoolean(R.string.key_enableSMB_with_temptarget, false),
+            allowSMB_with_high_temptarget = smbEnabled && sp.getBoolean(R.string.key_allowSMB_with_high_temptarget, false),
+            enableSMB_always = smbEnabled && sp.getBoolean(R.string.key_enableSMB_always, false) && advancedFiltering,
+            enableSMB_after_carbs = smbEnabled && sp.getBoolean(R.string.key_enableSMB_after_carbs, false) && advancedFiltering,
+            maxSMBBasalMinutes = sp.getInt(R.string.key_smbmaxminutes, SMBDefaults.maxSMBBasalMinutes),
+            maxUAMSMBBasalMinutes = sp.getInt(R.string.key_uamsmbmaxminutes, SMBDefaults.maxUAMSMBBasalMinutes),
+            //set the min SMB amount to be the amount set by the pump.
+            bolus_increment = pumpBolusStep,
+            carbsReqThreshold = sp.getInt(R.string.key_carbsReqThreshold, SMBDefaults.carbsReqThreshold),
+            current_basal = basalRate,
+            temptargetSet = tempTargetSet,
+            autosens_max = SafeParse.stringToDouble(sp.getString(R.string.key_openapsama_autosens_max, "1.2")),
+            out_units = if (profileFunction.getUnits() == GlucoseUnit.MMOL) "mmol/L" else null
+        )
+        this.profile = oapsProfile.json()
         val now = System.currentTimeMillis()
         val tb = iobCobCalculator.getTempBasalIncludingConvertedExtended(now)
-        currentTemp.put("temp", "absolute")
-        currentTemp.put("duration", tb?.plannedRemainingMinutes ?: 0)
-        currentTemp.put("rate", tb?.convertedToAbsolute(now, profile) ?: 0.0)
-        // as we have non default temps longer than 30 mintues
-        if (tb != null) currentTemp.put("minutesrunning", tb.getPassedDurationToTimeInMinutes(now))
+        oapsCurrentTemp = CurrentTemp(
+            duration = tb?.plannedRemainingMinutes ?: 0,
+            rate = tb?.convertedToAbsolute(now, profile) ?: 0.0,
+            minutesrunning = tb?.getPassedDurationToTimeInMinutes(now)
+        )
+        currentTemp = oapsCurrentTemp.json()
 
+        this.iobArray = iobArray
         iobData = iobCobCalculator.convertToJSONArray(iobArray)
-        mGlucoseStatus.put("glucose", glucoseStatus.glucose)
-        mGlucoseStatus.put("noise", glucoseStatus.noise)
-        if (sp.getBoolean(R.string.key_always_use_shortavg, false)) {
-            mGlucoseStatus.put("delta", glucoseStatus.shortAvgDelta)
-        } else {
-            mGlucoseStatus.put("delta", glucoseStatus.delta)
-        }
-        mGlucoseStatus.put("short_avgdelta", glucoseStatus.shortAvgDelta)
-        mGlucoseStatus.put("long_avgdelta", glucoseStatus.longAvgDelta)
-        mGlucoseStatus.put("date", glucoseStatus.date)
+        this.glucoseStatus =
+            if (sp.getBoolean(R.string.key_always_use_shortavg, false)) glucoseStatus.copy(delta = glucoseStatus.shortAvgDelta)
+            else glucoseStatus
+        mGlucoseStatus = JSONObject()
+        mGlucoseStatus.put("glucose", this.glucoseStatus.glucose)
+        mGlucoseStatus.put("noise", this.glucoseStatus.noise)
+        mGlucoseStatus.put("delta", this.glucoseStatus.delta)
+        mGlucoseStatus.put("short_avgdelta", this.glucoseStatus.shortAvgDelta)
+        mGlucoseStatus.put("long_avgdelta", this.glucoseStatus.longAvgDelta)
+        mGlucoseStatus.put("date", this.glucoseStatus.date)
+        meal = mealData
+        this.mealData = JSONObject()
         this.mealData.put("carbs", mealData.carbs)
         this.mealData.put("mealCOB", mealData.mealCOB)
         this.mealData.put("slopeFromMaxDeviation", mealData.slopeFromMaxDeviation)
         this.mealData.put("slopeFromMinDeviation", mealData.slopeFromMinDeviation)
         this.mealData.put("lastBolusTime", mealData.lastBolusTime)
         this.mealData.put("lastCarbTime", mealData.lastCarbTime)
-        if (constraintChecker.isAutosensModeEnabled().value()) {
-            autosensData.put("ratio", autosensDataRatio)
-        } else {
-            autosensData.put("ratio", 1.0)
-        }
+        autosensRatio = if (constraintChecker.isAutosensModeEnabled().value()) autosensDataRatio else 1.0
+        autosensData = JSONObject()
+        autosensData.put("ratio", autosensRatio)
         this.microBolusAllowed = microBolusAllowed
         smbAlwaysAllowed = advancedFiltering
         currentTime = now
@@ -270,15 +295,6 @@ class DetermineBasalAdapterSMBJS internal constructor(private val scriptReader:
         return NativeJSON.parse(rhino, scope, jsonArray.toString()) { _: Context?, _: Scriptable?, _: Scriptable?, objects: Array<Any?> -> objects[1] }
     }
 
-    @Throws(IOException::class) private fun readFile(filename: String): String {
-        val bytes = scriptReader.readFile(filename)
-        var string = String(bytes, StandardCharsets.UTF_8)
-        if (string.startsWith("#!/usr/bin/env node")) {
-            string = string.substring(20)
-        }
-        return string
-    }
-
     init {
         injector.androidInjector().inject(this)
     }
@@ -0,0 +1,111 @@
+package info.nightscout.androidaps.plugins.aps.openAPSSMB
+
+import org.json.JSONObject
+
+/**
+ * Profile as passed to OpenAPS SMB determine-basal
+ *
+ * Names follow oref0 profile.json
+ */
+@Suppress("PropertyName", "SpellCheckingInspection")
+data class OapsProfile(
+    val max_iob: Double,
+    val max_daily_basal: Double,
+    val max_basal: Double,
+    val min_bg: Double,
+    val max_bg: Double,
+    val target_bg: Double,
+    val carb_ratio: Double,
+    val sens: Double,
+    val max_daily_safety_multiplier: Int,
+    val current_basal_safety_multiplier: Double,
+    val high_temptarget_raises_sensitivity: Boolean,
+    val low_temptarget_lowers_sensitivity: Boolean,
+    val sensitivity_raises_target: Boolean,
+    val resistance_lowers_target: Boolean,
+    val adv_target_adjustments: Boolean,
+    val exercise_mode: Boolean,
+    val half_basal_exercise_target: Int,
+    val maxCOB: Int,
+    val skip_neutral_temps: Boolean,
+    val remainingCarbsCap: Int,
+    val enableUAM: Boolean,
+    val A52_risk_enable: Boolean,
+    val SMBInterval: Int,
+    val enableSMB_with_COB: Boolean,
+    val enableSMB_with_temptarget: Boolean,
+    val allowSMB_with_high_temptarget: Boolean,
+    val enableSMB_always: Boolean,
+    val enableSMB_after_carbs: Boolean,
+    val maxSMBBasalMinutes: Int,
+    val maxUAMSMBBasalMinutes: Int,
+    val bolus_increment: Double,
+    val carbsReqThreshold: Int,
+    val current_basal: Double,
+    val temptargetSet: Boolean,
+    val autosens_max: Double,
+    val out_units: String? = null
+) {
+
+    fun json(): JSONObject = JSONObject().also {
+        it.put("max_iob", max_iob)
+        it.put("type", "current")
+        it.put("max_daily_basal", max_daily_basal)
+        it.put("max_basal", max_basal)
+        it.put("min_bg", min_bg)
+        it.put("max_bg", max_bg)
+        it.put("target_bg", target_bg)
+        it.put("carb_ratio", carb_ratio)
+        it.put("sens", sens)
+        it.put("max_daily_safety_multiplier", max_daily_safety_multiplier)
+        it.put("current_basal_safety_multiplier", current_basal_safety_multiplier)
+        it.put("high_temptarget_raises_sensitivity", high_temptarget_raises_sensitivity)
+        it.put("low_temptarget_lowers_sensitivity", low_temptarget_lowers_sensitivity)
+        it.put("sensitivity_raises_target", sensitivity_raises_target)
+        it.put("resistance_lowers_target", resistance_lowers_target)
+        it.put("adv_target_adjustments", adv_target_adjustments)
+        it.put("exercise_mode", exercise_mode)
+        it.put("half_basal_exercise_target", half_basal_exercise_target)
+        it.put("maxCOB", maxCOB)
+        it.put("skip_neutral_temps", skip_neutral_temps)
+        it.put("remainingCarbsCap", remainingCarbsCap)
+        it.put("enableUAM", enableUAM)
+        it.put("A52_risk_enable", A52_risk_enable)
+        it.put("SMBInterval", SMBInterval)
+        it.put("enableSMB_with_COB", enableSMB_with_COB)
+        it.put("enableSMB_with_temptarget", enableSMB_with_temptarget)
+        it.put("allowSMB_with_high_temptarget", allowSMB_with_high_temptarget)
+        it.put("enableSMB_always", enableSMB_always)
+        it.put("enableSMB_after_carbs", enableSMB_after_carbs)
+        it.put("maxSMBBasalMinutes", maxSMBBasalMinutes)
+        it.put("maxUAMSMBBasalMinutes", maxUAMSMBBasalMinutes)
+        it.put("bolus_increment", bolus_increment)
+        it.put("carbsReqThreshold", carbsReqThreshold)
+        it.put("current_basal", current_basal)
+        it.put("temptargetSet", temptargetSet)
+        it.put("autosens_max", autosens_max)
+        if (out_units != null) it.put("out_units", out_units)
+    }
+}
+
+/**
+ * Running temp basal as passed to OpenAPS SMB determine-basal
+ *
+ * @param duration remaining minutes
+ * @param minutesrunning passed minutes or null if no temp basal is running
+ */
+@Suppress("SpellCheckingInspection")
+data class CurrentTemp(
+    val duration: Int,
+    val rate: Double,
+    val minutesrunning: Int?
+) {
+
+    fun json(): JSONObject = JSONObject().also {
+        it.put("temp", "absolute")
+        it.put("duration", duration)
+        it.put("rate", rate)
+        // as we have non default temps longer than 30 mintues
+        if (minutesrunning != null) it.put("minutesrunning", minutesrunning)
+    }
+}
@@ -14,7 +14,6 @@ import info.nightscout.androidaps.logging.AAPSLogger
 import info.nightscout.androidaps.logging.LTag
 import info.nightscout.androidaps.plugins.aps.events.EventOpenAPSUpdateGui
 import info.nightscout.androidaps.plugins.aps.events.EventOpenAPSUpdateResultGui
-import info.nightscout.androidaps.plugins.aps.loop.ScriptReader
 import info.nightscout.androidaps.plugins.bus.RxBus
 import info.nightscout.androidaps.plugins.configBuilder.ConstraintChecker
 import info.nightscout.androidaps.plugins.iob.iobCobCalculator.AutosensResult
@@ -25,6 +24,7 @@ import info.nightscout.androidaps.utils.Profiler
 import info.nightscout.androidaps.utils.Round
 import info.nightscout.androidaps.utils.resources.ResourceHelper
 import info.nightscout.androidaps.utils.sharedPreferences.SP
+import info.nightscout.androidaps.utils.tracing.LoopTracer
 import javax.inject.Inject
 import javax.inject.Singleton
 
@@ -45,7 +45,8 @@ class OpenAPSSMBPlugin @Inject constructor(
     private val sp: SP,
     private val dateUtil: DateUtil,
     private val repository: AppRepository,
-    private val glucoseStatusProvider: GlucoseStatusProvider
+    private val glucoseStatusProvider: GlucoseStatusProvider,
+    private val loopTracer: LoopTracer
 ) : PluginBase(PluginDescription()
     .mainType(PluginType.APS)
     .fragmentClass(OpenAPSSMBFragment::class.java.name)
@@ -165,7 +166,7 @@ class OpenAPSSMBPlugin @Inject constructor(
         profiler.log(LTag.APS, "SMB data gathering", start)
         start = System.currentTimeMillis()
 
-        DetermineBasalAdapterSMBJS(ScriptReader(context), injector).also { determineBasalAdapterSMBJS ->
+        DetermineBasalAdapterSMBJS(injector).also { determineBasalAdapterSMBJS ->
             determineBasalAdapterSMBJS.setData(profile, maxIob, maxBasal, minBg, maxBg, targetBg,
                 activePlugin.activePump.baseBasalRate,
                 iobArray,
@@ -178,7 +179,7 @@ class OpenAPSSMBPlugin @Inject constructor(
                 advancedFiltering.value(),
                 activePlugin.activeBgSource.javaClass.simpleName == "DexcomPlugin")
             val now = System.currentTimeMillis()
-            val determineBasalResultSMB = determineBasalAdapterSMBJS.invoke()
+            val determineBasalResultSMB = loopTracer.trace(LoopTracer.Span.DETERMINE_BASAL) { determineBasalAdapterSMBJS.invoke() }
             profiler.log(LTag.APS, "SMB calculation", start)
             if (determineBasalResultSMB == null) {
                 aapsLogger.error(LTag.APS, "SMB calculation returned null")
@@ -15,6 +15,7 @@ import info.nightscout.androidaps.interfaces.PluginDescription
 import info.nightscout.androidaps.interfaces.PluginType
 import info.nightscout.androidaps.logging.AAPSLogger
 import info.nightscout.androidaps.logging.LTag
+import info.nightscout.androidaps.logging.debug
 import info.nightscout.androidaps.receivers.DataWorker
 import info.nightscout.androidaps.utils.JsonHelper
 import info.nightscout.androidaps.utils.resources.ResourceHelper
@@ -56,8 +57,8 @@ class FoodPlugin @Inject constructor(
 
         override fun doWork(): Result {
             val foods = dataWorker.pickupJSONArray(inputData.getLong(DataWorker.STORE_KEY, -1))
-                ?: return Result.failure(workDataOf("Error" to "missing input data"))
-            aapsLogger.debug(LTag.DATABASE, "Received Food Data: $foods")
+                ?: return Result.success(workDataOf("Result" to "payload dropped or expired"))
+            aapsLogger.debug(LTag.DATABASE) { "Received Food Data: $foods" }
 
             var ret = Result.success()
 
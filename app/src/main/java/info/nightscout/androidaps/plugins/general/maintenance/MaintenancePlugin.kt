@@ -16,6 +16,7 @@ import info.nightscout.androidaps.plugins.general.nsclient.data.NSSettingsStatus
 import info.nightscout.androidaps.utils.buildHelper.BuildHelper
 import info.nightscout.androidaps.utils.resources.ResourceHelper
 import info.nightscout.androidaps.utils.sharedPreferences.SP
+import info.nightscout.androidaps.utils.tracing.LoopTracer
 import java.io.*
 import java.util.*
 import java.util.zip.ZipEntry
@@ -34,7 +35,8 @@ class MaintenancePlugin @Inject constructor(
     private val buildHelper: BuildHelper,
     private val config: Config,
     private val fileListProvider: PrefFileListProvider,
-    private val loggerUtils: LoggerUtils
+    private val loggerUtils: LoggerUtils,
+    private val loopTracer: LoopTracer
 ) : PluginBase(
     PluginDescription()
         .mainType(PluginType.GENERAL)
@@ -56,7 +58,7 @@ class MaintenancePlugin @Inject constructor(
         val zipDir = fileListProvider.ensureTempDirExists()
         val zipFile = File(zipDir, constructName())
         aapsLogger.debug("zipFile: ${zipFile.absolutePath}")
-        val zip = zipLogs(zipFile, logs)
+        val zip = zipLogs(zipFile, logs + listOfNotNull(exportLoopTrace(zipDir)))
         val attachmentUri =
             FileProvider.getUriForFile(context, BuildConfig.APPLICATION_ID + ".fileprovider", zip)
         val emailIntent: Intent = this.sendMail(attachmentUri, recipient, "Log Export")
@@ -118,6 +120,22 @@ class MaintenancePlugin @Inject constructor(
         return result.subList(0, toIndex)
     }
 
+    /**
+     * Write loop latency statistics and last traced spans to file
+     *
+     * @return created file or null on failure
+     */
+    fun exportLoopTrace(dir: File): File? {
+        val traceFile = File(dir, "LoopTrace.json")
+        return try {
+            traceFile.writeText(loopTracer.toJson().toString(2))
+            traceFile
+        } catch (e: IOException) {
+            aapsLogger.error("Cannot export loop trace", e)
+            null
+        }
+    }
+
     fun zipLogs(zipFile: File, files: List<File>): File {
         aapsLogger.debug("creating zip ${zipFile.absolutePath}")
         try {
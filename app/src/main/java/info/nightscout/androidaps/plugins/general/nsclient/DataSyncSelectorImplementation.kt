@@ -12,7 +12,9 @@ import info.nightscout.androidaps.logging.AAPSLogger
 import info.nightscout.androidaps.logging.LTag
 import info.nightscout.androidaps.plugins.profile.local.LocalProfilePlugin
 import info.nightscout.androidaps.utils.DateUtil
+import info.nightscout.androidaps.utils.T
 import info.nightscout.androidaps.utils.sharedPreferences.SP
+import org.json.JSONObject
 import javax.inject.Inject
 import javax.inject.Singleton
 
@@ -44,6 +46,9 @@ class DataSyncSelectorImplementation @Inject constructor(
         var oesRemaining: Long = 0L
     ) {
 
+        // times of acks received during last minute
+        private val acks = ArrayDeque<Long>()
+
         fun size(): Long =
             bolusesRemaining +
                 carbsRemaining +
@@ -58,14 +63,57 @@ class DataSyncSelectorImplementation @Inject constructor(
                 pssRemaining +
                 epssRemaining +
                 oesRemaining
+
+        @Synchronized
+        fun acked(now: Long) {
+            acks.addLast(now)
+            expire(now)
+        }
+
+        @Synchronized
+        fun ackedPerMinute(now: Long): Long {
+            expire(now)
+            return acks.size.toLong()
+        }
+
+        private fun expire(now: Long) {
+            while (acks.isNotEmpty() && acks.first() <= now - T.mins(1).msecs()) acks.removeFirst()
+        }
     }
 
     private val queueCounter = QueueCounter()
 
+    // slow sync keeps one record in flight (no pipelining)
+    private fun windowSize(): Int = if (sp.getBoolean(R.string.key_ns_sync_slow, false)) 1 else UPLOAD_WINDOW
+
+    private val bolusWindow = UploadWindow("Bolus", R.string.key_ns_bolus_last_synced_id, ::windowSize)
+    private val carbsWindow = UploadWindow("Carbs", R.string.key_ns_carbs_last_synced_id, ::windowSize)
+    private val bolusCalculatorResultWindow = UploadWindow("BolusCalculatorResult", R.string.key_ns_bolus_calculator_result_last_synced_id, ::windowSize)
+    private val temporaryTargetWindow = UploadWindow("TemporaryTarget", R.string.key_ns_temporary_target_last_synced_id, ::windowSize)
+    private val foodWindow = UploadWindow("Food", R.string.key_ns_food_last_synced_id, ::windowSize)
+    private val glucoseValueWindow = UploadWindow("GlucoseValue", R.string.key_ns_glucose_value_last_synced_id, ::windowSize)
+    private val therapyEventWindow = UploadWindow("TherapyEvents", R.string.key_ns_therapy_event_last_synced_id, ::windowSize)
+    private val deviceStatusWindow = UploadWindow("DeviceStatus", R.string.key_ns_device_status_last_synced_id, ::windowSize)
+    private val temporaryBasalWindow = UploadWindow("TemporaryBasal", R.string.key_ns_temporary_basal_last_synced_id, ::windowSize)
+    private val extendedBolusWindow = UploadWindow("ExtendedBolus", R.string.key_ns_extended_bolus_last_synced_id, ::windowSize)
+    private val profileSwitchWindow = UploadWindow("ProfileSwitch", R.string.key_ns_profile_switch_last_synced_id, ::windowSize)
+    private val effectiveProfileSwitchWindow = UploadWindow("EffectiveProfileSwitch", R.string.key_ns_effective_profile_switch_last_synced_id, ::windowSize)
+    private val offlineEventWindow = UploadWindow("OfflineEvent", R.string.key_ns_offline_event_last_synced_id, ::windowSize)
+
+    private val windows = listOf(
+        bolusWindow, carbsWindow, bolusCalculatorResultWindow, temporaryTargetWindow, foodWindow, glucoseValueWindow, therapyEventWindow,
+        deviceStatusWindow, temporaryBasalWindow, extendedBolusWindow, profileSwitchWindow, effectiveProfileSwitchWindow, offlineEventWindow
+    )
+
     override fun queueSize(): Long = queueCounter.size()
 
+    override fun queueThroughput(): Long = queueCounter.ackedPerMinute(dateUtil.now())
+
     override fun doUpload() {
         if (sp.getBoolean(R.string.key_ns_upload, true)) {
+            // requests without ack are lost (reconnection etc.), send them again
+            val olderThan = dateUtil.now() - ACK_TIMEOUT
+            windows.filter { it.expireStale(olderThan) }.forEach { aapsLogger.debug(LTag.NSCLIENT, "Upload of ${it.name} timed out. Restarting from last confirmed") }
             processChangedBolusesCompat()
             processChangedCarbsCompat()
             processChangedBolusCalculatorResultsCompat()
@@ -84,6 +132,7 @@ class DataSyncSelectorImplementation @Inject constructor(
     }
 
     override fun resetToNextFullSync() {
+        windows.forEach { it.reset() }
         appRepository.getLastGlucoseValueIdWrapped().blockingGet().run {
             val currentLast = if (this is ValueWrapper.Existing) this.value else 0L
             sp.putLong(R.string.key_ns_glucose_value_new_data_id, currentLast)
@@ -123,13 +172,48 @@ class DataSyncSelectorImplementation @Inject constructor(
         else sp.remove(R.string.key_ns_device_status_last_synced_id)
     }
 
-    override fun confirmLastBolusIdIfGreater(lastSynced: Long) {
-        if (lastSynced > sp.getLong(R.string.key_ns_bolus_last_synced_id, 0)) {
-            aapsLogger.debug(LTag.NSCLIENT, "Setting Bolus data sync from $lastSynced")
-            sp.putLong(R.string.key_ns_bolus_last_synced_id, lastSynced)
+    // Ack received. Records may be acked out of order, confirm only up to the oldest one still in flight
+    private fun confirmAcked(window: UploadWindow, updateRecordId: Long) {
+        queueCounter.acked(dateUtil.now())
+        val lastSynced = window.acked(updateRecordId)
+        if (lastSynced == null) {
+            aapsLogger.debug(LTag.NSCLIENT, "Ignoring ${window.name} ack of $updateRecordId. Not in flight")
+            return
+        }
+        storeLastSyncedIfGreater(window, lastSynced)
+    }
+
+    private fun confirmSkipped(window: UploadWindow, updateRecordId: Long) =
+        storeLastSyncedIfGreater(window, window.skipped(updateRecordId))
+
+    private fun storeLastSyncedIfGreater(window: UploadWindow, lastSynced: Long) {
+        if (lastSynced > sp.getLong(window.lastSyncedKey, 0)) {
+            aapsLogger.debug(LTag.NSCLIENT, "Setting ${window.name} data sync from $lastSynced")
+            sp.putLong(window.lastSyncedKey, lastSynced)
         }
     }
 
+    // Read last synced id and reset it if database has been cleared
+    private fun lastSynced(window: UploadWindow, lastDbId: Long): Long {
+        val startId = sp.getLong(window.lastSyncedKey, 0)
+        if (startId > lastDbId) {
+            sp.putLong(window.lastSyncedKey, 0)
+            window.reset()
+            return 0
+        }
+        return startId
+    }
+
+    private fun UploadWindow.add(collection: String, data: JSONObject, originalObject: Any, recordId: Long, updateRecordId: Long, progress: String): Boolean =
+        (nsClientPlugin.nsClientService?.dbAdd(collection, data, originalObject, progress) == true)
+            .also { sent -> if (sent) dispatched(recordId, updateRecordId, dateUtil.now()) }
+
+    private fun UploadWindow.update(collection: String, nsId: String?, data: JSONObject, originalObject: Any, recordId: Long, updateRecordId: Long, progress: String): Boolean =
+        (nsClientPlugin.nsClientService?.dbUpdate(collection, nsId, data, originalObject, progress) == true)
+            .also { sent -> if (sent) dispatched(recordId, updateRecordId, dateUtil.now()) }
+
+    override fun confirmLastBolusIdIfGreater(lastSynced: Long) = confirmAcked(bolusWindow, lastSynced)
+
     // Prepared for v3 (returns all modified after)
     override fun changedBoluses(): List<Bolus> {
         val startId = sp.getLong(R.string.key_ns_bolus_last_synced_id, 0)
@@ -141,55 +225,47 @@ class DataSyncSelectorImplementation @Inject constructor(
             }
     }
 
-    //private var lastBolusId = -1L
-    //private var lastBolusTime = -1L
-    override fun processChangedBolusesCompat(): Boolean {
+    override fun processChangedBolusesCompat(): Boolean = synchronized(bolusWindow) {
         val lastDbIdWrapped = appRepository.getLastBolusIdWrapped().blockingGet()
         val lastDbId = if (lastDbIdWrapped is ValueWrapper.Existing) lastDbIdWrapped.value else 0L
-        var startId = sp.getLong(R.string.key_ns_bolus_last_synced_id, 0)
-        if (startId > lastDbId) {
-            sp.putLong(R.string.key_ns_bolus_last_synced_id, 0)
-            startId = 0
-        }
-        //if (startId == lastBolusId && dateUtil.now() - lastBolusTime < 5000) return false
-        //lastBolusId = startId
-        //lastBolusTime = dateUtil.now()
+        val startId = lastSynced(bolusWindow, lastDbId)
         queueCounter.bolusesRemaining = lastDbId - startId
-        appRepository.getNextSyncElementBolus(startId).blockingGet()?.let { bolus ->
+        var sent = 0
+        var nextId = bolusWindow.continueFrom(startId)
+        while (bolusWindow.hasRoom()) {
+            val bolus = appRepository.getNextSyncElementBolus(nextId).blockingGet() ?: break
+            // previous version is not acked yet, wait for nsId
+            if (bolusWindow.isInFlight(bolus.first.id)) break
             aapsLogger.info(LTag.DATABASE, "Loading Bolus data Start: $startId ID: ${bolus.first.id} HistoryID: ${bolus.second.id} ")
             when {
                 // only NsId changed, no need to upload
                 bolus.first.onlyNsIdAdded(bolus.second)       -> {
-                    confirmLastBolusIdIfGreater(bolus.second.id)
-                    //lastBolusId = -1
-                    processChangedBolusesCompat()
+                    confirmSkipped(bolusWindow, bolus.second.id)
                     aapsLogger.info(LTag.DATABASE, "Ignoring Bolus. Only NS id changed ID: ${bolus.first.id} HistoryID: ${bolus.second.id} ")
-                    return false
                 }
                 // without nsId = create new
                 bolus.first.interfaceIDs.nightscoutId == null ->
-                    nsClientPlugin.nsClientService?.dbAdd("treatments", bolus.first.toJson(true, dateUtil), DataSyncSelector.PairBolus(bolus.first, bolus.second.id), "$startId/$lastDbId")
+                    if (bolusWindow.add("treatments", bolus.first.toJson(true, dateUtil), DataSyncSelector.PairBolus(bolus.first, bolus.second.id), bolus.first.id, bolus.second.id, "$startId/$lastDbId")) sent++
+                    else break
                 // with nsId = update
-                bolus.first.interfaceIDs.nightscoutId != null ->
-                    nsClientPlugin.nsClientService?.dbUpdate(
-                        "treatments",
-                        bolus.first.interfaceIDs.nightscoutId,
-                        bolus.first.toJson(false, dateUtil),
-                        DataSyncSelector.PairBolus(bolus.first, bolus.second.id),
-                        "$startId/$lastDbId"
-                    )
+                else                                          ->
+                    if (bolusWindow.update(
+                            "treatments",
+                            bolus.first.interfaceIDs.nightscoutId,
+                            bolus.first.toJson(false, dateUtil),
+                            DataSyncSelector.PairBolus(bolus.first, bolus.second.id),
+                            bolus.first.id, bolus.second.id,
+                            "$startId/$lastDbId"
+                        )
+                    ) sent++
+                    else break
             }
-            return true
+            nextId = bolus.second.id
         }
-        return false
+        sent > 0
     }
 
-    override fun confirmLastCarbsIdIfGreater(lastSynced: Long) {
-        if (lastSynced > sp.getLong(R.string.key_ns_carbs_last_synced_id, 0)) {
-            aapsLogger.debug(LTag.NSCLIENT, "Setting Carbs data sync from $lastSynced")
-            sp.putLong(R.string.key_ns_carbs_last_synced_id, lastSynced)
-        }
-    }
+    override fun confirmLastCarbsIdIfGreater(lastSynced: Long) = confirmAcked(carbsWindow, lastSynced)
 
     // Prepared for v3 (returns all modified after)
     override fun changedCarbs(): List<Carbs> {
@@ -199,55 +275,47 @@ class DataSyncSelectorImplementation @Inject constructor(
         }
     }
 
-    //private var lastCarbsId = -1L
-    //private var lastCarbsTime = -1L
-    override fun processChangedCarbsCompat(): Boolean {
+    override fun processChangedCarbsCompat(): Boolean = synchronized(carbsWindow) {
         val lastDbIdWrapped = appRepository.getLastCarbsIdWrapped().blockingGet()
         val lastDbId = if (lastDbIdWrapped is ValueWrapper.Existing) lastDbIdWrapped.value else 0L
-        var startId = sp.getLong(R.string.key_ns_carbs_last_synced_id, 0)
-        if (startId > lastDbId) {
-            sp.putLong(R.string.key_ns_carbs_last_synced_id, 0)
-            startId = 0
-        }
-        //if (startId == lastCarbsId && dateUtil.now() - lastCarbsTime < 5000) return false
-        //lastCarbsId = startId
-        //lastCarbsTime = dateUtil.now()
+        val startId = lastSynced(carbsWindow, lastDbId)
         queueCounter.carbsRemaining = lastDbId - startId
-        appRepository.getNextSyncElementCarbs(startId).blockingGet()?.let { carb ->
+        var sent = 0
+        var nextId = carbsWindow.continueFrom(startId)
+        while (carbsWindow.hasRoom()) {
+            val carb = appRepository.getNextSyncElementCarbs(nextId).blockingGet() ?: break
+            // previous version is not acked yet, wait for nsId
+            if (carbsWindow.isInFlight(carb.first.id)) break
             aapsLogger.info(LTag.DATABASE, "Loading Carbs data Start: $startId ID: ${carb.first.id} HistoryID: ${carb.second.id} ")
             when {
                 // only NsId changed, no need to upload
                 carb.first.onlyNsIdAdded(carb.second)        -> {
-                    confirmLastCarbsIdIfGreater(carb.second.id)
-                    //lastCarbsId = -1
-                    processChangedCarbsCompat()
+                    confirmSkipped(carbsWindow, carb.second.id)
                     aapsLogger.info(LTag.DATABASE, "Ignoring Carbs. Only NS id changed ID: ${carb.first.id} HistoryID: ${carb.second.id} ")
-                    return false
                 }
                 // without nsId = create new
                 carb.first.interfaceIDs.nightscoutId == null ->
-                    nsClientPlugin.nsClientService?.dbAdd("treatments", carb.first.toJson(true, dateUtil), DataSyncSelector.PairCarbs(carb.first, carb.second.id), "$startId/$lastDbId")
+                    if (carbsWindow.add("treatments", carb.first.toJson(true, dateUtil), DataSyncSelector.PairCarbs(carb.first, carb.second.id), carb.first.id, carb.second.id, "$startId/$lastDbId")) sent++
+                    else break
                 // with nsId = update
-                carb.first.interfaceIDs.nightscoutId != null ->
-                    nsClientPlugin.nsClientService?.dbUpdate(
-                        "treatments",
-                        carb.first.interfaceIDs.nightscoutId,
-                        carb.first.toJson(false, dateUtil),
-                        DataSyncSelector.PairCarbs(carb.first, carb.second.id),
-                        "$startId/$lastDbId"
-                    )
+                else                                         ->
+                    if (carbsWindow.update(
+                            "treatments",
+                            carb.first.interfaceIDs.nightscoutId,
+                            carb.first.toJson(false, dateUtil),
+                            DataSyncSelector.PairCarbs(carb.first, carb.second.id),
+                            carb.first.id, carb.second.id,
+                            "$startId/$lastDbId"
+                        )
+                    ) sent++
+                    else break
             }
-            return true
+            nextId = carb.second.id
         }
-        return false
+        sent > 0
     }
 
-    override fun confirmLastBolusCalculatorResultsIdIfGreater(lastSynced: Long) {
-        if (lastSynced > sp.getLong(R.string.key_ns_bolus_calculator_result_last_synced_id, 0)) {
-            aapsLogger.debug(LTag.NSCLIENT, "Setting BolusCalculatorResult data sync from $lastSynced")
-            sp.putLong(R.string.key_ns_bolus_calculator_result_last_synced_id, lastSynced)
-        }
-    }
+    override fun confirmLastBolusCalculatorResultsIdIfGreater(lastSynced: Long) = confirmAcked(bolusCalculatorResultWindow, lastSynced)
 
     // Prepared for v3 (returns all modified after)
     override fun changedBolusCalculatorResults(): List<BolusCalculatorResult> {
@@ -257,57 +325,51 @@ class DataSyncSelectorImplementation @Inject constructor(
         }
     }
 
-    //private var lastBcrId = -1L
-    //private var lastBcrTime = -1L
-    override fun processChangedBolusCalculatorResultsCompat(): Boolean {
+    override fun processChangedBolusCalculatorResultsCompat(): Boolean = synchronized(bolusCalculatorResultWindow) {
         val lastDbIdWrapped = appRepository.getLastBolusCalculatorResultIdWrapped().blockingGet()
         val lastDbId = if (lastDbIdWrapped is ValueWrapper.Existing) lastDbIdWrapped.value else 0L
-        var startId = sp.getLong(R.string.key_ns_bolus_calculator_result_last_synced_id, 0)
-        if (startId > lastDbId) {
-            sp.putLong(R.string.key_ns_bolus_calculator_result_last_synced_id, 0)
-            startId = 0
-        }
-        //if (startId == lastBcrId && dateUtil.now() - lastBcrTime < 5000) return false
-        //lastBcrId = startId
-        //lastBcrTime = dateUtil.now()
+        val startId = lastSynced(bolusCalculatorResultWindow, lastDbId)
         queueCounter.bcrRemaining = lastDbId - startId
-        appRepository.getNextSyncElementBolusCalculatorResult(startId).blockingGet()?.let { bolusCalculatorResult ->
+        var sent = 0
+        var nextId = bolusCalculatorResultWindow.continueFrom(startId)
+        while (bolusCalculatorResultWindow.hasRoom()) {
+            val bolusCalculatorResult = appRepository.getNextSyncElementBolusCalculatorResult(nextId).blockingGet() ?: break
+            // previous version is not acked yet, wait for nsId
+            if (bolusCalculatorResultWindow.isInFlight(bolusCalculatorResult.first.id)) break
             aapsLogger.info(LTag.DATABASE, "Loading BolusCalculatorResult data Start: $startId ID: ${bolusCalculatorResult.first.id} HistoryID: ${bolusCalculatorResult.second.id} ")
             when {
                 // only NsId changed, no need to upload
                 bolusCalculatorResult.first.onlyNsIdAdded(bolusCalculatorResult.second) -> {
-                    confirmLastBolusCalculatorResultsIdIfGreater(bolusCalculatorResult.second.id)
-                    //lastBcrId = -1
-                    processChangedBolusCalculatorResultsCompat()
+                    confirmSkipped(bolusCalculatorResultWindow, bolusCalculatorResult.second.id)
                     aapsLogger.info(LTag.DATABASE, "Ignoring BolusCalculatorResult. Only NS id changed ID: ${bolusCalculatorResult.first.id} HistoryID: ${bolusCalculatorResult.second.id} ")
-                    return false
                 }
                 // without nsId = create new
                 bolusCalculatorResult.first.interfaceIDs.nightscoutId == null           ->
-                    nsClientPlugin.nsClientService?.dbAdd(
-                        "treatments",
-                        bolusCalculatorResult.first.toJson(true, dateUtil),
-                        DataSyncSelector.PairBolusCalculatorResult(bolusCalculatorResult.first, bolusCalculatorResult.second.id),
-                        "$startId/$lastDbId"
-                    )
+                    if (bolusCalculatorResultWindow.add(
+                            "treatments",
+                            bolusCalculatorResult.first.toJson(true, dateUtil),
+                            DataSyncSelector.PairBolusCalculatorResult(bolusCalculatorResult.first, bolusCalculatorResult.second.id),
+                            bolusCalculatorResult.first.id, bolusCalculatorResult.second.id,
+                            "$startId/$lastDbId"
+                        )
+                    ) sent++
+                    else break
                 // with nsId = update
-                bolusCalculatorResult.first.interfaceIDs.nightscoutId != null           ->
-                    nsClientPlugin.nsClientService?.dbUpdate(
-                        "treatments", bolusCalculatorResult.first.interfaceIDs.nightscoutId, bolusCalculatorResult.first.toJson(false, dateUtil),
-                        DataSyncSelector.PairBolusCalculatorResult(bolusCalculatorResult.first, bolusCalculatorResult.second.id), "$startId/$lastDbId"
-                    )
+                else                                                                    ->
+                    if (bolusCalculatorResultWindow.update(
+                            "treatments", bolusCalculatorResult.first.interfaceIDs.nightscoutId, bolusCalculatorResult.first.toJson(false, dateUtil),
+                            DataSyncSelector.PairBolusCalculatorResult(bolusCalculatorResult.first, bolusCalculatorResult.second.id),
+                            bolusCalculatorResult.first.id, bolusCalculatorResult.second.id, "$startId/$lastDbId"
+                        )
+                    ) sent++
+                    else break
             }
-            return true
+            nextId = bolusCalculatorResult.second.id
         }
-        return false
+        sent > 0
     }
 
-    override fun confirmLastTempTargetsIdIfGreater(lastSynced: Long) {
-        if (lastSynced > sp.getLong(R.string.key_ns_temporary_target_last_synced_id, 0)) {
-            aapsLogger.debug(LTag.NSCLIENT, "Setting TemporaryTarget data sync from $lastSynced")
-            sp.putLong(R.string.key_ns_temporary_target_last_synced_id, lastSynced)
-        }
-    }
+    override fun confirmLastTempTargetsIdIfGreater(lastSynced: Long) = confirmAcked(temporaryTargetWindow, lastSynced)
 
     // Prepared for v3 (returns all modified after)
     override fun changedTempTargets(): List<TemporaryTarget> {
@@ -317,68 +379,59 @@ class DataSyncSelectorImplementation @Inject constructor(
         }
     }
 
-    //private var lastTtId = -1L
-    //private var lastTtTime = -1L
-    override fun processChangedTempTargetsCompat(): Boolean {
+    override fun processChangedTempTargetsCompat(): Boolean = synchronized(temporaryTargetWindow) {
         val lastDbIdWrapped = appRepository.getLastTempTargetIdWrapped().blockingGet()
         val lastDbId = if (lastDbIdWrapped is ValueWrapper.Existing) lastDbIdWrapped.value else 0L
-        var startId = sp.getLong(R.string.key_ns_temporary_target_last_synced_id, 0)
-        if (startId > lastDbId) {
-            sp.putLong(R.string.key_ns_temporary_target_last_synced_id, 0)
-            startId = 0
-        }
-        //if (startId == lastTtId && dateUtil.now() - lastTtTime < 5000) return false
-        //lastTtId = startId
-        //lastTtTime = dateUtil.now()
+        val startId = lastSynced(temporaryTargetWindow, lastDbId)
         queueCounter.ttsRemaining = lastDbId - startId
-        appRepository.getNextSyncElementTemporaryTarget(startId).blockingGet()?.let { tt ->
+        var sent = 0
+        var nextId = temporaryTargetWindow.continueFrom(startId)
+        while (temporaryTargetWindow.hasRoom()) {
+            val tt = appRepository.getNextSyncElementTemporaryTarget(nextId).blockingGet() ?: break
+            // previous version is not acked yet, wait for nsId
+            if (temporaryTargetWindow.isInFlight(tt.first.id)) break
             aapsLogger.info(LTag.DATABASE, "Loading TemporaryTarget data Start: $startId ID: ${tt.first.id} HistoryID: ${tt.second.id} ")
             when {
                 // record is not valid record and we are within first sync, no need to upload
                 tt.first.id != tt.second.id && tt.second.id <= sp.getLong(R.string.key_ns_temporary_target_new_data_id, 0) -> {
-                    confirmLastTempTargetsIdIfGreater(tt.second.id)
-                    //lastTbrId = -1
-                    processChangedTempTargetsCompat()
+                    confirmSkipped(temporaryTargetWindow, tt.second.id)
                     aapsLogger.info(LTag.DATABASE, "Ignoring TemporaryTarget. Change within first sync ID: ${tt.first.id} HistoryID: ${tt.second.id} ")
-                    return false
                 }
                 // only NsId changed, no need to upload
                 tt.first.onlyNsIdAdded(tt.second)          -> {
-                    confirmLastTempTargetsIdIfGreater(tt.second.id)
-                    //lastTtId = -1
-                    processChangedTempTargetsCompat()
+                    confirmSkipped(temporaryTargetWindow, tt.second.id)
                     aapsLogger.info(LTag.DATABASE, "Ignoring TemporaryTarget. Only NS id changed ID: ${tt.first.id} HistoryID: ${tt.second.id} ")
-                    return false
                 }
                 // without nsId = create new
                 tt.first.interfaceIDs.nightscoutId == null ->
-                    nsClientPlugin.nsClientService?.dbAdd(
-                        "treatments",
-                        tt.first.toJson(true, profileFunction.getUnits(), dateUtil),
-                        DataSyncSelector.PairTemporaryTarget(tt.first, tt.second.id),
-                        "$startId/$lastDbId"
-                    )
+                    if (temporaryTargetWindow.add(
+                            "treatments",
+                            tt.first.toJson(true, profileFunction.getUnits(), dateUtil),
+                            DataSyncSelector.PairTemporaryTarget(tt.first, tt.second.id),
+                            tt.first.id, tt.second.id,
+                            "$startId/$lastDbId"
+                        )
+                    ) sent++
+                    else break
                 // existing with nsId = update
-                tt.first.interfaceIDs.nightscoutId != null ->
-                    nsClientPlugin.nsClientService?.dbUpdate(
-                        "treatments",
-                        tt.first.interfaceIDs.nightscoutId,
-                        tt.first.toJson(false, profileFunction.getUnits(), dateUtil),
-                        DataSyncSelector.PairTemporaryTarget(tt.first, tt.second.id),
-                        "$startId/$lastDbId"
-                    )
+                else                                       ->
+                    if (temporaryTargetWindow.update(
+                            "treatments",
+                            tt.first.interfaceIDs.nightscoutId,
+                            tt.first.toJson(false, profileFunction.getUnits(), dateUtil),
+                            DataSyncSelector.PairTemporaryTarget(tt.first, tt.second.id),
+                            tt.first.id, tt.second.id,
+                            "$startId/$lastDbId"
+                        )
+                    ) sent++
+                    else break
             }
-            return true
+            nextId = tt.second.id
         }
-        return false
+        sent > 0
     }
 
-    override fun confirmLastFoodIdIfGreater(lastSynced: Long) {
-        if (lastSynced > sp.getLong(R.string.key_ns_food_last_synced_id, 0)) {
-            aapsLogger.debug(LTag.NSCLIENT, "Setting Food data sync from $lastSynced")
-            sp.putLong(R.string.key_ns_food_last_synced_id, lastSynced)
-        }
-    }
+    override fun confirmLastFoodIdIfGreater(lastSynced: Long) = confirmAcked(foodWindow, lastSynced)
 
     // Prepared for v3 (returns all modified after)
     override fun changedFoods(): List<Food> {
@@ -388,55 +441,47 @@ class DataSyncSelectorImplementation @Inject constructor(
         }
     }
 
-    //private var lastFoodId = -1L
-    //private var lastFoodTime = -1L
-    override fun processChangedFoodsCompat(): Boolean {
+    override fun processChangedFoodsCompat(): Boolean = synchronized(foodWindow) {
         val lastDbIdWrapped = appRepository.getLastFoodIdWrapped().blockingGet()
         val lastDbId = if (lastDbIdWrapped is ValueWrapper.Existing) lastDbIdWrapped.value else 0L
-        var startId = sp.getLong(R.string.key_ns_food_last_synced_id, 0)
-        if (startId > lastDbId) {
-            sp.putLong(R.string.key_ns_food_last_synced_id, 0)
-            startId = 0
-        }
-        //if (startId == lastFoodId && dateUtil.now() - lastFoodTime < 5000) return false
-        //lastFoodId = startId
-        //lastFoodTime = dateUtil.now()
+        val startId = lastSynced(foodWindow, lastDbId)
         queueCounter.foodsRemaining = lastDbId - startId
-        appRepository.getNextSyncElementFood(startId).blockingGet()?.let { food ->
+        var sent = 0
+        var nextId = foodWindow.continueFrom(startId)
+        while (foodWindow.hasRoom()) {
+            val food = appRepository.getNextSyncElementFood(nextId).blockingGet() ?: break
+            // previous version is not acked yet, wait for nsId
+            if (foodWindow.isInFlight(food.first.id)) break
             aapsLogger.info(LTag.DATABASE, "Loading Food data Start: $startId ID: ${food.first.id} HistoryID: ${food.second} ")
             when {
                 // only NsId changed, no need to upload
                 food.first.onlyNsIdAdded(food.second)        -> {
-                    confirmLastFoodIdIfGreater(food.second.id)
-                    //lastFoodId = -1
-                    processChangedFoodsCompat()
+                    confirmSkipped(foodWindow, food.second.id)
                     aapsLogger.info(LTag.DATABASE, "Ignoring Food. Only NS id changed ID: ${food.first.id} HistoryID: ${food.second.id} ")
-                    return false
                 }
                 // without nsId = create new
                 food.first.interfaceIDs.nightscoutId == null ->
-                    nsClientPlugin.nsClientService?.dbAdd("food", food.first.toJson(true), DataSyncSelector.PairFood(food.first, food.second.id), "$startId/$lastDbId")
+                    if (foodWindow.add("food", food.first.toJson(true), DataSyncSelector.PairFood(food.first, food.second.id), food.first.id, food.second.id, "$startId/$lastDbId")) sent++
+                    else break
                 // with nsId = update
-                food.first.interfaceIDs.nightscoutId != null ->
-                    nsClientPlugin.nsClientService?.dbUpdate(
-                        "food",
-                        food.first.interfaceIDs.nightscoutId,
-                        food.first.toJson(false),
-                        DataSyncSelector.PairFood(food.first, food.second.id),
-                        "$startId/$lastDbId"
-                    )
+                else                                         ->
+                    if (foodWindow.update(
+                            "food",
+                            food.first.interfaceIDs.nightscoutId,
+                            food.first.toJson(false),
+                            DataSyncSelector.PairFood(food.first, food.second.id),
+                            food.first.id, food.second.id,
+                            "$startId/$lastDbId"
+                        )
+                    ) sent++
+                    else break
             }
-            return true
+            nextId = food.second.id
         }
-        return false
+        sent > 0
     }
 
-    override fun confirmLastGlucoseValueIdIfGreater(lastSynced: Long) {
-        if (lastSynced > sp.getLong(R.string.key_ns_glucose_value_last_synced_id, 0)) {
-            aapsLogger.debug(LTag.NSCLIENT, "Setting GlucoseValue data sync from $lastSynced")
-            sp.putLong(R.string.key_ns_glucose_value_last_synced_id, lastSynced)
-        }
-    }
+    override fun confirmLastGlucoseValueIdIfGreater(lastSynced: Long) = confirmAcked(glucoseValueWindow, lastSynced)
 
     // Prepared for v3 (returns all modified after)
     override fun changedGlucoseValues(): List<GlucoseValue> {
@@ -446,69 +491,53 @@ class DataSyncSelectorImplementation @Inject constructor(
         }
     }
 
-    //private var lastGvId = -1L
-    //private var lastGvTime = -1L
-    override tailrec fun processChangedGlucoseValuesCompat() {
+    override fun processChangedGlucoseValuesCompat() = synchronized(glucoseValueWindow) {
         val lastDbIdWrapped = appRepository.getLastGlucoseValueIdWrapped().blockingGet()
         val lastDbId = if (lastDbIdWrapped is ValueWrapper.Existing) lastDbIdWrapped.value else 0L
-        var startId = sp.getLong(R.string.key_ns_glucose_value_last_synced_id, 0)
-        if (startId > lastDbId) {
-            sp.putLong(R.string.key_ns_glucose_value_last_synced_id, 0)
-            startId = 0
-        }
-        //if (startId == lastGvId && dateUtil.now() - lastGvTime < 5000) return false
-        //lastGvId = startId
-        //lastGvTime = dateUtil.now()
+        val startId = lastSynced(glucoseValueWindow, lastDbId)
         queueCounter.gvsRemaining = lastDbId - startId
-        var tailCall = false
-        appRepository.getNextSyncElementGlucoseValue(startId).blockingGet()?.let { gv ->
+        var nextId = glucoseValueWindow.continueFrom(startId)
+        while (glucoseValueWindow.hasRoom()) {
+            val gv = appRepository.getNextSyncElementGlucoseValue(nextId).blockingGet() ?: break
+            // previous version is not acked yet, wait for nsId
+            if (glucoseValueWindow.isInFlight(gv.first.id)) break
             aapsLogger.info(LTag.DATABASE, "Loading GlucoseValue data ID: ${gv.first.id} HistoryID: ${gv.second.id} ")
             if (activePlugin.activeBgSource.shouldUploadToNs(gv.first)) {
                 when {
                     // record is not valid record and we are within first sync, no need to upload
                     gv.first.id != gv.second.id && gv.second.id <= sp.getLong(R.string.key_ns_glucose_value_new_data_id, 0) -> {
-                        confirmLastGlucoseValueIdIfGreater(gv.second.id)
-                        //lastGvId = -1
+                        confirmSkipped(glucoseValueWindow, gv.second.id)
                         aapsLogger.info(LTag.DATABASE, "Ignoring GlucoseValue. Change within first sync ID: ${gv.first.id} HistoryID: ${gv.second.id} ")
-                        tailCall = true
                     }
                     // only NsId changed, no need to upload
                     gv.first.onlyNsIdAdded(gv.second)          -> {
-                        confirmLastGlucoseValueIdIfGreater(gv.second.id)
-                        //lastGvId = -1
+                        confirmSkipped(glucoseValueWindow, gv.second.id)
                         aapsLogger.info(LTag.DATABASE, "Ignoring GlucoseValue. Only NS id changed ID: ${gv.first.id} HistoryID: ${gv.second.id} ")
-                        tailCall = true
                     }
                     // without nsId = create new
                     gv.first.interfaceIDs.nightscoutId == null ->
-                        nsClientPlugin.nsClientService?.dbAdd("entries", gv.first.toJson(true, dateUtil), DataSyncSelector.PairGlucoseValue(gv.first, gv.second.id), "$startId/$lastDbId")
+                        if (!glucoseValueWindow.add("entries", gv.first.toJson(true, dateUtil), DataSyncSelector.PairGlucoseValue(gv.first, gv.second.id), gv.first.id, gv.second.id, "$startId/$lastDbId"))
+                            break
                     // with nsId = update
-                    else ->  //  gv.first.interfaceIDs.nightscoutId != null
-                        nsClientPlugin.nsClientService?.dbUpdate(
-                            "entries",
-                            gv.first.interfaceIDs.nightscoutId,
-                            gv.first.toJson(false, dateUtil),
-                            DataSyncSelector.PairGlucoseValue(gv.first, gv.second.id),
-                            "$startId/$lastDbId"
-                        )
+                    else                                       ->
+                        if (!glucoseValueWindow.update(
+                                "entries",
+                                gv.first.interfaceIDs.nightscoutId,
+                                gv.first.toJson(false, dateUtil),
+                                DataSyncSelector.PairGlucoseValue(gv.first, gv.second.id),
+                                gv.first.id, gv.second.id,
+                                "$startId/$lastDbId"
+                            )
+                        ) break
                 }
             } else {
-                confirmLastGlucoseValueIdIfGreater(gv.second.id)
-                //lastGvId = -1
-                tailCall = true
+                confirmSkipped(glucoseValueWindow, gv.second.id)
             }
-        }
-        if (tailCall) {
-            processChangedGlucoseValuesCompat()
+            nextId = gv.second.id
         }
     }
 
-    override fun confirmLastTherapyEventIdIfGreater(lastSynced: Long) {
-        if (lastSynced > sp.getLong(R.string.key_ns_therapy_event_last_synced_id, 0)) {
-            aapsLogger.debug(LTag.NSCLIENT, "Setting TherapyEvents data sync from $lastSynced")
-            sp.putLong(R.string.key_ns_therapy_event_last_synced_id, lastSynced)
-        }
-    }
+    override fun confirmLastTherapyEventIdIfGreater(lastSynced: Long) = confirmAcked(therapyEventWindow, lastSynced)
 
     // Prepared for v3 (returns all modified after)
     override fun changedTherapyEvents(): List<TherapyEvent> {
@@ -518,55 +547,47 @@ class DataSyncSelectorImplementation @Inject constructor(
         }
     }
 
-    //private var lastTeId = -1L
-    //private var lastTeTime = -1L
-    override fun processChangedTherapyEventsCompat(): Boolean {
+    override fun processChangedTherapyEventsCompat(): Boolean = synchronized(therapyEventWindow) {
         val lastDbIdWrapped = appRepository.getLastTherapyEventIdWrapped().blockingGet()
         val lastDbId = if (lastDbIdWrapped is ValueWrapper.Existing) lastDbIdWrapped.value else 0L
-        var startId = sp.getLong(R.string.key_ns_therapy_event_last_synced_id, 0)
-        if (startId > lastDbId) {
-            sp.putLong(R.string.key_ns_therapy_event_last_synced_id, 0)
-            startId = 0
-        }
-        //if (startId == lastTeId && dateUtil.now() - lastTeTime < 5000) return false
-        //lastTeId = startId
-        //lastTeTime = dateUtil.now()
+        val startId = lastSynced(therapyEventWindow, lastDbId)
         queueCounter.tesRemaining = lastDbId - startId
-        appRepository.getNextSyncElementTherapyEvent(startId).blockingGet()?.let { te ->
+        var sent = 0
+        var nextId = therapyEventWindow.continueFrom(startId)
+        while (therapyEventWindow.hasRoom()) {
+            val te = appRepository.getNextSyncElementTherapyEvent(nextId).blockingGet() ?: break
+            // previous version is not acked yet, wait for nsId
+            if (therapyEventWindow.isInFlight(te.first.id)) break
             aapsLogger.info(LTag.DATABASE, "Loading TherapyEvents data Start: $startId ID: ${te.first.id} HistoryID: ${te.second} ")
             when {
                 // only NsId changed, no need to upload
                 te.first.onlyNsIdAdded(te.second)          -> {
-                    confirmLastTherapyEventIdIfGreater(te.second.id)
-                    //lastTeId = -1
-                    processChangedTherapyEventsCompat()
+                    confirmSkipped(therapyEventWindow, te.second.id)
                     aapsLogger.info(LTag.DATABASE, "Ignoring TherapyEvents. Only NS id changed ID: ${te.first.id} HistoryID: ${te.second.id} ")
-                    return false
                 }
                 // without nsId = create new
                 te.first.interfaceIDs.nightscoutId == null ->
-                    nsClientPlugin.nsClientService?.dbAdd("treatments", te.first.toJson(true, dateUtil), DataSyncSelector.PairTherapyEvent(te.first, te.second.id), "$startId/$lastDbId")
+                    if (therapyEventWindow.add("treatments", te.first.toJson(true, dateUtil), DataSyncSelector.PairTherapyEvent(te.first, te.second.id), te.first.id, te.second.id, "$startId/$lastDbId")) sent++
+                    else break
                 // nsId = update
-                te.first.interfaceIDs.nightscoutId != null ->
-                    nsClientPlugin.nsClientService?.dbUpdate(
-                        "treatments",
-                        te.first.interfaceIDs.nightscoutId,
-                        te.first.toJson(false, dateUtil),
-                        DataSyncSelector.PairTherapyEvent(te.first, te.second.id),
-                        "$startId/$lastDbId"
-                    )
+                else                                       ->
+                    if (therapyEventWindow.update(
+                            "treatments",
+                            te.first.interfaceIDs.nightscoutId,
+                            te.first.toJson(false, dateUtil),
+                            DataSyncSelector.PairTherapyEvent(te.first, te.second.id),
+                            te.first.id, te.second.id,
+                            "$startId/$lastDbId"
+                        )
+                    ) sent++
+                    else break
             }
-            return true
+            nextId = te.second.id
         }
-        return false
+        sent > 0
     }
 
-    override fun confirmLastDeviceStatusIdIfGreater(lastSynced: Long) {
-        if (lastSynced > sp.getLong(R.string.key_ns_device_status_last_synced_id, 0)) {
-            aapsLogger.debug(LTag.NSCLIENT, "Setting DeviceStatus data sync from $lastSynced")
-            sp.putLong(R.string.key_ns_device_status_last_synced_id, lastSynced)
-        }
-    }
+    override fun confirmLastDeviceStatusIdIfGreater(lastSynced: Long) = confirmAcked(deviceStatusWindow, lastSynced)
 
     override fun changedDeviceStatuses(): List<DeviceStatus> {
         val startId = sp.getLong(R.string.key_ns_device_status_last_synced_id, 0)
@@ -575,40 +596,30 @@ class DataSyncSelectorImplementation @Inject constructor(
         }
     }
 
-    //private var lastDsId = -1L
-    //private var lastDsTime = -1L
-    override fun processChangedDeviceStatusesCompat(): Boolean {
+    override fun processChangedDeviceStatusesCompat(): Boolean = synchronized(deviceStatusWindow) {
         val lastDbIdWrapped = appRepository.getLastDeviceStatusIdWrapped().blockingGet()
         val lastDbId = if (lastDbIdWrapped is ValueWrapper.Existing) lastDbIdWrapped.value else 0L
-        var startId = sp.getLong(R.string.key_ns_device_status_last_synced_id, 0)
-        if (startId > lastDbId) {
-            sp.putLong(R.string.key_ns_device_status_last_synced_id, 0)
-            startId = 0
-        }
-        //if (startId == lastDsId && dateUtil.now() - lastDsTime < 5000) return false
-        //lastDsId = startId
-        //lastDsTime = dateUtil.now()
+        val startId = lastSynced(deviceStatusWindow, lastDbId)
         queueCounter.dssRemaining = lastDbId - startId
-        appRepository.getNextSyncElementDeviceStatus(startId).blockingGet()?.let { deviceStatus ->
+        var sent = 0
+        var nextId = deviceStatusWindow.continueFrom(startId)
+        while (deviceStatusWindow.hasRoom()) {
+            val deviceStatus = appRepository.getNextSyncElementDeviceStatus(nextId).blockingGet() ?: break
             aapsLogger.info(LTag.DATABASE, "Loading DeviceStatus data Start: $startId ID: ${deviceStatus.id}")
             when {
                 // without nsId = create new
                 deviceStatus.interfaceIDs.nightscoutId == null ->
-                    nsClientPlugin.nsClientService?.dbAdd("devicestatus", deviceStatus.toJson(dateUtil), deviceStatus, "$startId/$lastDbId")
+                    if (deviceStatusWindow.add("devicestatus", deviceStatus.toJson(dateUtil), deviceStatus, deviceStatus.id, deviceStatus.id, "$startId/$lastDbId")) sent++
+                    else break
                 // with nsId = ignore
-                deviceStatus.interfaceIDs.nightscoutId != null -> Any()
+                else                                           -> confirmSkipped(deviceStatusWindow, deviceStatus.id)
             }
-            return true
+            nextId = deviceStatus.id
         }
-        return false
+        sent > 0
     }
 
-    override fun confirmLastTemporaryBasalIdIfGreater(lastSynced: Long) {
-        if (lastSynced > sp.getLong(R.string.key_ns_temporary_basal_last_synced_id, 0)) {
-            aapsLogger.debug(LTag.NSCLIENT, "Setting TemporaryBasal data sync from $lastSynced")
-            sp.putLong(R.string.key_ns_temporary_basal_last_synced_id, lastSynced)
-        }
-    }
+    override fun confirmLastTemporaryBasalIdIfGreater(lastSynced: Long) = confirmAcked(temporaryBasalWindow, lastSynced)
 
     // Prepared for v3 (returns all modified after)
     override fun changedTemporaryBasals(): List<TemporaryBasal> {
@@ -618,75 +629,64 @@ class DataSyncSelectorImplementation @Inject constructor(
         }
     }
 
-    //private var lastTbrId = -1L
-    //private var lastTbrTime = -1L
-    override fun processChangedTemporaryBasalsCompat(): Boolean {
+    override fun processChangedTemporaryBasalsCompat(): Boolean = synchronized(temporaryBasalWindow) {
         val lastDbIdWrapped = appRepository.getLastTemporaryBasalIdWrapped().blockingGet()
         val lastDbId = if (lastDbIdWrapped is ValueWrapper.Existing) lastDbIdWrapped.value else 0L
-        var startId = sp.getLong(R.string.key_ns_temporary_basal_last_synced_id, 0)
-        if (startId > lastDbId) {
-            sp.putLong(R.string.key_ns_temporary_basal_last_synced_id, 0)
-            startId = 0
-        }
-        //if (startId == lastTbrId && dateUtil.now() - lastTbrTime < 5000) return false
-        //lastTbrId = startId
-        //lastTbrTime = dateUtil.now()
+        val startId = lastSynced(temporaryBasalWindow, lastDbId)
         queueCounter.tbrsRemaining = lastDbId - startId
-        appRepository.getNextSyncElementTemporaryBasal(startId).blockingGet()?.let { tb ->
+        var sent = 0
+        var nextId = temporaryBasalWindow.continueFrom(startId)
+        while (temporaryBasalWindow.hasRoom()) {
+            val tb = appRepository.getNextSyncElementTemporaryBasal(nextId).blockingGet() ?: break
+            // previous version is not acked yet, wait for nsId
+            if (temporaryBasalWindow.isInFlight(tb.first.id)) break
             aapsLogger.info(LTag.DATABASE, "Loading TemporaryBasal data Start: $startId ID: ${tb.first.id} HistoryID: ${tb.second} ")
             val profile = profileFunction.getProfile(tb.first.timestamp)
             if (profile != null) {
                 when {
                     // record is not valid record and we are within first sync, no need to upload
                     tb.first.id != tb.second.id && tb.second.id <= sp.getLong(R.string.key_ns_temporary_basal_new_data_id, 0) -> {
-                        confirmLastTemporaryBasalIdIfGreater(tb.second.id)
-                        //lastTbrId = -1
-                        processChangedTemporaryBasalsCompat()
+                        confirmSkipped(temporaryBasalWindow, tb.second.id)
                         aapsLogger.info(LTag.DATABASE, "Ignoring TemporaryBasal. Change within first sync ID: ${tb.first.id} HistoryID: ${tb.second.id} ")
-                        return false
                     }
                     // only NsId changed, no need to upload
                     tb.first.onlyNsIdAdded(tb.second)          -> {
-                        confirmLastTemporaryBasalIdIfGreater(tb.second.id)
-                        //lastTbrId = -1
-                        processChangedTemporaryBasalsCompat()
+                        confirmSkipped(temporaryBasalWindow, tb.second.id)
                         aapsLogger.info(LTag.DATABASE, "Ignoring TemporaryBasal. Only NS id changed ID: ${tb.first.id} HistoryID: ${tb.second.id} ")
-                        return false
                     }
                     // without nsId = create new
                     tb.first.interfaceIDs.nightscoutId == null ->
-                        nsClientPlugin.nsClientService?.dbAdd(
-                            "treatments",
-                            tb.first.toJson(true, profile, dateUtil),
-                            DataSyncSelector.PairTemporaryBasal(tb.first, tb.second.id),
-                            "$startId/$lastDbId"
-                        )
+                        if (temporaryBasalWindow.add(
+                                "treatments",
+                                tb.first.toJson(true, profile, dateUtil),
+                                DataSyncSelector.PairTemporaryBasal(tb.first, tb.second.id),
+                                tb.first.id, tb.second.id,
+                                "$startId/$lastDbId"
+                            )
+                        ) sent++
+                        else break
                     // with nsId = update
-                    tb.first.interfaceIDs.nightscoutId != null ->
-                        nsClientPlugin.nsClientService?.dbUpdate(
-                            "treatments",
-                            tb.first.interfaceIDs.nightscoutId,
-                            tb.first.toJson(false, profile, dateUtil),
-                            DataSyncSelector.PairTemporaryBasal(tb.first, tb.second.id),
-                            "$startId/$lastDbId"
-                        )
+                    else                                       ->
+                        if (temporaryBasalWindow.update(
+                                "treatments",
+                                tb.first.interfaceIDs.nightscoutId,
+                                tb.first.toJson(false, profile, dateUtil),
+                                DataSyncSelector.PairTemporaryBasal(tb.first, tb.second.id),
+                                tb.first.id, tb.second.id,
+                                "$startId/$lastDbId"
+                            )
+                        ) sent++
+                        else break
                 }
-                return true
             } else {
-                confirmLastTemporaryBasalIdIfGreater(tb.second.id)
-                //lastTbrId = -1
-                processChangedTemporaryBasalsCompat()
+                confirmSkipped(temporaryBasalWindow, tb.second.id)
             }
+            nextId = tb.second.id
         }
-        return false
+        sent > 0
     }
 
-    override fun confirmLastExtendedBolusIdIfGreater(lastSynced: Long) {
-        if (lastSynced > sp.getLong(R.string.key_ns_extended_bolus_last_synced_id, 0)) {
-            aapsLogger.debug(LTag.NSCLIENT, "Setting ExtendedBolus data sync from $lastSynced")
-            sp.putLong(R.string.key_ns_extended_bolus_last_synced_id, lastSynced)
-        }
-    }
+    override fun confirmLastExtendedBolusIdIfGreater(lastSynced: Long) = confirmAcked(extendedBolusWindow, lastSynced)
 
     // Prepared for v3 (returns all modified after)
     override fun changedExtendedBoluses(): List<ExtendedBolus> {
@@ -696,75 +696,64 @@ class DataSyncSelectorImplementation @Inject constructor(
         }
     }
 
-    //private var lastEbId = -1L
-    //private var lastEbTime = -1L
-    override fun processChangedExtendedBolusesCompat(): Boolean {
+    override fun processChangedExtendedBolusesCompat(): Boolean = synchronized(extendedBolusWindow) {
         val lastDbIdWrapped = appRepository.getLastExtendedBolusIdWrapped().blockingGet()
         val lastDbId = if (lastDbIdWrapped is ValueWrapper.Existing) lastDbIdWrapped.value else 0L
-        var startId = sp.getLong(R.string.key_ns_extended_bolus_last_synced_id, 0)
-        if (startId > lastDbId) {
-            sp.putLong(R.string.key_ns_extended_bolus_last_synced_id, 0)
-            startId = 0
-        }
-        //if (startId == lastEbId && dateUtil.now() - lastEbTime < 5000) return false
-        //lastEbId = startId
-        //lastEbTime = dateUtil.now()
+        val startId = lastSynced(extendedBolusWindow, lastDbId)
         queueCounter.ebsRemaining = lastDbId - startId
-        appRepository.getNextSyncElementExtendedBolus(startId).blockingGet()?.let { eb ->
+        var sent = 0
+        var nextId = extendedBolusWindow.continueFrom(startId)
+        while (extendedBolusWindow.hasRoom()) {
+            val eb = appRepository.getNextSyncElementExtendedBolus(nextId).blockingGet() ?: break
+            // previous version is not acked yet, wait for nsId
+            if (extendedBolusWindow.isInFlight(eb.first.id)) break
             aapsLogger.info(LTag.DATABASE, "Loading ExtendedBolus data Start: $startId ID: ${eb.first.id} HistoryID: ${eb.second} ")
             val profile = profileFunction.getProfile(eb.first.timestamp)
             if (profile != null) {
                 when {
                     // record is not valid record and we are within first sync, no need to upload
                     eb.first.id != eb.second.id && eb.second.id <= sp.getLong(R.string.key_ns_extended_bolus_new_data_id, 0) -> {
-                        confirmLastExtendedBolusIdIfGreater(eb.second.id)
-                        //lastTbrId = -1
-                        processChangedExtendedBolusesCompat()
+                        confirmSkipped(extendedBolusWindow, eb.second.id)
                         aapsLogger.info(LTag.DATABASE, "Ignoring ExtendedBolus. Change within first sync ID: ${eb.first.id} HistoryID: ${eb.second.id} ")
-                        return false
                     }
                     // only NsId changed, no need to upload
                     eb.first.onlyNsIdAdded(eb.second)          -> {
-                        confirmLastExtendedBolusIdIfGreater(eb.second.id)
-                        //lastEbId = -1
-                        processChangedExtendedBolusesCompat()
+                        confirmSkipped(extendedBolusWindow, eb.second.id)
                         aapsLogger.info(LTag.DATABASE, "Ignoring ExtendedBolus. Only NS id changed ID: ${eb.first.id} HistoryID: ${eb.second.id} ")
-                        return false
                     }
                     // without nsId = create new
                     eb.first.interfaceIDs.nightscoutId == null ->
-                        nsClientPlugin.nsClientService?.dbAdd(
-                            "treatments",
-                            eb.first.toJson(true, profile, dateUtil),
-                            DataSyncSelector.PairExtendedBolus(eb.first, eb.second.id),
-                            "$startId/$lastDbId"
-                        )
+                        if (extendedBolusWindow.add(
+                                "treatments",
+                                eb.first.toJson(true, profile, dateUtil),
+                                DataSyncSelector.PairExtendedBolus(eb.first, eb.second.id),
+                                eb.first.id, eb.second.id,
+                                "$startId/$lastDbId"
+                            )
+                        ) sent++
+                        else break
                     // with nsId = update
-                    eb.first.interfaceIDs.nightscoutId != null ->
-                        nsClientPlugin.nsClientService?.dbUpdate(
-                            "treatments",
-                            eb.first.interfaceIDs.nightscoutId,
-                            eb.first.toJson(false, profile, dateUtil),
-                            DataSyncSelector.PairExtendedBolus(eb.first, eb.second.id),
-                            "$startId/$lastDbId"
-                        )
+                    else                                       ->
+                        if (extendedBolusWindow.update(
+                                "treatments",
+                                eb.first.interfaceIDs.nightscoutId,
+                                eb.first.toJson(false, profile, dateUtil),
+                                DataSyncSelector.PairExtendedBolus(eb.first, eb.second.id),
+                                eb.first.id, eb.second.id,
+                                "$startId/$lastDbId"
+                            )
+                        ) sent++
+                        else break
                 }
-                return true
             } else {
-                confirmLastExtendedBolusIdIfGreater(eb.second.id)
-                //lastEbId = -1
-                processChangedExtendedBolusesCompat()
+                confirmSkipped(extendedBolusWindow, eb.second.id)
             }
+            nextId = eb.second.id
         }
-        return false
+        sent > 0
     }
 
-    override fun confirmLastProfileSwitchIdIfGreater(lastSynced: Long) {
-        if (lastSynced > sp.getLong(R.string.key_ns_profile_switch_last_synced_id, 0)) {
-            aapsLogger.debug(LTag.NSCLIENT, "Setting ProfileSwitch data sync from $lastSynced")
-            sp.putLong(R.string.key_ns_profile_switch_last_synced_id, lastSynced)
-        }
-    }
+    override fun confirmLastProfileSwitchIdIfGreater(lastSynced: Long) = confirmAcked(profileSwitchWindow, lastSynced)
 
     override fun changedProfileSwitch(): List<ProfileSwitch> {
         val startId = sp.getLong(R.string.key_ns_profile_switch_last_synced_id, 0)
@@ -773,55 +762,47 @@ class DataSyncSelectorImplementation @Inject constructor(
         }
     }
 
-    //private var lastPsId = -1L
-    //private var lastPsTime = -1L
-    override fun processChangedProfileSwitchesCompat(): Boolean {
+    override fun processChangedProfileSwitchesCompat(): Boolean = synchronized(profileSwitchWindow) {
         val lastDbIdWrapped = appRepository.getLastProfileSwitchIdWrapped().blockingGet()
         val lastDbId = if (lastDbIdWrapped is ValueWrapper.Existing) lastDbIdWrapped.value else 0L
-        var startId = sp.getLong(R.string.key_ns_profile_switch_last_synced_id, 0)
-        if (startId > lastDbId) {
-            sp.putLong(R.string.key_ns_profile_switch_last_synced_id, 0)
-            startId = 0
-        }
-        //if (startId == lastPsId && dateUtil.now() - lastPsTime < 5000) return false
-        //lastPsId = startId
-        //lastPsTime = dateUtil.now()
+        val startId = lastSynced(profileSwitchWindow, lastDbId)
         queueCounter.pssRemaining = lastDbId - startId
-        appRepository.getNextSyncElementProfileSwitch(startId).blockingGet()?.let { ps ->
+        var sent = 0
+        var nextId = profileSwitchWindow.continueFrom(startId)
+        while (profileSwitchWindow.hasRoom()) {
+            val ps = appRepository.getNextSyncElementProfileSwitch(nextId).blockingGet() ?: break
+            // previous version is not acked yet, wait for nsId
+            if (profileSwitchWindow.isInFlight(ps.first.id)) break
             aapsLogger.info(LTag.DATABASE, "Loading ProfileSwitch data Start: $startId ID: ${ps.first.id} HistoryID: ${ps.second} ")
             when {
                 // only NsId changed, no need to upload
                 ps.first.onlyNsIdAdded(ps.second)          -> {
-                    confirmLastProfileSwitchIdIfGreater(ps.second.id)
-                    //lastPsId = -1
-                    processChangedProfileSwitchesCompat()
+                    confirmSkipped(profileSwitchWindow, ps.second.id)
                     aapsLogger.info(LTag.DATABASE, "Ignoring ProfileSwitch. Only NS id changed ID: ${ps.first.id} HistoryID: ${ps.second.id} ")
-                    return false
                 }
                 // without nsId = create new
                 ps.first.interfaceIDs.nightscoutId == null ->
-                    nsClientPlugin.nsClientService?.dbAdd("treatments", ps.first.toJson(true, dateUtil), DataSyncSelector.PairProfileSwitch(ps.first, ps.second.id), "$startId/$lastDbId")
+                    if (profileSwitchWindow.add("treatments", ps.first.toJson(true, dateUtil), DataSyncSelector.PairProfileSwitch(ps.first, ps.second.id), ps.first.id, ps.second.id, "$startId/$lastDbId")) sent++
+                    else break
                 // with nsId = update
-                ps.first.interfaceIDs.nightscoutId != null ->
-                    nsClientPlugin.nsClientService?.dbUpdate(
-                        "treatments",
-                        ps.first.interfaceIDs.nightscoutId,
-                        ps.first.toJson(false, dateUtil),
-                        DataSyncSelector.PairProfileSwitch(ps.first, ps.second.id),
-                        "$startId/$lastDbId"
-                    )
+                else                                       ->
+                    if (profileSwitchWindow.update(
+                            "treatments",
+                            ps.first.interfaceIDs.nightscoutId,
+                            ps.first.toJson(false, dateUtil),
+                            DataSyncSelector.PairProfileSwitch(ps.first, ps.second.id),
+                            ps.first.id, ps.second.id,
+                            "$startId/$lastDbId"
+                        )
+                    ) sent++
+                    else break
             }
-            return true
+            nextId = ps.second.id
         }
-        return false
+        sent > 0
     }
 
-    override fun confirmLastEffectiveProfileSwitchIdIfGreater(lastSynced: Long) {
-        if (lastSynced > sp.getLong(R.string.key_ns_effective_profile_switch_last_synced_id, 0)) {
-            aapsLogger.debug(LTag.NSCLIENT, "Setting EffectiveProfileSwitch data sync from $lastSynced")
-            sp.putLong(R.string.key_ns_effective_profile_switch_last_synced_id, lastSynced)
-        }
-    }
+    override fun confirmLastEffectiveProfileSwitchIdIfGreater(lastSynced: Long) = confirmAcked(effectiveProfileSwitchWindow, lastSynced)
 
     override fun changedEffectiveProfileSwitch(): List<EffectiveProfileSwitch> {
         val startId = sp.getLong(R.string.key_ns_effective_profile_switch_last_synced_id, 0)
@@ -830,55 +811,54 @@ class DataSyncSelectorImplementation @Inject constructor(
         }
     }
 
-    //private var lastEpsId = -1L
-    //private var lastEpsTime = -1L
-    override fun processChangedEffectiveProfileSwitchesCompat(): Boolean {
+    override fun processChangedEffectiveProfileSwitchesCompat(): Boolean = synchronized(effectiveProfileSwitchWindow) {
         val lastDbIdWrapped = appRepository.getLastEffectiveProfileSwitchIdWrapped().blockingGet()
         val lastDbId = if (lastDbIdWrapped is ValueWrapper.Existing) lastDbIdWrapped.value else 0L
-        var startId = sp.getLong(R.string.key_ns_effective_profile_switch_last_synced_id, 0)
-        if (startId > lastDbId) {
-            sp.putLong(R.string.key_ns_effective_profile_switch_last_synced_id, 0)
-            startId = 0
-        }
-        //if (startId == lastEpsId && dateUtil.now() - lastEpsTime < 5000) return false
-        //lastEpsId = startId
-        //lastEpsTime = dateUtil.now()
+        val startId = lastSynced(effectiveProfileSwitchWindow, lastDbId)
         queueCounter.epssRemaining = lastDbId - startId
-        appRepository.getNextSyncElementEffectiveProfileSwitch(startId).blockingGet()?.let { ps ->
+        var sent = 0
+        var nextId = effectiveProfileSwitchWindow.continueFrom(startId)
+        while (effectiveProfileSwitchWindow.hasRoom()) {
+            val ps = appRepository.getNextSyncElementEffectiveProfileSwitch(nextId).blockingGet() ?: break
+            // previous version is not acked yet, wait for nsId
+            if (effectiveProfileSwitchWindow.isInFlight(ps.first.id)) break
             aapsLogger.info(LTag.DATABASE, "Loading EffectiveProfileSwitch data Start: $startId ID: ${ps.first.id} HistoryID: ${ps.second} ")
             when {
                 // only NsId changed, no need to upload
                 ps.first.onlyNsIdAdded(ps.second)          -> {
-                    confirmLastEffectiveProfileSwitchIdIfGreater(ps.second.id)
-                    //lastEpsId = -1
-                    processChangedEffectiveProfileSwitchesCompat()
+                    confirmSkipped(effectiveProfileSwitchWindow, ps.second.id)
                     aapsLogger.info(LTag.DATABASE, "Ignoring EffectiveProfileSwitch. Only NS id changed ID: ${ps.first.id} HistoryID: ${ps.second.id} ")
-                    return false
                 }
                 // without nsId = create new
                 ps.first.interfaceIDs.nightscoutId == null ->
-                    nsClientPlugin.nsClientService?.dbAdd("treatments", ps.first.toJson(true, dateUtil), DataSyncSelector.PairEffectiveProfileSwitch(ps.first, ps.second.id), "$startId/$lastDbId")
+                    if (effectiveProfileSwitchWindow.add(
+                            "treatments",
+                            ps.first.toJson(true, dateUtil),
+                            DataSyncSelector.PairEffectiveProfileSwitch(ps.first, ps.second.id),
+                            ps.first.id, ps.second.id,
+                            "$startId/$lastDbId"
+                        )
+                    ) sent++
+                    else break
                 // with nsId = update
-                ps.first.interfaceIDs.nightscoutId != null ->
-                    nsClientPlugin.nsClientService?.dbUpdate(
-                        "treatments",
-                        ps.first.interfaceIDs.nightscoutId,
-                        ps.first.toJson(false, dateUtil),
-                        DataSyncSelector.PairEffectiveProfileSwitch(ps.first, ps.second.id),
-                        "$startId/$lastDbId"
-                    )
+                else                                       ->
+                    if (effectiveProfileSwitchWindow.update(
+                            "treatments",
+                            ps.first.interfaceIDs.nightscoutId,
+                            ps.first.toJson(false, dateUtil),
+                            DataSyncSelector.PairEffectiveProfileSwitch(ps.first, ps.second.id),
+                            ps.first.id, ps.second.id,
+                            "$startId/$lastDbId"
+                        )
+                    ) sent++
+                    else break
             }
-            return true
+            nextId = ps.second.id
         }
-        return false
+        sent > 0
     }
 
-    override fun confirmLastOfflineEventIdIfGreater(lastSynced: Long) {
-        if (lastSynced > sp.getLong(R.string.key_ns_offline_event_last_synced_id, 0)) {
-            aapsLogger.debug(LTag.NSCLIENT, "Setting OfflineEvent data sync from $lastSynced")
-            sp.putLong(R.string.key_ns_offline_event_last_synced_id, lastSynced)
-        }
-    }
+    override fun confirmLastOfflineEventIdIfGreater(lastSynced: Long) = confirmAcked(offlineEventWindow, lastSynced)
 
     // Prepared for v3 (returns all modified after)
     override fun changedOfflineEvents(): List<OfflineEvent> {
@@ -888,47 +868,44 @@ class DataSyncSelectorImplementation @Inject constructor(
         }
     }
 
-    //private var lastOeId = -1L
-    //private var lastOeTime = -1L
-    override fun processChangedOfflineEventsCompat(): Boolean {
+    override fun processChangedOfflineEventsCompat(): Boolean = synchronized(offlineEventWindow) {
         val lastDbIdWrapped = appRepository.getLastOfflineEventIdWrapped().blockingGet()
         val lastDbId = if (lastDbIdWrapped is ValueWrapper.Existing) lastDbIdWrapped.value else 0L
-        var startId = sp.getLong(R.string.key_ns_offline_event_last_synced_id, 0)
-        if (startId > lastDbId) {
-            sp.putLong(R.string.key_ns_offline_event_last_synced_id, 0)
-            startId = 0
-        }
-        //if (startId == lastOeId && dateUtil.now() - lastOeTime < 5000) return false
-        //lastOeId = startId
-        //lastOeTime = dateUtil.now()
+        val startId = lastSynced(offlineEventWindow, lastDbId)
         queueCounter.oesRemaining = lastDbId - startId
-        appRepository.getNextSyncElementOfflineEvent(startId).blockingGet()?.let { oe ->
+        var sent = 0
+        var nextId = offlineEventWindow.continueFrom(startId)
+        while (offlineEventWindow.hasRoom()) {
+            val oe = appRepository.getNextSyncElementOfflineEvent(nextId).blockingGet() ?: break
+            // previous version is not acked yet, wait for nsId
+            if (offlineEventWindow.isInFlight(oe.first.id)) break
             aapsLogger.info(LTag.DATABASE, "Loading OfflineEvent data Start: $startId ID: ${oe.first.id} HistoryID: ${oe.second} ")
             when {
                 // only NsId changed, no need to upload
                 oe.first.onlyNsIdAdded(oe.second)          -> {
-                    confirmLastOfflineEventIdIfGreater(oe.second.id)
-                    //lastOeId = -1
-                    processChangedOfflineEventsCompat()
+                    confirmSkipped(offlineEventWindow, oe.second.id)
                     aapsLogger.info(LTag.DATABASE, "Ignoring OfflineEvent. Only NS id changed ID: ${oe.first.id} HistoryID: ${oe.second.id} ")
-                    return false
                 }
                 // without nsId = create new
                 oe.first.interfaceIDs.nightscoutId == null ->
-                    nsClientPlugin.nsClientService?.dbAdd("treatments", oe.first.toJson(true, dateUtil), DataSyncSelector.PairOfflineEvent(oe.first, oe.second.id), "$startId/$lastDbId")
+                    if (offlineEventWindow.add("treatments", oe.first.toJson(true, dateUtil), DataSyncSelector.PairOfflineEvent(oe.first, oe.second.id), oe.first.id, oe.second.id, "$startId/$lastDbId")) sent++
+                    else break
                 // existing with nsId = update
-                oe.first.interfaceIDs.nightscoutId != null ->
-                    nsClientPlugin.nsClientService?.dbUpdate(
-                        "treatments",
-                        oe.first.interfaceIDs.nightscoutId,
-                        oe.first.toJson(false, dateUtil),
-                        DataSyncSelector.PairOfflineEvent(oe.first, oe.second.id),
-                        "$startId/$lastDbId"
-                    )
+                else                                       ->
+                    if (offlineEventWindow.update(
+                            "treatments",
+                            oe.first.interfaceIDs.nightscoutId,
+                            oe.first.toJson(false, dateUtil),
+                            DataSyncSelector.PairOfflineEvent(oe.first, oe.second.id),
+                            oe.first.id, oe.second.id,
+                            "$startId/$lastDbId"
+                        )
+                    ) sent++
+                    else break
             }
-            return true
+            nextId = oe.second.id
         }
-        return false
+        sent > 0
     }
 
     override fun confirmLastProfileStore(lastSynced: Long) {
@@ -944,4 +921,13 @@ class DataSyncSelectorImplementation @Inject constructor(
             nsClientPlugin.nsClientService?.dbAdd("profile", profileJson, DataSyncSelector.PairProfileStore(profileJson, dateUtil.now()), "")
         }
     }
+
+    companion object {
+
+        // max records of one collection waiting for ack
+        const val UPLOAD_WINDOW = 8
+
+        // requests without ack after this time are considered lost
+        val ACK_TIMEOUT = T.secs(30).msecs()
+    }
 }
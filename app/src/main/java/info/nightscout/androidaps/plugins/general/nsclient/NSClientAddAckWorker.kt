@@ -39,7 +39,7 @@ class NSClientAddAckWorker(
         var ret = Result.success()
 
         val ack = dataWorker.pickupObject(inputData.getLong(DataWorker.STORE_KEY, -1)) as NSAddAck?
-            ?: return Result.failure(workDataOf("Error" to "missing input data"))
+            ?: return Result.success(workDataOf("Result" to "payload dropped or expired"))
 
         if (sp.getBoolean(R.string.key_ns_sync_slow, false)) SystemClock.sleep(1000)
 
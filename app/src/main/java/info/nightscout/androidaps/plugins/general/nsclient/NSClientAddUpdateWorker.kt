@@ -8,10 +8,10 @@ import dagger.android.HasAndroidInjector
 import info.nightscout.androidaps.Constants
 import info.nightscout.androidaps.R
 import info.nightscout.androidaps.database.AppRepository
-import info.nightscout.androidaps.database.entities.TherapyEvent
+import info.nightscout.androidaps.database.entities.*
 import info.nightscout.androidaps.database.entities.UserEntry.Action
 import info.nightscout.androidaps.database.entities.UserEntry.Sources
-import info.nightscout.androidaps.database.entities.ValueWithUnit
+import info.nightscout.androidaps.database.interfaces.TraceableDBEntry
 import info.nightscout.androidaps.database.transactions.*
 import info.nightscout.androidaps.extensions.*
 import info.nightscout.androidaps.interfaces.ActivePlugin
@@ -50,16 +50,19 @@ class NSClientAddUpdateWorker(
 
     override fun doWork(): Result {
         val treatments = dataWorker.pickupJSONArray(inputData.getLong(DataWorker.STORE_KEY, -1))
-            ?: return Result.failure(workDataOf("Error" to "missing input data"))
+            ?: return Result.success(workDataOf("Result" to "payload dropped or expired"))
 
         var ret = Result.success()
         var latestDateInReceivedData = 0L
 
+        // collect records first and store them in one transaction in order of receiving
+        val records = mutableListOf<TraceableDBEntry>()
+
         for (i in 0 until treatments.length()) {
             var json = treatments.getJSONObject(i)
             // new DB model
             val insulin = JsonHelper.safeGetDouble(json, "insulin")
-            val carbs = JsonHelper.safeGetDouble(json, "carbs")
+            val carbsAmount = JsonHelper.safeGetDouble(json, "carbs")
             val eventType = JsonHelper.safeGetString(json, "eventType")
             if (eventType == null) {
                 aapsLogger.debug(LTag.NSCLIENT, "Wrong treatment. Ignoring : $json")
@@ -73,64 +76,14 @@ class NSClientAddUpdateWorker(
 
             if (insulin > 0) {
                 if (sp.getBoolean(R.string.key_ns_receive_insulin, false) && buildHelper.isEngineeringMode() || config.NSCLIENT) {
-                    bolusFromJson(json)?.let { bolus ->
-                        repository.runTransactionForResult(SyncNsBolusTransaction(bolus))
-                            .doOnError {
-                                aapsLogger.error(LTag.DATABASE, "Error while saving bolus", it)
-                                ret = Result.failure(workDataOf("Error" to it.toString()))
-                            }
-                            .blockingGet()
-                            .also { result ->
-                                result.inserted.forEach {
-                                    uel.log(Action.BOLUS, Sources.NSClient,
-                                        ValueWithUnit.Timestamp(it.timestamp),
-                                        ValueWithUnit.Insulin(it.amount)
-                                    )
-                                    aapsLogger.debug(LTag.DATABASE, "Inserted bolus $it")
-                                }
-                                result.invalidated.forEach {
-                                    uel.log(Action.BOLUS_REMOVED, Sources.NSClient,
-                                        ValueWithUnit.Timestamp(it.timestamp),
-                                        ValueWithUnit.Insulin(it.amount)
-                                    )
-                                    aapsLogger.debug(LTag.DATABASE, "Invalidated bolus $it")
-                                }
-                                result.updatedNsId.forEach {
-                                    aapsLogger.debug(LTag.DATABASE, "Updated nsId bolus $it")
-                                }
-                            }
-                    } ?: aapsLogger.error("Error parsing bolus json $json")
+                    bolusFromJson(json)?.let { records.add(it) }
+                        ?: aapsLogger.error("Error parsing bolus json $json")
                 }
             }
-            if (carbs > 0) {
+            if (carbsAmount > 0) {
                 if (sp.getBoolean(R.string.key_ns_receive_carbs, false) && buildHelper.isEngineeringMode() || config.NSCLIENT) {
-                    carbsFromJson(json)?.let { carb ->
-                        repository.runTransactionForResult(SyncNsCarbsTransaction(carb))
-                            .doOnError {
-                                aapsLogger.error(LTag.DATABASE, "Error while saving carbs", it)
-                                ret = Result.failure(workDataOf("Error" to it.toString()))
-                            }
-                            .blockingGet()
-                            .also { result ->
-                                result.inserted.forEach {
-                                    uel.log(Action.CARBS, Sources.NSClient,
-                                        ValueWithUnit.Timestamp(it.timestamp),
-                                        ValueWithUnit.Gram(it.amount.toInt())
-                                    )
-                                    aapsLogger.debug(LTag.DATABASE, "Inserted carbs $it")
-                                }
-                                result.invalidated.forEach {
-                                    uel.log(Action.CARBS_REMOVED, Sources.NSClient,
-                                        ValueWithUnit.Timestamp(it.timestamp),
-                                        ValueWithUnit.Gram(it.amount.toInt())
-                                    )
-                                    aapsLogger.debug(LTag.DATABASE, "Invalidated carbs $it")
-                                }
-                                result.updatedNsId.forEach {
-                                    aapsLogger.debug(LTag.DATABASE, "Updated nsId carbs $it")
-                                }
-                            }
-                    } ?: aapsLogger.error("Error parsing bolus json $json")
+                    carbsFromJson(json)?.let { records.add(it) }
+                        ?: aapsLogger.error("Error parsing bolus json $json")
                 }
             }
             // Convert back emulated TBR -> EB
@@ -141,106 +94,21 @@ class NSClientAddUpdateWorker(
                 json = ebJson
             }
             when {
-                insulin > 0 || carbs > 0                                    -> Any()
+                insulin > 0 || carbsAmount > 0                              -> Any()
                 eventType == TherapyEvent.Type.TEMPORARY_TARGET.text        ->
                     if (sp.getBoolean(R.string.key_ns_receive_temp_target, false) && buildHelper.isEngineeringMode() || config.NSCLIENT) {
-                        temporaryTargetFromJson(json)?.let { temporaryTarget ->
-                            repository.runTransactionForResult(SyncNsTemporaryTargetTransaction(temporaryTarget))
-                                .doOnError {
-                                    aapsLogger.error(LTag.DATABASE, "Error while saving temporary target", it)
-                                    ret = Result.failure(workDataOf("Error" to it.toString()))
-                                }
-                                .blockingGet()
-                                .also { result ->
-                                    result.inserted.forEach { tt ->
-                                        uel.log(Action.TT, Sources.NSClient,
-                                            ValueWithUnit.TherapyEventTTReason(tt.reason),
-                                            ValueWithUnit.fromGlucoseUnit(tt.lowTarget, Constants.MGDL),
-                                            ValueWithUnit.fromGlucoseUnit(tt.highTarget, Constants.MGDL).takeIf { tt.lowTarget != tt.highTarget },
-                                            ValueWithUnit.Minute(TimeUnit.MILLISECONDS.toMinutes(tt.duration).toInt())
-                                        )
-                                        aapsLogger.debug(LTag.DATABASE, "Inserted TemporaryTarget $tt")
-                                    }
-                                    result.invalidated.forEach { tt ->
-                                        uel.log(Action.TT_REMOVED, Sources.NSClient,
-                                            ValueWithUnit.TherapyEventTTReason(tt.reason),
-                                            ValueWithUnit.Mgdl(tt.lowTarget),
-                                            ValueWithUnit.Mgdl(tt.highTarget).takeIf { tt.lowTarget != tt.highTarget },
-                                            ValueWithUnit.Minute(TimeUnit.MILLISECONDS.toMinutes(tt.duration).toInt())
-                                        )
-                                        aapsLogger.debug(LTag.DATABASE, "Invalidated TemporaryTarget $tt")
-                                    }
-                                    result.ended.forEach { tt ->
-                                        uel.log(Action.CANCEL_TT, Sources.NSClient,
-                                            ValueWithUnit.TherapyEventTTReason(tt.reason),
-                                            ValueWithUnit.Mgdl(tt.lowTarget),
-                                            ValueWithUnit.Mgdl(tt.highTarget).takeIf { tt.lowTarget != tt.highTarget },
-                                            ValueWithUnit.Minute(TimeUnit.MILLISECONDS.toMinutes(tt.duration).toInt())
-                                        )
-                                        aapsLogger.debug(LTag.DATABASE, "Updated TemporaryTarget $tt")
-                                    }
-                                    result.updatedNsId.forEach {
-                                        aapsLogger.debug(LTag.DATABASE, "Updated nsId TemporaryTarget $it")
-                                    }
-                                    result.updatedDuration.forEach {
-                                        aapsLogger.debug(LTag.DATABASE, "Updated duration TemporaryTarget $it")
-                                    }
-                                }
-                        } ?: aapsLogger.error("Error parsing TT json $json")
+                        temporaryTargetFromJson(json)?.let { records.add(it) }
+                            ?: aapsLogger.error("Error parsing TT json $json")
                     }
-                eventType == TherapyEvent.Type.NOTE.text  && json.isEffectiveProfileSwitch()        -> // replace this by new Type when available in NS
+                eventType == TherapyEvent.Type.NOTE.text && json.isEffectiveProfileSwitch() -> // replace this by new Type when available in NS
                     if (sp.getBoolean(R.string.key_ns_receive_profile_switch, false) && buildHelper.isEngineeringMode() || config.NSCLIENT) {
-                        effectiveProfileSwitchFromJson(json, dateUtil)?.let { effectiveProfileSwitch ->
-                            repository.runTransactionForResult(SyncNsEffectiveProfileSwitchTransaction(effectiveProfileSwitch))
-                                .doOnError {
-                                    aapsLogger.error(LTag.DATABASE, "Error while saving EffectiveProfileSwitch", it)
-                                    ret = Result.failure(workDataOf("Error" to it.toString()))
-                                }
-                                .blockingGet()
-                                .also { result ->
-                                    result.inserted.forEach {
-                                        uel.log(Action.PROFILE_SWITCH, Sources.NSClient,
-                                            ValueWithUnit.Timestamp(it.timestamp))
-                                        aapsLogger.debug(LTag.DATABASE, "Inserted EffectiveProfileSwitch $it")
-                                    }
-                                    result.invalidated.forEach {
-                                        uel.log(Action.PROFILE_SWITCH_REMOVED, Sources.NSClient,
-                                            ValueWithUnit.Timestamp(it.timestamp))
-                                        aapsLogger.debug(LTag.DATABASE, "Invalidated EffectiveProfileSwitch $it")
-                                    }
-                                    result.updatedNsId.forEach {
-                                        aapsLogger.debug(LTag.DATABASE, "Updated nsId EffectiveProfileSwitch $it")
-                                    }
-                                }
-                        } ?: aapsLogger.error("Error parsing EffectiveProfileSwitch json $json")
+                        effectiveProfileSwitchFromJson(json, dateUtil)?.let { records.add(it) }
+                            ?: aapsLogger.error("Error parsing EffectiveProfileSwitch json $json")
                     }
-                eventType == TherapyEvent.Type.BOLUS_WIZARD.text             ->
+                eventType == TherapyEvent.Type.BOLUS_WIZARD.text            ->
                     if (config.NSCLIENT) {
-                        bolusCalculatorResultFromJson(json)?.let { bolusCalculatorResult ->
-                            repository.runTransactionForResult(SyncNsBolusCalculatorResultTransaction(bolusCalculatorResult))
-                                .doOnError {
-                                    aapsLogger.error(LTag.DATABASE, "Error while saving BolusCalculatorResult", it)
-                                    ret = Result.failure(workDataOf("Error" to it.toString()))
-                                }
-                                .blockingGet()
-                                .also { result ->
-                                    result.inserted.forEach {
-                                        uel.log(Action.BOLUS_CALCULATOR_RESULT, Sources.NSClient,
-                                                ValueWithUnit.Timestamp(it.timestamp),
-                                        )
-                                        aapsLogger.debug(LTag.DATABASE, "Inserted BolusCalculatorResult $it")
-                                    }
-                                    result.invalidated.forEach {
-                                        uel.log(Action.BOLUS_CALCULATOR_RESULT_REMOVED, Sources.NSClient,
-                                                ValueWithUnit.Timestamp(it.timestamp),
-                                        )
-                                        aapsLogger.debug(LTag.DATABASE, "Invalidated BolusCalculatorResult $it")
-                                    }
-                                    result.updatedNsId.forEach {
-                                        aapsLogger.debug(LTag.DATABASE, "Updated nsId BolusCalculatorResult $it")
-                                    }
-                                }
-                        } ?: aapsLogger.error("Error parsing BolusCalculatorResult json $json")
+                        bolusCalculatorResultFromJson(json)?.let { records.add(it) }
+                            ?: aapsLogger.error("Error parsing BolusCalculatorResult json $json")
                     }
                 eventType == TherapyEvent.Type.CANNULA_CHANGE.text ||
                     eventType == TherapyEvent.Type.INSULIN_CHANGE.text ||
@@ -253,198 +121,28 @@ class NSClientAddUpdateWorker(
                     eventType == TherapyEvent.Type.NOTE.text ||
                     eventType == TherapyEvent.Type.PUMP_BATTERY_CHANGE.text ->
                     if (sp.getBoolean(R.string.key_ns_receive_therapy_events, false) || config.NSCLIENT) {
-                        therapyEventFromJson(json)?.let { therapyEvent ->
-                            repository.runTransactionForResult(SyncNsTherapyEventTransaction(therapyEvent))
-                                .doOnError {
-                                    aapsLogger.error(LTag.DATABASE, "Error while saving therapy event", it)
-                                    ret = Result.failure(workDataOf("Error" to it.toString()))
-                                }
-                                .blockingGet()
-                                .also { result ->
-                                    val action = when (eventType) {
-                                        TherapyEvent.Type.CANNULA_CHANGE.text -> Action.SITE_CHANGE
-                                        TherapyEvent.Type.INSULIN_CHANGE.text -> Action.RESERVOIR_CHANGE
-                                        else                                  -> Action.CAREPORTAL
-                                    }
-                                    result.inserted.forEach {
-                                        uel.log(action, Sources.NSClient,
-                                            it.note ?: "",
-                                            ValueWithUnit.Timestamp(it.timestamp),
-                                            ValueWithUnit.TherapyEventType(it.type)
-                                        )
-                                        aapsLogger.debug(LTag.DATABASE, "Inserted TherapyEvent $it")
-                                    }
-                                    result.invalidated.forEach {
-                                        uel.log(Action.CAREPORTAL_REMOVED, Sources.NSClient,
-                                            it.note ?: "",
-                                            ValueWithUnit.Timestamp(it.timestamp),
-                                            ValueWithUnit.TherapyEventType(it.type)
-                                        )
-                                        aapsLogger.debug(LTag.DATABASE, "Invalidated TherapyEvent $it")
-                                    }
-                                    result.updatedNsId.forEach {
-                                        aapsLogger.debug(LTag.DATABASE, "Updated nsId TherapyEvent $it")
-                                    }
-                                    result.updatedDuration.forEach {
-                                        aapsLogger.debug(LTag.DATABASE, "Updated nsId TherapyEvent $it")
-                                    }
-                                }
-                        } ?: aapsLogger.error("Error parsing TherapyEvent json $json")
+                        therapyEventFromJson(json)?.let { records.add(it) }
+                            ?: aapsLogger.error("Error parsing TherapyEvent json $json")
                     }
                 eventType == TherapyEvent.Type.COMBO_BOLUS.text             ->
                     if (config.NSCLIENT) {
-                        extendedBolusFromJson(json)?.let { extendedBolus ->
-                            repository.runTransactionForResult(SyncNsExtendedBolusTransaction(extendedBolus))
-                                .doOnError {
-                                    aapsLogger.error(LTag.DATABASE, "Error while saving extended bolus", it)
-                                    ret = Result.failure(workDataOf("Error" to it.toString()))
-                                }
-                                .blockingGet()
-                                .also { result ->
-                                    result.inserted.forEach {
-                                        uel.log(Action.EXTENDED_BOLUS, Sources.NSClient,
-                                            ValueWithUnit.Timestamp(it.timestamp),
-                                            ValueWithUnit.Insulin(it.amount),
-                                            ValueWithUnit.UnitPerHour(it.rate),
-                                            ValueWithUnit.Minute(TimeUnit.MILLISECONDS.toMinutes(it.duration).toInt())
-                                        )
-                                        aapsLogger.debug(LTag.DATABASE, "Inserted ExtendedBolus $it")
-                                    }
-                                    result.invalidated.forEach {
-                                        uel.log(Action.EXTENDED_BOLUS_REMOVED, Sources.NSClient,
-                                            ValueWithUnit.Timestamp(it.timestamp),
-                                            ValueWithUnit.Insulin(it.amount),
-                                            ValueWithUnit.UnitPerHour(it.rate),
-                                            ValueWithUnit.Minute(TimeUnit.MILLISECONDS.toMinutes(it.duration).toInt())
-                                        )
-                                        aapsLogger.debug(LTag.DATABASE, "Invalidated ExtendedBolus $it")
-                                    }
-                                    result.ended.forEach {
-                                        uel.log(Action.CANCEL_EXTENDED_BOLUS, Sources.NSClient,
-                                            ValueWithUnit.Timestamp(it.timestamp),
-                                            ValueWithUnit.Insulin(it.amount),
-                                            ValueWithUnit.UnitPerHour(it.rate),
-                                            ValueWithUnit.Minute(TimeUnit.MILLISECONDS.toMinutes(it.duration).toInt())
-                                        )
-                                        aapsLogger.debug(LTag.DATABASE, "Updated ExtendedBolus $it")
-                                    }
-                                    result.updatedNsId.forEach {
-                                        aapsLogger.debug(LTag.DATABASE, "Updated nsId ExtendedBolus $it")
-                                    }
-                                    result.updatedDuration.forEach {
-                                        aapsLogger.debug(LTag.DATABASE, "Updated duration ExtendedBolus $it")
-                                    }
-                                }
-                        } ?: aapsLogger.error("Error parsing ExtendedBolus json $json")
+                        extendedBolusFromJson(json)?.let { records.add(it) }
+                            ?: aapsLogger.error("Error parsing ExtendedBolus json $json")
                     }
                 eventType == TherapyEvent.Type.TEMPORARY_BASAL.text         ->
                     if (config.NSCLIENT) {
-                        temporaryBasalFromJson(json)?.let { temporaryBasal ->
-                            repository.runTransactionForResult(SyncNsTemporaryBasalTransaction(temporaryBasal))
-                                .doOnError {
-                                    aapsLogger.error(LTag.DATABASE, "Error while saving temporary basal", it)
-                                    ret = Result.failure(workDataOf("Error" to it.toString()))
-                                }
-                                .blockingGet()
-                                .also { result ->
-                                    result.inserted.forEach {
-                                        uel.log(Action.TEMP_BASAL, Sources.NSClient,
-                                            ValueWithUnit.Timestamp(it.timestamp),
-                                            if (it.isAbsolute) ValueWithUnit.UnitPerHour(it.rate) else ValueWithUnit.Percent(it.rate.toInt()),
-                                            ValueWithUnit.Minute(TimeUnit.MILLISECONDS.toMinutes(it.duration).toInt())
-                                        )
-                                        aapsLogger.debug(LTag.DATABASE, "Inserted TemporaryBasal $it")
-                                    }
-                                    result.invalidated.forEach {
-                                        uel.log(Action.TEMP_BASAL_REMOVED, Sources.NSClient,
-                                            ValueWithUnit.Timestamp(it.timestamp),
-                                            if (it.isAbsolute) ValueWithUnit.UnitPerHour(it.rate) else ValueWithUnit.Percent(it.rate.toInt()),
-                                            ValueWithUnit.Minute(TimeUnit.MILLISECONDS.toMinutes(it.duration).toInt())
-                                        )
-                                        aapsLogger.debug(LTag.DATABASE, "Invalidated TemporaryBasal $it")
-                                    }
-                                    result.ended.forEach {
-                                        uel.log(Action.CANCEL_TEMP_BASAL, Sources.NSClient,
-                                            ValueWithUnit.Timestamp(it.timestamp),
-                                            if (it.isAbsolute) ValueWithUnit.UnitPerHour(it.rate) else ValueWithUnit.Percent(it.rate.toInt()),
-                                            ValueWithUnit.Minute(TimeUnit.MILLISECONDS.toMinutes(it.duration).toInt())
-                                        )
-                                        aapsLogger.debug(LTag.DATABASE, "Ended TemporaryBasal $it")
-                                    }
-                                    result.updatedNsId.forEach {
-                                        aapsLogger.debug(LTag.DATABASE, "Updated nsId TemporaryBasal $it")
-                                    }
-                                    result.updatedDuration.forEach {
-                                        aapsLogger.debug(LTag.DATABASE, "Updated duration TemporaryBasal $it")
-                                    }
-                                }
-                        } ?: aapsLogger.error("Error parsing TemporaryBasal json $json")
+                        temporaryBasalFromJson(json)?.let { records.add(it) }
+                            ?: aapsLogger.error("Error parsing TemporaryBasal json $json")
                     }
                 eventType == TherapyEvent.Type.PROFILE_SWITCH.text          ->
                     if (sp.getBoolean(R.string.key_ns_receive_profile_switch, false) && buildHelper.isEngineeringMode() || config.NSCLIENT) {
-                        profileSwitchFromJson(json, dateUtil, activePlugin)?.let { profileSwitch ->
-                            repository.runTransactionForResult(SyncNsProfileSwitchTransaction(profileSwitch))
-                                .doOnError {
-                                    aapsLogger.error(LTag.DATABASE, "Error while saving ProfileSwitch", it)
-                                    ret = Result.failure(workDataOf("Error" to it.toString()))
-                                }
-                                .blockingGet()
-                                .also { result ->
-                                    result.inserted.forEach {
-                                        uel.log(Action.PROFILE_SWITCH, Sources.NSClient,
-                                            ValueWithUnit.Timestamp(it.timestamp))
-                                        aapsLogger.debug(LTag.DATABASE, "Inserted ProfileSwitch $it")
-                                    }
-                                    result.invalidated.forEach {
-                                        uel.log(Action.PROFILE_SWITCH_REMOVED, Sources.NSClient,
-                                            ValueWithUnit.Timestamp(it.timestamp))
-                                        aapsLogger.debug(LTag.DATABASE, "Invalidated ProfileSwitch $it")
-                                    }
-                                    result.updatedNsId.forEach {
-                                        aapsLogger.debug(LTag.DATABASE, "Updated nsId ProfileSwitch $it")
-                                    }
-                                }
-                        } ?: aapsLogger.error("Error parsing ProfileSwitch json $json")
+                        profileSwitchFromJson(json, dateUtil, activePlugin)?.let { records.add(it) }
+                            ?: aapsLogger.error("Error parsing ProfileSwitch json $json")
                     }
-                eventType == TherapyEvent.Type.APS_OFFLINE.text          ->
+                eventType == TherapyEvent.Type.APS_OFFLINE.text             ->
                     if (sp.getBoolean(R.string.key_ns_receive_offline_event, false) && buildHelper.isEngineeringMode() || config.NSCLIENT) {
-                        offlineEventFromJson(json)?.let { offlineEvent ->
-                            repository.runTransactionForResult(SyncNsOfflineEventTransaction(offlineEvent))
-                                .doOnError {
-                                    aapsLogger.error(LTag.DATABASE, "Error while saving OfflineEvent", it)
-                                    ret = Result.failure(workDataOf("Error" to it.toString()))
-                                }
-                                .blockingGet()
-                                .also { result ->
-                                    result.inserted.forEach { oe ->
-                                        uel.log(Action.LOOP_CHANGE, Sources.NSClient,
-                                            ValueWithUnit.OfflineEventReason(oe.reason),
-                                            ValueWithUnit.Minute(TimeUnit.MILLISECONDS.toMinutes(oe.duration).toInt())
-                                        )
-                                        aapsLogger.debug(LTag.DATABASE, "Inserted OfflineEvent $oe")
-                                    }
-                                    result.invalidated.forEach { oe ->
-                                        uel.log(Action.LOOP_REMOVED, Sources.NSClient,
-                                            ValueWithUnit.OfflineEventReason(oe.reason),
-                                            ValueWithUnit.Minute(TimeUnit.MILLISECONDS.toMinutes(oe.duration).toInt())
-                                        )
-                                        aapsLogger.debug(LTag.DATABASE, "Invalidated OfflineEvent $oe")
-                                    }
-                                    result.ended.forEach { oe ->
-                                        uel.log(Action.LOOP_CHANGE, Sources.NSClient,
-                                            ValueWithUnit.OfflineEventReason(oe.reason),
-                                            ValueWithUnit.Minute(TimeUnit.MILLISECONDS.toMinutes(oe.duration).toInt())
-                                        )
-                                        aapsLogger.debug(LTag.DATABASE, "Updated OfflineEvent $oe")
-                                    }
-                                    result.updatedNsId.forEach {
-                                        aapsLogger.debug(LTag.DATABASE, "Updated nsId OfflineEvent $it")
-                                    }
-                                    result.updatedDuration.forEach {
-                                        aapsLogger.debug(LTag.DATABASE, "Updated duration OfflineEvent $it")
-                                    }
-                                }
-                        } ?: aapsLogger.error("Error parsing OfflineEvent json $json")
+                        offlineEventFromJson(json)?.let { records.add(it) }
+                            ?: aapsLogger.error("Error parsing OfflineEvent json $json")
                     }
             }
             if (sp.getBoolean(R.string.key_ns_receive_therapy_events, false) || config.NSCLIENT)
@@ -463,10 +161,276 @@ class NSClientAddUpdateWorker(
                     }
                 }
         }
+
+        val batch = SyncNsBatchTransaction(records)
+        if (batch.size > 0) {
+            try {
+                processResult(repository.runTransactionForResult(batch).blockingGet())
+            } catch (e: Exception) {
+                // don't let one broken record block the rest
+                aapsLogger.error(LTag.DATABASE, "Error while saving batch of ${batch.size} records. Saving one by one", e)
+                batch.split().forEach { single ->
+                    try {
+                        processResult(repository.runTransactionForResult(single).blockingGet())
+                    } catch (e: Exception) {
+                        aapsLogger.error(LTag.DATABASE, "Error while saving NS record", e)
+                        ret = Result.failure(workDataOf("Error" to e.toString()))
+                    }
+                }
+            }
+        }
         nsClientPlugin.updateLatestDateReceivedIfNewer(latestDateInReceivedData)
         return ret
     }
 
+    private fun processResult(batchResult: SyncNsBatchTransaction.TransactionResult) {
+        batchResult.boluses.forEach { result ->
+            result.inserted.forEach {
+                uel.log(Action.BOLUS, Sources.NSClient,
+                    ValueWithUnit.Timestamp(it.timestamp),
+                    ValueWithUnit.Insulin(it.amount)
+                )
+                aapsLogger.debug(LTag.DATABASE, "Inserted bolus $it")
+            }
+            result.invalidated.forEach {
+                uel.log(Action.BOLUS_REMOVED, Sources.NSClient,
+                    ValueWithUnit.Timestamp(it.timestamp),
+                    ValueWithUnit.Insulin(it.amount)
+                )
+                aapsLogger.debug(LTag.DATABASE, "Invalidated bolus $it")
+            }
+            result.updatedNsId.forEach {
+                aapsLogger.debug(LTag.DATABASE, "Updated nsId bolus $it")
+            }
+        }
+        batchResult.carbs.forEach { result ->
+            result.inserted.forEach {
+                uel.log(Action.CARBS, Sources.NSClient,
+                    ValueWithUnit.Timestamp(it.timestamp),
+                    ValueWithUnit.Gram(it.amount.toInt())
+                )
+                aapsLogger.debug(LTag.DATABASE, "Inserted carbs $it")
+            }
+            result.invalidated.forEach {
+                uel.log(Action.CARBS_REMOVED, Sources.NSClient,
+                    ValueWithUnit.Timestamp(it.timestamp),
+                    ValueWithUnit.Gram(it.amount.toInt())
+                )
+                aapsLogger.debug(LTag.DATABASE, "Invalidated carbs $it")
+            }
+            result.updatedNsId.forEach {
+                aapsLogger.debug(LTag.DATABASE, "Updated nsId carbs $it")
+            }
+        }
+        batchResult.temporaryTargets.forEach { result ->
+            result.inserted.forEach { tt ->
+                uel.log(Action.TT, Sources.NSClient,
+                    ValueWithUnit.TherapyEventTTReason(tt.reason),
+                    ValueWithUnit.fromGlucoseUnit(tt.lowTarget, Constants.MGDL),
+                    ValueWithUnit.fromGlucoseUnit(tt.highTarget, Constants.MGDL).takeIf { tt.lowTarget != tt.highTarget },
+                    ValueWithUnit.Minute(TimeUnit.MILLISECONDS.toMinutes(tt.duration).toInt())
+                )
+                aapsLogger.debug(LTag.DATABASE, "Inserted TemporaryTarget $tt")
+            }
+            result.invalidated.forEach { tt ->
+                uel.log(Action.TT_REMOVED, Sources.NSClient,
+                    ValueWithUnit.TherapyEventTTReason(tt.reason),
+                    ValueWithUnit.Mgdl(tt.lowTarget),
+                    ValueWithUnit.Mgdl(tt.highTarget).takeIf { tt.lowTarget != tt.highTarget },
+                    ValueWithUnit.Minute(TimeUnit.MILLISECONDS.toMinutes(tt.duration).toInt())
+                )
+                aapsLogger.debug(LTag.DATABASE, "Invalidated TemporaryTarget $tt")
+            }
+            result.ended.forEach { tt ->
+                uel.log(Action.CANCEL_TT, Sources.NSClient,
+                    ValueWithUnit.TherapyEventTTReason(tt.reason),
+                    ValueWithUnit.Mgdl(tt.lowTarget),
+                    ValueWithUnit.Mgdl(tt.highTarget).takeIf { tt.lowTarget != tt.highTarget },
+                    ValueWithUnit.Minute(TimeUnit.MILLISECONDS.toMinutes(tt.duration).toInt())
+                )
+                aapsLogger.debug(LTag.DATABASE, "Updated TemporaryTarget $tt")
+            }
+            result.updatedNsId.forEach {
+                aapsLogger.debug(LTag.DATABASE, "Updated nsId TemporaryTarget $it")
+            }
+            result.updatedDuration.forEach {
+                aapsLogger.debug(LTag.DATABASE, "Updated duration TemporaryTarget $it")
+            }
+        }
+        batchResult.effectiveProfileSwitches.forEach { result ->
+            result.inserted.forEach {
+                uel.log(Action.PROFILE_SWITCH, Sources.NSClient,
+                    ValueWithUnit.Timestamp(it.timestamp))
+                aapsLogger.debug(LTag.DATABASE, "Inserted EffectiveProfileSwitch $it")
+            }
+            result.invalidated.forEach {
+                uel.log(Action.PROFILE_SWITCH_REMOVED, Sources.NSClient,
+                    ValueWithUnit.Timestamp(it.timestamp))
+                aapsLogger.debug(LTag.DATABASE, "Invalidated EffectiveProfileSwitch $it")
+            }
+            result.updatedNsId.forEach {
+                aapsLogger.debug(LTag.DATABASE, "Updated nsId EffectiveProfileSwitch $it")
+            }
+        }
+        batchResult.bolusCalculatorResults.forEach { result ->
+            result.inserted.forEach {
+                uel.log(Action.BOLUS_CALCULATOR_RESULT, Sources.NSClient,
+                        ValueWithUnit.Timestamp(it.timestamp),
+                )
+                aapsLogger.debug(LTag.DATABASE, "Inserted BolusCalculatorResult $it")
+            }
+            result.invalidated.forEach {
+                uel.log(Action.BOLUS_CALCULATOR_RESULT_REMOVED, Sources.NSClient,
+                        ValueWithUnit.Timestamp(it.timestamp),
+                )
+                aapsLogger.debug(LTag.DATABASE, "Invalidated BolusCalculatorResult $it")
+            }
+            result.updatedNsId.forEach {
+                aapsLogger.debug(LTag.DATABASE, "Updated nsId BolusCalculatorResult $it")
+            }
+        }
+        batchResult.therapyEvents.forEach { result ->
+            result.inserted.forEach {
+                val action = when (it.type) {
+                    TherapyEvent.Type.CANNULA_CHANGE -> Action.SITE_CHANGE
+                    TherapyEvent.Type.INSULIN_CHANGE -> Action.RESERVOIR_CHANGE
+                    else                             -> Action.CAREPORTAL
+                }
+                uel.log(action, Sources.NSClient,
+                    it.note ?: "",
+                    ValueWithUnit.Timestamp(it.timestamp),
+                    ValueWithUnit.TherapyEventType(it.type)
+                )
+                aapsLogger.debug(LTag.DATABASE, "Inserted TherapyEvent $it")
+            }
+            result.invalidated.forEach {
+                uel.log(Action.CAREPORTAL_REMOVED, Sources.NSClient,
+                    it.note ?: "",
+                    ValueWithUnit.Timestamp(it.timestamp),
+                    ValueWithUnit.TherapyEventType(it.type)
+                )
+                aapsLogger.debug(LTag.DATABASE, "Invalidated TherapyEvent $it")
+            }
+            result.updatedNsId.forEach {
+                aapsLogger.debug(LTag.DATABASE, "Updated nsId TherapyEvent $it")
+            }
+            result.updatedDuration.forEach {
+                aapsLogger.debug(LTag.DATABASE, "Updated nsId TherapyEvent $it")
+            }
+        }
+        batchResult.extendedBoluses.forEach { result ->
+            result.inserted.forEach {
+                uel.log(Action.EXTENDED_BOLUS, Sources.NSClient,
+                    ValueWithUnit.Timestamp(it.timestamp),
+                    ValueWithUnit.Insulin(it.amount),
+                    ValueWithUnit.UnitPerHour(it.rate),
+                    ValueWithUnit.Minute(TimeUnit.MILLISECONDS.toMinutes(it.duration).toInt())
+                )
+                aapsLogger.debug(LTag.DATABASE, "Inserted ExtendedBolus $it")
+            }
+            result.invalidated.forEach {
+                uel.log(Action.EXTENDED_BOLUS_REMOVED, Sources.NSClient,
+                    ValueWithUnit.Timestamp(it.timestamp),
+                    ValueWithUnit.Insulin(it.amount),
+                    ValueWithUnit.UnitPerHour(it.rate),
+                    ValueWithUnit.Minute(TimeUnit.MILLISECONDS.toMinutes(it.duration).toInt())
+                )
+                aapsLogger.debug(LTag.DATABASE, "Invalidated ExtendedBolus $it")
+            }
+            result.ended.forEach {
+                uel.log(Action.CANCEL_EXTENDED_BOLUS, Sources.NSClient,
+                    ValueWithUnit.Timestamp(it.timestamp),
+                    ValueWithUnit.Insulin(it.amount),
+                    ValueWithUnit.UnitPerHour(it.rate),
+                    ValueWithUnit.Minute(TimeUnit.MILLISECONDS.toMinutes(it.duration).toInt())
+                )
+                aapsLogger.debug(LTag.DATABASE, "Updated ExtendedBolus $it")
+            }
+            result.updatedNsId.forEach {
+                aapsLogger.debug(LTag.DATABASE, "Updated nsId ExtendedBolus $it")
+            }
+            result.updatedDuration.forEach {
+                aapsLogger.debug(LTag.DATABASE, "Updated duration ExtendedBolus $it")
+            }
+        }
+        batchResult.temporaryBasals.forEach { result ->
+            result.inserted.forEach {
+                uel.log(Action.TEMP_BASAL, Sources.NSClient,
+                    ValueWithUnit.Timestamp(it.timestamp),
+                    if (it.isAbsolute) ValueWithUnit.UnitPerHour(it.rate) else ValueWithUnit.Percent(it.rate.toInt()),
+                    ValueWithUnit.Minute(TimeUnit.MILLISECONDS.toMinutes(it.duration).toInt())
+                )
+                aapsLogger.debug(LTag.DATABASE, "Inserted TemporaryBasal $it")
+            }
+            result.invalidated.forEach {
+                uel.log(Action.TEMP_BASAL_REMOVED, Sources.NSClient,
+                    ValueWithUnit.Timestamp(it.timestamp),
+                    if (it.isAbsolute) ValueWithUnit.UnitPerHour(it.rate) else ValueWithUnit.Percent(it.rate.toInt()),
+                    ValueWithUnit.Minute(TimeUnit.MILLISECONDS.toMinutes(it.duration).toInt())
+                )
+                aapsLogger.debug(LTag.DATABASE, "Invalidated TemporaryBasal $it")
+            }
+            result.ended.forEach {
+                uel.log(Action.CANCEL_TEMP_BASAL, Sources.NSClient,
+                    ValueWithUnit.Timestamp(it.timestamp),
+                    if (it.isAbsolute) ValueWithUnit.UnitPerHour(it.rate) else ValueWithUnit.Percent(it.rate.toInt()),
+                    ValueWithUnit.Minute(TimeUnit.MILLISECONDS.toMinutes(it.duration).toInt())
+                )
+                aapsLogger.debug(LTag.DATABASE, "Ended TemporaryBasal $it")
+            }
+            result.updatedNsId.forEach {
+                aapsLogger.debug(LTag.DATABASE, "Updated nsId TemporaryBasal $it")
+            }
+            result.updatedDuration.forEach {
+                aapsLogger.debug(LTag.DATABASE, "Updated duration TemporaryBasal $it")
+            }
+        }
+        batchResult.profileSwitches.forEach { result ->
+            result.inserted.forEach {
+                uel.log(Action.PROFILE_SWITCH, Sources.NSClient,
+                    ValueWithUnit.Timestamp(it.timestamp))
+                aapsLogger.debug(LTag.DATABASE, "Inserted ProfileSwitch $it")
+            }
+            result.invalidated.forEach {
+                uel.log(Action.PROFILE_SWITCH_REMOVED, Sources.NSClient,
+                    ValueWithUnit.Timestamp(it.timestamp))
+                aapsLogger.debug(LTag.DATABASE, "Invalidated ProfileSwitch $it")
+            }
+            result.updatedNsId.forEach {
+                aapsLogger.debug(LTag.DATABASE, "Updated nsId ProfileSwitch $it")
+            }
+        }
+        batchResult.offlineEvents.forEach { result ->
+            result.inserted.forEach { oe ->
+                uel.log(Action.LOOP_CHANGE, Sources.NSClient,
+                    ValueWithUnit.OfflineEventReason(oe.reason),
+                    ValueWithUnit.Minute(TimeUnit.MILLISECONDS.toMinutes(oe.duration).toInt())
+                )
+                aapsLogger.debug(LTag.DATABASE, "Inserted OfflineEvent $oe")
+            }
+            result.invalidated.forEach { oe ->
+                uel.log(Action.LOOP_REMOVED, Sources.NSClient,
+                    ValueWithUnit.OfflineEventReason(oe.reason),
+                    ValueWithUnit.Minute(TimeUnit.MILLISECONDS.toMinutes(oe.duration).toInt())
+                )
+                aapsLogger.debug(LTag.DATABASE, "Invalidated OfflineEvent $oe")
+            }
+            result.ended.forEach { oe ->
+                uel.log(Action.LOOP_CHANGE, Sources.NSClient,
+                    ValueWithUnit.OfflineEventReason(oe.reason),
+                    ValueWithUnit.Minute(TimeUnit.MILLISECONDS.toMinutes(oe.duration).toInt())
+                )
+                aapsLogger.debug(LTag.DATABASE, "Updated OfflineEvent $oe")
+            }
+            result.updatedNsId.forEach {
+                aapsLogger.debug(LTag.DATABASE, "Updated nsId OfflineEvent $it")
+            }
+            result.updatedDuration.forEach {
+                aapsLogger.debug(LTag.DATABASE, "Updated duration OfflineEvent $it")
+            }
+        }
+    }
+
     init {
         (context.applicationContext as HasAndroidInjector).androidInjector().inject(this)
     }
@@ -102,6 +102,6 @@ class NSClientFragment : DaggerFragment() {
         if (nsClientPlugin.autoscroll) binding.logScrollview.fullScroll(ScrollView.FOCUS_DOWN)
         binding.url.text = nsClientPlugin.url()
         binding.status.text = nsClientPlugin.status
-        binding.queue.text = dataSyncSelector.queueSize().toString()
+        binding.queue.text = rh.gs(R.string.ns_queue_status, dataSyncSelector.queueSize(), dataSyncSelector.queueThroughput())
     }
 }
\ No newline at end of file
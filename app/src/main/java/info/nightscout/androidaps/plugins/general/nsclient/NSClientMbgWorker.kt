@@ -37,7 +37,7 @@ class NSClientMbgWorker(
         if (!acceptNSData) return Result.success(workDataOf("Result" to "Sync not enabled"))
 
         val mbgArray = dataWorker.pickupJSONArray(inputData.getLong(DataWorker.STORE_KEY, -1))
-            ?: return Result.failure(workDataOf("Error" to "missing input data"))
+            ?: return Result.success(workDataOf("Result" to "payload dropped or expired"))
         for (i in 0 until mbgArray.length()) {
             val nsMbg = NSMbg(mbgArray.getJSONObject(i))
             if (!nsMbg.isValid()) continue
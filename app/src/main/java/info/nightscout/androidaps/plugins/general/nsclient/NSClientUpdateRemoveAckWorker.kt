@@ -32,7 +32,7 @@ class NSClientUpdateRemoveAckWorker(
         var ret = Result.success()
 
         val ack = dataWorker.pickupObject(inputData.getLong(DataWorker.STORE_KEY, -1)) as NSUpdateAck?
-            ?: return Result.failure(workDataOf("Error" to "missing input data"))
+            ?: return Result.success(workDataOf("Result" to "payload dropped or expired"))
 
         // new room way
         when (ack.originalObject) {
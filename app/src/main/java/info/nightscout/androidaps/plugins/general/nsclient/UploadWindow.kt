@@ -0,0 +1,82 @@
+package info.nightscout.androidaps.plugins.general.nsclient
+
+import java.util.*
+import kotlin.math.max
+
+/**
+ * Records of one collection sent to NS and waiting for ack.
+ *
+ * Up to [size] records may be in flight at once. Acks may come in any order, but the confirmed
+ * last synced id (stored under [lastSyncedKey]) is advanced only to the id before the oldest
+ * unacknowledged record. Then nothing is skipped if some request is lost.
+ * Record is not sent again while its previous version is still in flight
+ * (add followed by update before nsId is known would create duplicate in NS).
+ */
+class UploadWindow(val name: String, val lastSyncedKey: Int, private val size: () -> Int) {
+
+    private class InFlight(val recordId: Long, val sentAt: Long)
+
+    // updateRecordId -> sent record
+    private val inFlight = TreeMap<Long, InFlight>()
+
+    // highest updateRecordId sent or skipped
+    private var lastDispatched = 0L
+
+    /** id to continue reading changed records after */
+    @Synchronized
+    fun continueFrom(lastSynced: Long): Long = max(lastSynced, lastDispatched)
+
+    @Synchronized
+    fun hasRoom(): Boolean = inFlight.size < size()
+
+    @Synchronized
+    fun isInFlight(recordId: Long): Boolean = inFlight.values.any { it.recordId == recordId }
+
+    @Synchronized
+    fun inFlightCount(): Int = inFlight.size
+
+    @Synchronized
+    fun dispatched(recordId: Long, updateRecordId: Long, now: Long) {
+        inFlight[updateRecordId] = InFlight(recordId, now)
+        lastDispatched = max(lastDispatched, updateRecordId)
+    }
+
+    /**
+     * Record doesn't need upload
+     * @return id which can be confirmed as synced
+     */
+    @Synchronized
+    fun skipped(updateRecordId: Long): Long {
+        lastDispatched = max(lastDispatched, updateRecordId)
+        return watermark()
+    }
+
+    /**
+     * @return id which can be confirmed as synced or null if record is not in flight (late ack after reset)
+     */
+    @Synchronized
+    fun acked(updateRecordId: Long): Long? =
+        inFlight.remove(updateRecordId)?.let { watermark() }
+
+    /**
+     * Forget everything in flight if some request waits for ack since [olderThan].
+     * Reading continues from last confirmed id again
+     * @return true if window has been reset
+     */
+    @Synchronized
+    fun expireStale(olderThan: Long): Boolean {
+        if (inFlight.values.none { it.sentAt < olderThan }) return false
+        reset()
+        return true
+    }
+
+    @Synchronized
+    fun reset() {
+        inFlight.clear()
+        lastDispatched = 0
+    }
+
+    private fun watermark(): Long = if (inFlight.isEmpty()) lastDispatched else inFlight.firstKey() - 1
+
+    override fun toString(): String = "$name inFlight=${inFlightCount()} lastDispatched=$lastDispatched"
+}
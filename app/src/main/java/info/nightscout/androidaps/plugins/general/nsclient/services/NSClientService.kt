@@ -41,6 +41,7 @@ import info.nightscout.androidaps.plugins.source.NSClientSourcePlugin.NSClientSo
 import info.nightscout.androidaps.receivers.DataWorker
 import info.nightscout.androidaps.utils.DateUtil
 import info.nightscout.androidaps.utils.FabricPrivacy
+import info.nightscout.androidaps.utils.JsonHelper
 import info.nightscout.androidaps.utils.JsonHelper.safeGetString
 import info.nightscout.androidaps.utils.JsonHelper.safeGetStringAllowNull
 import info.nightscout.androidaps.utils.T.Companion.mins
@@ -85,6 +86,9 @@ class NSClientService : DaggerService() {
         private const val WATCHDOG_INTERVAL_MINUTES = 2
         private const val WATCHDOG_RECONNECT_IN = 15
         private const val WATCHDOG_MAX_CONNECTIONS = 5
+
+        // max records of one collection handed over to one worker (and one db transaction)
+        private const val INGEST_CHUNK_SIZE = 200
     }
 
     private val disposable = CompositeDisposable()
@@ -182,16 +186,16 @@ class NSClientService : DaggerService() {
         lastAckTime = dateUtil.now()
         dataWorker.enqueue(
             OneTimeWorkRequest.Builder(NSClientAddAckWorker::class.java)
-                .setInputData(dataWorker.storeInputData(ack, null))
-                .build())
+                .setInputData(dataWorker.storeInputData(ack, null, DataWorker.Queue.NSCLIENT_ACK))
+                .build(), DataWorker.Queue.NSCLIENT_ACK)
     }
 
     private fun processUpdateAck(ack: NSUpdateAck) {
         lastAckTime = dateUtil.now()
         dataWorker.enqueue(
             OneTimeWorkRequest.Builder(NSClientUpdateRemoveAckWorker::class.java)
-                .setInputData(dataWorker.storeInputData(ack, null))
-                .build())
+                .setInputData(dataWorker.storeInputData(ack, null, DataWorker.Queue.NSCLIENT_ACK))
+                .build(), DataWorker.Queue.NSCLIENT_ACK)
     }
 
     private fun processAuthAck(ack: NSAuthAck) {
@@ -473,28 +477,23 @@ class NSClientService : DaggerService() {
                             rxBus.send(EventNSClientNewLog("PROFILE", "profile received"))
                             dataWorker.enqueue(
                                 OneTimeWorkRequest.Builder(LocalProfilePlugin.NSProfileWorker::class.java)
-                                    .setInputData(dataWorker.storeInputData(profileStoreJson, null))
-                                    .build())
+                                    .setInputData(dataWorker.storeInputData(profileStoreJson, null, DataWorker.Queue.NSCLIENT))
+                                    .build(), DataWorker.Queue.NSCLIENT)
                             xDripBroadcast.sendProfile(profileStoreJson)
                         }
                     }
                     if (data.has("treatments")) {
                         val treatments = data.getJSONArray("treatments")
-                        val addedOrUpdatedTreatments = JSONArray()
                         if (treatments.length() > 0) rxBus.send(EventNSClientNewLog("DATA", "received " + treatments.length() + " treatments"))
-                        for (index in 0 until treatments.length()) {
-                            val jsonTreatment = treatments.getJSONObject(index)
-                            val action = safeGetStringAllowNull(jsonTreatment, "action", null)
-                            if (action == null) addedOrUpdatedTreatments.put(jsonTreatment)
-                            else if (action == "update") addedOrUpdatedTreatments.put(jsonTreatment)
-                        }
-                        if (addedOrUpdatedTreatments.length() > 0) {
-                            dataWorker.enqueue(
-                                OneTimeWorkRequest.Builder(NSClientAddUpdateWorker::class.java)
-                                    .setInputData(dataWorker.storeInputData(addedOrUpdatedTreatments, null))
-                                    .build())
-                            xDripBroadcast.sendTreatments(addedOrUpdatedTreatments)
-                        }
+                        // only added or updated
+                        JsonHelper.chunked(treatments, INGEST_CHUNK_SIZE) { safeGetStringAllowNull(it, "action", null).let { action -> action == null || action == "update" } }
+                            .forEach { addedOrUpdatedTreatments ->
+                                dataWorker.enqueue(
+                                    OneTimeWorkRequest.Builder(NSClientAddUpdateWorker::class.java)
+                                        .setInputData(dataWorker.storeInputData(addedOrUpdatedTreatments, null, DataWorker.Queue.NSCLIENT))
+                                        .build(), DataWorker.Queue.NSCLIENT)
+                                xDripBroadcast.sendTreatments(addedOrUpdatedTreatments)
+                            }
                     }
                     if (data.has("devicestatus")) {
                         val devicestatuses = data.getJSONArray("devicestatus")
@@ -506,18 +505,22 @@ class NSClientService : DaggerService() {
                     if (data.has("food")) {
                         val foods = data.getJSONArray("food")
                         if (foods.length() > 0) rxBus.send(EventNSClientNewLog("DATA", "received " + foods.length() + " foods"))
-                        dataWorker.enqueue(
-                            OneTimeWorkRequest.Builder(FoodWorker::class.java)
-                                .setInputData(dataWorker.storeInputData(foods, null))
-                                .build())
+                        JsonHelper.chunked(foods, INGEST_CHUNK_SIZE).forEach { part ->
+                            dataWorker.enqueue(
+                                OneTimeWorkRequest.Builder(FoodWorker::class.java)
+                                    .setInputData(dataWorker.storeInputData(part, null, DataWorker.Queue.NSCLIENT))
+                                    .build(), DataWorker.Queue.NSCLIENT)
+                        }
                     }
                     if (data.has("mbgs")) {
                         val mbgArray = data.getJSONArray("mbgs")
                         if (mbgArray.length() > 0) rxBus.send(EventNSClientNewLog("DATA", "received " + mbgArray.length() + " mbgs"))
-                        dataWorker.enqueue(
-                            OneTimeWorkRequest.Builder(NSClientMbgWorker::class.java)
-                                .setInputData(dataWorker.storeInputData(mbgArray, null))
-                                .build())
+                        JsonHelper.chunked(mbgArray, INGEST_CHUNK_SIZE).forEach { part ->
+                            dataWorker.enqueue(
+                                OneTimeWorkRequest.Builder(NSClientMbgWorker::class.java)
+                                    .setInputData(dataWorker.storeInputData(part, null, DataWorker.Queue.NSCLIENT))
+                                    .build(), DataWorker.Queue.NSCLIENT)
+                        }
                     }
                     if (data.has("cals")) {
                         val cals = data.getJSONArray("cals")
@@ -527,10 +530,12 @@ class NSClientService : DaggerService() {
                     if (data.has("sgvs")) {
                         val sgvs = data.getJSONArray("sgvs")
                         if (sgvs.length() > 0) rxBus.send(EventNSClientNewLog("DATA", "received " + sgvs.length() + " sgvs"))
-                        dataWorker.enqueue(OneTimeWorkRequest.Builder(NSClientSourceWorker::class.java)
-                            .setInputData(dataWorker.storeInputData(sgvs, null))
-                            .build())
-                        xDripBroadcast.sendSgvs(sgvs)
+                        JsonHelper.chunked(sgvs, INGEST_CHUNK_SIZE).forEach { part ->
+                            dataWorker.enqueue(OneTimeWorkRequest.Builder(NSClientSourceWorker::class.java)
+                                .setInputData(dataWorker.storeInputData(part, null, DataWorker.Queue.NSCLIENT))
+                                .build(), DataWorker.Queue.NSCLIENT)
+                            xDripBroadcast.sendSgvs(part)
+                        }
                     }
                     rxBus.send(EventNSClientNewLog("LAST", dateUtil.dateAndTimeString(latestDateInReceivedData)))
                 } catch (e: JSONException) {
@@ -543,33 +548,45 @@ class NSClientService : DaggerService() {
         }
     }
 
-    fun dbUpdate(collection: String, _id: String?, data: JSONObject?, originalObject: Any, progress: String) {
+    /**
+     * @return true if request has been sent and ack can be expected
+     */
+    fun dbUpdate(collection: String, _id: String?, data: JSONObject?, originalObject: Any, progress: String): Boolean {
         try {
-            if (_id == null) return
-            if (!isConnected || !hasWriteAuth) return
+            if (_id == null) return false
+            if (!isConnected || !hasWriteAuth) return false
             val message = JSONObject()
             message.put("collection", collection)
             message.put("_id", _id)
             message.put("data", data)
-            socket?.emit("dbUpdate", message, NSUpdateAck("dbUpdate", _id, aapsLogger, rxBus, originalObject))
+            val socket = socket ?: return false
+            socket.emit("dbUpdate", message, NSUpdateAck("dbUpdate", _id, aapsLogger, rxBus, originalObject))
             rxBus.send(EventNSClientNewLog("DBUPDATE $collection", "Sent " + originalObject.javaClass.simpleName + " " +
                 "" + _id + " " + data + progress))
+            return true
         } catch (e: JSONException) {
             aapsLogger.error("Unhandled exception", e)
         }
+        return false
     }
 
-    fun dbAdd(collection: String, data: JSONObject, originalObject: Any, progress: String) {
+    /**
+     * @return true if request has been sent and ack can be expected
+     */
+    fun dbAdd(collection: String, data: JSONObject, originalObject: Any, progress: String): Boolean {
         try {
-            if (!isConnected || !hasWriteAuth) return
+            if (!isConnected || !hasWriteAuth) return false
             val message = JSONObject()
             message.put("collection", collection)
             message.put("data", data)
-            socket?.emit("dbAdd", message, NSAddAck(aapsLogger, rxBus, originalObject))
+            val socket = socket ?: return false
+            socket.emit("dbAdd", message, NSAddAck(aapsLogger, rxBus, originalObject))
             rxBus.send(EventNSClientNewLog("DBADD $collection", "Sent " + originalObject.javaClass.simpleName + " " + data + " " + progress))
+            return true
         } catch (e: JSONException) {
             aapsLogger.error("Unhandled exception", e)
         }
+        return false
     }
 
     fun sendAlarmAck(alarmAck: AlarmAck) {
@@ -87,7 +87,7 @@ class OverviewPlugin @Inject constructor(
                                rxBus.send(EventUpdateOverviewNotification("EventDismissNotification"))
                        }, fabricPrivacy::logException)
         disposable += rxBus
-            .toObservable(EventIobCalculationProgress::class.java)
+            .toObservableCoalesced(EventIobCalculationProgress::class.java)
             .observeOn(aapsSchedulers.io)
             .subscribe({ overviewData.calcProgress = it.progress; overviewBus.send(EventUpdateOverviewCalcProgress("EventIobCalculationProgress")) }, fabricPrivacy::logException)
         disposable += rxBus
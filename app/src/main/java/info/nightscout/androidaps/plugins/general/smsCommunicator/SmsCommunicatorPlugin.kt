@@ -186,7 +186,7 @@ class SmsCommunicatorPlugin @Inject constructor(
         @Suppress("SpellCheckingInspection")
         override fun doWork(): Result {
             val bundle = dataWorker.pickupBundle(inputData.getLong(DataWorker.STORE_KEY, -1))
-                ?: return Result.failure(workDataOf("Error" to "missing input data"))
+                ?: return Result.success(workDataOf("Result" to "payload dropped or expired"))
             val format = bundle.getString("format")
                 ?: return Result.failure(workDataOf("Error" to "missing format in input data"))
             val pdus = bundle["pdus"] as Array<*>
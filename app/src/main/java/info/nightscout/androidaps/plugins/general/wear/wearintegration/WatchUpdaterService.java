@@ -21,8 +21,11 @@ import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
 import com.google.android.gms.wearable.WearableListenerService;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -110,6 +113,11 @@ public class WatchUpdaterService extends WearableListenerService implements Goog
 
     private Handler handler;
 
+    private final WearSyncState basalsSyncState = new WearSyncState();
+    // sync version announced by watch in resend request, 0 = full payloads only
+    private int watchSyncVersion = 0;
+    private long bgSeq = System.currentTimeMillis();
+
     // Phone
     private static final String CAPABILITY_PHONE_APP = "phone_app_sync_bgs";
     private static final String MESSAGE_PATH_PHONE = "/phone_message_path";
@@ -160,7 +168,7 @@ public class WatchUpdaterService extends WearableListenerService implements Goog
             handler.post(() -> {
                 if (googleApiClient != null && googleApiClient.isConnected()) {
                     if (ACTION_RESEND.equals(action)) {
-                        resendData();
+                        resendData(0);
                     } else if (ACTION_OPEN_SETTINGS.equals(action)) {
                         sendNotification();
                     } else if (ACTION_SEND_STATUS.equals(action)) {
@@ -253,7 +261,12 @@ public class WatchUpdaterService extends WearableListenerService implements Goog
 
         if (wearIntegration()) {
             if (event != null && event.getPath().equals(WEARABLE_RESEND_PATH)) {
-                resendData();
+                // sync version and time of last reading stored in watch (SYNC_VERSION 1+)
+                byte[] data = event.getData();
+                watchSyncVersion = data != null && data.length > 0 ? data[0] : 0;
+                basalsSyncState.setWatchSyncVersion(watchSyncVersion);
+                long lastReadingTime = data != null && data.length >= 9 ? ByteBuffer.wrap(data, 1, 8).getLong() : 0;
+                resendData(lastReadingTime);
             }
 
             if (event != null && event.getPath().equals(WEARABLE_CANCELBOLUS_PATH)) {
@@ -291,6 +304,7 @@ public class WatchUpdaterService extends WearableListenerService implements Goog
             if (wearIntegration()) {
 
                 final DataMap dataMap = dataMapSingleBG(lastBG, glucoseStatus);
+                putBgSeq(dataMap, false);
 
                 (new SendToDataLayerThread(WEARABLE_DATA_PATH, googleApiClient)).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, dataMap);
             }
@@ -358,19 +372,34 @@ public class WatchUpdaterService extends WearableListenerService implements Goog
         return deltastring;
     }
 
-    private void resendData() {
+    // watch compares baseSeq with last received seq to detect missed readings
+    private void putBgSeq(DataMap dataMap, boolean full) {
+        if (watchSyncVersion < WearSyncState.SYNC_VERSION) return;
+        dataMap.putInt("syncVersion", WearSyncState.SYNC_VERSION);
+        dataMap.putBoolean("full", full);
+        dataMap.putLong("baseSeq", bgSeq);
+        dataMap.putLong("seq", ++bgSeq);
+    }
+
+    /**
+     * @param lastReadingTime last reading stored in watch, only newer ones are sent if watch supports it
+     */
+    private void resendData(long lastReadingTime) {
         if (googleApiClient != null && !googleApiClient.isConnected() && !googleApiClient.isConnecting()) {
             googleApiConnect();
         }
+        basalsSyncState.reset();
         long startTime = System.currentTimeMillis() - (long) (60000 * 60 * 5.5);
         GlucoseValue last_bg = iobCobCalculator.getAds().lastBg();
 
         if (last_bg == null) return;
 
-        List<GlucoseValue> graph_bgs = repository.compatGetBgReadingsDataFromTime(startTime, true).blockingGet();
+        boolean full = watchSyncVersion < WearSyncState.SYNC_VERSION || lastReadingTime < startTime;
+        List<GlucoseValue> graph_bgs = repository.compatGetBgReadingsDataFromTime(full ? startTime : lastReadingTime + 1, true).blockingGet();
         GlucoseStatus glucoseStatus = glucoseStatusProvider.getGlucoseStatusData(true);
 
-        if (!graph_bgs.isEmpty()) {
+        // empty delta is sent too, watch needs new seq
+        if (!graph_bgs.isEmpty() || !full) {
             DataMap entries = dataMapSingleBG(last_bg, glucoseStatus);
             final ArrayList<DataMap> dataMaps = new ArrayList<>(graph_bgs.size());
             for (GlucoseValue bg : graph_bgs) {
@@ -378,6 +407,7 @@ public class WatchUpdaterService extends WearableListenerService implements Goog
                 dataMaps.add(dataMap);
             }
             entries.putDataMapArrayList("entries", dataMaps);
+            putBgSeq(entries, full);
             (new SendToDataLayerThread(WEARABLE_DATA_PATH, googleApiClient)).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, entries);
         }
         sendPreferences();
@@ -391,7 +421,9 @@ public class WatchUpdaterService extends WearableListenerService implements Goog
         }
 
         long now = System.currentTimeMillis();
-        final long startTimeWindow = now - (long) (60000 * 60 * 5.5);
+        // aligned to 5 min steps so unchanged segments are the same in every payload
+        long step = 5 * 60 * 1000L;
+        final long startTimeWindow = (now - (long) (60000 * 60 * 5.5)) / step * step;
 
 
         ArrayList<DataMap> basals = new ArrayList<>();
@@ -525,11 +557,12 @@ public class WatchUpdaterService extends WearableListenerService implements Goog
         }
 
 
-        DataMap dm = new DataMap();
-        dm.putDataMapArrayList("basals", basals);
-        dm.putDataMapArrayList("temps", temps);
-        dm.putDataMapArrayList("boluses", boluses);
-        dm.putDataMapArrayList("predictions", predictions);
+        Map<String, ArrayList<DataMap>> lists = new HashMap<>();
+        lists.put("basals", basals);
+        lists.put("temps", temps);
+        lists.put("boluses", boluses);
+        DataMap dm = basalsSyncState.build(lists, predictions);
+        if (dm == null) return; // nothing changed, don't wake up watch
         (new SendToDataLayerThread(BASAL_DATA_PATH, googleApiClient)).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, dm);
     }
 
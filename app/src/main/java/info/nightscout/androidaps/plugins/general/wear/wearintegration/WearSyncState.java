@@ -0,0 +1,103 @@
+package info.nightscout.androidaps.plugins.general.wear.wearintegration;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.wearable.DataMap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Basals, temps and boluses last sent to watch.
+ * <p>
+ * When watch supports it ({@link #SYNC_VERSION}) only items added or changed since previous
+ * payload are sent with keys of removed ones. Every payload carries its sequence number and
+ * the sequence it is based on. Watch merges it to stored data or asks for full resend
+ * if it has missed some payload.
+ * Must match DataMapDelta in wear module
+ */
+class WearSyncState {
+
+    static final int SYNC_VERSION = 1;
+
+    static final String[] LISTS = {"basals", "temps", "boluses"};
+
+    private long seq = System.currentTimeMillis();
+    private boolean deltaSupported = false;
+    // list name -> key -> item
+    @Nullable private Map<String, Map<String, DataMap>> lastSent = null;
+    @Nullable private ArrayList<DataMap> lastPredictions = null;
+
+    synchronized void setWatchSyncVersion(int version) {
+        deltaSupported = version >= SYNC_VERSION;
+    }
+
+    // next payload will be full
+    synchronized void reset() {
+        lastSent = null;
+        lastPredictions = null;
+    }
+
+    /**
+     * @return payload to send or null if nothing changed since last one
+     */
+    @Nullable synchronized DataMap build(Map<String, ArrayList<DataMap>> lists, ArrayList<DataMap> predictions) {
+        Map<String, Map<String, DataMap>> current = new HashMap<>();
+        for (String list : LISTS) current.put(list, byKey(list, lists.get(list)));
+
+        DataMap dm = new DataMap();
+        boolean changed = false;
+        if (!deltaSupported || lastSent == null) {
+            for (String list : LISTS) dm.putDataMapArrayList(list, lists.get(list));
+            dm.putDataMapArrayList("predictions", predictions);
+            dm.putBoolean("full", true);
+            changed = true;
+        } else {
+            for (String list : LISTS) {
+                Map<String, DataMap> previous = lastSent.get(list);
+                ArrayList<DataMap> updated = new ArrayList<>();
+                ArrayList<String> removed = new ArrayList<>();
+                for (Map.Entry<String, DataMap> item : current.get(list).entrySet())
+                    if (!item.getValue().equals(previous.get(item.getKey()))) updated.add(item.getValue());
+                for (String key : previous.keySet())
+                    if (!current.get(list).containsKey(key)) removed.add(key);
+                if (!updated.isEmpty()) dm.putDataMapArrayList(list, updated);
+                if (!removed.isEmpty()) dm.putStringArrayList(removedKey(list), removed);
+                changed |= !updated.isEmpty() || !removed.isEmpty();
+            }
+            if (!predictions.equals(lastPredictions)) {
+                dm.putDataMapArrayList("predictions", predictions);
+                changed = true;
+            }
+            dm.putBoolean("full", false);
+        }
+        if (!changed) return null;
+
+        lastSent = current;
+        lastPredictions = predictions;
+        if (deltaSupported) {
+            dm.putInt("syncVersion", SYNC_VERSION);
+            dm.putLong("baseSeq", seq);
+            dm.putLong("seq", ++seq);
+        }
+        return dm;
+    }
+
+    static String removedKey(String list) {
+        return "removed_" + list;
+    }
+
+    static String key(String list, DataMap item) {
+        if (list.equals("boluses"))
+            return item.getLong("date") + (item.getDouble("carbs") > 0 ? "c" : "b");
+        return String.valueOf(item.getLong("starttime"));
+    }
+
+    private static Map<String, DataMap> byKey(String list, ArrayList<DataMap> items) {
+        Map<String, DataMap> ret = new LinkedHashMap<>();
+        for (DataMap item : items) ret.put(key(list, item), item);
+        return ret;
+    }
+}
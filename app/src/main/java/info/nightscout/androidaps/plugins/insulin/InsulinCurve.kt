@@ -0,0 +1,62 @@
+package info.nightscout.androidaps.plugins.insulin
+
+import info.nightscout.androidaps.data.Iob
+import kotlin.math.exp
+import kotlin.math.pow
+
+/**
+ * Oref exponential insulin curve for 1U precomputed at minute resolution
+ *
+ * Values between minutes are linearly interpolated. Error is far below 0.001U
+ * so there is no need to evaluate exp() for every treatment at every time
+ *
+ * @param dia duration of insulin action in hours
+ * @param peak time of peak activity in minutes
+ */
+class InsulinCurve(val dia: Double, val peak: Int) {
+
+    private val td = dia * 60
+    private val tau: Double
+    private val a: Double
+    private val s: Double
+
+    private val iob: DoubleArray
+    private val activity: DoubleArray
+
+    init {
+        val tp = peak.toDouble()
+        tau = tp * (1 - tp / td) / (1 - 2 * tp / td)
+        a = 2 * tau / td
+        s = 1 / (1 - a + (1 + a) * exp(-td / tau))
+        // one extra point to be able to interpolate up to td
+        val size = td.toInt() + 2
+        iob = DoubleArray(size) { iobForUnit(it.toDouble()) }
+        activity = DoubleArray(size) { activityForUnit(it.toDouble()) }
+    }
+
+    fun isFor(dia: Double, peak: Int): Boolean = this.dia == dia && this.peak == peak
+
+    /**
+     * Add iob and activity of amount delivered t minutes ago to result
+     */
+    fun add(amount: Double, t: Double, result: Iob) {
+        // force the IOB to 0 if over DIA hours have passed
+        if (t >= td) return
+        if (t < 0) {
+            // treatment in the future, out of table
+            result.activityContrib += amount * activityForUnit(t)
+            result.iobContrib += amount * iobForUnit(t)
+            return
+        }
+        val index = t.toInt()
+        val fraction = t - index
+        result.activityContrib += amount * (activity[index] + (activity[index + 1] - activity[index]) * fraction)
+        result.iobContrib += amount * (iob[index] + (iob[index + 1] - iob[index]) * fraction)
+    }
+
+    private fun activityForUnit(t: Double): Double =
+        (s / tau.pow(2.0)) * t * (1 - t / td) * exp(-t / tau)
+
+    private fun iobForUnit(t: Double): Double =
+        1 - s * (1 - a) * ((t.pow(2.0) / (tau * td * (1 - a)) - t / tau - 1) * exp(-t / tau) + 1)
+}
@@ -16,8 +16,6 @@ import info.nightscout.androidaps.plugins.general.overview.events.EventNewNotifi
 import info.nightscout.androidaps.plugins.general.overview.notifications.Notification
 import info.nightscout.androidaps.utils.T
 import info.nightscout.androidaps.utils.resources.ResourceHelper
-import kotlin.math.exp
-import kotlin.math.pow
 
 /**
  * Created by adrian on 13.08.2017.
@@ -68,24 +66,34 @@ abstract class InsulinOrefBasePlugin(
             return profile?.dia ?: MIN_DIA
         }
 
+    // profile switches with different dia may be used in one calculation
+    // keep curves of last few (dia, peak) combinations to not rebuild them on every switch
+    private val curves = object : LinkedHashMap<Pair<Double, Int>, InsulinCurve>(MAX_CURVES, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Pair<Double, Int>, InsulinCurve>?): Boolean = size > MAX_CURVES
+    }
+    @Volatile private var lastCurve: InsulinCurve? = null
+
+    private fun curve(dia: Double): InsulinCurve {
+        val peak = peak
+        lastCurve?.let { if (it.isFor(dia, peak)) return it }
+        return synchronized(curves) {
+            curves.getOrPut(Pair(dia, peak)) { InsulinCurve(dia, peak) }
+        }.also { lastCurve = it }
+    }
+
     override fun iobCalcForTreatment(bolus: Bolus, time: Long, dia: Double): Iob {
         val result = Iob()
-        val peak = peak
-        if (bolus.amount != 0.0) {
-            val bolusTime = bolus.timestamp
-            val t = (time - bolusTime) / 1000.0 / 60.0
+        addIobForAmount(bolus.amount, bolus.timestamp, time, dia, result)
+        return result
+    }
+
+    override fun addIobForAmount(amount: Double, treatmentTime: Long, time: Long, dia: Double, result: Iob) {
+        if (amount != 0.0) {
+            val t = (time - treatmentTime) / 1000.0 / 60.0
             val td = dia * 60 //getDIA() always >= MIN_DIA
-            val tp = peak.toDouble()
             // force the IOB to 0 if over DIA hours have passed
-            if (t < td) {
-                val tau = tp * (1 - tp / td) / (1 - 2 * tp / td)
-                val a = 2 * tau / td
-                val S = 1 / (1 - a + (1 + a) * exp(-td / tau))
-                result.activityContrib = bolus.amount * (S / tau.pow(2.0)) * t * (1 - t / td) * exp(-t / tau)
-                result.iobContrib = bolus.amount * (1 - S * (1 - a) * ((t.pow(2.0) / (tau * td * (1 - a)) - t / tau - 1) * Math.exp(-t / tau) + 1))
-            }
+            if (t < td) curve(dia).add(amount, t, result)
         }
-        return result
     }
 
     override val insulinConfiguration: InsulinConfiguration
@@ -107,5 +115,6 @@ abstract class InsulinOrefBasePlugin(
     companion object {
 
         const val MIN_DIA = 5.0
+        private const val MAX_CURVES = 8
     }
 }
\ No newline at end of file
@@ -6,6 +6,7 @@ import dagger.android.HasAndroidInjector
 import info.nightscout.androidaps.Constants
 import info.nightscout.androidaps.R
 import info.nightscout.androidaps.annotations.OpenForTesting
+import info.nightscout.androidaps.data.Iob
 import info.nightscout.androidaps.data.IobTotal
 import info.nightscout.androidaps.data.MealData
 import info.nightscout.androidaps.database.AppRepository
@@ -37,9 +38,6 @@ import info.nightscout.androidaps.utils.sharedPreferences.SP
 import io.reactivex.disposables.CompositeDisposable
 import io.reactivex.rxkotlin.plusAssign
 import org.json.JSONArray
-import java.util.concurrent.Executors
-import java.util.concurrent.ScheduledFuture
-import java.util.concurrent.TimeUnit
 import javax.inject.Inject
 import javax.inject.Singleton
 import kotlin.math.floor
@@ -79,11 +77,15 @@ class IobCobCalculatorPlugin @Inject constructor(
     private var basalDataTable = LongSparseArray<BasalData>() // oldest at index 0
 
     override var ads: AutosensDataStore = AutosensDataStore()
+    val treatmentTimeline = TreatmentTimeline()
 
     private val dataLock = Any()
-    var stopCalculationTrigger = false
+    @Volatile var stopCalculationTrigger = false
     private var thread: Thread? = null
 
+    // merges bursts of history changes (NS sync) into one recalculation
+    val recalculationScheduler = RecalculationScheduler(aapsLogger, aapsSchedulers.io, T.secs(1).msecs(), T.secs(10).msecs()) { recalculate(it) }
+
     override fun onStart() {
         super.onStart()
         // EventConfigBuilderChange
@@ -98,7 +100,7 @@ class IobCobCalculatorPlugin @Inject constructor(
             .toObservable(EventEffectiveProfileSwitchChanged::class.java)
             .observeOn(aapsSchedulers.io)
             .subscribe({ event ->
-                           newHistoryData(event.startDate, false, event)
+                           recalculationScheduler.schedule(RecalculationScheduler.Request("onEventEffectiveProfileSwitchChanged", from = event.startDate, cause = event))
                        }, fabricPrivacy::logException)
         // EventPreferenceChange
         disposable += rxBus
@@ -122,7 +124,7 @@ class IobCobCalculatorPlugin @Inject constructor(
             .toObservable(EventAppInitialized::class.java)
             .observeOn(aapsSchedulers.io)
             .subscribe(
-                { event -> runCalculation("onEventAppInitialized", System.currentTimeMillis(), bgDataReload = true, limitDataToOldestAvailable = true, cause = event) },
+                { event -> recalculationScheduler.schedule(RecalculationScheduler.Request("onEventAppInitialized", reloadBgData = true, cause = event)) },
                 fabricPrivacy::logException
             )
         // EventNewHistoryData
@@ -130,18 +132,33 @@ class IobCobCalculatorPlugin @Inject constructor(
             .toObservable(EventNewHistoryData::class.java)
             .observeOn(aapsSchedulers.io)
             .subscribe({ event -> scheduleHistoryDataChange(event) }, fabricPrivacy::logException)
+        // Keep in-memory treatments up to date
+        // No observeOn: update on the thread which committed the transaction, before the caller continues,
+        // so following queries never see the timeline older than the database
+        disposable += repository
+            .changeObservable()
+            .subscribe({ changes -> treatmentTimeline.update(changes) }, fabricPrivacy::logException)
     }
 
     override fun onStop() {
         disposable.clear()
+        recalculationScheduler.cancel()
+        treatmentTimeline.reset()
         super.onStop()
     }
 
     private fun resetDataAndRunCalculation(reason: String, event: Event?) {
-        stopCalculation(reason)
-        clearCache()
-        ads.reset()
-        runCalculation(reason, System.currentTimeMillis(), bgDataReload = false, limitDataToOldestAvailable = true, cause = event)
+        recalculationScheduler.schedule(RecalculationScheduler.Request(reason, reset = true, cause = event))
+    }
+
+    private fun recalculate(request: RecalculationScheduler.Request) {
+        stopCalculation(request.reason)
+        if (request.reset) {
+            clearCache()
+            ads.reset()
+        } else if (request.from != Long.MAX_VALUE)
+            invalidateData(request.from)
+        runCalculation(request.reason, System.currentTimeMillis(), request.reloadBgData, limitDataToOldestAvailable = true, cause = request.cause)
     }
 
     override fun clearCache() {
@@ -369,6 +386,7 @@ class IobCobCalculatorPlugin @Inject constructor(
     fun stopCalculation(from: String) {
         if (thread?.state != Thread.State.TERMINATED) {
             stopCalculationTrigger = true
+            if (thread?.isAlive == true) recalculationScheduler.calculationAborted()
             aapsLogger.debug(LTag.AUTOSENS, "Stopping calculation thread: $from")
             while (thread != null && thread?.state != Thread.State.TERMINATED) {
                 SystemClock.sleep(100)
@@ -380,6 +398,7 @@ class IobCobCalculatorPlugin @Inject constructor(
     fun runCalculation(from: String, end: Long, bgDataReload: Boolean, limitDataToOldestAvailable: Boolean, cause: Event?) {
         aapsLogger.debug(LTag.AUTOSENS, "Starting calculation thread: " + from + " to " + dateUtil.dateAndTimeAndSecondsString(end))
         if (thread == null || thread?.state == Thread.State.TERMINATED) {
+            stopCalculationTrigger = false
             thread =
                 if (sensitivityOref1Plugin.isEnabled()) IobCobOref1Thread(injector, this, from, end, bgDataReload, limitDataToOldestAvailable, cause)
                 else IobCobThread(injector, this, from, end, bgDataReload, limitDataToOldestAvailable, cause)
@@ -387,48 +406,19 @@ class IobCobCalculatorPlugin @Inject constructor(
         }
     }
 
-    // Limit rate of EventNewHistoryData
-    private val historyWorker = Executors.newSingleThreadScheduledExecutor()
-    private var scheduledHistoryPost: ScheduledFuture<*>? = null
-    private var scheduledEvent: EventNewHistoryData? = null
-
-    @Synchronized
     private fun scheduleHistoryDataChange(event: EventNewHistoryData) {
-        // if there is nothing scheduled or asking reload deeper to the past
-        if (scheduledEvent == null || event.oldDataTimestamp < (scheduledEvent?.oldDataTimestamp) ?: 0L) {
-            // cancel waiting task to prevent sending multiple posts
-            scheduledHistoryPost?.cancel(false)
-            // prepare task for execution in 1 sec
-            scheduledEvent = event
-            scheduledHistoryPost = historyWorker.schedule({
-                                                              synchronized(this) {
-                                                                  aapsLogger.debug(LTag.DATABASE, "Running newHistoryData")
-                                                                  newHistoryData(
-                                                                      event.oldDataTimestamp,
-                                                                      event.reloadBgData,
-                                                                      if (event.newestGlucoseValue != null) EventNewBG(event.newestGlucoseValue) else event
-                                                                  )
-                                                                  scheduledEvent = null
-                                                                  scheduledHistoryPost = null
-                                                              }
-                                                          }, 1L, TimeUnit.SECONDS)
-        } else {
-            // asked reload is newer -> adjust params only
-            scheduledEvent?.let {
-                // set reload bg data if was not set
-                if (!it.reloadBgData) it.reloadBgData = event.reloadBgData
-                // set Glucose value if newer
-                event.newestGlucoseValue?.let { gv ->
-                    if (gv.timestamp > (it.newestGlucoseValue?.timestamp ?: 0L)) it.newestGlucoseValue = gv
-                }
-            }
-        }
+        recalculationScheduler.schedule(
+            RecalculationScheduler.Request(
+                event.javaClass.simpleName,
+                from = event.oldDataTimestamp,
+                reloadBgData = event.reloadBgData,
+                cause = event.newestGlucoseValue?.let { EventNewBG(it) } ?: event
+            )
+        )
     }
 
     // When historical data is changed (coming from NS etc) finished calculations after this date must be invalidated
-    private fun newHistoryData(oldDataTimestamp: Long, bgDataReload: Boolean, event: Event) {
-        //log.debug("Locking onNewHistoryData");
-        stopCalculation("onEventNewHistoryData")
+    private fun invalidateData(oldDataTimestamp: Long) {
         synchronized(dataLock) {
 
             // clear up 5 min back for proper COB calculation
@@ -452,8 +442,6 @@ class IobCobCalculatorPlugin @Inject constructor(
             }
             ads.newHistoryData(time, aapsLogger, dateUtil)
         }
-        runCalculation(event.javaClass.simpleName, System.currentTimeMillis(), bgDataReload, true, event)
-        //log.debug("Releasing onNewHistoryData");
     }
 
     override fun convertToJSONArray(iobArray: Array<IobTotal>): JSONArray {
@@ -466,6 +454,9 @@ class IobCobCalculatorPlugin @Inject constructor(
 
     companion object {
 
+        // minimal interval between EventIobCalculationProgress events [ms]
+        const val PROGRESS_INTERVAL = 200L
+
         // From https://gist.github.com/IceCreamYou/6ffa1b18c4c8f6aeaad2
         // Returns the value at a given percentile in a sorted numeric array.
         // "Linear interpolation between closest ranks" method
@@ -479,6 +470,18 @@ class IobCobCalculatorPlugin @Inject constructor(
             val weight = index % 1
             return if (upper >= arr.size) arr[lower.toInt()] else arr[lower.toInt()] * (1 - weight) + arr[upper.toInt()] * weight
         }
+
+        // Same as above for first size elements of sorted primitive array
+        fun percentile(arr: DoubleArray, size: Int, p: Double): Double {
+            if (size == 0) return 0.0
+            if (p <= 0) return arr[0]
+            if (p >= 1) return arr[size - 1]
+            val index = size * p
+            val lower = floor(index)
+            val upper = lower + 1
+            val weight = index % 1
+            return if (upper >= size) arr[lower.toInt()] else arr[lower.toInt()] * (1 - weight) + arr[upper.toInt()] * weight
+        }
     }
 
     /**
@@ -505,7 +508,7 @@ class IobCobCalculatorPlugin @Inject constructor(
         val dia = profile.dia
         val divisor = sp.getDouble(R.string.key_openapsama_bolussnooze_dia_divisor, 2.0)
 
-        val boluses = repository.getBolusesDataFromTime(toTime - range(), true).blockingGet()
+        val boluses = getBolusesFromTimeToTime(toTime - range(), toTime)
 
         boluses.forEach { t ->
             if (t.isValid && t.timestamp < toTime) {
@@ -533,15 +536,10 @@ class IobCobCalculatorPlugin @Inject constructor(
         val now = dateUtil.now()
         val pumpInterface = activePlugin.activePump
         if (!pumpInterface.isFakingTempsByExtendedBoluses) {
-            val extendedBoluses = repository.getExtendedBolusDataFromTimeToTime(toTime - range(), toTime, true).blockingGet()
+            val extendedBoluses = getExtendedBolusesFromTimeToTime(toTime - range(), toTime)
             for (pos in extendedBoluses.indices) {
-                val e = extendedBoluses[pos]
+                val e = extendedBoluses[pos].cutAt(now)
                 if (e.timestamp > toTime) continue
-                if (e.end > now) {
-                    val newDuration = now - e.timestamp
-                    e.amount *= newDuration.toDouble() / e.duration
-                    e.duration = newDuration
-                }
                 val profile = profileFunction.getProfile(e.timestamp) ?: return total
                 val calc = e.iobCalc(toTime, profile, activePlugin.activeInsulin)
                 total.plus(calc)
@@ -550,6 +548,29 @@ class IobCobCalculatorPlugin @Inject constructor(
         return total
     }
 
+    private fun getBolusesFromTimeToTime(from: Long, to: Long): List<Bolus> =
+        if (treatmentTimeline.covers(from)) treatmentTimeline.getBoluses(from, to)
+        else repository.getBolusesDataFromTimeToTime(from, to, true).blockingGet()
+
+    private fun getTemporaryBasalsFromTimeToTime(from: Long, to: Long): List<TemporaryBasal> =
+        if (treatmentTimeline.covers(from)) treatmentTimeline.getTemporaryBasals(from, to)
+        else repository.getTemporaryBasalsDataFromTimeToTime(from, to, true).blockingGet()
+
+    private fun getExtendedBolusesFromTimeToTime(from: Long, to: Long): List<ExtendedBolus> =
+        if (treatmentTimeline.covers(from)) treatmentTimeline.getExtendedBoluses(from, to)
+        else repository.getExtendedBolusDataFromTimeToTime(from, to, true).blockingGet()
+
+    // Records may be shared with TreatmentTimeline. Never modify them in place
+    private fun TemporaryBasal.cutAt(now: Long): TemporaryBasal =
+        if (end > now) copy().also { it.duration = now - timestamp } else this
+
+    private fun ExtendedBolus.cutAt(now: Long): ExtendedBolus =
+        if (end > now) copy().also {
+            val newDuration = now - timestamp
+            it.amount *= newDuration.toDouble() / duration
+            it.duration = newDuration
+        } else this
+
     override fun getTempBasal(timestamp: Long): TemporaryBasal? {
         val tb = repository.getTemporaryBasalActiveAt(timestamp).blockingGet()
         if (tb is ValueWrapper.Existing) return tb.value
@@ -589,6 +610,8 @@ class IobCobCalculatorPlugin @Inject constructor(
 
     override fun calculateAbsoluteIobFromBaseBasals(toTime: Long): IobTotal {
         val total = IobTotal(toTime)
+        val insulin = activePlugin.activeInsulin
+        val iob = Iob()
         var i = toTime - range()
         while (i < toTime) {
             val profile = profileFunction.getProfile(i)
@@ -597,17 +620,11 @@ class IobCobCalculatorPlugin @Inject constructor(
                 continue
             }
             val running = profile.getBasal(i)
-            val bolus = Bolus(
-                timestamp = i,
-                amount = running * 5.0 / 60.0,
-                type = Bolus.Type.NORMAL,
-                isBasalInsulin = true
-            )
-            val iob = bolus.iobCalc(activePlugin, toTime, profile.dia)
-            total.basaliob += iob.iobContrib
-            total.activity += iob.activityContrib
+            insulin.addIobForAmount(running * 5.0 / 60.0, i, toTime, profile.dia, iob)
             i += T.mins(5).msecs()
         }
+        total.basaliob += iob.iobContrib
+        total.activity += iob.activityContrib
         return total
     }
 
@@ -619,28 +636,22 @@ class IobCobCalculatorPlugin @Inject constructor(
         val now = dateUtil.now()
         val pumpInterface = activePlugin.activePump
 
-        val temporaryBasals = repository.getTemporaryBasalsDataFromTimeToTime(toTime - range(), toTime, true).blockingGet()
+        val temporaryBasals = getTemporaryBasalsFromTimeToTime(toTime - range(), toTime)
         for (pos in temporaryBasals.indices) {
-            val t = temporaryBasals[pos]
+            val t = temporaryBasals[pos].cutAt(now)
             if (t.timestamp > toTime) continue
             val profile = profileFunction.getProfile(t.timestamp) ?: continue
-            if (t.end > now) t.duration = now - t.timestamp
             val calc = t.iobCalc(toTime, profile, activePlugin.activeInsulin)
             //log.debug("BasalIOB " + new Date(time) + " >>> " + calc.basalIob);
             total.plus(calc)
         }
         if (pumpInterface.isFakingTempsByExtendedBoluses) {
             val totalExt = IobTotal(toTime)
-            val extendedBoluses = repository.getExtendedBolusDataFromTimeToTime(toTime - range(), toTime, true).blockingGet()
+            val extendedBoluses = getExtendedBolusesFromTimeToTime(toTime - range(), toTime)
             for (pos in extendedBoluses.indices) {
-                val e = extendedBoluses[pos]
+                val e = extendedBoluses[pos].cutAt(now)
                 if (e.timestamp > toTime) continue
                 val profile = profileFunction.getProfile(e.timestamp) ?: continue
-                if (e.end > now) {
-                    val newDuration = now - e.timestamp
-                    e.amount *= newDuration.toDouble() / e.duration
-                    e.duration = newDuration
-                }
                 val calc = e.iobCalc(toTime, profile, activePlugin.activeInsulin)
                 totalExt.plus(calc)
             }
@@ -658,28 +669,22 @@ class IobCobCalculatorPlugin @Inject constructor(
         val total = IobTotal(toTime)
         val pumpInterface = activePlugin.activePump
         val now = dateUtil.now()
-        val temporaryBasals = repository.getTemporaryBasalsDataFromTimeToTime(toTime - range(), toTime, true).blockingGet()
+        val temporaryBasals = getTemporaryBasalsFromTimeToTime(toTime - range(), toTime)
         for (pos in temporaryBasals.indices) {
-            val t = temporaryBasals[pos]
+            val t = temporaryBasals[pos].cutAt(now)
             if (t.timestamp > toTime) continue
             val profile = profileFunction.getProfile(t.timestamp) ?: continue
-            if (t.end > now) t.duration = now - t.timestamp
             val calc = t.iobCalc(toTime, profile, lastAutosensResult, exercise_mode, half_basal_exercise_target, isTempTarget, activePlugin.activeInsulin)
             //log.debug("BasalIOB " + new Date(time) + " >>> " + calc.basalIob);
             total.plus(calc)
         }
         if (pumpInterface.isFakingTempsByExtendedBoluses) {
             val totalExt = IobTotal(toTime)
-            val extendedBoluses = repository.getExtendedBolusDataFromTimeToTime(toTime - range(), toTime, true).blockingGet()
+            val extendedBoluses = getExtendedBolusesFromTimeToTime(toTime - range(), toTime)
             for (pos in extendedBoluses.indices) {
-                val e = extendedBoluses[pos]
+                val e = extendedBoluses[pos].cutAt(now)
                 if (e.timestamp > toTime) continue
                 val profile = profileFunction.getProfile(e.timestamp) ?: continue
-                if (e.end > now) {
-                    val newDuration = now - e.timestamp
-                    e.amount *= newDuration.toDouble() / e.duration
-                    e.duration = newDuration
-                }
                 val calc = e.iobCalc(toTime, profile, lastAutosensResult, exercise_mode, half_basal_exercise_target, isTempTarget, activePlugin.activeInsulin)
                 totalExt.plus(calc)
             }
@@ -14,6 +14,7 @@ import info.nightscout.androidaps.interfaces.PluginType
 import info.nightscout.androidaps.interfaces.ProfileFunction
 import info.nightscout.androidaps.logging.AAPSLogger
 import info.nightscout.androidaps.logging.LTag
+import info.nightscout.androidaps.logging.debug
 import info.nightscout.androidaps.plugins.aps.openAPSSMB.SMBDefaults
 import info.nightscout.androidaps.plugins.bus.RxBus
 import info.nightscout.androidaps.plugins.general.overview.events.EventNewNotification
@@ -30,6 +31,7 @@ import info.nightscout.androidaps.utils.T
 import info.nightscout.androidaps.utils.buildHelper.BuildHelper
 import info.nightscout.androidaps.utils.resources.ResourceHelper
 import info.nightscout.androidaps.utils.sharedPreferences.SP
+import info.nightscout.androidaps.utils.tracing.LoopTracer
 import java.util.*
 import javax.inject.Inject
 import kotlin.math.abs
@@ -58,6 +60,7 @@ class IobCobThread @Inject internal constructor(
     @Inject lateinit var activePlugin: ActivePlugin
     @Inject lateinit var buildHelper: BuildHelper
     @Inject lateinit var profiler: Profiler
+    @Inject lateinit var loopTracer: LoopTracer
     @Inject lateinit var fabricPrivacy: FabricPrivacy
     @Inject lateinit var dateUtil: DateUtil
     @Inject lateinit var repository: AppRepository
@@ -72,6 +75,7 @@ class IobCobThread @Inject internal constructor(
     override fun run() {
         val start = dateUtil.now()
         mWakeLock?.acquire(T.mins(10).msecs())
+        val traceStart = loopTracer.begin()
         try {
             aapsLogger.debug(LTag.AUTOSENS, "AUTOSENSDATA thread started: $from")
             if (!profileFunction.isProfileValid("IobCobThread")) {
@@ -84,6 +88,8 @@ class IobCobThread @Inject internal constructor(
                 iobCobCalculatorPlugin.ads.loadBgData(end, repository, aapsLogger, dateUtil, rxBus)
                 iobCobCalculatorPlugin.clearCache()
             }
+            // load treatments once for the whole run instead of querying database for every bucket
+            iobCobCalculatorPlugin.treatmentTimeline.load(oldestTimeWithData - iobCobCalculatorPlugin.range(), repository)
             // work on local copy and set back when finished
             val ads = iobCobCalculatorPlugin.ads.clone()
             val bucketedData = ads.bucketedData
@@ -96,9 +102,14 @@ class IobCobThread @Inject internal constructor(
             aapsLogger.debug(LTag.AUTOSENS, "Prev data time: " + dateUtil.dateAndTimeString(prevDataTime))
             var previous = autosensDataTable[prevDataTime]
             // start from oldest to be able sub cob
+            var lastProgress = 0L
             for (i in bucketedData.size - 4 downTo 0) {
-                val progress = i.toString() + if (buildHelper.isDev()) " ($from)" else ""
-                rxBus.send(EventIobCalculationProgress(progress, cause))
+                // limit rate of progress events, it's displayed only
+                if (System.currentTimeMillis() - lastProgress >= IobCobCalculatorPlugin.PROGRESS_INTERVAL) {
+                    lastProgress = System.currentTimeMillis()
+                    val progress = i.toString() + if (buildHelper.isDev()) " ($from)" else ""
+                    rxBus.send(EventIobCalculationProgress(progress, cause))
+                }
                 if (iobCobCalculatorPlugin.stopCalculationTrigger) {
                     iobCobCalculatorPlugin.stopCalculationTrigger = false
                     aapsLogger.debug(LTag.AUTOSENS, "Aborting calculation thread (trigger): $from")
@@ -118,7 +129,7 @@ class IobCobThread @Inject internal constructor(
                     aapsLogger.debug(LTag.AUTOSENS, "Aborting calculation thread (no profile): $from")
                     continue  // profile not set yet
                 }
-                aapsLogger.debug(LTag.AUTOSENS, "Processing calculation thread: " + from + " (" + i + "/" + bucketedData.size + ")")
+                aapsLogger.debug(LTag.AUTOSENS) { "Processing calculation thread: " + from + " (" + i + "/" + bucketedData.size + ")" }
                 val sens = profile.getIsfMgdl(bgTime)
                 val autosensData = AutosensData(injector)
                 autosensData.time = bgTime
@@ -259,11 +270,11 @@ class IobCobThread @Inject internal constructor(
                 }
                 previous = autosensData
                 if (bgTime < dateUtil.now()) autosensDataTable.put(bgTime, autosensData)
-                aapsLogger.debug(LTag.AUTOSENS, "Running detectSensitivity from: " + dateUtil.dateAndTimeString(oldestTimeWithData) + " to: " + dateUtil.dateAndTimeString(bgTime) + " lastDataTime:" + ads.lastDataTime(dateUtil))
+                aapsLogger.debug(LTag.AUTOSENS) { "Running detectSensitivity from: " + dateUtil.dateAndTimeString(oldestTimeWithData) + " to: " + dateUtil.dateAndTimeString(bgTime) + " lastDataTime:" + ads.lastDataTime(dateUtil) }
                 val sensitivity = activePlugin.activeSensitivity.detectSensitivity(ads, oldestTimeWithData, bgTime)
-                aapsLogger.debug(LTag.AUTOSENS, "Sensitivity result: $sensitivity")
+                aapsLogger.debug(LTag.AUTOSENS) { "Sensitivity result: $sensitivity" }
                 autosensData.autosensResult = sensitivity
-                aapsLogger.debug(LTag.AUTOSENS, autosensData.toString())
+                aapsLogger.debug(LTag.AUTOSENS) { autosensData.toString() }
             }
             iobCobCalculatorPlugin.ads = ads
             Thread {
@@ -275,6 +286,7 @@ class IobCobThread @Inject internal constructor(
             rxBus.send(EventIobCalculationProgress("", cause))
             aapsLogger.debug(LTag.AUTOSENS, "AUTOSENSDATA thread ended: $from")
             profiler.log(LTag.AUTOSENS, "IobCobThread", start)
+            loopTracer.end(LoopTracer.Span.AUTOSENS, traceStart)
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,123 @@
+package info.nightscout.androidaps.plugins.iob.iobCobCalculator
+
+import info.nightscout.androidaps.events.Event
+import info.nightscout.androidaps.events.EventNewBG
+import info.nightscout.androidaps.logging.AAPSLogger
+import info.nightscout.androidaps.logging.LTag
+import io.reactivex.Scheduler
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.math.min
+
+/**
+ * Debounces requests for recalculation of autosens data.
+ *
+ * Requests arriving before the scheduled run are merged into one: the earliest invalidated
+ * time wins, bg reload and full reset are kept if any request asked for them and EventNewBG
+ * with the newest glucose value is preferred as cause (loop is triggered by it).
+ * Each request postpones the run by [delay] ms, but no more than [maxDelay] ms after the first one
+ * and never when a new BG is waiting.
+ *
+ * Runs are executed one by one, [run] is responsible for stopping the calculation in progress.
+ */
+class RecalculationScheduler(
+    private val aapsLogger: AAPSLogger,
+    private val scheduler: Scheduler,
+    private val delay: Long,
+    private val maxDelay: Long,
+    private val run: (Request) -> Unit
+) {
+
+    class Request(
+        var reason: String,
+        /** invalidate calculated data newer than this time, Long.MAX_VALUE for nothing */
+        var from: Long = Long.MAX_VALUE,
+        var reloadBgData: Boolean = false,
+        /** drop all calculated data */
+        var reset: Boolean = false,
+        var cause: Event? = null
+    ) {
+
+        fun merge(request: Request) {
+            reason = request.reason
+            from = min(from, request.from)
+            reloadBgData = reloadBgData || request.reloadBgData
+            reset = reset || request.reset
+            cause = preferredCause(cause, request.cause)
+        }
+
+        override fun toString(): String =
+            "Request(reason=$reason, from=$from, reloadBgData=$reloadBgData, reset=$reset, cause=${cause?.javaClass?.simpleName})"
+
+        private fun preferredCause(current: Event?, new: Event?): Event? =
+            when {
+                current is EventNewBG && new is EventNewBG -> if ((new.glucoseValue?.timestamp ?: 0L) >= (current.glucoseValue?.timestamp ?: 0L)) new else current
+                current is EventNewBG                      -> current
+                else                                       -> new ?: current
+            }
+    }
+
+    /** number of executed runs */
+    val runsStarted = AtomicInteger()
+
+    /** number of requests merged into already scheduled one */
+    val requestsMerged = AtomicInteger()
+
+    /** number of calculations stopped before finishing because of newer request */
+    val runsAborted = AtomicInteger()
+
+    private val runLock = Any()
+    private var pending: Request? = null
+    private var firstRequestTime = 0L
+    private var fireTime = 0L
+    private var timer = 0
+
+    @Synchronized
+    fun schedule(request: Request) {
+        val now = scheduler.now(TimeUnit.MILLISECONDS)
+        val current = pending
+        if (current == null) {
+            pending = request
+            firstRequestTime = now
+            scheduleAt(now + delay, now)
+        } else {
+            current.merge(request)
+            requestsMerged.incrementAndGet()
+            val postponed = min(now + delay, firstRequestTime + maxDelay)
+            if (current.cause !is EventNewBG && postponed > fireTime) scheduleAt(postponed, now)
+        }
+    }
+
+    fun calculationAborted() {
+        runsAborted.incrementAndGet()
+    }
+
+    fun metrics(): String = "started=${runsStarted.get()} merged=${requestsMerged.get()} aborted=${runsAborted.get()}"
+
+    @Synchronized
+    fun cancel() {
+        pending = null
+    }
+
+    // timers are not disposed when postponed (it could interrupt running task), outdated ones do nothing
+    private fun scheduleAt(time: Long, now: Long) {
+        fireTime = time
+        val current = ++timer
+        scheduler.scheduleDirect({ fire(current) }, time - now, TimeUnit.MILLISECONDS)
+    }
+
+    @Synchronized
+    private fun takeDue(timer: Int): Request? {
+        if (timer != this.timer) return null
+        return pending.also { pending = null }
+    }
+
+    private fun fire(timer: Int) {
+        val request = takeDue(timer) ?: return
+        synchronized(runLock) {
+            runsStarted.incrementAndGet()
+            aapsLogger.debug(LTag.AUTOSENS, "Recalculation $request ${metrics()}")
+            run(request)
+        }
+    }
+}
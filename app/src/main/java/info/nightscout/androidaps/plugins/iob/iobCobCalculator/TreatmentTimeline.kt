@@ -0,0 +1,134 @@
+package info.nightscout.androidaps.plugins.iob.iobCobCalculator
+
+import info.nightscout.androidaps.database.AppRepository
+import info.nightscout.androidaps.database.entities.Bolus
+import info.nightscout.androidaps.database.entities.ExtendedBolus
+import info.nightscout.androidaps.database.entities.TemporaryBasal
+import info.nightscout.androidaps.database.interfaces.DBEntry
+import info.nightscout.androidaps.database.interfaces.DBEntryWithTime
+import info.nightscout.androidaps.database.interfaces.TraceableDBEntry
+
+/**
+ * In-memory copy of valid boluses, temporary basals and extended boluses
+ * sorted by timestamp.
+ *
+ * Loaded once per calculation run and kept up to date from [AppRepository.changeObservable]
+ * so IOB calculation for every 5 min bucket doesn't need to hit the database.
+ *
+ * Returned records are shared and must not be modified
+ */
+class TreatmentTimeline {
+
+    private val boluses = SortedRecords<Bolus>()
+    private val temporaryBasals = SortedRecords<TemporaryBasal>()
+    private val extendedBoluses = SortedRecords<ExtendedBolus>()
+
+    /**
+     * Oldest timestamp covered by the timeline. Queries starting before this time
+     * must go to the database
+     */
+    @Volatile var loadedFrom = Long.MAX_VALUE
+        private set
+
+    @Synchronized
+    fun load(from: Long, repository: AppRepository) {
+        boluses.reset(repository.getBolusesDataFromTime(from, true).blockingGet())
+        temporaryBasals.reset(repository.getTemporaryBasalsDataFromTime(from, true).blockingGet())
+        extendedBoluses.reset(repository.getExtendedBolusDataFromTime(from, true).blockingGet())
+        loadedFrom = from
+    }
+
+    @Synchronized
+    fun reset() {
+        boluses.reset(emptyList())
+        temporaryBasals.reset(emptyList())
+        extendedBoluses.reset(emptyList())
+        loadedFrom = Long.MAX_VALUE
+    }
+
+    fun covers(from: Long): Boolean = loadedFrom <= from
+
+    /**
+     * Apply changes emitted by repository
+     * Must be called synchronously on the emitting thread, otherwise queries may see stale data
+     */
+    @Synchronized
+    fun update(changes: List<DBEntry>) {
+        if (loadedFrom == Long.MAX_VALUE) return
+        for (entry in changes) {
+            when (entry) {
+                is Bolus          -> boluses.update(entry, loadedFrom)
+                is TemporaryBasal -> temporaryBasals.update(entry, loadedFrom)
+                is ExtendedBolus  -> extendedBoluses.update(entry, loadedFrom)
+            }
+        }
+    }
+
+    /**
+     * @return boluses with from <= timestamp <= to, ascending
+     */
+    @Synchronized
+    fun getBoluses(from: Long, to: Long): List<Bolus> = boluses.range(from, to)
+
+    /**
+     * @return temporary basals with from <= timestamp <= to, ascending
+     */
+    @Synchronized
+    fun getTemporaryBasals(from: Long, to: Long): List<TemporaryBasal> = temporaryBasals.range(from, to)
+
+    /**
+     * @return extended boluses with from <= timestamp <= to, ascending
+     */
+    @Synchronized
+    fun getExtendedBoluses(from: Long, to: Long): List<ExtendedBolus> = extendedBoluses.range(from, to)
+
+    private class SortedRecords<T> where T : TraceableDBEntry, T : DBEntryWithTime {
+
+        private val records = ArrayList<T>()
+
+        fun reset(newRecords: List<T>) {
+            records.clear()
+            records.addAll(newRecords)
+            records.sortBy { it.timestamp }
+        }
+
+        fun update(record: T, loadedFrom: Long) {
+            // record may have been moved in time, thus search by id
+            for (i in records.indices)
+                if (records[i].id == record.id) {
+                    records.removeAt(i)
+                    break
+                }
+            if (record.isValid && record.referenceId == null && record.timestamp >= loadedFrom)
+                records.add(upperBound(record.timestamp), record)
+        }
+
+        fun range(from: Long, to: Long): List<T> {
+            val start = lowerBound(from)
+            val end = upperBound(to)
+            return if (start >= end) emptyList() else ArrayList(records.subList(start, end))
+        }
+
+        // index of first record with timestamp >= time
+        private fun lowerBound(time: Long): Int {
+            var low = 0
+            var high = records.size
+            while (low < high) {
+                val mid = (low + high) ushr 1
+                if (records[mid].timestamp < time) low = mid + 1 else high = mid
+            }
+            return low
+        }
+
+        // index of first record with timestamp > time
+        private fun upperBound(time: Long): Int {
+            var low = 0
+            var high = records.size
+            while (low < high) {
+                val mid = (low + high) ushr 1
+                if (records[mid].timestamp <= time) low = mid + 1 else high = mid
+            }
+            return low
+        }
+    }
+}
@@ -474,7 +474,7 @@ class LocalProfilePlugin @Inject constructor(
 
         override fun doWork(): Result {
             val profileJson = dataWorker.pickupJSONObject(inputData.getLong(DataWorker.STORE_KEY, -1))
-                ?: return Result.failure(workDataOf("Error" to "missing input data"))
+                ?: return Result.success(workDataOf("Result" to "payload dropped or expired"))
             if (sp.getBoolean(R.string.key_ns_receive_profile_store, true) || config.NSCLIENT) {
                 val store = ProfileStore(injector, profileJson, dateUtil)
                 val createdAt = store.getStartDate()
@@ -2,6 +2,11 @@ package info.nightscout.androidaps.plugins.sensitivity
 
 import dagger.android.HasAndroidInjector
 import info.nightscout.androidaps.R
+import info.nightscout.androidaps.database.AppRepository
+import info.nightscout.androidaps.database.entities.EffectiveProfileSwitch
+import info.nightscout.androidaps.database.entities.TherapyEvent
+import info.nightscout.androidaps.extensions.isEPSEvent5minBack
+import info.nightscout.androidaps.extensions.isTherapyEventEvent5minBack
 import info.nightscout.androidaps.interfaces.PluginBase
 import info.nightscout.androidaps.interfaces.PluginDescription
 import info.nightscout.androidaps.interfaces.Sensitivity
@@ -26,6 +31,71 @@ abstract class AbstractSensitivityPlugin(
 
     abstract override fun detectSensitivity(ads: AutosensDataStore, fromTime: Long, toTime: Long): AutosensResult
 
+    /**
+     * Site changes and profile switches resetting deviations
+     */
+    class ResetEvents(private val siteChanges: List<TherapyEvent>, private val profileSwitches: List<EffectiveProfileSwitch>) {
+
+        fun isSiteChange(time: Long): Boolean = siteChanges.isTherapyEventEvent5minBack(time)
+        fun isProfileSwitch(time: Long): Boolean = profileSwitches.isEPSEvent5minBack(time)
+    }
+
+    /**
+     * Position of incremental detection inside AutosensDataStore of running calculation
+     */
+    class DetectionProgress {
+
+        private var ads: AutosensDataStore? = null
+        private var fromTime = 0L
+        private var toTime = 0L
+        private var hours = 0
+        private var lastKey = 0L
+        var nextIndex = 0
+            private set
+
+        /**
+         * @return true if detection can continue from nextIndex, false if it must be restarted from the beginning
+         */
+        fun update(ads: AutosensDataStore, fromTime: Long, toTime: Long, hours: Int): Boolean {
+            val canContinue = ads === this.ads && fromTime == this.fromTime && toTime >= this.toTime && hours == this.hours &&
+                nextIndex <= ads.autosensDataTable.size() && (nextIndex == 0 || ads.autosensDataTable.keyAt(nextIndex - 1) == lastKey)
+            if (!canContinue) {
+                this.ads = ads
+                this.fromTime = fromTime
+                this.hours = hours
+                nextIndex = 0
+            }
+            this.toTime = toTime
+            return canContinue
+        }
+
+        fun processedUpTo(index: Int) {
+            nextIndex = index
+            if (index > 0) lastKey = ads?.autosensDataTable?.keyAt(index - 1) ?: 0L
+        }
+    }
+
+    private var resetEventsAds: AutosensDataStore? = null
+    private var resetEventsFrom = 0L
+    private var resetEvents: ResetEvents? = null
+
+    /**
+     * AutosensDataStore is cloned for every calculation run and detectSensitivity is called for every bucket.
+     * Load events only once per run
+     */
+    @Synchronized
+    fun resetEvents(ads: AutosensDataStore, fromTime: Long, repository: AppRepository): ResetEvents {
+        resetEvents?.let { if (ads === resetEventsAds && fromTime == resetEventsFrom) return it }
+        return ResetEvents(
+            repository.getTherapyEventDataFromTime(fromTime, TherapyEvent.Type.CANNULA_CHANGE, true).blockingGet(),
+            repository.getEffectiveProfileSwitchDataFromTime(fromTime, true).blockingGet()
+        ).also {
+            resetEvents = it
+            resetEventsAds = ads
+            resetEventsFrom = fromTime
+        }
+    }
+
     fun fillResult(ratio: Double, carbsAbsorbed: Double, pastSensitivity: String,
                    ratioLimit: String, sensResult: String, deviationsArraySize: Int): AutosensResult {
         return fillResult(ratio, carbsAbsorbed, pastSensitivity, ratioLimit, sensResult,
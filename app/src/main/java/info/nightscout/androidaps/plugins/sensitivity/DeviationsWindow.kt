@@ -0,0 +1,89 @@
+package info.nightscout.androidaps.plugins.sensitivity
+
+import info.nightscout.androidaps.plugins.iob.iobCobCalculator.IobCobCalculatorPlugin
+
+/**
+ * FIFO of deviations and time of related AutosensData backed by primitive arrays (oldest at index 0)
+ *
+ * If keepSorted is true deviations are kept in sorted order too, so percentile
+ * is available in O(log n) search + short array move instead of sorting the whole window
+ */
+class DeviationsWindow(private val keepSorted: Boolean) {
+
+    private var times = LongArray(INITIAL_CAPACITY)
+    private var values = DoubleArray(INITIAL_CAPACITY)
+    private var sorted = DoubleArray(if (keepSorted) INITIAL_CAPACITY else 0)
+    private var head = 0
+
+    var size = 0
+        private set
+
+    fun clear() {
+        head = 0
+        size = 0
+    }
+
+    fun add(time: Long, value: Double) {
+        if (size == times.size) grow()
+        val position = (head + size) % times.size
+        times[position] = time
+        values[position] = value
+        if (keepSorted) {
+            val at = lowerBound(value, size)
+            System.arraycopy(sorted, at, sorted, at + 1, size - at)
+            sorted[at] = value
+        }
+        size++
+    }
+
+    fun removeFirst() {
+        check(size > 0)
+        val value = values[head]
+        head = (head + 1) % times.size
+        size--
+        if (keepSorted) {
+            val at = lowerBound(value, size + 1)
+            System.arraycopy(sorted, at + 1, sorted, at, size - at)
+        }
+    }
+
+    fun timeAt(index: Int): Long = times[(head + index) % times.size]
+    fun valueAt(index: Int): Double = values[(head + index) % times.size]
+
+    /**
+     * Same as IobCobCalculatorPlugin.percentile on sorted content of the window
+     */
+    fun percentile(p: Double): Double {
+        val data = if (keepSorted) sorted else DoubleArray(size) { valueAt(it) }.also { it.sort() }
+        return IobCobCalculatorPlugin.percentile(data, size, p)
+    }
+
+    // first index in sorted[0, count) with value >= searched value
+    private fun lowerBound(value: Double, count: Int): Int {
+        var low = 0
+        var high = count
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            if (sorted[mid] < value) low = mid + 1 else high = mid
+        }
+        return low
+    }
+
+    private fun grow() {
+        val newTimes = LongArray(times.size * 2)
+        val newValues = DoubleArray(times.size * 2)
+        for (i in 0 until size) {
+            newTimes[i] = timeAt(i)
+            newValues[i] = valueAt(i)
+        }
+        times = newTimes
+        values = newValues
+        head = 0
+        if (keepSorted) sorted = sorted.copyOf(newTimes.size)
+    }
+
+    companion object {
+
+        private const val INITIAL_CAPACITY = 320 // 24h of 5 min data + some extra deviations
+    }
+}
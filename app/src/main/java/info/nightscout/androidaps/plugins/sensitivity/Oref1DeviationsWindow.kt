@@ -0,0 +1,208 @@
+package info.nightscout.androidaps.plugins.sensitivity
+
+import kotlin.math.floor
+import kotlin.math.max
+
+/**
+ * Deviations of one Oref1 detection period (8h or 24h) maintained incrementally bucket by bucket
+ *
+ * Oref1 walks all AutosensData from fromTime for every toTime. Deviation is added only if it is inside
+ * of the period ending at toTime, extra deviations are added always, and after every AutosensData only
+ * the first deviation is removed if there are more than capacity. The result is always the last n
+ * deviations added since the last reset, so instead of replaying the walk this class computes n from
+ * counts of added deviations (prefix sums, O(log n)) and keeps the last n deviations sorted.
+ */
+class Oref1DeviationsWindow(private val capacity: Int, private val periodMillis: Long) {
+
+    // per AutosensData
+    private var bucketCount = 0
+    private var times = LongArray(INITIAL_CAPACITY)
+    private var added = IntArray(INITIAL_CAPACITY) // deviations added up to this AutosensData if all were inside of period
+    private var extrasOnly = IntArray(INITIAL_CAPACITY) // size after this AutosensData if only extra deviations were added since reset
+    private var deviationEntry = IntArray(INITIAL_CAPACITY) // entry of deviation, -1 if not valid
+    private var minStack = IntArray(INITIAL_CAPACITY) // AutosensData with increasing added - index, gives minimum of any suffix
+    private var minStackSize = 0
+    private var lastReset = 0
+    private var firstInPeriod = 0
+
+    // deviations since last reset in order of adding
+    private var entryCount = 0
+    private var entryValues = DoubleArray(INITIAL_CAPACITY)
+    private var entryBuckets = IntArray(INITIAL_CAPACITY) // AutosensData of deviation, -1 for extra deviation
+    private var windowStart = 0
+    private var processedEntries = 0
+
+    private var sorted = DoubleArray(INITIAL_CAPACITY)
+
+    var size = 0
+        private set
+
+    /**
+     * Add next AutosensData
+     *
+     * @param reset site change or profile switch
+     * @param deviation valid deviation or null
+     */
+    fun add(time: Long, reset: Boolean, deviation: Double?, extraDeviations: List<Double>) {
+        val index = bucketCount
+        if (index == times.size) growBuckets()
+        if (reset) {
+            lastReset = index
+            entryCount = 0
+            windowStart = 0
+            processedEntries = 0
+            size = 0
+        }
+        times[index] = time
+        added[index] = addedUpTo(index - 1) + (if (deviation != null) 1 else 0) + extraDeviations.size
+        while (minStackSize > 0 && suffixValue(minStack[minStackSize - 1]) >= suffixValue(index)) minStackSize--
+        minStack[minStackSize++] = index
+        extrasOnly[index] = trim(if (index == lastReset) 0 else extrasOnly[index - 1], extraDeviations.size)
+        deviationEntry[index] = if (deviation != null) addEntry(deviation, index) else -1
+        for (extraDeviation in extraDeviations) addEntry(extraDeviation, -1)
+        bucketCount++
+    }
+
+    /**
+     * Move end of period to toTime. toTime must not decrease
+     */
+    fun moveTo(toTime: Long) {
+        if (bucketCount == 0) return
+        val oldFirstInPeriod = firstInPeriod
+        while (firstInPeriod < bucketCount && times[firstInPeriod] <= toTime - periodMillis) firstInPeriod++
+        // deviations leaving the period
+        for (index in max(oldFirstInPeriod, lastReset) until firstInPeriod) {
+            val entry = deviationEntry[index]
+            if (entry in windowStart until processedEntries) removeSorted(entryValues[entry])
+        }
+        // new deviations
+        for (entry in processedEntries until entryCount) if (isActive(entry)) addSorted(entryValues[entry])
+        processedEntries = entryCount
+        // move start to keep the last targetSize() deviations
+        val target = targetSize()
+        while (size > target) {
+            if (isActive(windowStart)) removeSorted(entryValues[windowStart])
+            windowStart++
+        }
+        while (size < target) {
+            windowStart--
+            if (isActive(windowStart)) addSorted(entryValues[windowStart])
+        }
+    }
+
+    /**
+     * Same as IobCobCalculatorPlugin.percentile on sorted deviations extended by pad zeros
+     */
+    fun percentile(p: Double, pad: Int): Double {
+        val total = size + pad
+        if (total == 0) return 0.0
+        val zerosAt = lowerBound(0.0)
+        val valueAt = { i: Int -> if (i < zerosAt) sorted[i] else if (i < zerosAt + pad) 0.0 else sorted[i - pad] }
+        if (p <= 0) return valueAt(0)
+        if (p >= 1) return valueAt(total - 1)
+        val index = total * p
+        val lower = floor(index)
+        val upper = lower + 1
+        val weight = index % 1
+        return if (upper >= total) valueAt(lower.toInt()) else valueAt(lower.toInt()) * (1 - weight) + valueAt(upper.toInt()) * weight
+    }
+
+    // Size after walking all AutosensData up to the last one. Until size exceeds capacity nothing is removed,
+    // from then on it's capacity + u where u = max(0, u + added - 1) for every AutosensData (Lindley recursion)
+    private fun targetSize(): Int {
+        val last = bucketCount - 1
+        val first = max(lastReset, firstInPeriod)
+        if (first > last) return extrasOnly[last]
+        val start = if (first == lastReset) 0 else extrasOnly[first - 1]
+        val base = addedUpTo(first - 1)
+        val overflowAt: Int
+        val overflow: Int
+        if (start >= capacity) {
+            overflowAt = first - 1
+            overflow = start - capacity
+        } else {
+            if (start + added[last] - base <= capacity) return start + added[last] - base
+            overflowAt = firstAddedOver(capacity - start + base, first, last)
+            overflow = start + added[overflowAt] - base - 1 - capacity
+        }
+        val fromOverflow = overflow + added[last] - added[overflowAt] - (last - overflowAt)
+        val fromLater = suffixValue(last) - minSuffixValue(overflowAt)
+        return capacity + max(fromOverflow, fromLater)
+    }
+
+    private fun trim(size: Int, count: Int): Int = if (size + count > capacity) size + count - 1 else size + count
+    private fun addedUpTo(index: Int): Int = if (index < 0) 0 else added[index]
+    private fun suffixValue(index: Int): Int = added[index] - index
+    private fun isActive(entry: Int): Boolean = entryBuckets[entry] < 0 || entryBuckets[entry] >= firstInPeriod
+
+    // first index in [from, to] with added > value, added is not decreasing
+    private fun firstAddedOver(value: Int, from: Int, to: Int): Int {
+        var low = from
+        var high = to
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            if (added[mid] > value) high = mid else low = mid + 1
+        }
+        return low
+    }
+
+    // minimum of suffixValue in [from, last]
+    private fun minSuffixValue(from: Int): Int {
+        var low = 0
+        var high = minStackSize - 1
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            if (minStack[mid] >= from) high = mid else low = mid + 1
+        }
+        return suffixValue(minStack[low])
+    }
+
+    private fun addEntry(value: Double, bucket: Int): Int {
+        if (entryCount == entryValues.size) {
+            entryValues = entryValues.copyOf(entryCount * 2)
+            entryBuckets = entryBuckets.copyOf(entryCount * 2)
+        }
+        entryValues[entryCount] = value
+        entryBuckets[entryCount] = bucket
+        return entryCount++
+    }
+
+    private fun addSorted(value: Double) {
+        if (size == sorted.size) sorted = sorted.copyOf(size * 2)
+        val at = lowerBound(value)
+        System.arraycopy(sorted, at, sorted, at + 1, size - at)
+        sorted[at] = value
+        size++
+    }
+
+    private fun removeSorted(value: Double) {
+        val at = lowerBound(value)
+        System.arraycopy(sorted, at + 1, sorted, at, size - at - 1)
+        size--
+    }
+
+    // first index in sorted[0, size) with value >= searched value
+    private fun lowerBound(value: Double): Int {
+        var low = 0
+        var high = size
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            if (sorted[mid] < value) low = mid + 1 else high = mid
+        }
+        return low
+    }
+
+    private fun growBuckets() {
+        val newSize = times.size * 2
+        times = times.copyOf(newSize)
+        added = added.copyOf(newSize)
+        extrasOnly = extrasOnly.copyOf(newSize)
+        deviationEntry = deviationEntry.copyOf(newSize)
+        minStack = minStack.copyOf(newSize)
+    }
+
+    companion object {
+
+        private const val INITIAL_CAPACITY = 512 // (24h + DIA) of 5 min data
+    }
+}
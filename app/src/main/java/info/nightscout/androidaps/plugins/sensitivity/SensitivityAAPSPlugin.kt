@@ -5,9 +5,6 @@ import info.nightscout.androidaps.Constants
 import info.nightscout.androidaps.R
 import info.nightscout.androidaps.annotations.OpenForTesting
 import info.nightscout.androidaps.database.AppRepository
-import info.nightscout.androidaps.database.entities.TherapyEvent
-import info.nightscout.androidaps.extensions.isEPSEvent5minBack
-import info.nightscout.androidaps.extensions.isTherapyEventEvent5minBack
 import info.nightscout.androidaps.interfaces.PluginDescription
 import info.nightscout.androidaps.interfaces.PluginType
 import info.nightscout.androidaps.interfaces.Profile
@@ -17,13 +14,11 @@ import info.nightscout.androidaps.logging.AAPSLogger
 import info.nightscout.androidaps.logging.LTag
 import info.nightscout.androidaps.plugins.iob.iobCobCalculator.AutosensDataStore
 import info.nightscout.androidaps.plugins.iob.iobCobCalculator.AutosensResult
-import info.nightscout.androidaps.plugins.iob.iobCobCalculator.IobCobCalculatorPlugin
 import info.nightscout.androidaps.utils.DateUtil
 import info.nightscout.androidaps.utils.resources.ResourceHelper
 import info.nightscout.androidaps.utils.sharedPreferences.SP
 import org.json.JSONException
 import org.json.JSONObject
-import java.util.*
 import javax.inject.Inject
 import javax.inject.Singleton
 import kotlin.math.roundToInt
@@ -48,6 +43,11 @@ class SensitivityAAPSPlugin @Inject constructor(
     injector, aapsLogger, rh, sp
 ) {
 
+    private val progress = DetectionProgress()
+    private val deviationsArray = DeviationsWindow(keepSorted = true)
+    private val pastSensitivity = StringBuilder()
+
+    @Synchronized
     override fun detectSensitivity(ads: AutosensDataStore, fromTime: Long, toTime: Long): AutosensResult {
         val age = sp.getString(R.string.key_age, "")
         var defaultHours = 24
@@ -69,53 +69,55 @@ class SensitivityAAPSPlugin @Inject constructor(
             aapsLogger.debug(LTag.AUTOSENS, "No autosens data available. toTime: " + dateUtil.dateAndTimeString(toTime) + " lastDataTime: " + ads.lastDataTime(dateUtil))
             return AutosensResult()
         }
-        val siteChanges = repository.getTherapyEventDataFromTime(fromTime, TherapyEvent.Type.CANNULA_CHANGE, true).blockingGet()
-        val profileSwitches = repository.getEffectiveProfileSwitchDataFromTime(fromTime, true).blockingGet()
-        val deviationsArray: MutableList<Double> = ArrayList()
-        var pastSensitivity = ""
-        var index = 0
+        val resetEvents = resetEvents(ads, fromTime, repository)
+        // detectSensitivity is called for every bucket with increasing toTime
+        // only new AutosensData is processed and deviations out of window are removed
+        if (!progress.update(ads, fromTime, toTime, hoursForDetection)) {
+            deviationsArray.clear()
+            pastSensitivity.setLength(0)
+        }
+        var index = progress.nextIndex
         while (index < ads.autosensDataTable.size()) {
             val autosensData = ads.autosensDataTable.valueAt(index)
             if (autosensData.time < fromTime) {
                 index++
                 continue
             }
-            if (autosensData.time > toTime) {
-                index++
-                continue
-            }
+            if (autosensData.time > toTime) break
 
             // reset deviations after site change
-            if (siteChanges.isTherapyEventEvent5minBack(autosensData.time)) {
+            if (resetEvents.isSiteChange(autosensData.time)) {
                 deviationsArray.clear()
-                pastSensitivity += "(SITECHANGE)"
+                pastSensitivity.append("(SITECHANGE)")
             }
 
             // reset deviations after profile switch
-            if (profileSwitches.isEPSEvent5minBack(autosensData.time)) {
+            if (resetEvents.isProfileSwitch(autosensData.time)) {
                 deviationsArray.clear()
-                pastSensitivity += "(PROFILESWITCH)"
+                pastSensitivity.append("(PROFILESWITCH)")
             }
             var deviation = autosensData.deviation
 
             //set positive deviations to zero if bg < 80
             if (autosensData.bg < 80 && deviation > 0) deviation = 0.0
-            if (autosensData.validDeviation) if (autosensData.time > toTime - hoursForDetection * 60 * 60 * 1000L) deviationsArray.add(deviation)
-            if (deviationsArray.size > hoursForDetection * 60 / 5) deviationsArray.removeAt(0)
-            pastSensitivity += autosensData.pastSensitivity
+            if (autosensData.validDeviation) if (autosensData.time > toTime - hoursForDetection * 60 * 60 * 1000L) deviationsArray.add(autosensData.time, deviation)
+            if (deviationsArray.size > hoursForDetection * 60 / 5) deviationsArray.removeFirst()
+            pastSensitivity.append(autosensData.pastSensitivity)
             val secondsFromMidnight = Profile.secondsFromMidnight(autosensData.time)
             if (secondsFromMidnight % 3600 < 2.5 * 60 || secondsFromMidnight % 3600 > 57.5 * 60) {
-                pastSensitivity += "(" + (secondsFromMidnight / 3600.0).roundToInt() + ")"
+                pastSensitivity.append("(").append((secondsFromMidnight / 3600.0).roundToInt()).append(")")
             }
             index++
         }
-        val deviations = Array(deviationsArray.size) { i -> deviationsArray[i] }
+        progress.processedUpTo(index)
+        // move window to toTime
+        while (deviationsArray.size > 0 && deviationsArray.timeAt(0) <= toTime - hoursForDetection * 60 * 60 * 1000L)
+            deviationsArray.removeFirst()
         val sens = profile.getIsfMgdl()
         val ratioLimit = ""
         val sensResult: String
         aapsLogger.debug(LTag.AUTOSENS, "Records: $index   $pastSensitivity")
-        Arrays.sort(deviations)
-        val percentile = IobCobCalculatorPlugin.percentile(deviations, 0.50)
+        val percentile = deviationsArray.percentile(0.50)
         val basalOff = percentile * (60.0 / 5.0) / sens
         val ratio = 1 + basalOff / profile.getMaxDailyBasal()
         sensResult = when {
@@ -125,13 +127,12 @@ class SensitivityAAPSPlugin @Inject constructor(
 
         }
         aapsLogger.debug(LTag.AUTOSENS, sensResult)
-        val output = fillResult(ratio, current.cob, pastSensitivity, ratioLimit,
+        val output = fillResult(ratio, current.cob, pastSensitivity.toString(), ratioLimit,
             sensResult, deviationsArray.size)
         aapsLogger.debug(LTag.AUTOSENS, "Sensitivity to: "
             + dateUtil.dateAndTimeString(toTime) +
             " ratio: " + output.ratio
             + " mealCOB: " + current.cob)
-        aapsLogger.debug(LTag.AUTOSENS, "Sensitivity to: deviations " + deviations.contentToString())
         return output
     }
 
@@ -5,9 +5,6 @@ import info.nightscout.androidaps.Constants
 import info.nightscout.androidaps.R
 import info.nightscout.androidaps.annotations.OpenForTesting
 import info.nightscout.androidaps.database.AppRepository
-import info.nightscout.androidaps.database.entities.TherapyEvent
-import info.nightscout.androidaps.extensions.isEPSEvent5minBack
-import info.nightscout.androidaps.extensions.isTherapyEventEvent5minBack
 import info.nightscout.androidaps.interfaces.PluginDescription
 import info.nightscout.androidaps.interfaces.PluginType
 import info.nightscout.androidaps.interfaces.Profile
@@ -18,13 +15,11 @@ import info.nightscout.androidaps.logging.LTag
 import info.nightscout.androidaps.plugins.aps.openAPSSMB.SMBDefaults
 import info.nightscout.androidaps.plugins.iob.iobCobCalculator.AutosensDataStore
 import info.nightscout.androidaps.plugins.iob.iobCobCalculator.AutosensResult
-import info.nightscout.androidaps.plugins.iob.iobCobCalculator.IobCobCalculatorPlugin
 import info.nightscout.androidaps.utils.DateUtil
 import info.nightscout.androidaps.utils.resources.ResourceHelper
 import info.nightscout.androidaps.utils.sharedPreferences.SP
 import org.json.JSONException
 import org.json.JSONObject
-import java.util.*
 import javax.inject.Inject
 import javax.inject.Singleton
 import kotlin.math.roundToInt
@@ -51,6 +46,18 @@ class SensitivityOref1Plugin @Inject constructor(
     injector, aapsLogger, rh, sp
 ) {
 
+    //[0] = 8 hour
+    //[1] = 24 hour
+    private val deviationCategory = listOf(96.0, 288.0)
+    private val hoursDetection = listOf(8.0, 24.0)
+
+    private val progress = DetectionProgress()
+    private val pastSensitivity = StringBuilder()
+    private var deviationsHour = newDeviationsHour()
+
+    private fun newDeviationsHour() = hoursDetection.indices.map { Oref1DeviationsWindow(deviationCategory[it].toInt(), (hoursDetection[it] * 60 * 60 * 1000L).toLong()) }
+
+    @Synchronized
     override fun detectSensitivity(ads: AutosensDataStore, fromTime: Long, toTime: Long): AutosensResult {
         // todo this method is called from the IobCobCalculatorPlugin, which leads to a circular
         // dependency, this should be avoided
@@ -70,100 +77,72 @@ class SensitivityOref1Plugin @Inject constructor(
             aapsLogger.debug(LTag.AUTOSENS, "No autosens data available. toTime: " + dateUtil.dateAndTimeString(toTime) + " lastDataTime: " + ads.lastDataTime(dateUtil))
             return AutosensResult()
         }
-        val siteChanges = repository.getTherapyEventDataFromTime(fromTime, TherapyEvent.Type.CANNULA_CHANGE, true).blockingGet()
-        val profileSwitches = repository.getEffectiveProfileSwitchDataFromTime(fromTime, true).blockingGet()
-
-        //[0] = 8 hour
-        //[1] = 24 hour
-        //deviationsHour has DeviationsArray
-        val deviationsHour = mutableListOf(ArrayList<Double>(), ArrayList<Double>())
-        val pastSensitivityArray = mutableListOf("", "")
-        val sensResultArray = mutableListOf("", "")
-        val ratioArray = mutableListOf(0.0, 0.0)
-        val deviationCategory = listOf(96.0, 288.0)
-        val ratioLimitArray = mutableListOf("", "")
-        val hoursDetection = listOf(8.0, 24.0)
-        var index = 0
+        val resetEvents = resetEvents(ads, fromTime, repository)
+        // detectSensitivity is called for every bucket with increasing toTime
+        // only new AutosensData is processed, Oref1DeviationsWindow gives the same deviations as walking all of them again
+        if (!progress.update(ads, fromTime, toTime, 0)) {
+            deviationsHour = newDeviationsHour()
+            pastSensitivity.setLength(0)
+        }
+        var index = progress.nextIndex
         while (index < ads.autosensDataTable.size()) {
             val autosensData = ads.autosensDataTable.valueAt(index)
             if (autosensData.time < fromTime) {
                 index++
                 continue
             }
-            if (autosensData.time > toTime) {
-                index++
-                continue
+            if (autosensData.time > toTime) break
+            val siteChange = resetEvents.isSiteChange(autosensData.time)
+            val profileSwitch = resetEvents.isProfileSwitch(autosensData.time)
+
+            // reset deviations after site change
+            if (siteChange) {
+                pastSensitivity.append("(SITECHANGE)")
+                pastSensitivity.append("(SITECHANGE)")
             }
-            var hourSegment = 0
-            //hourSegment = 0 = 8 hour
-            //hourSegment = 1 = 24 hour
-            while (hourSegment < deviationsHour.size) {
-                val deviationsArray = deviationsHour[hourSegment]
-                var pastSensitivity = pastSensitivityArray[hourSegment]
-
-                // reset deviations after site change
-                if (siteChanges.isTherapyEventEvent5minBack(autosensData.time)) {
-                    deviationsArray.clear()
-                    pastSensitivity += "(SITECHANGE)"
-                    pastSensitivity += "(SITECHANGE)"
-                }
 
-                // reset deviations after profile switch
-                if (profileSwitches.isEPSEvent5minBack(autosensData.time)) {
-                    deviationsArray.clear()
-                    pastSensitivity += "(PROFILESWITCH)"
-                }
-                var deviation = autosensData.deviation
-
-                //set positive deviations to zero if bg < 80
-                if (autosensData.bg < 80 && deviation > 0) deviation = 0.0
-                if (autosensData.validDeviation) if (autosensData.time > toTime - hoursDetection[hourSegment] * 60 * 60 * 1000L) deviationsArray.add(deviation)
-                deviationsArray.addAll(autosensData.extraDeviation)
-                if (deviationsArray.size > deviationCategory[hourSegment]) {
-                    deviationsArray.removeAt(0)
-                }
-                pastSensitivity += autosensData.pastSensitivity
-                val secondsFromMidnight = Profile.secondsFromMidnight(autosensData.time)
-                if (secondsFromMidnight % 3600 < 2.5 * 60 || secondsFromMidnight % 3600 > 57.5 * 60) {
-                    pastSensitivity += "(" + (secondsFromMidnight / 3600.0).roundToInt() + ")"
-                }
-
-                //Update the data back to the parent
-                deviationsHour[hourSegment] = deviationsArray
-                pastSensitivityArray[hourSegment] = pastSensitivity
-                hourSegment++
+            // reset deviations after profile switch
+            if (profileSwitch) pastSensitivity.append("(PROFILESWITCH)")
+            var deviation = autosensData.deviation
+
+            //set positive deviations to zero if bg < 80
+            if (autosensData.bg < 80 && deviation > 0) deviation = 0.0
+            for (deviationsArray in deviationsHour)
+                deviationsArray.add(autosensData.time, siteChange || profileSwitch, if (autosensData.validDeviation) deviation else null, autosensData.extraDeviation)
+            pastSensitivity.append(autosensData.pastSensitivity)
+            val secondsFromMidnight = Profile.secondsFromMidnight(autosensData.time)
+            if (secondsFromMidnight % 3600 < 2.5 * 60 || secondsFromMidnight % 3600 > 57.5 * 60) {
+                pastSensitivity.append("(").append((secondsFromMidnight / 3600.0).roundToInt()).append(")")
             }
             index++
         }
+        progress.processedUpTo(index)
+        for (deviationsArray in deviationsHour) deviationsArray.moveTo(toTime)
+        val sensResultArray = mutableListOf("", "")
+        val ratioArray = mutableListOf(0.0, 0.0)
+        val ratioLimitArray = mutableListOf("", "")
 
         // when we have less than 8h/24 worth of deviation data, add up to 90m of zero deviations
         // this dampens any large sensitivity changes detected based on too little data, without ignoring them completely
+        val padArray = IntArray(deviationsHour.size)
         for (i in deviationsHour.indices) {
             val deviations = deviationsHour[i]
             aapsLogger.debug(LTag.AUTOSENS, "Using most recent " + deviations.size + " deviations")
             if (deviations.size < deviationCategory[i]) {
-                val pad = ((1 - deviations.size.toDouble() / deviationCategory[i]) * 18).roundToInt()
-                aapsLogger.debug(LTag.AUTOSENS, "Adding $pad more zero deviations")
-                for (d in 0 until pad) {
-                    deviations.add(0.0)
-                }
+                padArray[i] = ((1 - deviations.size.toDouble() / deviationCategory[i]) * 18).roundToInt()
+                aapsLogger.debug(LTag.AUTOSENS, "Adding ${padArray[i]} more zero deviations")
             }
-            //Update the data back to the parent
-            deviationsHour[i] = deviations
         }
         var hourUsed = 0
         while (hourUsed < deviationsHour.size) {
-            val deviationsArray: ArrayList<Double> = deviationsHour[hourUsed]
-            val pastSensitivity = pastSensitivityArray[hourUsed]
+            val deviationsArray = deviationsHour[hourUsed]
             var sensResult = "(8 hours) "
             if (hourUsed == 1) sensResult = "(24 hours) "
             val ratioLimit = ""
-            val deviations: Array<Double> = Array(deviationsArray.size) { i -> deviationsArray[i] }
             val sens = profile.getIsfMgdl()
             aapsLogger.debug(LTag.AUTOSENS, "Records: $index   $pastSensitivity")
-            Arrays.sort(deviations)
-            val pSensitive = IobCobCalculatorPlugin.percentile(deviations, 0.50)
-            val pResistant = IobCobCalculatorPlugin.percentile(deviations, 0.50)
+            val pSensitive = deviationsArray.percentile(0.50, padArray[hourUsed])
+            val pResistant = pSensitive
             var basalOff = 0.0
             when {
                 pSensitive < 0 -> { // sensitive
@@ -195,7 +174,7 @@ class SensitivityOref1Plugin @Inject constructor(
             key = 0
         }
         //String message = hoursDetection.get(key) + " of sensitivity used";
-        val output = fillResult(ratioArray[key], current.cob, pastSensitivityArray[key], ratioLimitArray[key], sensResultArray[key] + comparison, deviationsHour[key].size)
+        val output = fillResult(ratioArray[key], current.cob, pastSensitivity.toString(), ratioLimitArray[key], sensResultArray[key] + comparison, deviationsHour[key].size + padArray[key])
         aapsLogger.debug(LTag.AUTOSENS, "Sensitivity to: "
             + dateUtil.dateAndTimeString(toTime) +
             " ratio: " + output.ratio
@@ -1,14 +1,10 @@
 package info.nightscout.androidaps.plugins.sensitivity
 
-import androidx.collection.LongSparseArray
 import dagger.android.HasAndroidInjector
 import info.nightscout.androidaps.Constants
 import info.nightscout.androidaps.R
 import info.nightscout.androidaps.annotations.OpenForTesting
 import info.nightscout.androidaps.database.AppRepository
-import info.nightscout.androidaps.database.entities.TherapyEvent
-import info.nightscout.androidaps.extensions.isEPSEvent5minBack
-import info.nightscout.androidaps.extensions.isTherapyEventEvent5minBack
 import info.nightscout.androidaps.interfaces.PluginDescription
 import info.nightscout.androidaps.interfaces.PluginType
 import info.nightscout.androidaps.interfaces.Profile
@@ -47,6 +43,13 @@ class SensitivityWeightedAveragePlugin @Inject constructor(
     injector, aapsLogger, rh, sp
 ) {
 
+    private val progress = DetectionProgress()
+    private val data = DeviationsWindow(keepSorted = false)
+    private val pastSensitivity = StringBuilder()
+    private val pastSensitivityTimes = ArrayDeque<Long>()
+    private val pastSensitivityLengths = ArrayDeque<Int>()
+
+    @Synchronized
     override fun detectSensitivity(ads: AutosensDataStore, fromTime: Long, toTime: Long): AutosensResult {
         val age = sp.getString(R.string.key_age, "")
         var defaultHours = 24
@@ -68,63 +71,81 @@ class SensitivityWeightedAveragePlugin @Inject constructor(
             aapsLogger.debug(LTag.AUTOSENS, "No profile available")
             return AutosensResult()
         }
-        val siteChanges = repository.getTherapyEventDataFromTime(fromTime, TherapyEvent.Type.CANNULA_CHANGE, true).blockingGet()
-        val profileSwitches = repository.getEffectiveProfileSwitchDataFromTime(fromTime, true).blockingGet()
-        var pastSensitivity = ""
-        var index = 0
-        val data = LongSparseArray<Double>()
+        val resetEvents = resetEvents(ads, fromTime, repository)
+        val windowStart = toTime - hoursForDetection * 60 * 60 * 1000L
+        // detectSensitivity is called for every bucket with increasing toTime
+        // only new AutosensData is processed and data out of window is removed
+        if (!progress.update(ads, fromTime, toTime, hoursForDetection)) {
+            data.clear()
+            pastSensitivity.setLength(0)
+            pastSensitivityTimes.clear()
+            pastSensitivityLengths.clear()
+        }
+        var index = progress.nextIndex
         while (index < ads.autosensDataTable.size()) {
             val autosensData = ads.autosensDataTable.valueAt(index)
             if (autosensData.time < fromTime) {
                 index++
                 continue
             }
-            if (autosensData.time > toTime) {
-                index++
-                continue
-            }
-            if (autosensData.time < toTime - hoursForDetection * 60 * 60 * 1000L) {
+            if (autosensData.time > toTime) break
+            if (autosensData.time < windowStart) {
                 index++
                 continue
             }
+            val pastSensitivityLength = pastSensitivity.length
 
             // reset deviations after site change
-            if (siteChanges.isTherapyEventEvent5minBack(autosensData.time)) {
+            if (resetEvents.isSiteChange(autosensData.time)) {
                 data.clear()
-                pastSensitivity += "(SITECHANGE)"
+                pastSensitivity.append("(SITECHANGE)")
             }
 
             // reset deviations after profile switch
-            if (profileSwitches.isEPSEvent5minBack(autosensData.time)) {
+            if (resetEvents.isProfileSwitch(autosensData.time)) {
                 data.clear()
-                pastSensitivity += "(PROFILESWITCH)"
+                pastSensitivity.append("(PROFILESWITCH)")
             }
             var deviation = autosensData.deviation
 
             //set positive deviations to zero if bg < 80
             if (autosensData.bg < 80 && deviation > 0) deviation = 0.0
 
-            //data.append(autosensData.time);
-            val reverseWeight = (toTime - autosensData.time) / (5 * 60 * 1000L)
-            if (autosensData.validDeviation) data.append(reverseWeight, deviation)
-            pastSensitivity += autosensData.pastSensitivity
+            if (autosensData.validDeviation) data.add(autosensData.time, deviation)
+            pastSensitivity.append(autosensData.pastSensitivity)
             val secondsFromMidnight = Profile.secondsFromMidnight(autosensData.time)
             if (secondsFromMidnight % 3600 < 2.5 * 60 || secondsFromMidnight % 3600 > 57.5 * 60) {
-                pastSensitivity += "(" + (secondsFromMidnight / 3600.0).roundToInt() + ")"
+                pastSensitivity.append("(").append((secondsFromMidnight / 3600.0).roundToInt()).append(")")
             }
+            pastSensitivityTimes.addLast(autosensData.time)
+            pastSensitivityLengths.addLast(pastSensitivity.length - pastSensitivityLength)
             index++
         }
-        if (data.size() == 0) {
-            aapsLogger.debug(LTag.AUTOSENS, "Data size: " + data.size() + " fromTime: " + dateUtil.dateAndTimeString(fromTime) + " toTime: " + dateUtil.dateAndTimeString(toTime))
+        progress.processedUpTo(index)
+        // move window to toTime
+        while (data.size > 0 && data.timeAt(0) < windowStart) data.removeFirst()
+        while (pastSensitivityTimes.isNotEmpty() && pastSensitivityTimes.first() < windowStart) {
+            pastSensitivityTimes.removeFirst()
+            pastSensitivity.delete(0, pastSensitivityLengths.removeFirst())
+        }
+        if (data.size == 0) {
+            aapsLogger.debug(LTag.AUTOSENS, "Data size: " + data.size + " fromTime: " + dateUtil.dateAndTimeString(fromTime) + " toTime: " + dateUtil.dateAndTimeString(toTime))
             return AutosensResult()
         } else {
-            aapsLogger.debug(LTag.AUTOSENS, "Data size: " + data.size() + " fromTime: " + dateUtil.dateAndTimeString(fromTime) + " toTime: " + dateUtil.dateAndTimeString(toTime))
+            aapsLogger.debug(LTag.AUTOSENS, "Data size: " + data.size + " fromTime: " + dateUtil.dateAndTimeString(fromTime) + " toTime: " + dateUtil.dateAndTimeString(toTime))
         }
         var weightedSum = 0.0
         var weights = 0.0
-        val highestWeight = data.keyAt(data.size() - 1)
-        for (i in 0 until data.size()) {
-            val reversedWeight = data.keyAt(i)
+        var dataSize = 0
+        val highestWeight = (toTime - data.timeAt(0)) / (5 * 60 * 1000L)
+        var lastReversedWeight = -1L
+        // newest first as data was ordered by reversed weight
+        for (i in data.size - 1 downTo 0) {
+            val reversedWeight = (toTime - data.timeAt(i)) / (5 * 60 * 1000L)
+            // only the newest value is used if more values fall into the same 5 min
+            if (reversedWeight == lastReversedWeight) continue
+            lastReversedWeight = reversedWeight
+            dataSize++
             val value = data.valueAt(i)
             val weight = (highestWeight - reversedWeight) / 2.0
             weights += weight
@@ -146,8 +167,8 @@ class SensitivityWeightedAveragePlugin @Inject constructor(
             else        -> "Sensitivity normal"
         }
         aapsLogger.debug(LTag.AUTOSENS, sensResult)
-        val output = fillResult(ratio, current.cob, pastSensitivity, ratioLimit,
-            sensResult, data.size())
+        val output = fillResult(ratio, current.cob, pastSensitivity.toString(), ratioLimit,
+            sensResult, dataSize)
         aapsLogger.debug(LTag.AUTOSENS, "Sensitivity to: "
             + dateUtil.dateAndTimeString(toTime) +
             " ratio: " + output.ratio
@@ -96,7 +96,7 @@ class DexcomPlugin @Inject constructor(
 
             if (!dexcomPlugin.isEnabled()) return Result.success(workDataOf("Result" to "Plugin not enabled"))
             val bundle = dataWorker.pickupBundle(inputData.getLong(DataWorker.STORE_KEY, -1))
-                ?: return Result.failure(workDataOf("Error" to "missing input data"))
+                ?: return Result.success(workDataOf("Result" to "payload dropped or expired"))
             try {
                 val sourceSensor = when (bundle.getString("sensorType") ?: "") {
                     "G6" -> GlucoseValue.SourceSensor.DEXCOM_G6_NATIVE
@@ -16,6 +16,7 @@ import info.nightscout.androidaps.interfaces.PluginDescription
 import info.nightscout.androidaps.interfaces.PluginType
 import info.nightscout.androidaps.logging.AAPSLogger
 import info.nightscout.androidaps.logging.LTag
+import info.nightscout.androidaps.logging.debug
 import info.nightscout.androidaps.plugins.bus.RxBus
 import info.nightscout.androidaps.plugins.general.nsclient.NSClientPlugin
 import info.nightscout.androidaps.plugins.general.nsclient.data.NSSgv
@@ -119,12 +120,12 @@ class NSClientSourcePlugin @Inject constructor(
             if (!nsClientSourcePlugin.isEnabled() && !sp.getBoolean(R.string.key_ns_receive_cgm, false)) return Result.success(workDataOf("Result" to "Sync not enabled"))
 
             val sgvs = dataWorker.pickupJSONArray(inputData.getLong(DataWorker.STORE_KEY, -1))
-                ?: return Result.failure(workDataOf("Error" to "missing input data"))
+                ?: return Result.success(workDataOf("Result" to "payload dropped or expired"))
 
             try {
                 var latestDateInReceivedData: Long = 0
 
-                aapsLogger.debug(LTag.BGSOURCE, "Received NS Data: $sgvs")
+                aapsLogger.debug(LTag.BGSOURCE) { "Received NS Data: $sgvs" }
                 val glucoseValues = mutableListOf<CgmSourceTransaction.TransactionGlucoseValue>()
                 for (i in 0 until sgvs.length()) {
                     val sgv = toGv(sgvs.getJSONObject(i)) ?: continue
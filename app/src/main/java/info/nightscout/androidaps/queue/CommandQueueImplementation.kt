@@ -40,6 +40,7 @@ import info.nightscout.androidaps.utils.buildHelper.BuildHelper
 import info.nightscout.androidaps.utils.resources.ResourceHelper
 import info.nightscout.androidaps.utils.rx.AapsSchedulers
 import info.nightscout.androidaps.utils.sharedPreferences.SP
+import info.nightscout.androidaps.utils.tracing.LoopTracer
 import io.reactivex.disposables.CompositeDisposable
 import io.reactivex.rxkotlin.plusAssign
 import io.reactivex.rxkotlin.subscribeBy
@@ -64,7 +65,8 @@ class CommandQueueImplementation @Inject constructor(
     private val dateUtil: DateUtil,
     private val repository: AppRepository,
     private val fabricPrivacy: FabricPrivacy,
-    private val config: Config
+    private val config: Config,
+    private val loopTracer: LoopTracer
 ) : CommandQueue {
 
     private val disposable = CompositeDisposable()
@@ -176,7 +178,7 @@ class CommandQueueImplementation @Inject constructor(
     @Synchronized fun notifyAboutNewCommand() {
         waitForFinishedThread()
         if (thread == null || thread!!.state == Thread.State.TERMINATED) {
-            thread = QueueThread(this, context, aapsLogger, rxBus, activePlugin, rh, sp)
+            thread = QueueThread(this, context, aapsLogger, rxBus, activePlugin, rh, sp, loopTracer)
             thread!!.start()
             aapsLogger.debug(LTag.PUMPQUEUE, "Starting new thread")
         } else {
@@ -197,7 +199,7 @@ class CommandQueueImplementation @Inject constructor(
         aapsLogger.debug(LTag.PUMPQUEUE, "Starting new queue")
         val tempCommandQueue = CommandQueueImplementation(injector, aapsLogger, rxBus, aapsSchedulers, rh,
                                                           constraintChecker, profileFunction, activePlugin, context, sp,
-                                                          buildHelper, dateUtil, repository, fabricPrivacy, config)
+                                                          buildHelper, dateUtil, repository, fabricPrivacy, config, loopTracer)
         tempCommandQueue.readStatus(reason, callback)
         tempCommandQueue.disposable.clear()
     }
@@ -16,6 +16,7 @@ import info.nightscout.androidaps.queue.events.EventQueueChanged
 import info.nightscout.androidaps.utils.T
 import info.nightscout.androidaps.utils.resources.ResourceHelper
 import info.nightscout.androidaps.utils.sharedPreferences.SP
+import info.nightscout.androidaps.utils.tracing.LoopTracer
 
 class QueueThread internal constructor(
     private val queue: CommandQueueImplementation,
@@ -24,7 +25,8 @@ class QueueThread internal constructor(
     private val rxBus: RxBus,
     private val activePlugin: ActivePlugin,
     private val rh: ResourceHelper,
-    private val sp: SP
+    private val sp: SP,
+    private val loopTracer: LoopTracer
 ) : Thread() {
 
     private var connectLogged = false
@@ -115,7 +117,7 @@ class QueueThread internal constructor(
                             aapsLogger.debug(LTag.PUMPQUEUE, "performing " + it.status())
                             rxBus.send(EventQueueChanged())
                             rxBus.send(EventPumpStatusChanged(it.status()))
-                            it.execute()
+                            loopTracer.trace(LoopTracer.Span.PUMP_COMMAND) { it.execute() }
                             queue.resetPerforming()
                             rxBus.send(EventQueueChanged())
                             lastCommandTime = System.currentTimeMillis()
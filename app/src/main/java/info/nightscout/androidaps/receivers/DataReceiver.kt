@@ -32,7 +32,7 @@ open class DataReceiver : DaggerBroadcastReceiver() {
         when (intent.action) {
             Intents.ACTION_NEW_BG_ESTIMATE            ->
                 OneTimeWorkRequest.Builder(XdripPlugin.XdripWorker::class.java)
-                    .setInputData(dataWorker.storeInputData(bundle, intent)).build()
+                    .setInputData(dataWorker.storeInputData(bundle, intent, DataWorker.Queue.CGM)).build()
             Intents.POCTECH_BG                        ->
                 OneTimeWorkRequest.Builder(PoctechPlugin.PoctechWorker::class.java)
                     .setInputData(Data.Builder().also {
@@ -64,15 +64,18 @@ open class DataReceiver : DaggerBroadcastReceiver() {
                     }.build()).build()
             Telephony.Sms.Intents.SMS_RECEIVED_ACTION ->
                 OneTimeWorkRequest.Builder(SmsCommunicatorPlugin.SmsCommunicatorWorker::class.java)
-                    .setInputData(dataWorker.storeInputData(bundle, intent)).build()
+                    .setInputData(dataWorker.storeInputData(bundle, intent, DataWorker.Queue.SMS)).build()
             Intents.EVERSENSE_BG                      ->
                 OneTimeWorkRequest.Builder(EversensePlugin.EversenseWorker::class.java)
-                    .setInputData(dataWorker.storeInputData(bundle, intent)).build()
+                    .setInputData(dataWorker.storeInputData(bundle, intent, DataWorker.Queue.CGM)).build()
             Intents.DEXCOM_BG                         ->
                 OneTimeWorkRequest.Builder(DexcomPlugin.DexcomWorker::class.java)
-                    .setInputData(dataWorker.storeInputData(bundle, intent)).build()
+                    .setInputData(dataWorker.storeInputData(bundle, intent, DataWorker.Queue.CGM)).build()
             else                                      -> null
-        }?.let { request -> dataWorker.enqueue(request) }
+        }?.let { request -> dataWorker.enqueue(request, queue(intent.action)) }
     }
 
-}
\ No newline at end of file
+    private fun queue(action: String?): DataWorker.Queue =
+        if (action == Telephony.Sms.Intents.SMS_RECEIVED_ACTION) DataWorker.Queue.SMS
+        else DataWorker.Queue.CGM
+}
@@ -6,71 +6,220 @@ import android.os.Bundle
 import androidx.work.Data
 import androidx.work.ExistingWorkPolicy
 import androidx.work.OneTimeWorkRequest
+import androidx.work.WorkInfo
 import androidx.work.WorkManager
+import com.google.common.util.concurrent.ListenableFuture
+import info.nightscout.androidaps.logging.AAPSLogger
+import info.nightscout.androidaps.logging.LTag
+import info.nightscout.androidaps.logging.debug
+import info.nightscout.androidaps.plugins.bus.RxBus
+import info.nightscout.androidaps.plugins.general.nsclient.events.EventNSClientRestart
+import info.nightscout.androidaps.utils.DateUtil
+import info.nightscout.androidaps.utils.T
 import org.json.JSONArray
 import org.json.JSONObject
+import java.util.*
 import javax.inject.Inject
 import javax.inject.Singleton
 
+/**
+ * Hand over of received data to workers
+ *
+ * Every [Queue] has its own chain of work so slow processing of one source
+ * (ie. big NS treatments update) doesn't delay others (ie. CGM values).
+ * What happens when a queue is full depends on whether its data can be received again, see [Overflow].
+ * Payload waiting for pickup is released only when WorkManager reports its work
+ * finished (cancelled, replaced chain, pruned) without picking it up.
+ * Work of dropped or released payload must finish with success when pickup returns null,
+ * otherwise the rest of the unique chain fails
+ */
 @Singleton
 class DataWorker @Inject constructor(
-    private val context: Context
+    private val context: Context,
+    private val aapsLogger: AAPSLogger,
+    private val dateUtil: DateUtil,
+    private val rxBus: RxBus
 ) {
 
-    private val store = HashMap<Long, Any>()
+    enum class Overflow {
+        KEEP,           // data is not sent again, capacity is only reported
+        DROP_OLDEST,    // old data is useless
+        RESYNC          // newer data is dropped and full download is requested once the queue is drained
+    }
+
+    enum class Queue(val capacity: Int, val overflow: Overflow) {
+        CGM(50, Overflow.KEEP),
+        NSCLIENT(100, Overflow.RESYNC),
+        NSCLIENT_ACK(200, Overflow.KEEP),
+        SMS(50, Overflow.DROP_OLDEST)
+    }
+
+    class QueueStats {
+
+        var depth = 0
+        var dropped = 0L
+        var expired = 0L
+        var lastLatency = 0L
+        var maxLatency = 0L
+
+        override fun toString(): String = "depth=$depth dropped=$dropped expired=$expired latency=$lastLatency max=$maxLatency"
+    }
+
+    private class Payload(val value: Any, val queue: Queue, val storedAt: Long) {
+
+        var workId: UUID? = null
+        var checkedAt = storedAt
+    }
+
+    // key -> payload in order of storing
+    private val store = LinkedHashMap<Long, Payload>()
+    private val stats = Queue.values().associateWith { QueueStats() }
     private var counter = 0L
-    private val jobGroupName = "data"
+    private var resyncNeeded = false
 
-    @Synchronized private fun store(value: Any): Long {
-        store[counter] = value
-        return counter++
+    // keys stored by current thread, work is assigned by following enqueue
+    private val notEnqueued = object : ThreadLocal<MutableList<Long>>() {
+        override fun initialValue(): MutableList<Long> = ArrayList()
     }
 
-    @Synchronized fun pickupBundle(key: Long): Bundle? {
-        val value = store[key]
-        store.remove(key)
-        return value as Bundle?
+    @Synchronized private fun store(value: Any, queue: Queue): Long {
+        val key = counter++
+        val queueStats = stats.getValue(queue)
+        if (queueStats.depth >= queue.capacity) {
+            when (queue.overflow) {
+                Overflow.KEEP        ->
+                    aapsLogger.warn(LTag.CORE, "Queue $queue over capacity $queueStats")
+
+                Overflow.DROP_OLDEST ->
+                    store.entries.firstOrNull { it.value.queue == queue }?.let { oldest ->
+                        store.remove(oldest.key)
+                        queueStats.depth--
+                        queueStats.dropped++
+                        aapsLogger.error(LTag.CORE, "Queue $queue full. Dropping payload ${oldest.key}")
+                    }
+
+                Overflow.RESYNC      -> resyncNeeded = true
+            }
+        }
+        // everything received until the queue is drained is going to be downloaded again
+        if (queue.overflow == Overflow.RESYNC && resyncNeeded) {
+            queueStats.dropped++
+            aapsLogger.error(LTag.CORE, "Queue $queue full. Dropping payload $key, full resync follows")
+            return key
+        }
+        store[key] = Payload(value, queue, dateUtil.now())
+        notEnqueued.get()!!.add(key)
+        queueStats.depth++
+        return key
     }
 
-    @Synchronized fun pickupObject(key: Long): Any? {
-        val value = store[key]
-        store.remove(key)
-        return value
+    @Synchronized private fun assignWork(workId: UUID) {
+        val keys = notEnqueued.get()!!
+        for (key in keys) store[key]?.workId = workId
+        keys.clear()
     }
 
-    @Synchronized fun pickupString(key: Long): String? {
-        val value = store[key]
-        store.remove(key)
-        return value as String?
+    /**
+     * @return payloads to be checked in WorkManager
+     */
+    @Synchronized private fun toCheck(now: Long): List<Pair<Long, UUID>> {
+        val toCheck = ArrayList<Pair<Long, UUID>>()
+        for ((key, payload) in store.entries.toList()) {
+            if (payload.checkedAt > now - CHECK_INTERVAL) continue
+            payload.checkedAt = now
+            val workId = payload.workId
+            if (workId != null) toCheck.add(Pair(key, workId))
+            // storing and enqueueing go together, not enqueued payload is never going to be picked up
+            else release(key, "not enqueued")
+        }
+        return toCheck
     }
 
-    @Synchronized fun pickupJSONArray(key: Long): JSONArray? {
-        val value = store[key]
-        store.remove(key)
-        return value as JSONArray?
+    @Synchronized private fun release(key: Long, reason: String) {
+        val payload = store.remove(key) ?: return
+        stats.getValue(payload.queue).let {
+            it.depth--
+            it.expired++
+        }
+        aapsLogger.error(LTag.CORE, "Releasing payload $key from ${payload.queue}: $reason")
     }
 
-    @Synchronized fun pickupJSONObject(key: Long): JSONObject? {
-        val value = store[key]
-        store.remove(key)
-        return value as JSONObject?
+    private fun checkAbandoned() {
+        for ((key, workId) in toCheck(dateUtil.now())) {
+            val workInfo = WorkManager.getInstance(context).getWorkInfoById(workId)
+            workInfo.addListener({ if (isFinished(workInfo)) release(key, "work finished") }, { it.run() })
+        }
     }
 
-    fun storeInputData(value: Any, intent: Intent? = null) =
-        Data.Builder()
-            .putLong(STORE_KEY, store(value))
+    // missing work has been pruned, unknown state keeps payload
+    private fun isFinished(workInfo: ListenableFuture<WorkInfo>): Boolean =
+        try {
+            workInfo.get()?.state?.isFinished ?: true
+        } catch (e: Exception) {
+            false
+        }
+
+    @Synchronized private fun take(key: Long): Any? {
+        val payload = store.remove(key) ?: return null
+        val latency = dateUtil.now() - payload.storedAt
+        stats.getValue(payload.queue).let {
+            it.depth--
+            it.lastLatency = latency
+            if (latency > it.maxLatency) it.maxLatency = latency
+        }
+        aapsLogger.debug(LTag.CORE) { "Picked up payload $key from ${payload.queue} ${stats.getValue(payload.queue)}" }
+        return payload.value
+    }
+
+    @Synchronized private fun resyncNow(): Boolean {
+        if (!resyncNeeded || Queue.values().any { it.overflow == Overflow.RESYNC && stats.getValue(it).depth > 0 }) return false
+        resyncNeeded = false
+        return true
+    }
+
+    private fun pickup(key: Long): Any? {
+        val value = take(key)
+        if (resyncNow()) {
+            aapsLogger.error(LTag.CORE, "Queue drained, requesting full NS resync")
+            rxBus.send(EventNSClientRestart())
+        }
+        checkAbandoned()
+        return value
+    }
+
+    fun pickupBundle(key: Long): Bundle? = pickup(key) as Bundle?
+    fun pickupObject(key: Long): Any? = pickup(key)
+    fun pickupString(key: Long): String? = pickup(key) as String?
+    fun pickupJSONArray(key: Long): JSONArray? = pickup(key) as JSONArray?
+    fun pickupJSONObject(key: Long): JSONObject? = pickup(key) as JSONObject?
+
+    /**
+     * Must be followed by [enqueue] of the request on the same thread
+     */
+    fun storeInputData(value: Any, intent: Intent?, queue: Queue): Data {
+        val key = store(value, queue)
+        checkAbandoned()
+        return Data.Builder()
+            .putLong(STORE_KEY, key)
             .putString(ACTION_KEY, intent?.action).build()
+    }
 
-    fun enqueue(request: OneTimeWorkRequest) {
+    fun enqueue(request: OneTimeWorkRequest, queue: Queue) {
+        assignWork(request.id)
         WorkManager.getInstance(context)
-            .enqueueUniqueWork(jobGroupName, ExistingWorkPolicy.APPEND_OR_REPLACE, request)
-
+            .enqueueUniqueWork(jobGroupName(queue), ExistingWorkPolicy.APPEND_OR_REPLACE, request)
     }
 
+    @Synchronized fun queueStats(queue: Queue): String = stats.getValue(queue).toString()
+
+    private fun jobGroupName(queue: Queue) = "data_" + queue.name.lowercase()
+
     companion object {
 
         const val STORE_KEY = "storeKey"
         const val ACTION_KEY = "action"
+
+        private val CHECK_INTERVAL = T.mins(15).msecs()
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,323 @@
+package info.nightscout.androidaps.plugins.aps.openAPSSMB
+
+import info.nightscout.androidaps.TestBaseWithProfile
+import info.nightscout.androidaps.data.IobTotal
+import info.nightscout.androidaps.data.MealData
+import info.nightscout.androidaps.plugins.iob.iobCobCalculator.GlucoseStatus
+import org.json.JSONArray
+import org.json.JSONObject
+import org.junit.After
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Test
+import org.mozilla.javascript.Context
+import org.mozilla.javascript.Function
+import org.mozilla.javascript.NativeJSON
+import org.mozilla.javascript.NativeObject
+import org.mozilla.javascript.Scriptable
+import org.skyscreamer.jsonassert.JSONAssert
+import java.io.File
+import java.util.*
+
+/**
+ * Native determine-basal must return the same result and log the same text
+ * as determine-basal.js from assets for the same inputs
+ */
+class DetermineBasalSMBParityTest : TestBaseWithProfile() {
+
+    private lateinit var rhino: Context
+    private lateinit var scope: Scriptable
+
+    @Before
+    fun prepare() {
+        rhino = Context.enter()
+        rhino.optimizationLevel = -1
+        scope = rhino.initStandardObjects()
+        exec("var log = ''; var console2 = { log: function(s) { log += s; } };")
+        execFile("OpenAPSAMA/loggerhelper.js")
+        exec("var module = {\"parent\":Boolean(1)};")
+        exec("var round_basal = function round_basal(basal, profile) { return basal; };")
+        exec("require = function() {return round_basal;};")
+        execFile("OpenAPSSMB/determine-basal.js")
+        execFile("OpenAPSSMB/basal-set-temp.js")
+    }
+
+    @After
+    fun exit() {
+        Context.exit()
+    }
+
+    private fun exec(source: String) {
+        rhino.evaluateString(scope, source, "JavaScript", 0, null)
+    }
+
+    private fun execFile(fileName: String) {
+        var source = File("src/main/assets/$fileName").readText()
+        if (source.startsWith("#!/usr/bin/env node")) source = source.substring(20)
+        exec(source)
+    }
+
+    private fun makeParam(json: String): Any =
+        NativeJSON.parse(rhino, scope, json) { _: Context?, _: Scriptable?, _: Scriptable?, objects: Array<Any?> -> objects[1] }
+
+    private fun compare(
+        glucoseStatus: GlucoseStatus, currentTemp: CurrentTemp, iobArray: Array<IobTotal>, profile: OapsProfile,
+        autosensRatio: Double, mealData: MealData, microBolusAllowed: Boolean, currentTime: Long, isSaveCgmSource: Boolean
+    ): JSONObject {
+        val glucoseStatusJson = JSONObject()
+            .put("glucose", glucoseStatus.glucose)
+            .put("noise", glucoseStatus.noise)
+            .put("delta", glucoseStatus.delta)
+            .put("short_avgdelta", glucoseStatus.shortAvgDelta)
+            .put("long_avgdelta", glucoseStatus.longAvgDelta)
+            .put("date", glucoseStatus.date)
+        val iobJson = JSONArray().also { array -> iobArray.forEach { array.put(it.determineBasalJson(dateUtil)) } }
+        val mealJson = JSONObject()
+            .put("carbs", mealData.carbs)
+            .put("mealCOB", mealData.mealCOB)
+            .put("slopeFromMaxDeviation", mealData.slopeFromMaxDeviation)
+            .put("slopeFromMinDeviation", mealData.slopeFromMinDeviation)
+            .put("lastBolusTime", mealData.lastBolusTime)
+            .put("lastCarbTime", mealData.lastCarbTime)
+        val params = arrayOf(
+            makeParam(glucoseStatusJson.toString()),
+            makeParam(currentTemp.json().toString()),
+            makeParam(iobJson.toString()),
+            makeParam(profile.json().toString()),
+            makeParam(JSONObject().put("ratio", autosensRatio).toString()),
+            makeParam(mealJson.toString()),
+            scope["tempBasalFunctions", scope],
+            java.lang.Boolean.valueOf(microBolusAllowed),
+            org.mozilla.javascript.Undefined.instance,
+            java.lang.Long.valueOf(currentTime),
+            java.lang.Boolean.valueOf(isSaveCgmSource)
+        )
+        exec("log = '';")
+        val jsResult = (scope["determine_basal", scope] as Function).call(rhino, scope, scope, params) as NativeObject
+        val js = NativeJSON.stringify(rhino, scope, jsResult, null, null).toString()
+        val jsLog = scope["log", scope].toString()
+
+        val determineBasal = DetermineBasalSMB(dateUtil)
+        val native = determineBasal.determineBasal(glucoseStatus, currentTemp, iobArray, profile, autosensRatio, mealData, microBolusAllowed, currentTime, isSaveCgmSource)
+
+        JSONAssert.assertEquals(js, native.toString(), true)
+        Assert.assertEquals(if (jsLog.isEmpty()) "" else "d:\n$jsLog", determineBasal.scriptDebug)
+        return native
+    }
+
+    /**
+     * Inputs of one determine_basal run as DetermineBasalAdapterSMBJS logs them
+     * ("Glucose status: {...}", "IOB data: [...]" ...), so runs can be copied from a log as they are
+     */
+    private fun compareLoggedRun(fileName: String): JSONObject {
+        val lines = File("src/test/res/determinebasal/$fileName").readLines()
+        fun logged(label: String): String = lines.first { it.contains(label) }.substringAfter(label).trim()
+        fun iobTotal(json: JSONObject): IobTotal = IobTotal(dateUtil.fromISODateString(json.getString("time"))).also {
+            it.iob = json.getDouble("iob")
+            it.basaliob = json.getDouble("basaliob")
+            it.bolussnooze = json.getDouble("bolussnooze")
+            it.activity = json.getDouble("activity")
+            it.lastBolusTime = json.getLong("lastBolusTime")
+            if (json.has("iobWithZeroTemp")) it.iobWithZeroTemp = iobTotal(json.getJSONObject("iobWithZeroTemp"))
+        }
+
+        val glucoseStatus = JSONObject(logged("Glucose status:")).let {
+            GlucoseStatus(
+                glucose = it.getDouble("glucose"),
+                noise = it.getDouble("noise"),
+                delta = it.getDouble("delta"),
+                shortAvgDelta = it.getDouble("short_avgdelta"),
+                longAvgDelta = it.getDouble("long_avgdelta"),
+                date = it.getLong("date")
+            )
+        }
+        val iobJson = JSONArray(logged("IOB data:"))
+        val iobArray = Array(iobJson.length()) { iobTotal(iobJson.getJSONObject(it)) }
+        val currentTemp = JSONObject(logged("Current temp:")).let {
+            CurrentTemp(it.getInt("duration"), it.getDouble("rate"), if (it.has("minutesrunning")) it.getInt("minutesrunning") else null)
+        }
+        val profile = JSONObject(logged("Profile:")).let {
+            OapsProfile(
+                max_iob = it.getDouble("max_iob"),
+                max_daily_basal = it.getDouble("max_daily_basal"),
+                max_basal = it.getDouble("max_basal"),
+                min_bg = it.getDouble("min_bg"),
+                max_bg = it.getDouble("max_bg"),
+                target_bg = it.getDouble("target_bg"),
+                carb_ratio = it.getDouble("carb_ratio"),
+                sens = it.getDouble("sens"),
+                max_daily_safety_multiplier = it.getInt("max_daily_safety_multiplier"),
+                current_basal_safety_multiplier = it.getDouble("current_basal_safety_multiplier"),
+                high_temptarget_raises_sensitivity = it.getBoolean("high_temptarget_raises_sensitivity"),
+                low_temptarget_lowers_sensitivity = it.getBoolean("low_temptarget_lowers_sensitivity"),
+                sensitivity_raises_target = it.getBoolean("sensitivity_raises_target"),
+                resistance_lowers_target = it.getBoolean("resistance_lowers_target"),
+                adv_target_adjustments = it.getBoolean("adv_target_adjustments"),
+                exercise_mode = it.getBoolean("exercise_mode"),
+                half_basal_exercise_target = it.getInt("half_basal_exercise_target"),
+                maxCOB = it.getInt("maxCOB"),
+                skip_neutral_temps = it.getBoolean("skip_neutral_temps"),
+                remainingCarbsCap = it.getInt("remainingCarbsCap"),
+                enableUAM = it.getBoolean("enableUAM"),
+                A52_risk_enable = it.getBoolean("A52_risk_enable"),
+                SMBInterval = it.getInt("SMBInterval"),
+                enableSMB_with_COB = it.getBoolean("enableSMB_with_COB"),
+                enableSMB_with_temptarget = it.getBoolean("enableSMB_with_temptarget"),
+                allowSMB_with_high_temptarget = it.getBoolean("allowSMB_with_high_temptarget"),
+                enableSMB_always = it.getBoolean("enableSMB_always"),
+                enableSMB_after_carbs = it.getBoolean("enableSMB_after_carbs"),
+                maxSMBBasalMinutes = it.getInt("maxSMBBasalMinutes"),
+                maxUAMSMBBasalMinutes = it.getInt("maxUAMSMBBasalMinutes"),
+                bolus_increment = it.getDouble("bolus_increment"),
+                carbsReqThreshold = it.getInt("carbsReqThreshold"),
+                current_basal = it.getDouble("current_basal"),
+                temptargetSet = it.getBoolean("temptargetSet"),
+                autosens_max = it.getDouble("autosens_max"),
+                out_units = if (it.has("out_units")) it.getString("out_units") else null
+            )
+        }
+        val mealData = JSONObject(logged("Meal data:")).let { json ->
+            MealData().also {
+                it.carbs = json.getDouble("carbs")
+                it.mealCOB = json.getDouble("mealCOB")
+                it.slopeFromMaxDeviation = json.getDouble("slopeFromMaxDeviation")
+                it.slopeFromMinDeviation = json.getDouble("slopeFromMinDeviation")
+                it.lastBolusTime = json.getLong("lastBolusTime")
+                it.lastCarbTime = json.getLong("lastCarbTime")
+            }
+        }
+        val autosensRatio = JSONObject(logged("Autosens data:")).getDouble("ratio")
+        return compare(
+            glucoseStatus, currentTemp, iobArray, profile, autosensRatio, mealData,
+            logged("MicroBolusAllowed:").toBoolean(), logged("CurrentTime:").toLong(), logged("isSaveCgmSource:").toBoolean()
+        )
+    }
+
+    @Test
+    fun smbWithCobTest() {
+        val result = compareLoggedRun("smb_with_cob.log")
+        Assert.assertTrue(result.getDouble("COB") > 0)
+        Assert.assertTrue(result.getDouble("units") > 0)
+        Assert.assertTrue(result.getString("reason").contains("Microbolusing"))
+    }
+
+    @Test
+    fun uamTest() {
+        val result = compareLoggedRun("uam.log")
+        Assert.assertEquals(0.0, result.getDouble("COB"), 0.0)
+        Assert.assertTrue(result.getJSONObject("predBGs").has("UAM"))
+        Assert.assertTrue(result.getString("reason").contains("UAMpredBG"))
+        Assert.assertTrue(result.getDouble("units") > 0)
+    }
+
+    @Test
+    fun zeroTempTest() {
+        val result = compareLoggedRun("zero_temp.log")
+        Assert.assertEquals(0.0, result.getDouble("rate"), 0.0)
+        Assert.assertTrue(result.getString("reason").contains("m zero temp"))
+    }
+
+    @Test
+    fun lowGlucoseSuspendTest() {
+        val result = compareLoggedRun("low_glucose_suspend.log")
+        Assert.assertEquals(0.0, result.getDouble("rate"), 0.0)
+        Assert.assertTrue(result.getString("reason").contains(Regex("minGuardBG [0-9.]+<[0-9.]+$")))
+    }
+
+    @Test
+    fun randomInputsTest() {
+        val random = Random(1)
+        fun value(from: Double, to: Double, digits: Int = 2): Double {
+            val scale = Math.pow(10.0, digits.toDouble())
+            return Math.round((from + random.nextDouble() * (to - from)) * scale) / scale
+        }
+        repeat(1000) {
+            val now = 1634567890123L + random.nextInt(86400000)
+            val glucoseStatus = GlucoseStatus(
+                glucose = if (random.nextInt(30) == 0) 38.0 else value(40.0, 350.0, 0),
+                noise = if (random.nextInt(15) == 0) listOf(2.0, 3.0)[random.nextInt(2)] else 0.0,
+                delta = if (random.nextInt(20) == 0) 0.0 else value(-15.0, 15.0),
+                shortAvgDelta = if (random.nextInt(20) == 0) 0.3 else value(-12.0, 12.0),
+                longAvgDelta = if (random.nextInt(20) == 0) -0.2 else value(-10.0, 10.0),
+                // fresh BG only, stale BG reason contains Date.toString() which is engine dependent
+                date = now - random.nextInt(600000)
+            )
+            val basal = value(0.3, 2.5)
+            val currentTemp =
+                if (random.nextBoolean()) CurrentTemp(0, 0.0, null)
+                else CurrentTemp(random.nextInt(121), if (random.nextInt(4) == 0) 0.0 else value(0.0, 4.0), random.nextInt(60))
+            val iob = value(-1.5, 8.0)
+            val activity = value(-0.01, 0.06, 4)
+            val lastBolusTime = now - random.nextInt(300) * 60000L
+            val missingZeroTemp = random.nextInt(40) == 0
+            val iobArray = Array(if (random.nextInt(40) == 0) 1 else 48) { i ->
+                IobTotal(now + i * 300000L).also {
+                    val decay = Math.exp(-i / 20.0)
+                    it.iob = iob * decay
+                    it.activity = activity * decay * (1 + 0.3 * Math.sin(i / 5.0))
+                    it.lastBolusTime = lastBolusTime
+                    if (!(missingZeroTemp && i > 10))
+                        it.iobWithZeroTemp = IobTotal(it.time).also { zt ->
+                            zt.iob = it.iob - i * 0.02
+                            zt.activity = it.activity - i * 0.0004
+                            zt.lastBolusTime = lastBolusTime
+                        }
+                }
+            }
+            val tempTarget = random.nextInt(4) == 0
+            val minBg = if (tempTarget) value(70.0, 160.0, 0) else value(80.0, 120.0, 0)
+            val maxBg = minBg + if (tempTarget) 0.0 else value(0.0, 40.0, 0)
+            val smb = random.nextBoolean()
+            val profile = OapsProfile(
+                max_iob = value(0.0, 8.0, 1),
+                max_daily_basal = value(basal, 3.0),
+                max_basal = value(1.0, 5.0),
+                min_bg = minBg,
+                max_bg = maxBg,
+                target_bg = (minBg + maxBg) / 2,
+                carb_ratio = value(5.0, 20.0, 1),
+                sens = value(20.0, 120.0, 1),
+                max_daily_safety_multiplier = 3,
+                current_basal_safety_multiplier = 4.0,
+                high_temptarget_raises_sensitivity = random.nextBoolean(),
+                low_temptarget_lowers_sensitivity = random.nextBoolean(),
+                sensitivity_raises_target = random.nextBoolean(),
+                resistance_lowers_target = random.nextBoolean(),
+                adv_target_adjustments = random.nextBoolean(),
+                exercise_mode = random.nextInt(4) == 0,
+                half_basal_exercise_target = SMBDefaults.half_basal_exercise_target,
+                maxCOB = SMBDefaults.maxCOB,
+                skip_neutral_temps = random.nextInt(3) == 0,
+                remainingCarbsCap = SMBDefaults.remainingCarbsCap,
+                enableUAM = random.nextBoolean(),
+                A52_risk_enable = SMBDefaults.A52_risk_enable,
+                SMBInterval = listOf(1, 3, 5, 10)[random.nextInt(4)],
+                enableSMB_with_COB = smb && random.nextBoolean(),
+                enableSMB_with_temptarget = smb && random.nextBoolean(),
+                allowSMB_with_high_temptarget = smb && random.nextBoolean(),
+                enableSMB_always = smb && random.nextBoolean(),
+                enableSMB_after_carbs = smb && random.nextBoolean(),
+                maxSMBBasalMinutes = listOf(15, 30, 60)[random.nextInt(3)],
+                maxUAMSMBBasalMinutes = listOf(15, 30, 60)[random.nextInt(3)],
+                bolus_increment = listOf(0.05, 0.1, 0.01)[random.nextInt(3)],
+                carbsReqThreshold = SMBDefaults.carbsReqThreshold,
+                current_basal = basal,
+                temptargetSet = tempTarget,
+                autosens_max = 1.2,
+                out_units = if (random.nextInt(3) == 0) "mmol/L" else null
+            )
+            val mealData = MealData().also {
+                if (random.nextBoolean()) {
+                    it.carbs = value(5.0, 120.0, 0)
+                    it.mealCOB = if (random.nextInt(5) == 0) 0.0 else value(0.0, it.carbs, 1)
+                    it.lastCarbTime = now - random.nextInt(360) * 60000L
+                }
+                it.slopeFromMaxDeviation = value(-3.0, 0.0, 3)
+                it.slopeFromMinDeviation = if (random.nextBoolean()) 999.0 else value(0.0, 3.0, 3)
+                it.lastBolusTime = lastBolusTime
+            }
+            val autosensRatio = if (random.nextBoolean()) 1.0 else value(0.7, 1.2)
+            compare(glucoseStatus, currentTemp, iobArray, profile, autosensRatio, mealData, random.nextBoolean(), now, random.nextInt(5) == 0)
+        }
+    }
+}
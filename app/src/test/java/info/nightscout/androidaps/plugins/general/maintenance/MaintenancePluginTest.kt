@@ -8,6 +8,7 @@ import info.nightscout.androidaps.utils.buildHelper.BuildHelper
 import info.nightscout.androidaps.utils.buildHelper.ConfigImpl
 import info.nightscout.androidaps.utils.resources.ResourceHelper
 import info.nightscout.androidaps.utils.sharedPreferences.SP
+import info.nightscout.androidaps.utils.tracing.LoopTracer
 import org.junit.Assert
 import org.junit.Before
 import org.junit.Test
@@ -30,7 +31,7 @@ class MaintenancePluginTest : TestBase() {
 
     @Before
     fun mock() {
-        sut = MaintenancePlugin(injector, context, rh, sp, nsSettingsStatus, aapsLogger, buildHelper, ConfigImpl(), fileListProvider, loggerUtils)
+        sut = MaintenancePlugin(injector, context, rh, sp, nsSettingsStatus, aapsLogger, buildHelper, ConfigImpl(), fileListProvider, loggerUtils, LoopTracer())
         `when`(loggerUtils.suffix).thenReturn(".log.zip")
         `when`(loggerUtils.logDirectory).thenReturn("src/test/res/logger")
         `when`(fileListProvider.ensureTempDirExists()).thenReturn(File("src/test/res/logger"))
@@ -54,4 +55,11 @@ class MaintenancePluginTest : TestBase() {
         Assert.assertTrue(zipFile.exists())
         Assert.assertTrue(zipFile.isFile)
     }
+
+    @Test
+    fun exportLoopTraceTest() {
+        val traceFile = sut.exportLoopTrace(File("build"))
+        Assert.assertNotNull(traceFile)
+        Assert.assertTrue(traceFile!!.readText().contains("\"stats\""))
+    }
 }
\ No newline at end of file
@@ -0,0 +1,70 @@
+package info.nightscout.androidaps.plugins.general.nsclient
+
+import org.junit.Assert
+import org.junit.Test
+
+class UploadWindowTest {
+
+    private var size = 3
+    private val sut = UploadWindow("Bolus", 0) { size }
+
+    @Test
+    fun windowIsBoundedTest() {
+        Assert.assertTrue(sut.hasRoom())
+        sut.dispatched(1, 1, 0)
+        sut.dispatched(2, 2, 0)
+        sut.dispatched(3, 3, 0)
+        Assert.assertFalse(sut.hasRoom())
+        Assert.assertEquals(3L, sut.continueFrom(0))
+        sut.acked(2)
+        Assert.assertTrue(sut.hasRoom())
+        size = 1
+        Assert.assertFalse(sut.hasRoom())
+    }
+
+    @Test
+    fun outOfOrderAcksConfirmOnlyContiguousTest() {
+        sut.dispatched(10, 10, 0)
+        sut.dispatched(11, 11, 0)
+        sut.dispatched(12, 12, 0)
+        // 10 is still in flight
+        Assert.assertEquals(9L, sut.acked(12))
+        Assert.assertEquals(9L, sut.acked(11))
+        Assert.assertEquals(12L, sut.acked(10))
+        Assert.assertEquals(0, sut.inFlightCount())
+    }
+
+    @Test
+    fun skippedRecordsAreConfirmedAfterPreviousAcksTest() {
+        sut.dispatched(10, 10, 0)
+        Assert.assertEquals(9L, sut.skipped(11))
+        Assert.assertEquals(11L, sut.acked(10))
+        Assert.assertEquals(12L, sut.skipped(12))
+    }
+
+    @Test
+    fun recordInFlightIsRecognizedByRecordIdTest() {
+        // history record 15 of record 5
+        sut.dispatched(5, 15, 0)
+        Assert.assertTrue(sut.isInFlight(5))
+        Assert.assertFalse(sut.isInFlight(15))
+    }
+
+    @Test
+    fun unknownAckIsIgnoredTest() {
+        sut.dispatched(10, 10, 0)
+        sut.reset()
+        Assert.assertNull(sut.acked(10))
+        Assert.assertEquals(5L, sut.continueFrom(5))
+    }
+
+    @Test
+    fun staleRequestsResetWindowTest() {
+        sut.dispatched(10, 10, 1000)
+        sut.dispatched(11, 11, 2000)
+        Assert.assertFalse(sut.expireStale(1000))
+        Assert.assertTrue(sut.expireStale(1001))
+        Assert.assertEquals(0, sut.inFlightCount())
+        Assert.assertEquals(9L, sut.continueFrom(9))
+    }
+}
@@ -21,6 +21,8 @@ import org.junit.Test
 import org.mockito.Mock
 import org.mockito.junit.MockitoJUnit
 import org.mockito.junit.MockitoRule
+import kotlin.math.exp
+import kotlin.math.pow
 
 class InsulinOrefBasePluginTest {
 
@@ -122,4 +124,47 @@ class InsulinOrefBasePluginTest {
         treatment.amount = 10.0
         Assert.assertEquals(0.0, sut.iobCalcForTreatment(treatment, time, Constants.defaultDIA).iobContrib, 0.1)
     }
-}
\ No newline at end of file
+
+    @Test
+    fun testCurveMatchesFormula() {
+        testPeak = 75
+        val dia = 5.0
+        val td = dia * 60
+        val tp = testPeak.toDouble()
+        val tau = tp * (1 - tp / td) / (1 - 2 * tp / td)
+        val a = 2 * tau / td
+        val s = 1 / (1 - a + (1 + a) * exp(-td / tau))
+        var seconds = 0L
+        while (seconds < td * 60) {
+            val t = seconds / 60.0
+            val iob = Iob()
+            sut.addIobForAmount(10.0, 0, seconds * 1000, dia, iob)
+            Assert.assertEquals(10.0 * (s / tau.pow(2.0)) * t * (1 - t / td) * exp(-t / tau), iob.activityContrib, 0.0001)
+            Assert.assertEquals(10.0 * (1 - s * (1 - a) * ((t.pow(2.0) / (tau * td * (1 - a)) - t / tau - 1) * exp(-t / tau) + 1)), iob.iobContrib, 0.001)
+            seconds += 37
+        }
+        // nothing after dia
+        val iob = Iob()
+        sut.addIobForAmount(10.0, 0, (td * 60 * 1000).toLong(), dia, iob)
+        Assert.assertEquals(0.0, iob.iobContrib, 0.0)
+    }
+
+    @Test
+    fun curvesForDifferentDiaAreNotMixed() {
+        testPeak = 75
+        val time = 90 * 60 * 1000L
+        val expected5 = Iob().also { InsulinCurve(5.0, 75).add(10.0, 90.0, it) }
+        val expected7 = Iob().also { InsulinCurve(7.0, 75).add(10.0, 90.0, it) }
+        // alternate dia as with profile switches in one calculation
+        repeat(3) {
+            val iob5 = Iob().also { sut.addIobForAmount(10.0, 0, time, 5.0, it) }
+            val iob7 = Iob().also { sut.addIobForAmount(10.0, 0, time, 7.0, it) }
+            Assert.assertEquals(expected5.iobContrib, iob5.iobContrib, 0.0)
+            Assert.assertEquals(expected7.iobContrib, iob7.iobContrib, 0.0)
+            Assert.assertEquals(expected7.activityContrib, iob7.activityContrib, 0.0)
+        }
+        testPeak = 45
+        val expectedPeak = Iob().also { InsulinCurve(5.0, 45).add(10.0, 90.0, it) }
+        Assert.assertEquals(expectedPeak.iobContrib, Iob().also { sut.addIobForAmount(10.0, 0, time, 5.0, it) }.iobContrib, 0.0)
+    }
+}
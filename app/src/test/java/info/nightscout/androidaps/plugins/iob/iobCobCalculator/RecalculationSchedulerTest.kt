@@ -0,0 +1,80 @@
+package info.nightscout.androidaps.plugins.iob.iobCobCalculator
+
+import info.nightscout.androidaps.TestBase
+import info.nightscout.androidaps.database.entities.GlucoseValue
+import info.nightscout.androidaps.events.EventAppInitialized
+import info.nightscout.androidaps.events.EventNewBG
+import info.nightscout.androidaps.plugins.iob.iobCobCalculator.events.EventNewHistoryData
+import io.reactivex.schedulers.TestScheduler
+import org.junit.Assert
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+
+class RecalculationSchedulerTest : TestBase() {
+
+    private val testScheduler = TestScheduler()
+    private val runs = ArrayList<RecalculationScheduler.Request>()
+    private val sut = RecalculationScheduler(aapsLogger, testScheduler, 1000, 10000) { runs.add(it) }
+
+    private fun glucoseValue(timestamp: Long) =
+        GlucoseValue(timestamp = timestamp, raw = null, value = 100.0, trendArrow = GlucoseValue.TrendArrow.FLAT, noise = null, sourceSensor = GlucoseValue.SourceSensor.UNKNOWN)
+
+    private fun advance(millis: Long) = testScheduler.advanceTimeBy(millis, TimeUnit.MILLISECONDS)
+
+    @Test
+    fun mergesBurstIntoOneRunTest() {
+        sut.schedule(RecalculationScheduler.Request("a", from = 5000, cause = EventNewHistoryData(5000, false)))
+        advance(500)
+        sut.schedule(RecalculationScheduler.Request("b", from = 2000, reloadBgData = true))
+        advance(500)
+        sut.schedule(RecalculationScheduler.Request("c", from = 7000))
+        advance(999)
+        Assert.assertEquals(0, runs.size)
+        advance(1)
+        Assert.assertEquals(1, runs.size)
+        Assert.assertEquals(2000L, runs[0].from)
+        Assert.assertTrue(runs[0].reloadBgData)
+        Assert.assertFalse(runs[0].reset)
+        Assert.assertTrue(runs[0].cause is EventNewHistoryData)
+        Assert.assertEquals(1, sut.runsStarted.get())
+        Assert.assertEquals(2, sut.requestsMerged.get())
+
+        // nothing left
+        advance(20000)
+        Assert.assertEquals(1, runs.size)
+    }
+
+    @Test
+    fun postponedNoMoreThanMaxDelayTest() {
+        repeat(15) {
+            sut.schedule(RecalculationScheduler.Request("sync", from = 1000L * it))
+            advance(900)
+        }
+        advance(1000)
+        // first run after 10 s, the rest of requests after that
+        Assert.assertEquals(2, runs.size)
+        Assert.assertEquals(0L, runs[0].from)
+        Assert.assertEquals(12000L, runs[1].from)
+    }
+
+    @Test
+    fun newBgIsNotPostponedAndKeptAsCauseTest() {
+        sut.schedule(RecalculationScheduler.Request("bg", from = 5000, cause = EventNewBG(glucoseValue(5000))))
+        advance(600)
+        sut.schedule(RecalculationScheduler.Request("reset", reset = true, cause = EventAppInitialized()))
+        sut.schedule(RecalculationScheduler.Request("older bg", from = 4000, cause = EventNewBG(glucoseValue(4000))))
+        advance(400)
+        Assert.assertEquals(1, runs.size)
+        Assert.assertTrue(runs[0].reset)
+        Assert.assertEquals(4000L, runs[0].from)
+        Assert.assertEquals(5000L, (runs[0].cause as EventNewBG).glucoseValue?.timestamp)
+    }
+
+    @Test
+    fun cancelDropsPendingTest() {
+        sut.schedule(RecalculationScheduler.Request("a", from = 5000))
+        sut.cancel()
+        advance(20000)
+        Assert.assertEquals(0, runs.size)
+    }
+}
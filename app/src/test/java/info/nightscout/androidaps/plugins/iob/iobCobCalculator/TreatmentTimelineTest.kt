@@ -0,0 +1,77 @@
+package info.nightscout.androidaps.plugins.iob.iobCobCalculator
+
+import info.nightscout.androidaps.TestBase
+import info.nightscout.androidaps.database.AppRepository
+import info.nightscout.androidaps.database.entities.Bolus
+import info.nightscout.androidaps.database.entities.ExtendedBolus
+import info.nightscout.androidaps.database.entities.TemporaryBasal
+import io.reactivex.Single
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Test
+import org.mockito.Mock
+import org.mockito.Mockito.`when`
+
+class TreatmentTimelineTest : TestBase() {
+
+    @Mock lateinit var repository: AppRepository
+
+    private val from = 1000000L
+    private lateinit var timeline: TreatmentTimeline
+
+    private fun bolus(id: Long, timestamp: Long) = Bolus(id = id, timestamp = timestamp, amount = 1.0, type = Bolus.Type.NORMAL)
+
+    @Before
+    fun prepare() {
+        // database returns boluses ordered by id, not by timestamp
+        `when`(repository.getBolusesDataFromTime(from, true)).thenReturn(Single.just(listOf(bolus(1, from + 3000), bolus(2, from + 1000), bolus(3, from + 2000))))
+        `when`(repository.getTemporaryBasalsDataFromTime(from, true)).thenReturn(
+            Single.just(listOf(TemporaryBasal(id = 1, timestamp = from + 1000, type = TemporaryBasal.Type.NORMAL, isAbsolute = true, rate = 1.0, duration = 60000)))
+        )
+        `when`(repository.getExtendedBolusDataFromTime(from, true)).thenReturn(Single.just(listOf<ExtendedBolus>()))
+        timeline = TreatmentTimeline()
+        timeline.load(from, repository)
+    }
+
+    @Test
+    fun rangeTest() {
+        Assert.assertTrue(timeline.covers(from))
+        Assert.assertFalse(timeline.covers(from - 1))
+        Assert.assertEquals(listOf(2L, 3L, 1L), timeline.getBoluses(from, from + 5000).map { it.id })
+        Assert.assertEquals(listOf(3L), timeline.getBoluses(from + 1001, from + 2999).map { it.id })
+        Assert.assertEquals(listOf(2L, 3L), timeline.getBoluses(from + 1000, from + 2000).map { it.id })
+        Assert.assertEquals(0, timeline.getBoluses(from + 3001, from + 5000).size)
+        Assert.assertEquals(1, timeline.getTemporaryBasals(from, from + 1000).size)
+        Assert.assertEquals(0, timeline.getExtendedBoluses(from, from + 5000).size)
+    }
+
+    @Test
+    fun updateTest() {
+        // new record
+        timeline.update(listOf(bolus(4, from + 1500)))
+        Assert.assertEquals(listOf(2L, 4L, 3L, 1L), timeline.getBoluses(from, from + 5000).map { it.id })
+        // moved in time with history record
+        timeline.update(listOf(bolus(4, from + 4000), bolus(5, from + 1500).also { it.referenceId = 4 }))
+        Assert.assertEquals(listOf(2L, 3L, 1L, 4L), timeline.getBoluses(from, from + 5000).map { it.id })
+        // invalidated
+        timeline.update(listOf(bolus(3, from + 2000).also { it.isValid = false }))
+        Assert.assertEquals(listOf(2L, 1L, 4L), timeline.getBoluses(from, from + 5000).map { it.id })
+        // outside of loaded range
+        timeline.update(listOf(bolus(6, from - 1000)))
+        Assert.assertEquals(listOf(2L, 1L, 4L), timeline.getBoluses(0, from + 5000).map { it.id })
+        // other types
+        timeline.update(listOf(TemporaryBasal(id = 1, timestamp = from + 1000, isValid = false, type = TemporaryBasal.Type.NORMAL, isAbsolute = true, rate = 1.0, duration = 60000)))
+        Assert.assertEquals(0, timeline.getTemporaryBasals(from, from + 5000).size)
+        timeline.update(listOf(ExtendedBolus(id = 1, timestamp = from + 2000, amount = 1.0, duration = 60000)))
+        Assert.assertEquals(1, timeline.getExtendedBoluses(from, from + 5000).size)
+    }
+
+    @Test
+    fun resetTest() {
+        timeline.reset()
+        Assert.assertFalse(timeline.covers(from))
+        // updates are ignored until loaded
+        timeline.update(listOf(bolus(4, from + 1500)))
+        Assert.assertEquals(0, timeline.getBoluses(from, from + 5000).size)
+    }
+}
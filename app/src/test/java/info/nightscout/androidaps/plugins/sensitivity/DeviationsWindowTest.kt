@@ -0,0 +1,49 @@
+package info.nightscout.androidaps.plugins.sensitivity
+
+import info.nightscout.androidaps.plugins.iob.iobCobCalculator.IobCobCalculatorPlugin
+import org.junit.Assert
+import org.junit.Test
+import java.util.*
+
+class DeviationsWindowTest {
+
+    @Test
+    fun percentileMatchesSortedArrayTest() {
+        val random = Random(1)
+        val sorted = DeviationsWindow(keepSorted = true)
+        val unsorted = DeviationsWindow(keepSorted = false)
+        val reference = LinkedList<Double>()
+        for (i in 0 until 2000) {
+            val value = (random.nextInt(400) - 200) / 10.0
+            sorted.add(i.toLong(), value)
+            unsorted.add(i.toLong(), value)
+            reference.add(value)
+            if (reference.size > 288) {
+                sorted.removeFirst()
+                unsorted.removeFirst()
+                reference.removeFirst()
+            }
+            if (i % 500 == 499) {
+                sorted.clear()
+                unsorted.clear()
+                reference.clear()
+            }
+            val expected = IobCobCalculatorPlugin.percentile(reference.toTypedArray().also { Arrays.sort(it) }, 0.50)
+            Assert.assertEquals(reference.size, sorted.size)
+            Assert.assertEquals(expected, sorted.percentile(0.50), 0.0)
+            Assert.assertEquals(expected, unsorted.percentile(0.50), 0.0)
+        }
+    }
+
+    @Test
+    fun fifoTest() {
+        val window = DeviationsWindow(keepSorted = false)
+        Assert.assertEquals(0.0, window.percentile(0.50), 0.0)
+        // grow over initial capacity
+        for (i in 0 until 1000) window.add(i * 10L, i.toDouble())
+        for (i in 0 until 990) window.removeFirst()
+        Assert.assertEquals(10, window.size)
+        Assert.assertEquals(9900L, window.timeAt(0))
+        Assert.assertEquals(999.0, window.valueAt(9), 0.0)
+    }
+}
@@ -0,0 +1,64 @@
+package info.nightscout.androidaps.plugins.sensitivity
+
+import info.nightscout.androidaps.plugins.iob.iobCobCalculator.IobCobCalculatorPlugin
+import org.junit.Assert
+import org.junit.Test
+import java.util.*
+import kotlin.math.roundToInt
+
+class Oref1DeviationsWindowTest {
+
+    private class Data(val time: Long, val reset: Boolean, val deviation: Double?, val extraDeviations: List<Double>)
+
+    @Test
+    fun sameAsReplayTest() {
+        for (seed in 0L until 200L) {
+            val random = Random(seed)
+            val capacity = listOf(5, 96, 288)[random.nextInt(3)]
+            val period = listOf(4, 96, 288)[random.nextInt(3)] * 5 * 60 * 1000L
+            // more extra deviations and gaps in data than in real life to get over capacity
+            val data = ArrayList<Data>()
+            var time = 0L
+            for (i in 0 until 400) {
+                time += if (random.nextInt(20) == 0) 5 * 60 * 1000L * (1 + random.nextInt(30)) else 5 * 60 * 1000L
+                val extraDeviations = if (random.nextInt(3) == 0) List(1 + random.nextInt(2)) { (random.nextInt(21) - 10) / 10.0 } else listOf()
+                val deviation = if (random.nextInt(100) < 85) (random.nextInt(200) - 100) / 10.0 else null
+                data.add(Data(time, random.nextInt(150) == 0, deviation, extraDeviations))
+            }
+            val window = Oref1DeviationsWindow(capacity, period)
+            var added = 0
+            var toTime = data[0].time
+            while (added < data.size) {
+                toTime += if (random.nextInt(10) == 0) 5 * 60 * 1000L * random.nextInt(40) else 5 * 60 * 1000L
+                while (added < data.size && data[added].time <= toTime) {
+                    data[added].let { window.add(it.time, it.reset, it.deviation, it.extraDeviations) }
+                    added++
+                }
+                window.moveTo(toTime)
+
+                // walk all data again the way SensitivityOref1Plugin did
+                val replay = LinkedList<Double>()
+                for (i in 0 until added) {
+                    if (data[i].reset) replay.clear()
+                    data[i].deviation?.let { if (data[i].time > toTime - period) replay.add(it) }
+                    replay.addAll(data[i].extraDeviations)
+                    if (replay.size > capacity) replay.removeFirst()
+                }
+                Assert.assertEquals(replay.size, window.size)
+                val pad = if (replay.size < capacity) ((1 - replay.size.toDouble() / capacity) * 18).roundToInt() else 0
+                repeat(pad) { replay.add(0.0) }
+                val expected = IobCobCalculatorPlugin.percentile(replay.toTypedArray().also { Arrays.sort(it) }, 0.50)
+                Assert.assertEquals(expected, window.percentile(0.50, pad), 0.0)
+            }
+        }
+    }
+
+    @Test
+    fun emptyTest() {
+        val window = Oref1DeviationsWindow(96, 8 * 60 * 60 * 1000L)
+        window.moveTo(0)
+        Assert.assertEquals(0, window.size)
+        Assert.assertEquals(0.0, window.percentile(0.50, 0), 0.0)
+        Assert.assertEquals(0.0, window.percentile(0.50, 18), 0.0)
+    }
+}
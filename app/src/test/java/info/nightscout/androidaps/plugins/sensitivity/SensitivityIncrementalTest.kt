@@ -0,0 +1,284 @@
+package info.nightscout.androidaps.plugins.sensitivity
+
+import androidx.collection.LongSparseArray
+import dagger.android.AndroidInjector
+import dagger.android.HasAndroidInjector
+import info.nightscout.androidaps.R
+import info.nightscout.androidaps.TestBaseWithProfile
+import info.nightscout.androidaps.data.InMemoryGlucoseValue
+import info.nightscout.androidaps.database.AppRepository
+import info.nightscout.androidaps.database.entities.TherapyEvent
+import info.nightscout.androidaps.extensions.isEPSEvent5minBack
+import info.nightscout.androidaps.extensions.isTherapyEventEvent5minBack
+import info.nightscout.androidaps.interfaces.Profile
+import info.nightscout.androidaps.plugins.iob.iobCobCalculator.AutosensDataStore
+import info.nightscout.androidaps.plugins.iob.iobCobCalculator.AutosensResult
+import info.nightscout.androidaps.plugins.iob.iobCobCalculator.IobCobCalculatorPlugin
+import info.nightscout.androidaps.plugins.iob.iobCobCalculator.data.AutosensData
+import info.nightscout.androidaps.utils.T
+import info.nightscout.androidaps.utils.sharedPreferences.SP
+import io.reactivex.Single
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Test
+import org.mockito.Mock
+import org.mockito.Mockito.`when`
+import java.util.*
+import kotlin.math.roundToInt
+
+/**
+ * Sensitivity calculated incrementally bucket by bucket and sensitivity calculated
+ * from scratch for every bucket must be the same as result of algorithm before
+ * incremental calculation was introduced
+ */
+class SensitivityIncrementalTest : TestBaseWithProfile() {
+
+    @Mock lateinit var sp: SP
+    @Mock lateinit var repository: AppRepository
+
+    private val injector = HasAndroidInjector { AndroidInjector { } }
+    private val now = System.currentTimeMillis() / T.mins(5).msecs() * T.mins(5).msecs()
+    private val fromTime = now - T.hours(30).msecs()
+    private val siteChange = now - T.hours(10).msecs() - T.mins(2).msecs()
+
+    @Before
+    fun prepare() {
+        `when`(profileFunction.getProfile()).thenReturn(validProfile)
+        `when`(sp.getString(R.string.key_age, "")).thenReturn("adult")
+        `when`(sp.getString(R.string.key_openapsama_autosens_min, "0.7")).thenReturn("0.7")
+        `when`(sp.getString(R.string.key_openapsama_autosens_max, "1.2")).thenReturn("1.2")
+        `when`(repository.getTherapyEventDataFromTime(fromTime, TherapyEvent.Type.CANNULA_CHANGE, true)).thenReturn(
+            Single.just(listOf(TherapyEvent(timestamp = siteChange, type = TherapyEvent.Type.CANNULA_CHANGE, glucoseUnit = TherapyEvent.GlucoseUnit.MGDL)))
+        )
+        `when`(repository.getEffectiveProfileSwitchDataFromTime(fromTime, true)).thenReturn(Single.just(listOf()))
+    }
+
+    private fun prepareData(): AutosensDataStore {
+        val random = Random(1)
+        val ads = AutosensDataStore()
+        val bucketedData = mutableListOf<InMemoryGlucoseValue>()
+        var time = fromTime
+        while (time < now) {
+            val autosensData = AutosensData(injector).also {
+                it.time = time
+                it.bg = 60.0 + random.nextInt(140)
+                it.deviation = (random.nextInt(200) - 100) / 10.0
+                it.validDeviation = random.nextInt(100) < 85
+                it.pastSensitivity = listOf("=", "+", "-", "x")[random.nextInt(4)]
+                if (random.nextInt(24) == 0) it.extraDeviation.add(0.0)
+            }
+            ads.autosensDataTable.put(time, autosensData)
+            bucketedData.add(0, InMemoryGlucoseValue(time, autosensData.bg))
+            time += T.mins(5).msecs()
+        }
+        ads.bucketedData = bucketedData
+        return ads
+    }
+
+    private fun compare(
+        createPlugin: () -> AbstractSensitivityPlugin,
+        reference: (plugin: AbstractSensitivityPlugin, ads: AutosensDataStore, toTime: Long) -> AutosensResult
+    ) {
+        val ads = prepareData()
+        // always called with the same AutosensDataStore and continues from the previous bucket
+        val incrementalPlugin = createPlugin()
+        // fresh clone for every call forces calculation from scratch
+        val fromScratchPlugin = createPlugin()
+        var toTime = fromTime + T.mins(20).msecs()
+        while (toTime < now) {
+            val expected = reference(fromScratchPlugin, ads, toTime)
+            assertResult(expected, incrementalPlugin.detectSensitivity(ads, fromTime, toTime))
+            assertResult(expected, fromScratchPlugin.detectSensitivity(ads.clone(), fromTime, toTime))
+            toTime += T.mins(5).msecs()
+        }
+    }
+
+    private fun assertResult(expected: AutosensResult, actual: AutosensResult) {
+        Assert.assertEquals(expected.ratio, actual.ratio, 0.0)
+        Assert.assertEquals(expected.carbsAbsorbed, actual.carbsAbsorbed, 0.0)
+        Assert.assertEquals(expected.pastSensitivity, actual.pastSensitivity)
+        Assert.assertEquals(expected.sensResult, actual.sensResult)
+        Assert.assertEquals(expected.ratioLimit, actual.ratioLimit)
+    }
+
+    private fun siteChanges() = repository.getTherapyEventDataFromTime(fromTime, TherapyEvent.Type.CANNULA_CHANGE, true).blockingGet()
+    private fun profileSwitches() = repository.getEffectiveProfileSwitchDataFromTime(fromTime, true).blockingGet()
+    private fun pastSensitivityHour(time: Long): String {
+        val secondsFromMidnight = Profile.secondsFromMidnight(time)
+        return if (secondsFromMidnight % 3600 < 2.5 * 60 || secondsFromMidnight % 3600 > 57.5 * 60) "(" + (secondsFromMidnight / 3600.0).roundToInt() + ")" else ""
+    }
+
+    // Algorithms before incremental calculation, without logging
+
+    private fun referenceAAPS(plugin: AbstractSensitivityPlugin, ads: AutosensDataStore, toTime: Long, hoursForDetection: Int): AutosensResult {
+        val profile = profileFunction.getProfile()!!
+        val current = ads.getAutosensDataAtTime(toTime)!!
+        val siteChanges = siteChanges()
+        val profileSwitches = profileSwitches()
+        val deviationsArray: MutableList<Double> = ArrayList()
+        var pastSensitivity = ""
+        for (index in 0 until ads.autosensDataTable.size()) {
+            val autosensData = ads.autosensDataTable.valueAt(index)
+            if (autosensData.time < fromTime || autosensData.time > toTime) continue
+            if (siteChanges.isTherapyEventEvent5minBack(autosensData.time)) {
+                deviationsArray.clear()
+                pastSensitivity += "(SITECHANGE)"
+            }
+            if (profileSwitches.isEPSEvent5minBack(autosensData.time)) {
+                deviationsArray.clear()
+                pastSensitivity += "(PROFILESWITCH)"
+            }
+            var deviation = autosensData.deviation
+            if (autosensData.bg < 80 && deviation > 0) deviation = 0.0
+            if (autosensData.validDeviation) if (autosensData.time > toTime - hoursForDetection * 60 * 60 * 1000L) deviationsArray.add(deviation)
+            if (deviationsArray.size > hoursForDetection * 60 / 5) deviationsArray.removeAt(0)
+            pastSensitivity += autosensData.pastSensitivity + pastSensitivityHour(autosensData.time)
+        }
+        val deviations = Array(deviationsArray.size) { i -> deviationsArray[i] }
+        Arrays.sort(deviations)
+        val percentile = IobCobCalculatorPlugin.percentile(deviations, 0.50)
+        val basalOff = percentile * (60.0 / 5.0) / profile.getIsfMgdl()
+        val ratio = 1 + basalOff / profile.getMaxDailyBasal()
+        val sensResult = when {
+            percentile < 0 -> "Excess insulin sensitivity detected"
+            percentile > 0 -> "Excess insulin resistance detected"
+            else           -> "Sensitivity normal"
+        }
+        return plugin.fillResult(ratio, current.cob, pastSensitivity, "", sensResult, deviationsArray.size)
+    }
+
+    private fun referenceWeightedAverage(plugin: AbstractSensitivityPlugin, ads: AutosensDataStore, toTime: Long, hoursForDetection: Int): AutosensResult {
+        val profile = profileFunction.getProfile()!!
+        val current = ads.getAutosensDataAtTime(toTime)!!
+        val siteChanges = siteChanges()
+        val profileSwitches = profileSwitches()
+        var pastSensitivity = ""
+        val data = LongSparseArray<Double>()
+        for (index in 0 until ads.autosensDataTable.size()) {
+            val autosensData = ads.autosensDataTable.valueAt(index)
+            if (autosensData.time < fromTime || autosensData.time > toTime) continue
+            if (autosensData.time < toTime - hoursForDetection * 60 * 60 * 1000L) continue
+            if (siteChanges.isTherapyEventEvent5minBack(autosensData.time)) {
+                data.clear()
+                pastSensitivity += "(SITECHANGE)"
+            }
+            if (profileSwitches.isEPSEvent5minBack(autosensData.time)) {
+                data.clear()
+                pastSensitivity += "(PROFILESWITCH)"
+            }
+            var deviation = autosensData.deviation
+            if (autosensData.bg < 80 && deviation > 0) deviation = 0.0
+            val reverseWeight = (toTime - autosensData.time) / (5 * 60 * 1000L)
+            if (autosensData.validDeviation) data.append(reverseWeight, deviation)
+            pastSensitivity += autosensData.pastSensitivity + pastSensitivityHour(autosensData.time)
+        }
+        if (data.size() == 0) return AutosensResult()
+        var weightedSum = 0.0
+        var weights = 0.0
+        val highestWeight = data.keyAt(data.size() - 1)
+        for (i in 0 until data.size()) {
+            val weight = (highestWeight - data.keyAt(i)) / 2.0
+            weights += weight
+            weightedSum += weight * data.valueAt(i)
+        }
+        if (weights == 0.0) return AutosensResult()
+        val average = weightedSum / weights
+        val basalOff = average * (60 / 5.0) / profile.getIsfMgdl()
+        val ratio = 1 + basalOff / profile.getMaxDailyBasal()
+        val sensResult = when {
+            average < 0 -> "Excess insulin sensitivity detected"
+            average > 0 -> "Excess insulin resistance detected"
+            else        -> "Sensitivity normal"
+        }
+        return plugin.fillResult(ratio, current.cob, pastSensitivity, "", sensResult, data.size())
+    }
+
+    private fun referenceOref1(plugin: AbstractSensitivityPlugin, ads: AutosensDataStore, toTime: Long): AutosensResult {
+        val profile = profileFunction.getProfile()!!
+        val current = ads.getAutosensDataAtTime(toTime)!!
+        val siteChanges = siteChanges()
+        val profileSwitches = profileSwitches()
+        val deviationsHour = mutableListOf(ArrayList<Double>(), ArrayList<Double>())
+        val pastSensitivityArray = mutableListOf("", "")
+        val sensResultArray = mutableListOf("", "")
+        val ratioArray = mutableListOf(0.0, 0.0)
+        val deviationCategory = listOf(96.0, 288.0)
+        val hoursDetection = listOf(8.0, 24.0)
+        for (index in 0 until ads.autosensDataTable.size()) {
+            val autosensData = ads.autosensDataTable.valueAt(index)
+            if (autosensData.time < fromTime || autosensData.time > toTime) continue
+            for (hourSegment in deviationsHour.indices) {
+                val deviationsArray = deviationsHour[hourSegment]
+                var pastSensitivity = pastSensitivityArray[hourSegment]
+                if (siteChanges.isTherapyEventEvent5minBack(autosensData.time)) {
+                    deviationsArray.clear()
+                    pastSensitivity += "(SITECHANGE)"
+                    pastSensitivity += "(SITECHANGE)"
+                }
+                if (profileSwitches.isEPSEvent5minBack(autosensData.time)) {
+                    deviationsArray.clear()
+                    pastSensitivity += "(PROFILESWITCH)"
+                }
+                var deviation = autosensData.deviation
+                if (autosensData.bg < 80 && deviation > 0) deviation = 0.0
+                if (autosensData.validDeviation) if (autosensData.time > toTime - hoursDetection[hourSegment] * 60 * 60 * 1000L) deviationsArray.add(deviation)
+                deviationsArray.addAll(autosensData.extraDeviation)
+                if (deviationsArray.size > deviationCategory[hourSegment]) deviationsArray.removeAt(0)
+                pastSensitivityArray[hourSegment] = pastSensitivity + autosensData.pastSensitivity + pastSensitivityHour(autosensData.time)
+            }
+        }
+        for (i in deviationsHour.indices) {
+            val deviations = deviationsHour[i]
+            if (deviations.size < deviationCategory[i]) {
+                val pad = ((1 - deviations.size.toDouble() / deviationCategory[i]) * 18).roundToInt()
+                for (d in 0 until pad) deviations.add(0.0)
+            }
+        }
+        for (hourUsed in deviationsHour.indices) {
+            val deviationsArray = deviationsHour[hourUsed]
+            var sensResult = if (hourUsed == 1) "(24 hours) " else "(8 hours) "
+            val deviations = Array(deviationsArray.size) { i -> deviationsArray[i] }
+            Arrays.sort(deviations)
+            val pSensitive = IobCobCalculatorPlugin.percentile(deviations, 0.50)
+            val pResistant = IobCobCalculatorPlugin.percentile(deviations, 0.50)
+            var basalOff = 0.0
+            when {
+                pSensitive < 0 -> {
+                    basalOff = pSensitive * (60.0 / 5) / profile.getIsfMgdl()
+                    sensResult += "Excess insulin sensitivity detected"
+                }
+
+                pResistant > 0 -> {
+                    basalOff = pResistant * (60.0 / 5) / profile.getIsfMgdl()
+                    sensResult += "Excess insulin resistance detected"
+                }
+
+                else           -> sensResult += "Sensitivity normal"
+            }
+            sensResultArray[hourUsed] = sensResult
+            ratioArray[hourUsed] = 1 + basalOff / profile.getMaxDailyBasal()
+        }
+        val key = if (ratioArray[0] < ratioArray[1]) 0 else 1
+        val comparison = " 8 h ratio " + ratioArray[0] + " vs 24h ratio " + ratioArray[1]
+        return plugin.fillResult(ratioArray[key], current.cob, pastSensitivityArray[key], "", sensResultArray[key] + comparison, deviationsHour[key].size)
+    }
+
+    @Test
+    fun aapsTest() {
+        `when`(sp.getInt(R.string.key_openapsama_autosens_period, 24)).thenReturn(8)
+        compare({ SensitivityAAPSPlugin(injector, aapsLogger, rh, sp, profileFunction, dateUtil, repository) }) { plugin, ads, toTime -> referenceAAPS(plugin, ads, toTime, 8) }
+    }
+
+    @Test
+    fun weightedAverageTest() {
+        `when`(sp.getInt(R.string.key_openapsama_autosens_period, 24)).thenReturn(8)
+        compare({ SensitivityWeightedAveragePlugin(injector, aapsLogger, rh, sp, profileFunction, dateUtil, repository) }) { plugin, ads, toTime ->
+            referenceWeightedAverage(plugin, ads, toTime, 8)
+        }
+    }
+
+    @Test
+    fun oref1Test() {
+        compare({ SensitivityOref1Plugin(injector, aapsLogger, rh, sp, profileFunction, dateUtil, repository) }) { plugin, ads, toTime -> referenceOref1(plugin, ads, toTime) }
+    }
+}
@@ -30,6 +30,7 @@ import info.nightscout.androidaps.utils.buildHelper.ConfigImpl
 import info.nightscout.androidaps.utils.resources.ResourceHelper
 import info.nightscout.androidaps.utils.rx.AapsSchedulers
 import info.nightscout.androidaps.utils.sharedPreferences.SP
+import info.nightscout.androidaps.utils.tracing.LoopTracer
 import io.reactivex.Single
 import org.junit.Assert
 import org.junit.Before
@@ -63,9 +64,10 @@ class CommandQueueImplementationTest : TestBaseWithProfile() {
         dateUtil: DateUtil,
         repository: AppRepository,
         fabricPrivacy: FabricPrivacy,
-        config: Config
+        config: Config,
+        loopTracer: LoopTracer
     ) : CommandQueueImplementation(injector, aapsLogger, rxBus, aapsSchedulers, rh, constraintChecker, profileFunction,
-                                   activePlugin, context, sp, buildHelper, dateUtil, repository, fabricPrivacy, config) {
+                                   activePlugin, context, sp, buildHelper, dateUtil, repository, fabricPrivacy, config, loopTracer) {
 
         override fun notifyAboutNewCommand() {}
 
@@ -107,7 +109,7 @@ class CommandQueueImplementationTest : TestBaseWithProfile() {
         commandQueue = CommandQueueMocked(injector, aapsLogger, rxBus, aapsSchedulers, rh,
                                           constraintChecker, profileFunction, activePlugin, context, sp,
                                          BuildHelperImpl(ConfigImpl(), fileListProvider), dateUtil, repository,
-                                          fabricPrivacy, config)
+                                          fabricPrivacy, config, LoopTracer())
         testPumpPlugin = TestPumpPlugin(injector)
 
         testPumpPlugin.pumpDescription.basalMinimumRate = 0.1
@@ -141,7 +143,7 @@ class CommandQueueImplementationTest : TestBaseWithProfile() {
         val commandQueue = CommandQueueImplementation(injector, aapsLogger, rxBus, aapsSchedulers, rh,
                                                       constraintChecker, profileFunction, activePlugin, context, sp,
                                                       BuildHelperImpl(ConfigImpl(), fileListProvider), dateUtil, repository,
-                                                      fabricPrivacy, config)
+                                                      fabricPrivacy, config, LoopTracer())
         // start with empty queue
         Assert.assertEquals(0, commandQueue.size())
 
@@ -18,6 +18,7 @@ import info.nightscout.androidaps.queue.commands.CommandTempBasalAbsolute
 import info.nightscout.androidaps.utils.buildHelper.BuildHelperImpl
 import info.nightscout.androidaps.utils.buildHelper.ConfigImpl
 import info.nightscout.androidaps.utils.sharedPreferences.SP
+import info.nightscout.androidaps.utils.tracing.LoopTracer
 import org.junit.Assert
 import org.junit.Before
 import org.junit.Test
@@ -55,7 +56,7 @@ class QueueThreadTest : TestBaseWithProfile() {
         commandQueue = CommandQueueImplementation(
             injector, aapsLogger, rxBus, aapsSchedulers, rh, constraintChecker,
             profileFunction, activePlugin, context, sp,
-            BuildHelperImpl(ConfigImpl(), fileListProvider), dateUtil, repository, fabricPrivacy, config
+            BuildHelperImpl(ConfigImpl(), fileListProvider), dateUtil, repository, fabricPrivacy, config, LoopTracer()
         )
 
         val pumpDescription = PumpDescription()
@@ -76,7 +77,7 @@ class QueueThreadTest : TestBaseWithProfile() {
         Mockito.`when`(constraintChecker.applyBasalPercentConstraints(anyObject(), anyObject()))
             .thenReturn(percentageConstraint)
 
-        sut = QueueThread(commandQueue, context, aapsLogger, rxBus, activePlugin, rh, sp)
+        sut = QueueThread(commandQueue, context, aapsLogger, rxBus, activePlugin, rh, sp, LoopTracer())
     }
 
     @Test
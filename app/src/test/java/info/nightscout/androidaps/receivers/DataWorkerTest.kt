@@ -0,0 +1,166 @@
+package info.nightscout.androidaps.receivers
+
+import android.content.Context
+import androidx.work.OneTimeWorkRequest
+import androidx.work.WorkInfo
+import androidx.work.WorkManager
+import androidx.work.impl.utils.futures.SettableFuture
+import info.nightscout.androidaps.TestBase
+import info.nightscout.androidaps.plugins.bus.RxBus
+import info.nightscout.androidaps.plugins.general.nsclient.events.EventNSClientRestart
+import info.nightscout.androidaps.plugins.source.XdripPlugin
+import info.nightscout.androidaps.utils.DateUtil
+import info.nightscout.androidaps.utils.T
+import org.junit.After
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Test
+import org.mockito.Mock
+import org.mockito.MockedStatic
+import org.mockito.Mockito.`when`
+import org.mockito.Mockito.mock
+import org.mockito.Mockito.mockStatic
+import org.mockito.Mockito.never
+import org.mockito.Mockito.times
+import org.mockito.Mockito.verify
+import java.util.*
+
+class DataWorkerTest : TestBase() {
+
+    @Mock lateinit var context: Context
+    @Mock lateinit var dateUtil: DateUtil
+    @Mock lateinit var rxBus: RxBus
+    @Mock lateinit var workManager: WorkManager
+
+    private lateinit var sut: DataWorker
+    private lateinit var workManagerStatic: MockedStatic<WorkManager>
+    private var now = 100000L
+
+    // state of enqueued work, missing one has been pruned
+    private val workStates = HashMap<UUID, WorkInfo.State>()
+
+    @Before
+    fun prepare() {
+        `when`(dateUtil.now()).thenAnswer { now }
+        workManagerStatic = mockStatic(WorkManager::class.java)
+        workManagerStatic.`when`<WorkManager> { WorkManager.getInstance(context) }.thenReturn(workManager)
+        `when`(workManager.getWorkInfoById(anyObject())).thenAnswer { invocation ->
+            val state = workStates[invocation.getArgument(0)]
+            SettableFuture.create<WorkInfo>().also { future ->
+                future.set(state?.let { mock(WorkInfo::class.java).also { `when`(it.state).thenReturn(state) } })
+            }
+        }
+        sut = DataWorker(context, aapsLogger, dateUtil, rxBus)
+    }
+
+    @After
+    fun cleanup() {
+        workManagerStatic.close()
+    }
+
+    private fun store(value: String, queue: DataWorker.Queue): Long =
+        sut.storeInputData(value, null, queue).getLong(DataWorker.STORE_KEY, -1)
+
+    private fun storeAndEnqueue(value: String, queue: DataWorker.Queue): Pair<Long, UUID> {
+        val request = OneTimeWorkRequest.Builder(XdripPlugin.XdripWorker::class.java)
+            .setInputData(sut.storeInputData(value, null, queue)).build()
+        sut.enqueue(request, queue)
+        workStates[request.id] = WorkInfo.State.ENQUEUED
+        return Pair(request.inputData.getLong(DataWorker.STORE_KEY, -1), request.id)
+    }
+
+    @Test
+    fun payloadIsPickedUpOnceTest() {
+        val key = store("a", DataWorker.Queue.CGM)
+        now += 1000
+        Assert.assertEquals("a", sut.pickupString(key))
+        Assert.assertNull(sut.pickupString(key))
+        Assert.assertEquals("depth=0 dropped=0 expired=0 latency=1000 max=1000", sut.queueStats(DataWorker.Queue.CGM))
+    }
+
+    @Test
+    fun fullQueueDropsOldestOfTheSameQueueTest() {
+        val keys = (0 until DataWorker.Queue.SMS.capacity).map { store("sms$it", DataWorker.Queue.SMS) }
+        val cgm = store("cgm", DataWorker.Queue.CGM)
+        val last = store("last", DataWorker.Queue.SMS)
+        Assert.assertNull(sut.pickupString(keys[0]))
+        Assert.assertEquals("sms1", sut.pickupString(keys[1]))
+        Assert.assertEquals("last", sut.pickupString(last))
+        Assert.assertEquals("cgm", sut.pickupString(cgm))
+        Assert.assertTrue(sut.queueStats(DataWorker.Queue.SMS).contains("dropped=1"))
+    }
+
+    @Test
+    fun fullCgmQueueKeepsEverythingTest() {
+        val keys = (0..DataWorker.Queue.CGM.capacity).map { store("cgm$it", DataWorker.Queue.CGM) }
+        Assert.assertTrue(sut.queueStats(DataWorker.Queue.CGM).startsWith("depth=${DataWorker.Queue.CGM.capacity + 1} dropped=0"))
+        keys.forEachIndexed { i, key -> Assert.assertEquals("cgm$i", sut.pickupString(key)) }
+    }
+
+    @Test
+    fun fullNsQueueRequestsResyncWhenDrainedTest() {
+        val keys = (0 until DataWorker.Queue.NSCLIENT.capacity).map { store("ns$it", DataWorker.Queue.NSCLIENT) }
+        val dropped = store("dropped", DataWorker.Queue.NSCLIENT)
+        // covered by resync too
+        val next = store("next", DataWorker.Queue.NSCLIENT)
+        val cgm = store("cgm", DataWorker.Queue.CGM)
+        Assert.assertNull(sut.pickupString(dropped))
+        Assert.assertNull(sut.pickupString(next))
+        Assert.assertEquals("cgm", sut.pickupString(cgm))
+        Assert.assertTrue(sut.queueStats(DataWorker.Queue.NSCLIENT).contains("dropped=2"))
+
+        keys.dropLast(1).forEach { Assert.assertNotNull(sut.pickupString(it)) }
+        verify(rxBus, never()).send(anyObject<EventNSClientRestart>())
+        Assert.assertNotNull(sut.pickupString(keys.last()))
+        verify(rxBus, times(1)).send(anyObject<EventNSClientRestart>())
+
+        // full download is stored again
+        val resync = store("resync", DataWorker.Queue.NSCLIENT)
+        Assert.assertEquals("resync", sut.pickupString(resync))
+        verify(rxBus, times(1)).send(anyObject<EventNSClientRestart>())
+    }
+
+    @Test
+    fun payloadOfPendingWorkIsKeptTest() {
+        val (key, workId) = storeAndEnqueue("old", DataWorker.Queue.NSCLIENT)
+        workStates[workId] = WorkInfo.State.BLOCKED
+        now += T.hours(5).msecs()
+        store("new", DataWorker.Queue.NSCLIENT)
+        Assert.assertEquals("old", sut.pickupString(key))
+        Assert.assertTrue(sut.queueStats(DataWorker.Queue.NSCLIENT).contains("expired=0"))
+    }
+
+    @Test
+    fun payloadOfFinishedWorkIsReleasedTest() {
+        val (cancelled, cancelledId) = storeAndEnqueue("cancelled", DataWorker.Queue.CGM)
+        val (pruned, prunedId) = storeAndEnqueue("pruned", DataWorker.Queue.CGM)
+        val (running, _) = storeAndEnqueue("running", DataWorker.Queue.CGM)
+        workStates[cancelledId] = WorkInfo.State.CANCELLED
+        workStates.remove(prunedId)
+
+        // not checked before interval
+        now += T.mins(14).msecs()
+        store("other", DataWorker.Queue.SMS)
+        Assert.assertTrue(sut.queueStats(DataWorker.Queue.CGM).startsWith("depth=3 "))
+
+        now += T.mins(1).msecs()
+        store("other", DataWorker.Queue.SMS)
+        Assert.assertEquals("depth=1 dropped=0 expired=2 latency=0 max=0", sut.queueStats(DataWorker.Queue.CGM))
+        Assert.assertNull(sut.pickupString(cancelled))
+        Assert.assertNull(sut.pickupString(pruned))
+        Assert.assertEquals("running", sut.pickupString(running))
+    }
+
+    @Test
+    fun payloadNeverEnqueuedIsReleasedTest() {
+        val old = store("old", DataWorker.Queue.CGM)
+        val other = store("other", DataWorker.Queue.SMS)
+        now += T.mins(15).msecs()
+        val fresh = store("fresh", DataWorker.Queue.CGM)
+        Assert.assertEquals("depth=1 dropped=0 expired=1 latency=0 max=0", sut.queueStats(DataWorker.Queue.CGM))
+        Assert.assertEquals("depth=0 dropped=0 expired=1 latency=0 max=0", sut.queueStats(DataWorker.Queue.SMS))
+        Assert.assertNull(sut.pickupString(old))
+        Assert.assertNull(sut.pickupString(other))
+        Assert.assertEquals("fresh", sut.pickupString(fresh))
+    }
+}
@@ -36,6 +36,7 @@ import org.json.JSONException
 import org.json.JSONObject
 import java.util.*
 import javax.inject.Inject
+import javax.inject.Provider
 import javax.inject.Singleton
 import kotlin.collections.ArrayList
 
@@ -54,7 +55,8 @@ class AutomationPlugin @Inject constructor(
     private val aapsSchedulers: AapsSchedulers,
     private val config: Config,
     private val locationServiceHelper: LocationServiceHelper,
-    private val dateUtil: DateUtil
+    private val dateUtil: DateUtil,
+    private val triggerDataContextProvider: Provider<TriggerDataContext>
 ) : PluginBase(
     PluginDescription()
         .mainType(PluginType.GENERAL)
@@ -200,11 +202,18 @@ class AutomationPlugin @Inject constructor(
         }
 
         aapsLogger.debug(LTag.AUTOMATION, "processActions")
+        // one data snapshot for all events of this run
+        var data = triggerDataContextProvider.get()
+        var changed = false
         val iterator: MutableIterator<AutomationEvent> = automationEvents.iterator()
         while (iterator.hasNext()) {
             val event = iterator.next()
             if (event.isEnabled && !event.userAction && event.shouldRun())
-                processEvent(event, userEventsEnabled)
+                if (processEvent(event, userEventsEnabled, data)) {
+                    changed = true
+                    // executed actions may have changed TT, profile, loop state, ... next events must see it
+                    data = triggerDataContextProvider.get()
+                }
         }
         // we cannot detect connected BT devices
         // so let's collect all connection/disconnections between 2 runs of processActions()
@@ -212,11 +221,15 @@ class AutomationPlugin @Inject constructor(
         // after processing clear events to prevent repeated actions
         btConnects.clear()
 
-        storeToSP() // save last run time
+        // events are stored only if something has been executed or removed
+        if (changed) storeToSP()
     }
 
-    fun processEvent(event: AutomationEvent, userEventsEnabled: Boolean) {
-        if (event.trigger.shouldRun() && event.getPreconditions().shouldRun()) {
+    /**
+     * @return true if actions of event have been executed
+     */
+    fun processEvent(event: AutomationEvent, userEventsEnabled: Boolean, data: TriggerDataContext = triggerDataContextProvider.get()): Boolean {
+        if (event.trigger.shouldRun(data) && event.getPreconditions().shouldRun(data)) {
             if (event.systemAction || userEventsEnabled) {
                 val actions = event.actions
                 for (action in actions) {
@@ -248,8 +261,10 @@ class AutomationPlugin @Inject constructor(
                 SystemClock.sleep(1100)
                 event.lastRun = dateUtil.now()
                 if (event.autoRemove) automationEvents.remove(event)
+                return true
             }
         }
+        return false
     }
 
     @Synchronized
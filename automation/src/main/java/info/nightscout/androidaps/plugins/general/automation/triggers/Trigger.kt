@@ -48,6 +48,21 @@ abstract class Trigger(val injector: HasAndroidInjector) {
     }
 
     abstract fun shouldRun(): Boolean
+
+    /**
+     * Evaluate trigger within automation run
+     * Triggers reading pump, database or calculated data get them from [data] shared by all triggers of the run
+     */
+    open fun shouldRun(data: TriggerDataContext): Boolean = shouldRun()
+
+    /**
+     * true if result depends on trigger settings and [TriggerDataContext] only
+     * and identical triggers may share the result within one run
+     */
+    open val memoizable: Boolean = false
+
+    fun dataContext(): TriggerDataContext =
+        TriggerDataContext(aapsLogger, dateUtil, repository, profileFunction, iobCobCalculator, glucoseStatusProvider, activePlugin)
     abstract fun dataJSON(): JSONObject
     abstract fun fromJSON(data: String): Trigger
 
@@ -29,8 +29,12 @@ class TriggerAutosensValue(injector: HasAndroidInjector) : Trigger(injector) {
         comparator = Comparator(rh, triggerAutosensValue.comparator.value)
     }
 
-    override fun shouldRun(): Boolean {
-        val autosensData = iobCobCalculator.ads.getLastAutosensData("Automation trigger", aapsLogger, dateUtil)
+    override val memoizable = true
+
+    override fun shouldRun(): Boolean = shouldRun(dataContext())
+
+    override fun shouldRun(data: TriggerDataContext): Boolean {
+        val autosensData = data.autosensData
             ?: return if (comparator.value == Comparator.Compare.IS_NOT_AVAILABLE) {
                 aapsLogger.debug(LTag.AUTOMATION, "Ready for execution: " + friendlyDescription())
                 true
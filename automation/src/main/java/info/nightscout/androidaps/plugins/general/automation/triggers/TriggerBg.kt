@@ -46,8 +46,12 @@ class TriggerBg(injector: HasAndroidInjector) : Trigger(injector) {
         return this
     }
 
-    override fun shouldRun(): Boolean {
-        val glucoseStatus = glucoseStatusProvider.glucoseStatusData
+    override val memoizable = true
+
+    override fun shouldRun(): Boolean = shouldRun(dataContext())
+
+    override fun shouldRun(data: TriggerDataContext): Boolean {
+        val glucoseStatus = data.glucoseStatus
         if (glucoseStatus == null && comparator.value == Comparator.Compare.IS_NOT_AVAILABLE) {
             aapsLogger.debug(LTag.AUTOMATION, "Ready for execution: " + friendlyDescription())
             return true
@@ -4,8 +4,6 @@ import android.widget.LinearLayout
 import com.google.common.base.Optional
 import dagger.android.HasAndroidInjector
 import info.nightscout.androidaps.automation.R
-import info.nightscout.androidaps.database.ValueWrapper
-import info.nightscout.androidaps.database.entities.Bolus
 import info.nightscout.androidaps.logging.LTag
 import info.nightscout.androidaps.plugins.general.automation.elements.Comparator
 import info.nightscout.androidaps.plugins.general.automation.elements.InputDuration
@@ -36,9 +34,12 @@ class TriggerBolusAgo(injector: HasAndroidInjector) : Trigger(injector) {
         return this
     }
 
-    override fun shouldRun(): Boolean {
-        val lastBolus = repository.getLastBolusRecordOfTypeWrapped(Bolus.Type.NORMAL).blockingGet()
-        val lastBolusTime = if (lastBolus is ValueWrapper.Existing) lastBolus.value.timestamp else 0L
+    override val memoizable = true
+
+    override fun shouldRun(): Boolean = shouldRun(dataContext())
+
+    override fun shouldRun(data: TriggerDataContext): Boolean {
+        val lastBolusTime = data.lastBolusTime
         if (lastBolusTime == 0L)
             return if (comparator.value == Comparator.Compare.IS_NOT_AVAILABLE) {
                 aapsLogger.debug(LTag.AUTOMATION, "Ready for execution: " + friendlyDescription())
@@ -47,7 +48,7 @@ class TriggerBolusAgo(injector: HasAndroidInjector) : Trigger(injector) {
                 aapsLogger.debug(LTag.AUTOMATION, "NOT ready for execution: " + friendlyDescription())
                 false
             }
-        val last = (dateUtil.now() - lastBolusTime).toDouble() / (60 * 1000)
+        val last = (data.now - lastBolusTime).toDouble() / (60 * 1000)
         aapsLogger.debug(LTag.AUTOMATION, "LastBolus min ago: $minutesAgo")
         val doRun = comparator.value.check(last.toInt(), minutesAgo.getMinutes())
         if (doRun) {
@@ -37,8 +37,12 @@ class TriggerCOB(injector: HasAndroidInjector) : Trigger(injector) {
         return this
     }
 
-    override fun shouldRun(): Boolean {
-        val cobInfo = iobCobCalculator.getCobInfo(false, "AutomationTriggerCOB")
+    override val memoizable = true
+
+    override fun shouldRun(): Boolean = shouldRun(dataContext())
+
+    override fun shouldRun(data: TriggerDataContext): Boolean {
+        val cobInfo = data.cobInfo
         if (cobInfo.displayCob == null) {
             return if (comparator.value === Comparator.Compare.IS_NOT_AVAILABLE) {
                 aapsLogger.debug(LTag.AUTOMATION, "Ready for execution: " + friendlyDescription())
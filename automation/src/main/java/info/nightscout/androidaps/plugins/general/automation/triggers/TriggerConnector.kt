@@ -70,13 +70,17 @@ class TriggerConnector(injector: HasAndroidInjector) : Trigger(injector) {
         return -1
     }
 
-    @Synchronized override fun shouldRun(): Boolean {
+    @Synchronized override fun shouldRun(): Boolean = evaluate { it.shouldRun() }
+
+    @Synchronized override fun shouldRun(data: TriggerDataContext): Boolean = evaluate { data.evaluate(it) }
+
+    private fun evaluate(shouldRun: (Trigger) -> Boolean): Boolean {
         var result = true
         // check first trigger
-        if (list.size > 0) result = list[0].shouldRun()
+        if (list.size > 0) result = shouldRun(list[0])
         // check all others
         for (i in 1 until list.size) {
-            result = connectorType.apply(result, list[i].shouldRun())
+            result = connectorType.apply(result, shouldRun(list[i]))
         }
         if (result) aapsLogger.debug(LTag.AUTOMATION, "Ready for execution: " + friendlyDescription().replace("\n", " "))
         return result
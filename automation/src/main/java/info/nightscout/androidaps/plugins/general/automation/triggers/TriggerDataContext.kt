@@ -0,0 +1,62 @@
+package info.nightscout.androidaps.plugins.general.automation.triggers
+
+import info.nightscout.androidaps.data.IobTotal
+import info.nightscout.androidaps.database.AppRepository
+import info.nightscout.androidaps.database.ValueWrapper
+import info.nightscout.androidaps.database.entities.Bolus
+import info.nightscout.androidaps.database.entities.TemporaryTarget
+import info.nightscout.androidaps.interfaces.ActivePlugin
+import info.nightscout.androidaps.interfaces.IobCobCalculator
+import info.nightscout.androidaps.interfaces.Profile
+import info.nightscout.androidaps.interfaces.ProfileFunction
+import info.nightscout.androidaps.logging.AAPSLogger
+import info.nightscout.androidaps.plugins.iob.iobCobCalculator.CobInfo
+import info.nightscout.androidaps.plugins.iob.iobCobCalculator.GlucoseStatus
+import info.nightscout.androidaps.plugins.iob.iobCobCalculator.GlucoseStatusProvider
+import info.nightscout.androidaps.plugins.iob.iobCobCalculator.data.AutosensData
+import info.nightscout.androidaps.utils.DateUtil
+import javax.inject.Inject
+
+/**
+ * Data shared by all triggers evaluated within one automation run
+ *
+ * Every source is read on first use only and the value is kept for the rest of the run
+ * so all triggers see the same state no matter how many of them are evaluated.
+ * Results of memoizable triggers are cached by trigger settings.
+ * New instance must be created for every run
+ */
+class TriggerDataContext @Inject constructor(
+    private val aapsLogger: AAPSLogger,
+    private val dateUtil: DateUtil,
+    private val repository: AppRepository,
+    private val profileFunction: ProfileFunction,
+    private val iobCobCalculator: IobCobCalculator,
+    private val glucoseStatusProvider: GlucoseStatusProvider,
+    private val activePlugin: ActivePlugin
+) {
+
+    val now: Long = dateUtil.now()
+
+    val glucoseStatus: GlucoseStatus? by lazy { glucoseStatusProvider.glucoseStatusData }
+    val profile: Profile? by lazy { profileFunction.getProfile() }
+    val iob: IobTotal? by lazy { profile?.let { iobCobCalculator.calculateFromTreatmentsAndTemps(now, it) } }
+    val cobInfo: CobInfo by lazy { iobCobCalculator.getCobInfo(false, "AutomationTriggerCOB") }
+    val autosensData: AutosensData? by lazy { iobCobCalculator.ads.getLastAutosensData("Automation trigger", aapsLogger, dateUtil) }
+    val pumpLastDataTime: Long by lazy { activePlugin.activePump.lastDataTime() }
+
+    val lastBolusTime: Long by lazy {
+        val lastBolus = repository.getLastBolusRecordOfTypeWrapped(Bolus.Type.NORMAL).blockingGet()
+        if (lastBolus is ValueWrapper.Existing) lastBolus.value.timestamp else 0L
+    }
+
+    val temporaryTarget: TemporaryTarget? by lazy {
+        val tt = repository.getTemporaryTargetActiveAt(now).blockingGet()
+        if (tt is ValueWrapper.Existing) tt.value else null
+    }
+
+    private val results = HashMap<String, Boolean>()
+
+    fun evaluate(trigger: Trigger): Boolean =
+        if (trigger.memoizable) results.getOrPut(trigger.toJSON()) { trigger.shouldRun(this) }
+        else trigger.shouldRun(this)
+}
@@ -64,8 +64,12 @@ class TriggerDelta(injector: HasAndroidInjector) : Trigger(injector) {
         return this
     }
 
-    override fun shouldRun(): Boolean {
-        val glucoseStatus = glucoseStatusProvider.glucoseStatusData
+    override val memoizable = true
+
+    override fun shouldRun(): Boolean = shouldRun(dataContext())
+
+    override fun shouldRun(data: TriggerDataContext): Boolean {
+        val glucoseStatus = data.glucoseStatus
             ?: return if (comparator.value == Comparator.Compare.IS_NOT_AVAILABLE) {
                 aapsLogger.debug(LTag.AUTOMATION, "Ready for execution: " + friendlyDescription())
                 true
@@ -32,9 +32,12 @@ class TriggerIob(injector: HasAndroidInjector) : Trigger(injector) {
         return this
     }
 
-    override fun shouldRun(): Boolean {
-        val profile = profileFunction.getProfile() ?: return false
-        val iob = iobCobCalculator.calculateFromTreatmentsAndTemps(dateUtil.now(), profile)
+    override val memoizable = true
+
+    override fun shouldRun(): Boolean = shouldRun(dataContext())
+
+    override fun shouldRun(data: TriggerDataContext): Boolean {
+        val iob = data.iob ?: return false
         if (comparator.value.check(iob.iob, insulin.value)) {
             aapsLogger.debug(LTag.AUTOMATION, "Ready for execution: " + friendlyDescription())
             return true
@@ -40,13 +40,17 @@ class TriggerPumpLastConnection(injector: HasAndroidInjector) : Trigger(injector
         return this
     }
 
-    override fun shouldRun(): Boolean {
-        val lastConnection = activePlugin.activePump.lastDataTime()
+    override val memoizable = true
+
+    override fun shouldRun(): Boolean = shouldRun(dataContext())
+
+    override fun shouldRun(data: TriggerDataContext): Boolean {
+        val lastConnection = data.pumpLastDataTime
         if (lastConnection == 0L && comparator.value === Comparator.Compare.IS_NOT_AVAILABLE) {
             aapsLogger.debug(LTag.AUTOMATION, "Ready for execution: " + friendlyDescription())
             return true
         }
-        val connectionAgo = (dateUtil.now() - lastConnection) / (60 * 1000)
+        val connectionAgo = (data.now - lastConnection) / (60 * 1000)
         aapsLogger.debug(LTag.AUTOMATION, "Last connection min ago: $connectionAgo")
         if (comparator.value.check(connectionAgo.toInt(), minutesAgo.value)) {
             aapsLogger.debug(LTag.AUTOMATION, "Ready for execution: " + friendlyDescription())
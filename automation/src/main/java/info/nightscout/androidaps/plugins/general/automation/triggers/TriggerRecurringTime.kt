@@ -31,8 +31,12 @@ class TriggerRecurringTime(injector: HasAndroidInjector) : Trigger(injector) {
         return this
     }
 
-    override fun shouldRun(): Boolean {
-        val currentMinSinceMidnight = getMinSinceMidnight(dateUtil.now())
+    override val memoizable = true
+
+    override fun shouldRun(): Boolean = shouldRun(dataContext())
+
+    override fun shouldRun(data: TriggerDataContext): Boolean {
+        val currentMinSinceMidnight = getMinSinceMidnight(data.now)
         val scheduledDayOfWeek = Calendar.getInstance()[Calendar.DAY_OF_WEEK]
         if (days.isSet(Objects.requireNonNull(InputWeekDay.DayOfWeek.fromCalendarInt(scheduledDayOfWeek)))) {
             if (currentMinSinceMidnight >= time.value && currentMinSinceMidnight - time.value < 5) {
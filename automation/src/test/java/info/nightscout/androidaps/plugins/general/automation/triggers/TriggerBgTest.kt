@@ -24,7 +24,7 @@ class TriggerBgTest : TriggerTestBase() {
 
     @Test
     fun shouldRunTest() {
-        `when`(autosensDataStore.getBgReadingsDataTableCopy()).thenReturn(generateOneCurrentRecordBgData())
+        `when`(autosensDataStore.bgReadings).thenReturn(generateOneCurrentRecordBgData())
         var t: TriggerBg = TriggerBg(injector).setUnits(GlucoseUnit.MMOL).setValue(4.1).comparator(Comparator.Compare.IS_EQUAL)
         Assert.assertFalse(t.shouldRun())
         t = TriggerBg(injector).setUnits(GlucoseUnit.MGDL).setValue(214.0).comparator(Comparator.Compare.IS_EQUAL)
@@ -43,7 +43,7 @@ class TriggerBgTest : TriggerTestBase() {
         Assert.assertTrue(t.shouldRun())
         t = TriggerBg(injector).setUnits(GlucoseUnit.MGDL).setValue(213.0).comparator(Comparator.Compare.IS_EQUAL_OR_LESSER)
         Assert.assertFalse(t.shouldRun())
-        `when`(autosensDataStore.getBgReadingsDataTableCopy()).thenReturn(ArrayList())
+        `when`(autosensDataStore.bgReadings).thenReturn(ArrayList())
         t = TriggerBg(injector).setUnits(GlucoseUnit.MGDL).setValue(213.0).comparator(Comparator.Compare.IS_EQUAL_OR_LESSER)
         Assert.assertFalse(t.shouldRun())
         t = TriggerBg(injector).comparator(Comparator.Compare.IS_NOT_AVAILABLE)
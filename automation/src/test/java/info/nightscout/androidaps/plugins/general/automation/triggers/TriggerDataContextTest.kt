@@ -0,0 +1,85 @@
+package info.nightscout.androidaps.plugins.general.automation.triggers
+
+import com.google.common.base.Optional
+import dagger.android.HasAndroidInjector
+import info.nightscout.androidaps.database.ValueWrapper
+import info.nightscout.androidaps.database.entities.Bolus
+import info.nightscout.androidaps.plugins.general.automation.elements.Comparator
+import io.reactivex.Single
+import org.json.JSONObject
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Test
+import org.mockito.Mockito.`when`
+import org.mockito.Mockito.times
+import org.mockito.Mockito.verify
+
+class TriggerDataContextTest : TriggerTestBase() {
+
+    var now = 1514766900000L
+
+    private class CountingTrigger(injector: HasAndroidInjector, private val value: Int) : Trigger(injector) {
+
+        var count = 0
+
+        override val memoizable = true
+        override fun shouldRun(): Boolean {
+            count++
+            return true
+        }
+
+        override fun dataJSON(): JSONObject = JSONObject().put("value", value)
+        override fun fromJSON(data: String): Trigger = this
+        override fun friendlyName(): Int = 0
+        override fun friendlyDescription(): String = " "
+        override fun icon(): Optional<Int?> = Optional.absent()
+        override fun duplicate(): Trigger = CountingTrigger(injector, value)
+    }
+
+    @Before
+    fun mock() {
+        `when`(dateUtil.now()).thenReturn(now + 10 * 60 * 1000)
+        `when`(repository.getLastBolusRecordOfTypeWrapped(Bolus.Type.NORMAL)).thenReturn(
+            Single.just(ValueWrapper.Existing(Bolus(timestamp = now, amount = 0.0, type = Bolus.Type.NORMAL)))
+        )
+    }
+
+    @Test
+    fun sourceIsQueriedOncePerRun() {
+        val first = TriggerConnector(injector, TriggerConnector.Type.OR)
+        first.list.add(TriggerBolusAgo(injector).setValue(10).comparator(Comparator.Compare.IS_EQUAL))
+        first.list.add(TriggerBolusAgo(injector).setValue(5).comparator(Comparator.Compare.IS_EQUAL_OR_LESSER))
+        val second = TriggerConnector(injector, TriggerConnector.Type.AND)
+        second.list.add(TriggerBolusAgo(injector).setValue(110).comparator(Comparator.Compare.IS_EQUAL))
+
+        val data = first.dataContext()
+        Assert.assertTrue(first.shouldRun(data))
+        Assert.assertFalse(second.shouldRun(data))
+        verify(repository, times(1)).getLastBolusRecordOfTypeWrapped(Bolus.Type.NORMAL)
+    }
+
+    @Test
+    fun identicalTriggersShareResult() {
+        val t1 = CountingTrigger(injector, 1)
+        val t2 = CountingTrigger(injector, 1)
+        val t3 = CountingTrigger(injector, 2)
+        val connector = TriggerConnector(injector)
+        connector.list.addAll(listOf(t1, t2, t3))
+
+        Assert.assertTrue(connector.shouldRun(connector.dataContext()))
+        Assert.assertEquals(1, t1.count)
+        Assert.assertEquals(0, t2.count)
+        Assert.assertEquals(1, t3.count)
+        // new run evaluates again
+        Assert.assertTrue(connector.shouldRun(connector.dataContext()))
+        Assert.assertEquals(2, t1.count)
+    }
+
+    @Test
+    fun notMemoizableTriggersAreEvaluated() {
+        val connector = TriggerConnector(injector, TriggerConnector.Type.AND)
+        connector.list.add(DummyTrigger(true))
+        connector.list.add(DummyTrigger(false))
+        Assert.assertFalse(connector.shouldRun(connector.dataContext()))
+    }
+}
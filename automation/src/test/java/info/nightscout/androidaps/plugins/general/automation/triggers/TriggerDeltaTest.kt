@@ -24,7 +24,7 @@ class TriggerDeltaTest : TriggerTestBase() {
     }
 
     @Test fun shouldRunTest() {
-        `when`(autosensDataStore.getBgReadingsDataTableCopy()).thenReturn(generateValidBgData())
+        `when`(autosensDataStore.bgReadings).thenReturn(generateValidBgData())
         var t = TriggerDelta(injector).units(GlucoseUnit.MGDL).setValue(73.0, DeltaType.LONG_AVERAGE).comparator(Comparator.Compare.IS_EQUAL)
         Assert.assertFalse(t.shouldRun())
         Assert.assertEquals(DeltaType.LONG_AVERAGE, t.delta.deltaType)
@@ -46,7 +46,7 @@ class TriggerDeltaTest : TriggerTestBase() {
         Assert.assertFalse(t.shouldRun())
         t = TriggerDelta(injector).units(GlucoseUnit.MGDL).setValue(-0.2, DeltaType.LONG_AVERAGE).comparator(Comparator.Compare.IS_EQUAL_OR_LESSER)
         Assert.assertTrue(t.shouldRun())
-        `when`(autosensDataStore.getBgReadingsDataTableCopy()).thenReturn(ArrayList())
+        `when`(autosensDataStore.bgReadings).thenReturn(ArrayList())
         t = TriggerDelta(injector).units(GlucoseUnit.MGDL).setValue(213.0, DeltaType.DELTA).comparator(Comparator.Compare.IS_EQUAL_OR_LESSER)
         Assert.assertFalse(t.shouldRun())
         t = TriggerDelta(injector).comparator(Comparator.Compare.IS_NOT_AVAILABLE)
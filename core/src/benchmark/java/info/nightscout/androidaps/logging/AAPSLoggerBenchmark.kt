@@ -0,0 +1,56 @@
+package info.nightscout.androidaps.logging
+
+import info.nightscout.androidaps.utils.sharedPreferences.SP
+import org.junit.Test
+import org.mockito.ArgumentMatchers.anyBoolean
+import org.mockito.ArgumentMatchers.anyString
+import org.mockito.Mockito.`when`
+import org.mockito.Mockito.mock
+
+/**
+ * Cost of log calls on the logging thread. Compares the marker created from the stack trace
+ * (previous eager logging) with both current modes: eager calls capturing CallSiteMarker
+ * and lazy calls taking the marker from the lambda class. Disabled tags are measured
+ * through AAPSLoggerProduction.
+ *
+ * Run by ./gradlew -Pbenchmark :core:testFullDebugUnitTest
+ */
+class AAPSLoggerBenchmark {
+
+    private var sink = 0
+
+    private fun measure(name: String, block: (Int) -> Unit) {
+        for (i in 0 until WARMUP_ITERATIONS) block(i)
+        val start = System.nanoTime()
+        for (i in 0 until ITERATIONS) block(i)
+        val elapsed = System.nanoTime() - start
+        println("$name: ${elapsed / ITERATIONS} ns/call")
+    }
+
+    private fun lazyMarker(value: Int): String {
+        val message = { "value $value" }
+        return lambdaLogMarker(message) + message()
+    }
+
+    @Test fun markers() {
+        measure("stackLogMarker (previous eager)") { sink += (stackLogMarker() + "value $it").length }
+        measure("CallSiteMarker captured on logging thread") { sink += CallSiteMarker().hashCode() + "value $it".length }
+        measure("CallSiteMarker captured and resolved") { sink += CallSiteMarker().name.length + "value $it".length }
+        measure("lambdaLogMarker (lazy)") { sink += lazyMarker(it).length }
+        println(sink)
+    }
+
+    @Test fun disabledTag() {
+        val sp = mock(SP::class.java)
+        `when`(sp.getBoolean(anyString(), anyBoolean())).thenReturn(false)
+        val logger = AAPSLoggerProduction(L(sp))
+        measure("eager call, disabled tag") { logger.debug(LTag.AUTOSENS, "value $it") }
+        measure("lazy call, disabled tag") { logger.debug(LTag.AUTOSENS) { "value $it" } }
+    }
+
+    companion object {
+
+        private const val WARMUP_ITERATIONS = 20_000
+        private const val ITERATIONS = 100_000
+    }
+}
@@ -1,9 +1,9 @@
 package info.nightscout.androidaps.extensions
 
+import info.nightscout.androidaps.data.Iob
 import info.nightscout.androidaps.data.IobTotal
 import info.nightscout.androidaps.interfaces.Profile
 import info.nightscout.androidaps.database.embedments.InterfaceIDs
-import info.nightscout.androidaps.database.entities.Bolus
 import info.nightscout.androidaps.database.entities.ExtendedBolus
 import info.nightscout.androidaps.database.entities.TemporaryBasal
 import info.nightscout.androidaps.database.entities.TherapyEvent
@@ -136,22 +136,18 @@ fun ExtendedBolus.iobCalc(time: Long, profile: Profile, insulinInterface: Insuli
         val diaAgo = time - dia * 60 * 60 * 1000
         val aboutFiveMinIntervals = ceil(realDuration / 5.0).toInt()
         val spacing = realDuration / aboutFiveMinIntervals.toDouble()
+        val aIOB = Iob()
         for (j in 0L until aboutFiveMinIntervals) {
             // find middle of the interval
             val calcDate = (timestamp + j * spacing * 60 * 1000 + 0.5 * spacing * 60 * 1000).toLong()
             if (calcDate > diaAgo && calcDate <= time) {
                 val tempBolusSize: Double = rate * spacing / 60.0
-                val tempBolusPart = Bolus(
-                    timestamp = calcDate,
-                    amount = tempBolusSize,
-                    type = Bolus.Type.NORMAL
-                )
-                val aIOB = insulinInterface.iobCalcForTreatment(tempBolusPart, time, dia)
-                result.iob += aIOB.iobContrib
-                result.activity += aIOB.activityContrib
-                result.extendedBolusInsulin += tempBolusPart.amount
+                insulinInterface.addIobForAmount(tempBolusSize, calcDate, time, dia, aIOB)
+                result.extendedBolusInsulin += tempBolusSize
             }
         }
+        result.iob += aIOB.iobContrib
+        result.activity += aIOB.activityContrib
     }
     return result
 }
@@ -173,6 +169,7 @@ fun ExtendedBolus.iobCalc(time: Long, profile: Profile, lastAutosensResult: Auto
         val diaAgo = time - dia * 60 * 60 * 1000
         val aboutFiveMinIntervals = ceil(realDuration / 5.0).toInt()
         val spacing = realDuration / aboutFiveMinIntervals
+        val aIOB = Iob()
         for (j in 0L until aboutFiveMinIntervals) {
             // find middle of the interval
             val calcDate = (timestamp + j * spacing * 60 * 1000 + 0.5 * spacing * 60 * 1000).toLong()
@@ -181,17 +178,12 @@ fun ExtendedBolus.iobCalc(time: Long, profile: Profile, lastAutosensResult: Auto
             netBasalRate = rate - basalRateCorrection
             if (calcDate > diaAgo && calcDate <= time) {
                 val tempBolusSize = netBasalRate * spacing / 60.0
-                val tempBolusPart = Bolus(
-                    timestamp = calcDate,
-                    amount = tempBolusSize,
-                    type = Bolus.Type.NORMAL
-                )
-                val aIOB = insulinInterface.iobCalcForTreatment(tempBolusPart, time, dia)
-                result.iob += aIOB.iobContrib
-                result.activity += aIOB.activityContrib
-                result.extendedBolusInsulin += tempBolusPart.amount
+                insulinInterface.addIobForAmount(tempBolusSize, calcDate, time, dia, aIOB)
+                result.extendedBolusInsulin += tempBolusSize
             }
         }
+        result.iob += aIOB.iobContrib
+        result.activity += aIOB.activityContrib
     }
     return result
 }
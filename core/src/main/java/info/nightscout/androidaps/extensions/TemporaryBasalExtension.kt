@@ -1,9 +1,9 @@
 package info.nightscout.androidaps.extensions
 
+import info.nightscout.androidaps.data.Iob
 import info.nightscout.androidaps.data.IobTotal
 import info.nightscout.androidaps.interfaces.Profile
 import info.nightscout.androidaps.database.embedments.InterfaceIDs
-import info.nightscout.androidaps.database.entities.Bolus
 import info.nightscout.androidaps.database.entities.TemporaryBasal
 import info.nightscout.androidaps.database.entities.TemporaryBasal.Type.Companion.fromString
 import info.nightscout.androidaps.database.entities.TherapyEvent
@@ -142,6 +142,7 @@ fun TemporaryBasal.iobCalc(time: Long, profile: Profile, insulinInterface: Insul
         val diaAgo = time - dia * 60 * 60 * 1000
         val aboutFiveMinIntervals = ceil(realDuration / 5.0).toInt()
         val tempBolusSpacing = realDuration / aboutFiveMinIntervals.toDouble()
+        val aIOB = Iob()
         for (j in 0L until aboutFiveMinIntervals) {
             // find middle of the interval
             val calcDate = (timestamp + j * tempBolusSpacing * 60 * 1000 + 0.5 * tempBolusSpacing * 60 * 1000).toLong()
@@ -154,20 +155,15 @@ fun TemporaryBasal.iobCalc(time: Long, profile: Profile, insulinInterface: Insul
             if (calcDate > diaAgo && calcDate <= time) {
                 val tempBolusSize = netBasalRate * tempBolusSpacing / 60.0
                 netBasalAmount += tempBolusSize
-                val tempBolusPart = Bolus(
-                    timestamp = calcDate,
-                    amount = tempBolusSize,
-                    type = Bolus.Type.NORMAL
-                )
-                val aIOB = insulinInterface.iobCalcForTreatment(tempBolusPart, time, dia)
-                result.basaliob += aIOB.iobContrib
-                result.activity += aIOB.activityContrib
-                result.netbasalinsulin += tempBolusPart.amount
-                if (tempBolusPart.amount > 0) {
-                    result.hightempinsulin += tempBolusPart.amount
+                insulinInterface.addIobForAmount(tempBolusSize, calcDate, time, dia, aIOB)
+                result.netbasalinsulin += tempBolusSize
+                if (tempBolusSize > 0) {
+                    result.hightempinsulin += tempBolusSize
                 }
             }
         }
+        result.basaliob += aIOB.iobContrib
+        result.activity += aIOB.activityContrib
     }
     result.netInsulin = netBasalAmount
     return result
@@ -191,6 +187,7 @@ fun TemporaryBasal.iobCalc(time: Long, profile: Profile, lastAutosensResult: Aut
         val diaAgo = time - dia * 60 * 60 * 1000
         val aboutFiveMinIntervals = ceil(realDuration / 5.0).toInt()
         val tempBolusSpacing = realDuration / aboutFiveMinIntervals.toDouble()
+        val aIOB = Iob()
         for (j in 0L until aboutFiveMinIntervals) {
             // find middle of the interval
             val calcDate = (timestamp + j * tempBolusSpacing * 60 * 1000 + 0.5 * tempBolusSpacing * 60 * 1000).toLong()
@@ -205,20 +202,15 @@ fun TemporaryBasal.iobCalc(time: Long, profile: Profile, lastAutosensResult: Aut
             if (calcDate > diaAgo && calcDate <= time) {
                 val tempBolusSize = netBasalRate * tempBolusSpacing / 60.0
                 netBasalAmount += tempBolusSize
-                val tempBolusPart = Bolus(
-                    timestamp = calcDate,
-                    amount = tempBolusSize,
-                    type = Bolus.Type.NORMAL
-                )
-                val aIOB = insulinInterface.iobCalcForTreatment(tempBolusPart, time, dia)
-                result.basaliob += aIOB.iobContrib
-                result.activity += aIOB.activityContrib
-                result.netbasalinsulin += tempBolusPart.amount
-                if (tempBolusPart.amount > 0) {
-                    result.hightempinsulin += tempBolusPart.amount
+                insulinInterface.addIobForAmount(tempBolusSize, calcDate, time, dia, aIOB)
+                result.netbasalinsulin += tempBolusSize
+                if (tempBolusSize > 0) {
+                    result.hightempinsulin += tempBolusSize
                 }
             }
         }
+        result.basaliob += aIOB.iobContrib
+        result.activity += aIOB.activityContrib
     }
     result.netInsulin = netBasalAmount
     return result
@@ -22,6 +22,9 @@ interface DataSyncSelector {
 
     fun queueSize(): Long
 
+    // Records acknowledged by NS during last minute
+    fun queueThroughput(): Long
+
     fun doUpload()
 
     fun resetToNextFullSync()
@@ -30,5 +30,11 @@ interface Insulin : ConfigExportImport {
 
     fun iobCalcForTreatment(bolus: Bolus, time: Long, dia: Double): Iob
 
+    /**
+     * Add iob and activity of insulin amount delivered at treatmentTime to result
+     * Allows calculation of basal slices without creating Bolus and Iob object for every slice
+     */
+    fun addIobForAmount(amount: Double, treatmentTime: Long, time: Long, dia: Double, result: Iob)
+
     val insulinConfiguration : InsulinConfiguration
 }
\ No newline at end of file
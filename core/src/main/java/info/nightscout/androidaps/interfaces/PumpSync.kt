@@ -475,4 +475,90 @@ interface PumpSync {
 
     fun createOrUpdateTotalDailyDose(timestamp: Long, bolusAmount: Double, basalAmount: Double, totalAmount: Double, pumpId: Long?, pumpType: PumpType, pumpSerial: String): Boolean
 
-}
\ No newline at end of file
+    /*
+    *   BATCH
+    */
+
+    /**
+     * Event read from pump history
+     *
+     * Every event carries the same data as parameters of corresponding single method
+     * and is processed the same way
+     */
+    sealed class HistoryEvent {
+
+        abstract val timestamp: Long
+
+        /** see [syncBolusWithPumpId] */
+        data class Bolus(override val timestamp: Long, val amount: Double, val type: DetailedBolusInfo.BolusType?, val pumpId: Long) : HistoryEvent()
+
+        /** see [syncBolusWithTempId] */
+        data class BolusWithTempId(
+            override val timestamp: Long,
+            val amount: Double,
+            val temporaryId: Long,
+            val type: DetailedBolusInfo.BolusType?,
+            val pumpId: Long?
+        ) : HistoryEvent()
+
+        /** see [syncCarbsWithTimestamp] */
+        data class Carbs(override val timestamp: Long, val amount: Double, val pumpId: Long?) : HistoryEvent()
+
+        /** see [insertTherapyEventIfNewWithTimestamp] */
+        data class TherapyEvent @JvmOverloads constructor(
+            override val timestamp: Long,
+            val type: DetailedBolusInfo.EventType,
+            val note: String? = null,
+            val pumpId: Long? = null
+        ) : HistoryEvent()
+
+        /** see [syncTemporaryBasalWithPumpId] */
+        data class TemporaryBasal(
+            override val timestamp: Long,
+            val rate: Double,
+            val duration: Long,
+            val isAbsolute: Boolean,
+            val type: TemporaryBasalType?,
+            val pumpId: Long
+        ) : HistoryEvent()
+
+        /** see [syncTemporaryBasalWithTempId] */
+        data class TemporaryBasalWithTempId(
+            override val timestamp: Long,
+            val rate: Double,
+            val duration: Long,
+            val isAbsolute: Boolean,
+            val temporaryId: Long,
+            val type: TemporaryBasalType?,
+            val pumpId: Long?
+        ) : HistoryEvent()
+
+        /** see [syncStopTemporaryBasalWithPumpId] */
+        data class StopTemporaryBasal(override val timestamp: Long, val endPumpId: Long) : HistoryEvent()
+
+        /** see [syncExtendedBolusWithPumpId] */
+        data class ExtendedBolus(override val timestamp: Long, val amount: Double, val duration: Long, val isEmulatingTB: Boolean, val pumpId: Long) : HistoryEvent()
+
+        /** see [syncStopExtendedBolusWithPumpId] */
+        data class StopExtendedBolus(override val timestamp: Long, val endPumpId: Long) : HistoryEvent()
+
+        /** see [createOrUpdateTotalDailyDose] */
+        data class TotalDailyDose(override val timestamp: Long, val bolusAmount: Double, val basalAmount: Double, val totalAmount: Double, val pumpId: Long?) : HistoryEvent()
+    }
+
+    /**
+     * Synchronization of batch of events read from pump history
+     *
+     * Events are processed in given order exactly like by single methods
+     * but all of them in one database transaction with one change notification.
+     * Use it when more records are read at once (ie. history after reconnection)
+     *
+     * see [info.nightscout.androidaps.database.transactions.SyncPumpHistoryBatchTransaction]
+     *
+     * @param events        events in history order
+     * @param pumpType      pump type like PumpType.ACCU_CHEK_COMBO
+     * @param pumpSerial    pump serial number
+     * @return for every event the value single method would return (ie. true if new record is created)
+     **/
+    fun syncPumpHistory(events: List<HistoryEvent>, pumpType: PumpType, pumpSerial: String): List<Boolean>
+}
@@ -10,6 +10,7 @@ interface AAPSLogger {
     fun debug(enable: Boolean, tag: LTag, message: String)
     fun debug(tag: LTag, message: String)
     fun debug(tag: LTag, format: String, vararg arguments: Any?)
+
     fun warn(tag: LTag, message: String)
     fun warn(tag: LTag, format: String, vararg arguments: Any?)
     fun info(tag: LTag, message: String)
@@ -20,4 +21,26 @@ interface AAPSLogger {
     fun error(message: String)
     fun error(message: String, throwable: Throwable)
     fun error(format: String, vararg arguments: Any?)
+
+    fun isDebugEnabled(tag: LTag): Boolean
+    fun isInfoEnabled(tag: LTag): Boolean
+
+    /**
+     * Write message of enabled tag. Call site is taken from the lambda class (no line number)
+     * instead of walking the stack. Use [debug] and [info] extensions instead
+     */
+    fun debugLazy(tag: LTag, message: () -> String)
+    fun infoLazy(tag: LTag, message: () -> String)
+}
+
+/**
+ * Lazy variant for hot paths. Tag is checked at call site so neither the message
+ * nor the lambda capturing its arguments is created if it is not going to be written
+ */
+inline fun AAPSLogger.debug(tag: LTag, crossinline message: () -> String) {
+    if (isDebugEnabled(tag)) debugLazy(tag) { message() }
+}
+
+inline fun AAPSLogger.info(tag: LTag, crossinline message: () -> String) {
+    if (isInfoEnabled(tag)) infoLazy(tag) { message() }
 }
\ No newline at end of file
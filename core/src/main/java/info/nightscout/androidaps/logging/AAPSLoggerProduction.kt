@@ -1,6 +1,7 @@
 package info.nightscout.androidaps.logging
 
 import org.slf4j.LoggerFactory
+import java.util.concurrent.ConcurrentHashMap
 
 /**
  * Created by adrian on 2019-12-27.
@@ -8,66 +9,102 @@ import org.slf4j.LoggerFactory
 
 class AAPSLoggerProduction constructor(val l: L) : AAPSLogger {
 
+    // CallSiteMarker must be created right here, it takes the call site from the stack depth
+
     override fun debug(message: String) {
-        LoggerFactory.getLogger(LTag.CORE.tag).debug(stackLogMarker() + message)
+        val logger = LoggerFactory.getLogger(LTag.CORE.tag)
+        if (logger.isDebugEnabled) logger.debug(CallSiteMarker(), message)
     }
 
     override fun debug(enable: Boolean, tag: LTag, message: String) {
-        if (enable && l.findByName(tag.tag).enabled)
-            LoggerFactory.getLogger(tag.tag).debug(stackLogMarker() + message)
+        if (enable && l.isEnabled(tag)) {
+            val logger = LoggerFactory.getLogger(tag.tag)
+            if (logger.isDebugEnabled) logger.debug(CallSiteMarker(), message)
+        }
     }
 
     override fun debug(tag: LTag, message: String) {
-        if (l.findByName(tag.tag).enabled)
-            LoggerFactory.getLogger(tag.tag).debug(stackLogMarker() + message)
+        if (l.isEnabled(tag)) {
+            val logger = LoggerFactory.getLogger(tag.tag)
+            if (logger.isDebugEnabled) logger.debug(CallSiteMarker(), message)
+        }
     }
 
     override fun debug(tag: LTag, format: String, vararg arguments: Any?) {
-        if (l.findByName(tag.tag).enabled)
-            LoggerFactory.getLogger(tag.tag).debug(stackLogMarker() + format, arguments)
+        if (l.isEnabled(tag)) {
+            val logger = LoggerFactory.getLogger(tag.tag)
+            if (logger.isDebugEnabled) logger.debug(CallSiteMarker(), format, *arguments)
+        }
     }
 
     override fun warn(tag: LTag, message: String) {
-        if (l.findByName(tag.tag).enabled)
-            LoggerFactory.getLogger(tag.tag).warn(stackLogMarker() + message)
+        if (l.isEnabled(tag)) {
+            val logger = LoggerFactory.getLogger(tag.tag)
+            if (logger.isWarnEnabled) logger.warn(CallSiteMarker(), message)
+        }
     }
 
     override fun warn(tag: LTag, format: String, vararg arguments: Any?) {
-        LoggerFactory.getLogger(tag.tag).warn(stackLogMarker() + format, arguments)
+        val logger = LoggerFactory.getLogger(tag.tag)
+        if (logger.isWarnEnabled) logger.warn(CallSiteMarker(), format, *arguments)
     }
 
     override fun info(tag: LTag, message: String) {
-        if (l.findByName(tag.tag).enabled)
-            LoggerFactory.getLogger(tag.tag).info(stackLogMarker() + message)
+        if (l.isEnabled(tag)) {
+            val logger = LoggerFactory.getLogger(tag.tag)
+            if (logger.isInfoEnabled) logger.info(CallSiteMarker(), message)
+        }
     }
 
     override fun info(tag: LTag, format: String, vararg arguments: Any?) {
-        if (l.findByName(tag.tag).enabled)
-            LoggerFactory.getLogger(tag.tag).info(stackLogMarker() + format, arguments)
+        if (l.isEnabled(tag)) {
+            val logger = LoggerFactory.getLogger(tag.tag)
+            if (logger.isInfoEnabled) logger.info(CallSiteMarker(), format, *arguments)
+        }
     }
 
     override fun error(tag: LTag, message: String) {
-        LoggerFactory.getLogger(tag.tag).error(stackLogMarker() + message)
+        val logger = LoggerFactory.getLogger(tag.tag)
+        if (logger.isErrorEnabled) logger.error(CallSiteMarker(), message)
     }
 
     override fun error(message: String) {
-        LoggerFactory.getLogger(LTag.CORE.tag).error(stackLogMarker() + message)
+        val logger = LoggerFactory.getLogger(LTag.CORE.tag)
+        if (logger.isErrorEnabled) logger.error(CallSiteMarker(), message)
     }
 
     override fun error(message: String, throwable: Throwable) {
-        LoggerFactory.getLogger(LTag.CORE.tag).error(stackLogMarker() + message, throwable)
+        val logger = LoggerFactory.getLogger(LTag.CORE.tag)
+        if (logger.isErrorEnabled) logger.error(CallSiteMarker(), message, throwable)
     }
 
     override fun error(format: String, vararg arguments: Any?) {
-        LoggerFactory.getLogger(LTag.CORE.tag).error(stackLogMarker() + format, arguments)
+        val logger = LoggerFactory.getLogger(LTag.CORE.tag)
+        if (logger.isErrorEnabled) logger.error(CallSiteMarker(), format, *arguments)
     }
 
     override fun error(tag: LTag, message: String, throwable: Throwable) {
-        LoggerFactory.getLogger(tag.tag).error(stackLogMarker() + message, throwable)
+        val logger = LoggerFactory.getLogger(tag.tag)
+        if (logger.isErrorEnabled) logger.error(CallSiteMarker(), message, throwable)
     }
 
     override fun error(tag: LTag, format: String, vararg arguments: Any?) {
-        LoggerFactory.getLogger(tag.tag).error(stackLogMarker() + format, arguments)
+        val logger = LoggerFactory.getLogger(tag.tag)
+        if (logger.isErrorEnabled) logger.error(CallSiteMarker(), format, *arguments)
+    }
+
+    override fun isDebugEnabled(tag: LTag): Boolean =
+        l.isEnabled(tag) && LoggerFactory.getLogger(tag.tag).isDebugEnabled
+
+    override fun isInfoEnabled(tag: LTag): Boolean =
+        l.isEnabled(tag) && LoggerFactory.getLogger(tag.tag).isInfoEnabled
+
+    override fun debugLazy(tag: LTag, message: () -> String) {
+        LoggerFactory.getLogger(tag.tag).debug(lambdaLogMarker(message) + message())
+    }
+
+    override fun infoLazy(tag: LTag, message: () -> String) {
+        LoggerFactory.getLogger(tag.tag).info(lambdaLogMarker(message) + message())
     }
 }
 
@@ -75,4 +112,16 @@ fun StackTraceElement.toLogString(): String = "[${this.className.substringAfterL
 
 /* Needs to be inline. Don't remove even if IDE suggests it. */
 @Suppress("NOTHING_TO_INLINE")
-inline fun stackLogMarker() = Throwable().stackTrace[1].toLogString()
\ No newline at end of file
+inline fun stackLogMarker() = Throwable().stackTrace[1].toLogString()
+
+private val lambdaLogMarkers = ConcurrentHashMap<Class<*>, String>()
+
+/**
+ * Call site marker derived from the class name of a lambda, ie. "IobCobOref1Thread$run$1"
+ * gives "[IobCobOref1Thread.run()]: ". Computed once per lambda class, no stack walk involved.
+ */
+fun lambdaLogMarker(lambda: Any): String =
+    lambdaLogMarkers.getOrPut(lambda.javaClass) {
+        val parts = lambda.javaClass.name.substringAfterLast(".").split("$").dropLastWhile { it.isEmpty() || it.all(Char::isDigit) }
+        if (parts.size > 1) "[${parts.first()}.${parts[1]}()]: " else "[${parts.firstOrNull() ?: ""}]: "
+    }
@@ -61,4 +61,16 @@ class AAPSLoggerTest : AAPSLogger {
     override fun error(tag: LTag, format: String, vararg arguments: Any?) {
         println("ERROR: : " + tag.tag + " " + String.format(format, arguments))
     }
+
+    override fun isDebugEnabled(tag: LTag): Boolean = true
+
+    override fun isInfoEnabled(tag: LTag): Boolean = true
+
+    override fun debugLazy(tag: LTag, message: () -> String) {
+        println("DEBUG: : " + tag.tag + " " + message())
+    }
+
+    override fun infoLazy(tag: LTag, message: () -> String) {
+        println("INFO: " + tag.tag + " " + message())
+    }
 }
\ No newline at end of file
@@ -0,0 +1,56 @@
+package info.nightscout.androidaps.logging
+
+import ch.qos.logback.classic.Level
+import ch.qos.logback.classic.spi.ILoggingEvent
+import ch.qos.logback.core.rolling.RollingFileAppender
+import java.io.IOException
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * RollingFileAppender writing through buffered output stream (use with encoder immediateFlush=false).
+ * Stream is flushed [flushInterval] ms after first unflushed event or immediately on WARN and ERROR,
+ * so a burst of events costs one write to the file.
+ *
+ * Intended to run behind AsyncAppender so callers never wait for the file
+ */
+class BatchingRollingFileAppender : RollingFileAppender<ILoggingEvent>() {
+
+    var flushInterval: Long = 1000
+
+    private val flushScheduled = AtomicBoolean(false)
+    private var flusher: ScheduledExecutorService? = null
+
+    override fun start() {
+        flusher = Executors.newSingleThreadScheduledExecutor { runnable -> Thread(runnable, "LogFlusher").also { it.isDaemon = true } }
+        super.start()
+    }
+
+    override fun stop() {
+        flusher?.shutdownNow()
+        flusher = null
+        flush()
+        super.stop()
+    }
+
+    override fun subAppend(event: ILoggingEvent) {
+        super.subAppend(event)
+        if (event.level.isGreaterOrEqual(Level.WARN)) flush()
+        else if (flushScheduled.compareAndSet(false, true))
+            flusher?.schedule({ flush() }, flushInterval, TimeUnit.MILLISECONDS)
+    }
+
+    private fun flush() {
+        flushScheduled.set(false)
+        lock.lock()
+        try {
+            outputStream?.flush()
+        } catch (e: IOException) {
+            addError("Failed to flush log file", e)
+        } finally {
+            lock.unlock()
+        }
+    }
+}
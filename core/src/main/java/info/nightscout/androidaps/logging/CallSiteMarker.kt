@@ -0,0 +1,35 @@
+package info.nightscout.androidaps.logging
+
+import org.slf4j.Marker
+import java.util.*
+
+/**
+ * Call site of a log call resolved only when the line is written.
+ *
+ * Stack is captured on the logging thread but not decoded to StackTraceElements there.
+ * The file appender prints it with %marker on its AsyncAppender worker thread,
+ * appenders without %marker in pattern never resolve it.
+ *
+ * Must be constructed directly in the method called by the logging code
+ */
+class CallSiteMarker : Marker {
+
+    private val stack = Throwable()
+
+    // [0] constructor, [1] logger method, [2] caller
+    private val callSite by lazy { stack.stackTrace.getOrNull(2)?.toLogString() ?: "" }
+
+    override fun getName(): String = callSite
+    override fun toString(): String = callSite
+
+    override fun add(reference: Marker?) {
+        throw UnsupportedOperationException()
+    }
+
+    override fun remove(reference: Marker?): Boolean = false
+    @Deprecated("Deprecated in Java") override fun hasChildren(): Boolean = false
+    override fun hasReferences(): Boolean = false
+    override fun iterator(): MutableIterator<Marker> = Collections.emptyIterator()
+    override fun contains(other: Marker?): Boolean = other === this
+    override fun contains(name: String?): Boolean = false
+}
@@ -11,11 +11,14 @@ class L @Inject constructor(
 ) {
 
     private var logElements: MutableList<LogElement> = ArrayList()
+    private val elementsByTag = EnumMap<LTag, LogElement>(LTag::class.java)
 
     init {
-        LTag.values().forEach { logElements.add(LogElement(it, sp)) }
+        LTag.values().forEach { tag -> LogElement(tag, sp).also { logElements.add(it); elementsByTag[tag] = it } }
     }
 
+    fun isEnabled(tag: LTag): Boolean = elementsByTag[tag]?.enabled ?: false
+
     fun findByName(name: String): LogElement {
         for (element in logElements) {
             if (element.name == name) return element
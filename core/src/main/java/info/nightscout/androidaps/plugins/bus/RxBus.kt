@@ -4,9 +4,12 @@ import info.nightscout.androidaps.annotations.OpenForTesting
 import info.nightscout.androidaps.events.Event
 import info.nightscout.androidaps.logging.AAPSLogger
 import info.nightscout.androidaps.logging.LTag
+import info.nightscout.androidaps.logging.debug
 import info.nightscout.androidaps.utils.rx.AapsSchedulers
 import io.reactivex.Observable
 import io.reactivex.subjects.PublishSubject
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
 import javax.inject.Inject
 import javax.inject.Singleton
 
@@ -17,17 +20,47 @@ class RxBus @Inject constructor(
     val aapsLogger: AAPSLogger
 ) {
 
-    private val publisher = PublishSubject.create<Event>()
+    // one subject per class passed to toObservable
+    private val publishers = ConcurrentHashMap<Class<*>, PublishSubject<Any>>()
+
+    // event class -> subjects of all its supertypes someone listens to
+    private val routes = ConcurrentHashMap<Class<*>, Array<PublishSubject<Any>>>()
 
     fun send(event: Event) {
-        aapsLogger.debug(LTag.EVENTS, "Sending $event")
-        publisher.onNext(event)
+        aapsLogger.debug(LTag.EVENTS) { "Sending $event" }
+        for (publisher in routes[event.javaClass] ?: route(event.javaClass)) publisher.onNext(event)
     }
 
     // Listen should return an Observable and not the publisher
-    // Using ofType we filter only events that match that class type
+    // Events are routed by class, subscriber gets only events of eventType and its subclasses
     fun <T> toObservable(eventType: Class<T>): Observable<T> =
-        publisher
+        publisherFor(eventType)
             .subscribeOn(aapsSchedulers.io)
-            .ofType(eventType)
-}
\ No newline at end of file
+            .cast(eventType)
+
+    /**
+     * Like [toObservable] for high frequency events consumed by UI.
+     * A burst of events is collapsed into the latest one, at most one emission per [windowMillis]
+     * (one frame by default). The last event of a burst is always delivered
+     */
+    fun <T> toObservableCoalesced(eventType: Class<T>, windowMillis: Long = FRAME_MILLIS): Observable<T> =
+        toObservable(eventType)
+            .throttleLatest(windowMillis, TimeUnit.MILLISECONDS, aapsSchedulers.cpu, true)
+
+    @Synchronized
+    private fun publisherFor(eventType: Class<*>): PublishSubject<Any> =
+        publishers[eventType] ?: PublishSubject.create<Any>().also {
+            publishers[eventType] = it
+            // new listened type may be a supertype of already routed events
+            routes.clear()
+        }
+
+    @Synchronized
+    private fun route(eventClass: Class<*>): Array<PublishSubject<Any>> =
+        publishers.filterKeys { it.isAssignableFrom(eventClass) }.values.toTypedArray().also { routes[eventClass] = it }
+
+    companion object {
+
+        const val FRAME_MILLIS = 16L
+    }
+}
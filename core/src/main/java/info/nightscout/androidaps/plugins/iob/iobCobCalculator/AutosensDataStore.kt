@@ -160,10 +160,10 @@ class AutosensDataStore {
             val start = to - T.hours((24 + 10 /* max dia */).toLong()).msecs()
             // there can be some readings with time in close future (caused by wrong time setting on sensor)
             // so add 2 minutes
+            // repository returns only values >= 39 as a shared in-memory view, no copy needed
             bgReadings = repository
                 .compatGetBgReadingsDataFromTime(start, to + T.mins(2).msecs(), false)
                 .blockingGet()
-                .filter { it.value >= 39 }
             aapsLogger.debug(LTag.AUTOSENS, "BG data loaded. Size: " + bgReadings.size + " Start date: " + dateUtil.dateAndTimeString(start) + " End date: " + dateUtil.dateAndTimeString(to))
             createBucketedData(aapsLogger, dateUtil)
             rxBus.send(EventBucketedDataCreated())
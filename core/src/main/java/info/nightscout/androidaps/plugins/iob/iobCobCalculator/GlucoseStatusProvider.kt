@@ -1,28 +1,37 @@
 package info.nightscout.androidaps.plugins.iob.iobCobCalculator
 
-import dagger.Reusable
+import info.nightscout.androidaps.database.entities.GlucoseValue
 import info.nightscout.androidaps.interfaces.IobCobCalculator
 import info.nightscout.androidaps.logging.AAPSLogger
 import info.nightscout.androidaps.logging.LTag
+import info.nightscout.androidaps.logging.debug
 import info.nightscout.androidaps.utils.DateUtil
 import java.util.*
 import javax.inject.Inject
+import javax.inject.Singleton
 import kotlin.math.roundToLong
 
-@Reusable
+/**
+ * GlucoseStatus is computed only from readings of last 42.5 min and only once
+ * for every loaded set of readings. All consumers get the cached result then
+ */
+@Singleton
 class GlucoseStatusProvider @Inject constructor(
     private val aapsLogger: AAPSLogger,
     private val iobCobCalculator: IobCobCalculator,
     private val dateUtil: DateUtil
 ) {
 
+    // readings (identity) the cached status has been computed from
+    private var cachedFor: List<GlucoseValue>? = null
+    private var cached: GlucoseStatus? = null
+
     val glucoseStatusData: GlucoseStatus?
         get() = getGlucoseStatusData()
 
     fun getGlucoseStatusData(allowOldData: Boolean = false): GlucoseStatus? {
-        val data = iobCobCalculator.ads.getBgReadingsDataTableCopy()
-        val sizeRecords = data.size
-        if (sizeRecords == 0) {
+        val data = iobCobCalculator.ads.bgReadings
+        if (data.isEmpty()) {
             aapsLogger.debug(LTag.GLUCOSE, "sizeRecords==0")
             return null
         }
@@ -30,9 +39,23 @@ class GlucoseStatusProvider @Inject constructor(
             aapsLogger.debug(LTag.GLUCOSE, "oldData")
             return null
         }
+        return cachedOrCompute(data)
+    }
+
+    @Synchronized
+    private fun cachedOrCompute(data: List<GlucoseValue>): GlucoseStatus? {
+        if (data !== cachedFor) {
+            cached = compute(data)
+            cachedFor = data
+        }
+        return cached
+    }
+
+    // data is ordered newest first
+    private fun compute(data: List<GlucoseValue>): GlucoseStatus {
+        val sizeRecords = data.size
         val now = data[0]
         val nowDate = now.timestamp
-        var change: Double
         if (sizeRecords == 1) {
             aapsLogger.debug(LTag.GLUCOSE, "sizeRecords==1")
             return GlucoseStatus(
@@ -44,62 +67,71 @@ class GlucoseStatusProvider @Inject constructor(
                 date = nowDate
             ).asRounded()
         }
-        val nowValueList = ArrayList<Double>()
-        val lastDeltas = ArrayList<Double>()
-        val shortDeltas = ArrayList<Double>()
-        val longDeltas = ArrayList<Double>()
-
         // Use the latest sgv value in the now calculations
-        nowValueList.add(now.value)
+        var nowValue = now.value
+        var nowSum = now.value
+        var nowCount = 1
+        var lastDeltasSum = 0.0
+        var lastDeltasCount = 0
+        var shortDeltasSum = 0.0
+        var shortDeltasCount = 0
+        var longDeltasSum = 0.0
+        var longDeltasCount = 0
+
         for (i in 1 until sizeRecords) {
-            if (data[i].value > 38) {
-                val then = data[i]
+            val then = data[i]
+            if (then.value > 38) {
                 val thenDate = then.timestamp
 
                 val minutesAgo = ((nowDate - thenDate) / (1000.0 * 60)).roundToLong()
                 // multiply by 5 to get the same units as delta, i.e. mg/dL/5m
-                change = now.value - then.value
+                val change = nowValue - then.value
                 val avgDel = change / minutesAgo * 5
-                aapsLogger.debug(LTag.GLUCOSE, "$then minutesAgo=$minutesAgo avgDelta=$avgDel")
+                aapsLogger.debug(LTag.GLUCOSE) { "$then minutesAgo=$minutesAgo avgDelta=$avgDel" }
 
                 // use the average of all data points in the last 2.5m for all further "now" calculations
                 if (0 < minutesAgo && minutesAgo < 2.5) {
                     // Keep and average all values within the last 2.5 minutes
-                    nowValueList.add(then.value)
-                    now.value = average(nowValueList)
+                    nowSum += then.value
+                    nowCount++
+                    nowValue = nowSum / nowCount
                     // short_deltas are calculated from everything ~5-15 minutes ago
                 } else if (2.5 < minutesAgo && minutesAgo < 17.5) {
-                    //console.error(minutesAgo, avgDelta);
-                    shortDeltas.add(avgDel)
+                    shortDeltasSum += avgDel
+                    shortDeltasCount++
                     // last_deltas are calculated from everything ~5 minutes ago
                     if (2.5 < minutesAgo && minutesAgo < 7.5) {
-                        lastDeltas.add(avgDel)
+                        lastDeltasSum += avgDel
+                        lastDeltasCount++
                     }
                     // long_deltas are calculated from everything ~20-40 minutes ago
                 } else if (17.5 < minutesAgo && minutesAgo < 42.5) {
-                    longDeltas.add(avgDel)
+                    longDeltasSum += avgDel
+                    longDeltasCount++
                 } else {
                     // Do not process any more records after >= 42.5 minutes
                     break
                 }
             }
         }
-        val shortAverageDelta = average(shortDeltas)
-        val delta = if (lastDeltas.isEmpty()) {
+        val shortAverageDelta = average(shortDeltasSum, shortDeltasCount)
+        val delta = if (lastDeltasCount == 0) {
             shortAverageDelta
         } else {
-            average(lastDeltas)
+            average(lastDeltasSum, lastDeltasCount)
         }
         return GlucoseStatus(
-            glucose = now.value,
+            glucose = nowValue,
             date = nowDate,
             noise = 0.0, //for now set to nothing as not all CGMs report noise
             shortAvgDelta = shortAverageDelta,
             delta = delta,
-            longAvgDelta = average(longDeltas),
-        ).also { aapsLogger.debug(LTag.GLUCOSE, it.log()) }.asRounded()
+            longAvgDelta = average(longDeltasSum, longDeltasCount),
+        ).also { status -> aapsLogger.debug(LTag.GLUCOSE) { status.log() } }.asRounded()
     }
 
+    private fun average(sum: Double, count: Int): Double = if (count == 0) 0.0 else sum / count
+
     companion object {
 
         fun average(array: ArrayList<Double>): Double {
@@ -432,4 +432,203 @@ class PumpSyncImplementation @Inject constructor(
             }
     }
 
-}
\ No newline at end of file
+    /*
+     *   BATCH
+     */
+
+    override fun syncPumpHistory(events: List<PumpSync.HistoryEvent>, pumpType: PumpType, pumpSerial: String): List<Boolean> {
+        // events rejected by confirmActivePump are not part of the transaction
+        val accepted = events.indices.filter { i ->
+            // there are probably old data in pump -> do not show notification for TDD, just ignore
+            confirmActivePump(events[i].timestamp, pumpType, pumpSerial, showNotification = events[i] !is PumpSync.HistoryEvent.TotalDailyDose)
+        }
+        val created = BooleanArray(events.size)
+        if (accepted.isEmpty()) return created.toList()
+        accepted.map { events[it] }.filterIsInstance<PumpSync.HistoryEvent.TherapyEvent>().forEach { event ->
+            uel.log(UserEntry.Action.CAREPORTAL, pumpType.source, event.note, ValueWithUnit.Timestamp(event.timestamp), ValueWithUnit.TherapyEventType(event.type.toDBbEventType()))
+        }
+        val results = try {
+            repository.runTransactionForResult(SyncPumpHistoryBatchTransaction(accepted.map { i -> historyTransaction(events[i], pumpType, pumpSerial) }))
+                .doOnError { aapsLogger.error(LTag.DATABASE, "Error while saving pump history", it) }
+                .blockingGet()
+        } catch (e: Exception) {
+            // one broken event must not block the rest. Sync events one by one
+            // with new transactions (entities of rolled back batch may have ids assigned)
+            accepted.map { i ->
+                try {
+                    repository.runTransactionForResult(SyncPumpHistoryBatchTransaction(listOf(historyTransaction(events[i], pumpType, pumpSerial))))
+                        .blockingGet()
+                        .first()
+                } catch (e: Exception) {
+                    aapsLogger.error(LTag.DATABASE, "Error while saving pump history event ${events[i]}", e)
+                    null
+                }
+            }
+        }
+        results.forEachIndexed { index, result -> created[accepted[index]] = historyResult(result) }
+        return created.toList()
+    }
+
+    private fun historyTransaction(event: PumpSync.HistoryEvent, pumpType: PumpType, pumpSerial: String): Transaction<*> {
+        fun interfaceIDs(pumpId: Long?, temporaryId: Long? = null) =
+            InterfaceIDs(temporaryId = temporaryId, pumpId = pumpId, pumpType = pumpType.toDbPumpType(), pumpSerial = pumpSerial)
+        return when (event) {
+            is PumpSync.HistoryEvent.Bolus                    ->
+                SyncPumpBolusTransaction(
+                    Bolus(
+                        timestamp = event.timestamp,
+                        amount = event.amount,
+                        type = event.type?.toDBbBolusType() ?: Bolus.Type.NORMAL,
+                        interfaceIDs_backing = interfaceIDs(event.pumpId)
+                    ), event.type?.toDBbBolusType()
+                )
+
+            is PumpSync.HistoryEvent.BolusWithTempId          ->
+                SyncBolusWithTempIdTransaction(
+                    Bolus(
+                        timestamp = event.timestamp,
+                        amount = event.amount,
+                        type = Bolus.Type.NORMAL, // not used for update
+                        interfaceIDs_backing = interfaceIDs(event.pumpId, event.temporaryId)
+                    ), event.type?.toDBbBolusType()
+                )
+
+            is PumpSync.HistoryEvent.Carbs                    ->
+                InsertIfNewByTimestampCarbsTransaction(
+                    Carbs(
+                        timestamp = event.timestamp,
+                        amount = event.amount,
+                        duration = 0,
+                        interfaceIDs_backing = interfaceIDs(event.pumpId)
+                    )
+                )
+
+            is PumpSync.HistoryEvent.TherapyEvent             ->
+                InsertIfNewByTimestampTherapyEventTransaction(
+                    TherapyEvent(
+                        timestamp = event.timestamp,
+                        type = event.type.toDBbEventType(),
+                        duration = 0,
+                        note = event.note,
+                        enteredBy = "AndroidAPS",
+                        glucose = null,
+                        glucoseType = null,
+                        glucoseUnit = TherapyEvent.GlucoseUnit.MGDL,
+                        interfaceIDs_backing = interfaceIDs(event.pumpId)
+                    )
+                )
+
+            is PumpSync.HistoryEvent.TemporaryBasal           ->
+                SyncPumpTemporaryBasalTransaction(
+                    TemporaryBasal(
+                        timestamp = event.timestamp,
+                        rate = event.rate,
+                        duration = event.duration,
+                        type = event.type?.toDbType() ?: TemporaryBasal.Type.NORMAL,
+                        isAbsolute = event.isAbsolute,
+                        interfaceIDs_backing = interfaceIDs(event.pumpId)
+                    ), event.type?.toDbType()
+                )
+
+            is PumpSync.HistoryEvent.TemporaryBasalWithTempId ->
+                SyncTemporaryBasalWithTempIdTransaction(
+                    TemporaryBasal(
+                        timestamp = event.timestamp,
+                        rate = event.rate,
+                        duration = event.duration,
+                        type = TemporaryBasal.Type.NORMAL, // not used for update
+                        isAbsolute = event.isAbsolute,
+                        interfaceIDs_backing = interfaceIDs(event.pumpId, event.temporaryId)
+                    ), event.type?.toDbType()
+                )
+
+            is PumpSync.HistoryEvent.StopTemporaryBasal       ->
+                SyncPumpCancelTemporaryBasalIfAnyTransaction(event.timestamp, event.endPumpId, pumpType.toDbPumpType(), pumpSerial)
+
+            is PumpSync.HistoryEvent.ExtendedBolus            ->
+                SyncPumpExtendedBolusTransaction(
+                    ExtendedBolus(
+                        timestamp = event.timestamp,
+                        amount = event.amount,
+                        duration = event.duration,
+                        isEmulatingTempBasal = event.isEmulatingTB,
+                        interfaceIDs_backing = interfaceIDs(event.pumpId)
+                    )
+                )
+
+            is PumpSync.HistoryEvent.StopExtendedBolus        ->
+                SyncPumpCancelExtendedBolusIfAnyTransaction(event.timestamp, event.endPumpId, pumpType.toDbPumpType(), pumpSerial)
+
+            is PumpSync.HistoryEvent.TotalDailyDose           ->
+                SyncPumpTotalDailyDoseTransaction(
+                    TotalDailyDose(
+                        timestamp = event.timestamp,
+                        bolusAmount = event.bolusAmount,
+                        basalAmount = event.basalAmount,
+                        totalAmount = event.totalAmount,
+                        interfaceIDs_backing = interfaceIDs(event.pumpId)
+                    )
+                )
+        }
+    }
+
+    // same logging and return value as single methods
+    private fun historyResult(result: Any?): Boolean =
+        when (result) {
+            is SyncPumpBolusTransaction.TransactionResult                      -> {
+                result.inserted.forEach { aapsLogger.debug(LTag.DATABASE, "Inserted Bolus $it") }
+                result.updated.forEach { aapsLogger.debug(LTag.DATABASE, "Updated Bolus $it") }
+                result.inserted.size > 0
+            }
+
+            is SyncBolusWithTempIdTransaction.TransactionResult                -> {
+                result.updated.forEach { aapsLogger.debug(LTag.DATABASE, "Updated Bolus $it") }
+                result.updated.size > 0
+            }
+
+            is InsertIfNewByTimestampCarbsTransaction.TransactionResult        -> {
+                result.inserted.forEach { aapsLogger.debug(LTag.DATABASE, "Inserted Carbs $it") }
+                result.inserted.size > 0
+            }
+
+            is InsertIfNewByTimestampTherapyEventTransaction.TransactionResult -> {
+                result.inserted.forEach { aapsLogger.debug(LTag.DATABASE, "Inserted TherapyEvent $it") }
+                result.inserted.size > 0
+            }
+
+            is SyncPumpTemporaryBasalTransaction.TransactionResult             -> {
+                result.inserted.forEach { aapsLogger.debug(LTag.DATABASE, "Inserted TemporaryBasal $it") }
+                result.updated.forEach { aapsLogger.debug(LTag.DATABASE, "Updated TemporaryBasal $it") }
+                result.inserted.size > 0
+            }
+
+            is SyncTemporaryBasalWithTempIdTransaction.TransactionResult       -> {
+                result.updated.forEach { aapsLogger.debug(LTag.DATABASE, "Updated TemporaryBasal $it") }
+                result.updated.size > 0
+            }
+
+            is SyncPumpCancelTemporaryBasalIfAnyTransaction.TransactionResult  -> {
+                result.updated.forEach { aapsLogger.debug(LTag.DATABASE, "Updated TemporaryBasal $it") }
+                result.updated.size > 0
+            }
+
+            is SyncPumpExtendedBolusTransaction.TransactionResult              -> {
+                result.inserted.forEach { aapsLogger.debug(LTag.DATABASE, "Inserted ExtendedBolus $it") }
+                result.updated.forEach { aapsLogger.debug(LTag.DATABASE, "Updated ExtendedBolus $it") }
+                result.inserted.size > 0
+            }
+
+            is SyncPumpCancelExtendedBolusIfAnyTransaction.TransactionResult   -> {
+                result.updated.forEach { aapsLogger.debug(LTag.DATABASE, "Updated ExtendedBolus $it") }
+                result.updated.size > 0
+            }
+
+            is SyncPumpTotalDailyDoseTransaction.TransactionResult             -> {
+                result.inserted.forEach { aapsLogger.debug(LTag.DATABASE, "Inserted TotalDailyDose $it") }
+                result.updated.forEach { aapsLogger.debug(LTag.DATABASE, "Updated TotalDailyDose $it") }
+                result.inserted.size > 0
+            }
+
+            else                                                               -> false
+        }
+}
@@ -1,5 +1,6 @@
 package info.nightscout.androidaps.utils
 
+import org.json.JSONArray
 import org.json.JSONException
 import org.json.JSONObject
 
@@ -161,4 +162,23 @@ object JsonHelper {
         }
         return result
     }
-}
\ No newline at end of file
+
+    /**
+     * Split array to parts of max [size] objects. Parts are created lazily
+     * so consumer can hand over every part before next one is built.
+     * Elements which are not JSONObject or don't match [filter] are dropped
+     */
+    fun chunked(array: JSONArray, size: Int, filter: (JSONObject) -> Boolean = { true }): Sequence<JSONArray> = sequence {
+        var part = JSONArray()
+        for (index in 0 until array.length()) {
+            val json = array.optJSONObject(index) ?: continue
+            if (!filter(json)) continue
+            part.put(json)
+            if (part.length() >= size) {
+                yield(part)
+                part = JSONArray()
+            }
+        }
+        if (part.length() > 0) yield(part)
+    }
+}
@@ -0,0 +1,73 @@
+package info.nightscout.androidaps.utils.tracing
+
+/**
+ * Fixed size log-linear histogram of latencies in microseconds
+ *
+ * Values below 16 have own bucket, every higher power of 2 is split to 16 buckets
+ * so relative error of reported percentiles is below 6.25%.
+ * Values above 2^41 us (~25 days) are clamped to the last bucket.
+ * Recording doesn't allocate. Not thread safe, caller must synchronize
+ */
+class LatencyHistogram {
+
+    companion object {
+
+        private const val SUB_BUCKET_BITS = 4
+        private const val SUB_BUCKETS = 1 shl SUB_BUCKET_BITS
+        private const val MAX_EXPONENT = 40
+        const val BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS
+        const val MAX_VALUE = (1L shl (MAX_EXPONENT + 1)) - 1
+
+        fun bucketOf(value: Long): Int {
+            val v = value.coerceIn(0, MAX_VALUE)
+            if (v < SUB_BUCKETS) return v.toInt()
+            val exponent = 63 - java.lang.Long.numberOfLeadingZeros(v)
+            val sub = (v ushr (exponent - SUB_BUCKET_BITS)).toInt() and (SUB_BUCKETS - 1)
+            return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub
+        }
+
+        /**
+         * @return highest value falling to bucket
+         */
+        fun upperBoundOf(bucket: Int): Long {
+            if (bucket < SUB_BUCKETS) return bucket.toLong()
+            val shift = bucket / SUB_BUCKETS - 1
+            val sub = bucket % SUB_BUCKETS
+            return ((SUB_BUCKETS + sub).toLong() shl shift) + (1L shl shift) - 1
+        }
+    }
+
+    private val counts = LongArray(BUCKETS)
+
+    var count = 0L
+        private set
+    var max = 0L
+        private set
+
+    fun record(value: Long) {
+        counts[bucketOf(value)]++
+        count++
+        if (value > max) max = value
+    }
+
+    /**
+     * @param percentile 0.0 - 100.0
+     * @return recorded value at percentile (upper bound of its bucket) or 0 if nothing was recorded
+     */
+    fun valueAt(percentile: Double): Long {
+        if (count == 0L) return 0
+        val rank = Math.ceil(percentile / 100.0 * count).toLong().coerceIn(1, count)
+        var cumulative = 0L
+        for (bucket in counts.indices) {
+            cumulative += counts[bucket]
+            if (cumulative >= rank) return minOf(upperBoundOf(bucket), max)
+        }
+        return max
+    }
+
+    fun reset() {
+        counts.fill(0)
+        count = 0
+        max = 0
+    }
+}
@@ -0,0 +1,157 @@
+package info.nightscout.androidaps.utils.tracing
+
+import android.os.Build
+import android.os.SystemClock
+import org.json.JSONArray
+import org.json.JSONObject
+import java.util.concurrent.atomic.AtomicLong
+import javax.inject.Inject
+import javax.inject.Singleton
+
+/**
+ * Latency tracing of loop path BG arrival -> calculation -> APS -> pump enactment
+ *
+ * Spans are measured on monotonic clock and may be nested. Every finished span goes to
+ * per span histogram and to ring buffer of last [BUFFER_SIZE] spans which can be exported
+ * together with percentiles. Nothing is allocated when recording
+ */
+@Singleton
+class LoopTracer internal constructor(private val clock: Clock) {
+
+    @Inject constructor() : this(Clock { SystemClock.elapsedRealtimeNanos() })
+
+    fun interface Clock {
+
+        fun nanos(): Long
+    }
+
+    enum class Span {
+        BG_TO_ENACT,
+        AUTOSENS,
+        LOOP,
+        APS,
+        DETERMINE_BASAL,
+        PUMP_COMMAND
+    }
+
+    companion object {
+
+        const val BUFFER_SIZE = 1024
+        private const val NONE = Long.MIN_VALUE
+    }
+
+    private val histograms = Array(Span.values().size) { LatencyHistogram() }
+
+    // ring buffer of finished spans
+    private val traceSpan = IntArray(BUFFER_SIZE)
+    private val traceDepth = IntArray(BUFFER_SIZE)
+    private val traceStart = LongArray(BUFFER_SIZE)
+    private val traceDuration = LongArray(BUFFER_SIZE)
+    private var traceNext = 0
+    private var traceSize = 0
+
+    private val depth = object : ThreadLocal<IntArray>() {
+        override fun initialValue() = IntArray(1)
+    }
+
+    private val bgArrivedAt = AtomicLong(NONE)
+
+    /**
+     * Start span on current thread
+     *
+     * @return start time to be passed to [end]
+     */
+    fun begin(): Long {
+        depth.get()!![0]++
+        return clock.nanos()
+    }
+
+    fun end(span: Span, start: Long) {
+        val end = clock.nanos()
+        val level = --depth.get()!![0]
+        record(span, level, start, end - start)
+    }
+
+    inline fun <T> trace(span: Span, block: () -> T): T {
+        val start = begin()
+        try {
+            return block()
+        } finally {
+            end(span, start)
+        }
+    }
+
+    /**
+     * New BG is stored in database. Newer BG replaces older one not enacted yet
+     */
+    fun bgArrived() {
+        bgArrivedAt.set(clock.nanos())
+    }
+
+    /**
+     * Loop result was enacted by pump. Only first enactment after BG arrival is recorded
+     */
+    fun enacted() {
+        val arrived = bgArrivedAt.getAndSet(NONE)
+        if (arrived != NONE) record(Span.BG_TO_ENACT, 0, arrived, clock.nanos() - arrived)
+    }
+
+    @Synchronized
+    private fun record(span: Span, level: Int, start: Long, duration: Long) {
+        histograms[span.ordinal].record(duration / 1000)
+        traceSpan[traceNext] = span.ordinal
+        traceDepth[traceNext] = level
+        traceStart[traceNext] = start
+        traceDuration[traceNext] = duration
+        traceNext = (traceNext + 1) % BUFFER_SIZE
+        if (traceSize < BUFFER_SIZE) traceSize++
+    }
+
+    @Synchronized
+    fun count(span: Span): Long = histograms[span.ordinal].count
+
+    /**
+     * @return latency at percentile in microseconds
+     */
+    @Synchronized
+    fun percentile(span: Span, percentile: Double): Long = histograms[span.ordinal].valueAt(percentile)
+
+    @Synchronized
+    fun reset() {
+        histograms.forEach { it.reset() }
+        traceNext = 0
+        traceSize = 0
+        bgArrivedAt.set(NONE)
+    }
+
+    @Synchronized
+    fun toJson(): JSONObject {
+        val spans = Span.values()
+        val stats = JSONObject()
+        for (span in spans) {
+            val histogram = histograms[span.ordinal]
+            if (histogram.count == 0L) continue
+            stats.put(span.name, JSONObject()
+                .put("count", histogram.count)
+                .put("p50", histogram.valueAt(50.0) / 1000.0)
+                .put("p95", histogram.valueAt(95.0) / 1000.0)
+                .put("p99", histogram.valueAt(99.0) / 1000.0)
+                .put("max", histogram.max / 1000.0))
+        }
+        val trace = JSONArray()
+        for (i in 0 until traceSize) {
+            val index = (traceNext - traceSize + i + BUFFER_SIZE) % BUFFER_SIZE
+            trace.put(JSONObject()
+                .put("span", spans[traceSpan[index]].name)
+                .put("depth", traceDepth[index])
+                .put("start", traceStart[index] / 1000)
+                .put("duration", traceDuration[index] / 1000))
+        }
+        return JSONObject()
+            .put("device", Build.MANUFACTURER + " " + Build.MODEL)
+            .put("now", clock.nanos() / 1000)
+            .put("unit", "stats ms, trace us")
+            .put("stats", stats)
+            .put("trace", trace)
+    }
+}
@@ -0,0 +1,64 @@
+package info.nightscout.androidaps.logging
+
+import info.nightscout.androidaps.TestBase
+import info.nightscout.androidaps.utils.sharedPreferences.SP
+import org.junit.Assert
+import org.junit.Test
+import org.mockito.ArgumentMatchers.anyBoolean
+import org.mockito.ArgumentMatchers.anyString
+import org.mockito.Mock
+import org.mockito.Mockito.`when`
+import org.mockito.Mockito.doAnswer
+import org.mockito.Mockito.mock
+
+class AAPSLoggerProductionTest : TestBase() {
+
+    @Mock lateinit var sp: SP
+
+    private fun markerOf(x: Int): String = lambdaLogMarker { "value $x" }
+
+    // stands for logger method
+    private fun callSiteMarker() = CallSiteMarker()
+
+    @Test
+    fun lambdaLogMarkerTest() {
+        Assert.assertEquals("[AAPSLoggerProductionTest.markerOf()]: ", markerOf(1))
+        var nested = ""
+        listOf(1).forEach { nested = lambdaLogMarker { "value $it" } }
+        Assert.assertEquals("[AAPSLoggerProductionTest.lambdaLogMarkerTest()]: ", nested)
+    }
+
+    @Test
+    fun callSiteMarkerTest() {
+        val marker = callSiteMarker()
+        Assert.assertTrue(marker.name.startsWith("[AAPSLoggerProductionTest.callSiteMarkerTest():"))
+        Assert.assertSame(marker.name, marker.toString())
+    }
+
+    @Test
+    fun disabledTagDoesNotBuildMessageTest() {
+        `when`(sp.getBoolean(anyString(), anyBoolean())).thenReturn(false)
+        val logger = AAPSLoggerProduction(L(sp))
+        var built = 0
+        logger.debug(LTag.AUTOSENS) { "message ${++built}" }
+        logger.info(LTag.AUTOSENS) { "message ${++built}" }
+        Assert.assertEquals(0, built)
+    }
+
+    @Test
+    fun callSiteIsTakenFromLambdaTest() {
+        val logger = mock(AAPSLogger::class.java)
+        var logged: (() -> String)? = null
+        doAnswer { logged = it.getArgument(1); null }.`when`(logger).debugLazy(anyObject(), anyObject())
+
+        val value = 5
+        `when`(logger.isDebugEnabled(LTag.AUTOSENS)).thenReturn(false)
+        logger.debug(LTag.AUTOSENS) { "value $value" }
+        Assert.assertNull(logged)
+
+        `when`(logger.isDebugEnabled(LTag.AUTOSENS)).thenReturn(true)
+        logger.debug(LTag.AUTOSENS) { "value $value" }
+        Assert.assertEquals("value 5", logged!!.invoke())
+        Assert.assertEquals("[AAPSLoggerProductionTest.callSiteIsTakenFromLambdaTest()]: ", lambdaLogMarker(logged!!))
+    }
+}
@@ -0,0 +1,81 @@
+package info.nightscout.androidaps.plugins.bus
+
+import info.nightscout.androidaps.TestBase
+import info.nightscout.androidaps.events.Event
+import info.nightscout.androidaps.events.EventAppExit
+import info.nightscout.androidaps.events.EventExtendedBolusChange
+import info.nightscout.androidaps.events.EventLoop
+import info.nightscout.androidaps.events.EventTempBasalChange
+import info.nightscout.androidaps.utils.rx.AapsSchedulers
+import io.reactivex.Scheduler
+import io.reactivex.schedulers.Schedulers
+import io.reactivex.schedulers.TestScheduler
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+
+class RxBusTest : TestBase() {
+
+    private val testScheduler = TestScheduler()
+
+    private val schedulers = object : AapsSchedulers {
+        override val main: Scheduler = Schedulers.trampoline()
+        override val io: Scheduler = Schedulers.trampoline()
+        override val cpu: Scheduler = testScheduler
+    }
+
+    private val rxBus = RxBus(schedulers, aapsLogger)
+
+    @Test
+    fun routesByClassTest() {
+        val tempBasal = rxBus.toObservable(EventTempBasalChange::class.java).test()
+        val appExit = rxBus.toObservable(EventAppExit::class.java).test()
+
+        val event = EventTempBasalChange()
+        rxBus.send(event)
+        tempBasal.assertValuesOnly(event)
+        appExit.assertEmpty()
+    }
+
+    @Test
+    fun supertypeSubscribedLaterReceivesSubclassesTest() {
+        val tempBasal = rxBus.toObservable(EventTempBasalChange::class.java).test()
+        rxBus.send(EventTempBasalChange()) // route for EventTempBasalChange is cached now
+
+        val loop = rxBus.toObservable(EventLoop::class.java).test()
+        val all = rxBus.toObservable(Event::class.java).test()
+        val tempBasalChange = EventTempBasalChange()
+        val extendedBolusChange = EventExtendedBolusChange()
+        val appExit = EventAppExit()
+        rxBus.send(tempBasalChange)
+        rxBus.send(extendedBolusChange)
+        rxBus.send(appExit)
+
+        tempBasal.assertValueCount(2)
+        loop.assertValuesOnly(tempBasalChange, extendedBolusChange)
+        all.assertValuesOnly(tempBasalChange, extendedBolusChange, appExit)
+    }
+
+    @Test
+    fun disposedSubscriberDoesNotReceiveTest() {
+        val observer = rxBus.toObservable(EventAppExit::class.java).test()
+        observer.dispose()
+        rxBus.send(EventAppExit())
+        observer.assertEmpty()
+    }
+
+    @Test
+    fun coalescedCollapsesBurstTest() {
+        val observer = rxBus.toObservableCoalesced(EventAppExit::class.java).test()
+        val events = List(10) { EventAppExit() }
+
+        events.forEach { rxBus.send(it) }
+        testScheduler.advanceTimeBy(RxBus.FRAME_MILLIS, TimeUnit.MILLISECONDS)
+        // first event immediately, then the latest one at the end of window
+        observer.assertValuesOnly(events.first(), events.last())
+
+        testScheduler.advanceTimeBy(1, TimeUnit.SECONDS)
+        val single = EventAppExit()
+        rxBus.send(single)
+        observer.assertValuesOnly(events.first(), events.last(), single)
+    }
+}
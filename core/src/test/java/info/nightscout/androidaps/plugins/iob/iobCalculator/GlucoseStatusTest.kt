@@ -42,7 +42,7 @@ class GlucoseStatusTest : TestBase() {
     }
 
     @Test fun calculateValidGlucoseStatus() {
-        `when`(autosensDataStore.getBgReadingsDataTableCopy()).thenReturn(generateValidBgData())
+        `when`(autosensDataStore.bgReadings).thenReturn(generateValidBgData())
         val glucoseStatus = GlucoseStatusProvider(aapsLogger, iobCobCalculatorPlugin, dateUtil).glucoseStatusData!!
         Assert.assertEquals(214.0, glucoseStatus.glucose, 0.001)
         Assert.assertEquals(-2.0, glucoseStatus.delta, 0.001)
@@ -52,7 +52,7 @@ class GlucoseStatusTest : TestBase() {
     }
 
     @Test fun calculateMostRecentGlucoseStatus() {
-        `when`(autosensDataStore.getBgReadingsDataTableCopy()).thenReturn(generateMostRecentBgData())
+        `when`(autosensDataStore.bgReadings).thenReturn(generateMostRecentBgData())
         val glucoseStatus: GlucoseStatus = GlucoseStatusProvider(aapsLogger, iobCobCalculatorPlugin, dateUtil).glucoseStatusData!!
         Assert.assertEquals(215.0, glucoseStatus.glucose, 0.001) // (214+216) / 2
         Assert.assertEquals(-1.0, glucoseStatus.delta, 0.001)
@@ -61,8 +61,19 @@ class GlucoseStatusTest : TestBase() {
         Assert.assertEquals(1514766900000L, glucoseStatus.date) // latest date, even when averaging
     }
 
+    @Test fun statusIsComputedOncePerLoadedDataAndDoesNotModifyIt() {
+        val data = generateMostRecentBgData()
+        `when`(autosensDataStore.bgReadings).thenReturn(data)
+        val sut = GlucoseStatusProvider(aapsLogger, iobCobCalculatorPlugin, dateUtil)
+        val glucoseStatus = sut.glucoseStatusData!!
+        Assert.assertSame(glucoseStatus, sut.glucoseStatusData)
+        Assert.assertEquals(214.0, data[0].value, 0.001)
+        `when`(autosensDataStore.bgReadings).thenReturn(generateValidBgData())
+        Assert.assertEquals(214.0, sut.glucoseStatusData!!.glucose, 0.001)
+    }
+
     @Test fun oneRecordShouldProduceZeroDeltas() {
-        `when`(autosensDataStore.getBgReadingsDataTableCopy()).thenReturn(generateOneCurrentRecordBgData())
+        `when`(autosensDataStore.bgReadings).thenReturn(generateOneCurrentRecordBgData())
         val glucoseStatus: GlucoseStatus = GlucoseStatusProvider(aapsLogger, iobCobCalculatorPlugin, dateUtil).glucoseStatusData!!
         Assert.assertEquals(214.0, glucoseStatus.glucose, 0.001)
         Assert.assertEquals(0.0, glucoseStatus.delta, 0.001)
@@ -72,19 +83,19 @@ class GlucoseStatusTest : TestBase() {
     }
 
     @Test fun insufficientDataShouldReturnNull() {
-        `when`(autosensDataStore.getBgReadingsDataTableCopy()).thenReturn(generateInsufficientBgData())
+        `when`(autosensDataStore.bgReadings).thenReturn(generateInsufficientBgData())
         val glucoseStatus: GlucoseStatus? = GlucoseStatusProvider(aapsLogger, iobCobCalculatorPlugin, dateUtil).glucoseStatusData
         Assert.assertEquals(null, glucoseStatus)
     }
 
     @Test fun oldDataShouldReturnNull() {
-        `when`(autosensDataStore.getBgReadingsDataTableCopy()).thenReturn(generateOldBgData())
+        `when`(autosensDataStore.bgReadings).thenReturn(generateOldBgData())
         val glucoseStatus: GlucoseStatus? = GlucoseStatusProvider(aapsLogger, iobCobCalculatorPlugin, dateUtil).glucoseStatusData
         Assert.assertEquals(null, glucoseStatus)
     }
 
     @Test fun returnOldDataIfAllowed() {
-        `when`(autosensDataStore.getBgReadingsDataTableCopy()).thenReturn(generateOldBgData())
+        `when`(autosensDataStore.bgReadings).thenReturn(generateOldBgData())
         val glucoseStatus: GlucoseStatus? = GlucoseStatusProvider(aapsLogger, iobCobCalculatorPlugin, dateUtil).getGlucoseStatusData(true)
         Assert.assertNotEquals(null, glucoseStatus)
     }
@@ -94,7 +105,7 @@ class GlucoseStatusTest : TestBase() {
     }
 
     @Test fun calculateGlucoseStatusForLibreTestBgData() {
-        `when`(autosensDataStore.getBgReadingsDataTableCopy()).thenReturn(generateLibreTestData())
+        `when`(autosensDataStore.bgReadings).thenReturn(generateLibreTestData())
         val glucoseStatus: GlucoseStatus = GlucoseStatusProvider(aapsLogger, iobCobCalculatorPlugin, dateUtil).glucoseStatusData!!
         Assert.assertEquals(100.0, glucoseStatus.glucose, 0.001) //
         Assert.assertEquals(-10.0, glucoseStatus.delta, 0.001)
@@ -0,0 +1,176 @@
+package info.nightscout.androidaps.plugins.pump
+
+import info.nightscout.androidaps.TestBase
+import info.nightscout.androidaps.core.R
+import info.nightscout.androidaps.data.DetailedBolusInfo
+import info.nightscout.androidaps.database.AppRepository
+import info.nightscout.androidaps.database.entities.Bolus
+import info.nightscout.androidaps.database.entities.TemporaryBasal
+import info.nightscout.androidaps.database.entities.TherapyEvent
+import info.nightscout.androidaps.database.entities.TotalDailyDose
+import info.nightscout.androidaps.database.transactions.*
+import info.nightscout.androidaps.interfaces.ProfileFunction
+import info.nightscout.androidaps.interfaces.PumpSync
+import info.nightscout.androidaps.logging.UserEntryLogger
+import info.nightscout.androidaps.plugins.bus.RxBus
+import info.nightscout.androidaps.plugins.general.overview.events.EventNewNotification
+import info.nightscout.androidaps.plugins.pump.common.defs.PumpType
+import info.nightscout.androidaps.utils.DateUtil
+import info.nightscout.androidaps.utils.T
+import info.nightscout.androidaps.utils.resources.ResourceHelper
+import info.nightscout.androidaps.utils.sharedPreferences.SP
+import io.reactivex.Single
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Test
+import org.mockito.Mock
+import org.mockito.Mockito.`when`
+import org.mockito.Mockito.never
+import org.mockito.Mockito.times
+import org.mockito.Mockito.verify
+
+class PumpSyncImplementationTest : TestBase() {
+
+    @Mock lateinit var dateUtil: DateUtil
+    @Mock lateinit var sp: SP
+    @Mock lateinit var rxBus: RxBus
+    @Mock lateinit var rh: ResourceHelper
+    @Mock lateinit var profileFunction: ProfileFunction
+    @Mock lateinit var repository: AppRepository
+    @Mock lateinit var uel: UserEntryLogger
+
+    private lateinit var sut: PumpSyncImplementation
+
+    private val now = 1000000000000L
+    private val pumpType = PumpType.MEDTRONIC_554_754_VEO
+    private val serial = "123456"
+    private val batches = mutableListOf<SyncPumpHistoryBatchTransaction>()
+
+    // transaction types failing in database
+    private val failing = mutableSetOf<Class<*>>()
+
+    @Before
+    fun prepare() {
+        `when`(dateUtil.now()).thenReturn(now)
+        `when`(rh.gs(R.string.wrong_pump_data)).thenReturn("Wrong pump data")
+        `when`(sp.getString(R.string.key_active_pump_type, "")).thenReturn(pumpType.description)
+        `when`(sp.getString(R.string.key_active_pump_serial_number, "")).thenReturn(serial)
+        `when`(sp.getLong(R.string.key_active_pump_change_timestamp, 0L)).thenReturn(now - T.hours(1).msecs())
+        `when`(repository.runTransactionForResult(anyObject<Transaction<List<Any?>>>())).thenAnswer { invocation ->
+            val batch = invocation.getArgument<SyncPumpHistoryBatchTransaction>(0)
+            batches.add(batch)
+            if (batch.transactions.any { it.javaClass in failing }) Single.error(IllegalStateException("Database error"))
+            else Single.just(batch.transactions.map { result(it) })
+        }
+        sut = PumpSyncImplementation(aapsLogger, dateUtil, sp, rxBus, rh, profileFunction, repository, uel)
+    }
+
+    // inserted for normal sync, updated only for temporary id sync and stops
+    private fun result(transaction: Transaction<*>): Any =
+        when (transaction) {
+            is SyncPumpBolusTransaction                     -> SyncPumpBolusTransaction.TransactionResult().also { it.inserted.add(bolus()) }
+            is SyncBolusWithTempIdTransaction               -> SyncBolusWithTempIdTransaction.TransactionResult().also { it.updated.add(bolus()) }
+            is InsertIfNewByTimestampCarbsTransaction       -> InsertIfNewByTimestampCarbsTransaction.TransactionResult()
+            is InsertIfNewByTimestampTherapyEventTransaction -> InsertIfNewByTimestampTherapyEventTransaction.TransactionResult().also { it.inserted.add(transaction.therapyEvent) }
+            is SyncPumpTemporaryBasalTransaction            -> SyncPumpTemporaryBasalTransaction.TransactionResult().also { it.updated.add(temporaryBasal()) }
+            is SyncTemporaryBasalWithTempIdTransaction      -> SyncTemporaryBasalWithTempIdTransaction.TransactionResult().also { it.updated.add(temporaryBasal()) }
+            is SyncPumpCancelTemporaryBasalIfAnyTransaction -> SyncPumpCancelTemporaryBasalIfAnyTransaction.TransactionResult().also { it.updated.add(temporaryBasal()) }
+            is SyncPumpExtendedBolusTransaction             -> SyncPumpExtendedBolusTransaction.TransactionResult()
+            is SyncPumpCancelExtendedBolusIfAnyTransaction  -> SyncPumpCancelExtendedBolusIfAnyTransaction.TransactionResult()
+            is SyncPumpTotalDailyDoseTransaction            -> SyncPumpTotalDailyDoseTransaction.TransactionResult().also { it.updated.add(TotalDailyDose(timestamp = now)) }
+            else                                            -> throw IllegalArgumentException()
+        }
+
+    private fun bolus() = Bolus(timestamp = now, amount = 1.0, type = Bolus.Type.NORMAL)
+    private fun temporaryBasal() = TemporaryBasal(timestamp = now, duration = 0, type = TemporaryBasal.Type.NORMAL, isAbsolute = true, rate = 1.0)
+
+    private fun allEvents(timestamp: Long) = listOf(
+        PumpSync.HistoryEvent.Bolus(timestamp, 1.0, DetailedBolusInfo.BolusType.NORMAL, 1),
+        PumpSync.HistoryEvent.BolusWithTempId(timestamp, 1.0, 2, DetailedBolusInfo.BolusType.SMB, 2),
+        PumpSync.HistoryEvent.Carbs(timestamp, 10.0, 3),
+        PumpSync.HistoryEvent.TherapyEvent(timestamp, DetailedBolusInfo.EventType.CANNULA_CHANGE, "note", 4),
+        PumpSync.HistoryEvent.TemporaryBasal(timestamp, 1.0, T.mins(30).msecs(), true, PumpSync.TemporaryBasalType.NORMAL, 5),
+        PumpSync.HistoryEvent.TemporaryBasalWithTempId(timestamp, 1.0, T.mins(30).msecs(), true, 6, PumpSync.TemporaryBasalType.NORMAL, 6),
+        PumpSync.HistoryEvent.StopTemporaryBasal(timestamp, 7),
+        PumpSync.HistoryEvent.ExtendedBolus(timestamp, 1.0, T.mins(30).msecs(), false, 8),
+        PumpSync.HistoryEvent.StopExtendedBolus(timestamp, 9),
+        PumpSync.HistoryEvent.TotalDailyDose(timestamp, 10.0, 10.0, 20.0, 10)
+    )
+
+    @Test
+    fun eventsAreMappedToTransactionsInOrder() {
+        sut.syncPumpHistory(allEvents(now), pumpType, serial)
+
+        Assert.assertEquals(1, batches.size)
+        Assert.assertEquals(
+            listOf(
+                SyncPumpBolusTransaction::class.java,
+                SyncBolusWithTempIdTransaction::class.java,
+                InsertIfNewByTimestampCarbsTransaction::class.java,
+                InsertIfNewByTimestampTherapyEventTransaction::class.java,
+                SyncPumpTemporaryBasalTransaction::class.java,
+                SyncTemporaryBasalWithTempIdTransaction::class.java,
+                SyncPumpCancelTemporaryBasalIfAnyTransaction::class.java,
+                SyncPumpExtendedBolusTransaction::class.java,
+                SyncPumpCancelExtendedBolusIfAnyTransaction::class.java,
+                SyncPumpTotalDailyDoseTransaction::class.java
+            ),
+            batches[0].transactions.map { it.javaClass }
+        )
+        val therapyEvent = (batches[0].transactions[3] as InsertIfNewByTimestampTherapyEventTransaction).therapyEvent
+        Assert.assertEquals(TherapyEvent.Type.CANNULA_CHANGE, therapyEvent.type)
+        Assert.assertEquals("note", therapyEvent.note)
+        Assert.assertEquals(4L, therapyEvent.interfaceIDs.pumpId)
+        Assert.assertEquals(serial, therapyEvent.interfaceIDs.pumpSerial)
+    }
+
+    @Test
+    fun resultOfEveryEventIsTheSameAsOfSingleMethod() {
+        Assert.assertEquals(
+            listOf(true, true, false, true, false, true, true, false, false, false),
+            sut.syncPumpHistory(allEvents(now), pumpType, serial)
+        )
+    }
+
+    @Test
+    fun eventsOlderThanPumpChangeAreNotSynced() {
+        val old = now - T.hours(2).msecs()
+        val events = listOf(
+            PumpSync.HistoryEvent.Bolus(old, 1.0, DetailedBolusInfo.BolusType.NORMAL, 1),
+            PumpSync.HistoryEvent.Bolus(now, 1.0, DetailedBolusInfo.BolusType.NORMAL, 2),
+            PumpSync.HistoryEvent.TotalDailyDose(old, 10.0, 10.0, 20.0, 3)
+        )
+
+        Assert.assertEquals(listOf(false, true, false), sut.syncPumpHistory(events, pumpType, serial))
+        Assert.assertEquals(1, batches[0].size)
+        verify(rxBus, never()).send(anyObject())
+    }
+
+    @Test
+    fun eventsOfOtherPumpAreNotSynced() {
+        val events = listOf(
+            PumpSync.HistoryEvent.Bolus(now, 1.0, DetailedBolusInfo.BolusType.NORMAL, 1),
+            PumpSync.HistoryEvent.TotalDailyDose(now, 10.0, 10.0, 20.0, 2)
+        )
+
+        Assert.assertEquals(listOf(false, false), sut.syncPumpHistory(events, pumpType, "654321"))
+        Assert.assertTrue(batches.isEmpty())
+        // notification for bolus only, TDD is ignored silently
+        verify(rxBus, times(1)).send(anyObject<EventNewNotification>())
+    }
+
+    @Test
+    fun failedBatchIsSyncedEventByEvent() {
+        failing.add(SyncPumpCancelTemporaryBasalIfAnyTransaction::class.java)
+        val events = listOf(
+            PumpSync.HistoryEvent.Bolus(now, 1.0, DetailedBolusInfo.BolusType.NORMAL, 1),
+            PumpSync.HistoryEvent.StopTemporaryBasal(now, 2),
+            PumpSync.HistoryEvent.TherapyEvent(now, DetailedBolusInfo.EventType.INSULIN_CHANGE, null, 3)
+        )
+
+        Assert.assertEquals(listOf(true, false, true), sut.syncPumpHistory(events, pumpType, serial))
+        Assert.assertEquals(listOf(3, 1, 1, 1), batches.map { it.size })
+        // new transactions are created for single events
+        Assert.assertNotSame(batches[0].transactions[0], batches[1].transactions[0])
+    }
+}
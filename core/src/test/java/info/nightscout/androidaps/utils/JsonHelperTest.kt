@@ -1,5 +1,6 @@
 package info.nightscout.androidaps.utils
 
+import org.json.JSONArray
 import org.json.JSONObject
 import org.junit.Assert
 import org.junit.Test
@@ -76,4 +77,16 @@ class JsonHelperTest {
         Assert.assertFalse(JsonHelper.safeGetBoolean(json, "notexisting"))
         Assert.assertTrue(JsonHelper.safeGetBoolean(json, "b"))
     }
-}
\ No newline at end of file
+
+    @Test
+    fun chunkedTest() {
+        val array = JSONArray()
+        for (i in 0 until 7) array.put(JSONObject().put("i", i))
+        array.put("not an object")
+        Assert.assertEquals(listOf(3, 3, 1), JsonHelper.chunked(array, 3).map { it.length() }.toList())
+        val even = JsonHelper.chunked(array, 3) { it.getInt("i") % 2 == 0 }.toList()
+        Assert.assertEquals(listOf(3, 1), even.map { it.length() })
+        Assert.assertEquals(6, even[1].getJSONObject(0).getInt("i"))
+        Assert.assertEquals(0, JsonHelper.chunked(JSONArray(), 3).count())
+    }
+}
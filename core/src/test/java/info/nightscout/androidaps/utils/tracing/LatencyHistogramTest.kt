@@ -0,0 +1,50 @@
+package info.nightscout.androidaps.utils.tracing
+
+import org.junit.Assert
+import org.junit.Test
+
+class LatencyHistogramTest {
+
+    @Test
+    fun bucketsTest() {
+        for (value in 0L..15L) Assert.assertEquals(value.toInt(), LatencyHistogram.bucketOf(value))
+        Assert.assertEquals(16, LatencyHistogram.bucketOf(16))
+        Assert.assertEquals(31, LatencyHistogram.bucketOf(31))
+        Assert.assertEquals(32, LatencyHistogram.bucketOf(32))
+        Assert.assertEquals(32, LatencyHistogram.bucketOf(33))
+        Assert.assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucketOf(LatencyHistogram.MAX_VALUE))
+        Assert.assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE))
+        Assert.assertEquals(0, LatencyHistogram.bucketOf(-5))
+        // every value is within its bucket and buckets are continuous
+        var value = 1L
+        while (value < LatencyHistogram.MAX_VALUE) {
+            val bucket = LatencyHistogram.bucketOf(value)
+            Assert.assertTrue(value <= LatencyHistogram.upperBoundOf(bucket))
+            Assert.assertTrue(value > LatencyHistogram.upperBoundOf(bucket - 1))
+            Assert.assertEquals(bucket + 1, LatencyHistogram.bucketOf(LatencyHistogram.upperBoundOf(bucket) + 1))
+            value = value * 3 / 2 + 1
+        }
+    }
+
+    @Test
+    fun percentilesTest() {
+        val sut = LatencyHistogram()
+        Assert.assertEquals(0L, sut.valueAt(50.0))
+        for (value in 1L..1000L) sut.record(value * 1000)
+        Assert.assertEquals(1000L, sut.count)
+        Assert.assertEquals(1_000_000L, sut.max)
+        assertWithinError(500_000, sut.valueAt(50.0))
+        assertWithinError(950_000, sut.valueAt(95.0))
+        assertWithinError(990_000, sut.valueAt(99.0))
+        Assert.assertEquals(1_000_000L, sut.valueAt(100.0))
+        assertWithinError(1000, sut.valueAt(0.0))
+        sut.reset()
+        Assert.assertEquals(0L, sut.count)
+        Assert.assertEquals(0L, sut.max)
+        Assert.assertEquals(0L, sut.valueAt(99.0))
+    }
+
+    private fun assertWithinError(expected: Long, actual: Long) {
+        Assert.assertTrue("$actual", actual >= expected && actual <= expected + expected / 16)
+    }
+}
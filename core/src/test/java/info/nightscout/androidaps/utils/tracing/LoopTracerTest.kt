@@ -0,0 +1,99 @@
+package info.nightscout.androidaps.utils.tracing
+
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Test
+
+class LoopTracerTest {
+
+    private var now = 0L
+    private lateinit var sut: LoopTracer
+
+    @Before
+    fun prepare() {
+        now = 1_000_000_000L
+        sut = LoopTracer { now }
+    }
+
+    private fun advanceMs(ms: Long) {
+        now += ms * 1_000_000
+    }
+
+    @Test
+    fun nestedSpansTest() {
+        val result = sut.trace(LoopTracer.Span.LOOP) {
+            advanceMs(5)
+            sut.trace(LoopTracer.Span.APS) {
+                advanceMs(20)
+                sut.trace(LoopTracer.Span.DETERMINE_BASAL) { advanceMs(100) }
+            }
+            "done"
+        }
+        Assert.assertEquals("done", result)
+        Assert.assertEquals(1L, sut.count(LoopTracer.Span.LOOP))
+        Assert.assertEquals(125_000L, sut.percentile(LoopTracer.Span.LOOP, 50.0))
+        Assert.assertEquals(120_000L, sut.percentile(LoopTracer.Span.APS, 50.0))
+        Assert.assertEquals(100_000L, sut.percentile(LoopTracer.Span.DETERMINE_BASAL, 50.0))
+
+        val trace = sut.toJson().getJSONArray("trace")
+        Assert.assertEquals(3, trace.length())
+        // inner spans finish first
+        Assert.assertEquals("DETERMINE_BASAL", trace.getJSONObject(0).getString("span"))
+        Assert.assertEquals(2, trace.getJSONObject(0).getInt("depth"))
+        Assert.assertEquals(1, trace.getJSONObject(1).getInt("depth"))
+        Assert.assertEquals("LOOP", trace.getJSONObject(2).getString("span"))
+        Assert.assertEquals(0, trace.getJSONObject(2).getInt("depth"))
+        Assert.assertEquals(125_000L, trace.getJSONObject(2).getLong("duration"))
+    }
+
+    @Test
+    fun spanIsRecordedOnExceptionTest() {
+        try {
+            sut.trace(LoopTracer.Span.PUMP_COMMAND) {
+                advanceMs(10)
+                throw IllegalStateException()
+            }
+        } catch (ignored: IllegalStateException) {
+        }
+        Assert.assertEquals(1L, sut.count(LoopTracer.Span.PUMP_COMMAND))
+        // depth is restored
+        sut.trace(LoopTracer.Span.LOOP) { }
+        Assert.assertEquals(0, sut.toJson().getJSONArray("trace").getJSONObject(1).getInt("depth"))
+    }
+
+    @Test
+    fun bgToEnactTest() {
+        sut.enacted()
+        Assert.assertEquals(0L, sut.count(LoopTracer.Span.BG_TO_ENACT))
+        sut.bgArrived()
+        advanceMs(100)
+        // newer BG replaces older
+        sut.bgArrived()
+        advanceMs(3000)
+        sut.enacted()
+        advanceMs(1000)
+        // SMB after TBR is not counted again
+        sut.enacted()
+        Assert.assertEquals(1L, sut.count(LoopTracer.Span.BG_TO_ENACT))
+        Assert.assertEquals(3_000_000L, sut.percentile(LoopTracer.Span.BG_TO_ENACT, 99.0))
+        val stats = sut.toJson().getJSONObject("stats").getJSONObject("BG_TO_ENACT")
+        Assert.assertEquals(3000.0, stats.getDouble("p50"), 0.001)
+        Assert.assertEquals(3000.0, stats.getDouble("max"), 0.001)
+    }
+
+    @Test
+    fun ringBufferTest() {
+        repeat(LoopTracer.BUFFER_SIZE + 10) {
+            sut.trace(LoopTracer.Span.AUTOSENS) { advanceMs(it.toLong() + 1) }
+        }
+        val json = sut.toJson()
+        val trace = json.getJSONArray("trace")
+        Assert.assertEquals(LoopTracer.BUFFER_SIZE, trace.length())
+        Assert.assertEquals(11_000L, trace.getJSONObject(0).getLong("duration"))
+        Assert.assertEquals((LoopTracer.BUFFER_SIZE + 10) * 1000L, trace.getJSONObject(LoopTracer.BUFFER_SIZE - 1).getLong("duration"))
+        Assert.assertEquals(LoopTracer.BUFFER_SIZE + 10L, json.getJSONObject("stats").getJSONObject("AUTOSENS").getLong("count"))
+        sut.reset()
+        Assert.assertEquals(0, sut.toJson().getJSONArray("trace").length())
+        Assert.assertEquals(0L, sut.count(LoopTracer.Span.AUTOSENS))
+    }
+}
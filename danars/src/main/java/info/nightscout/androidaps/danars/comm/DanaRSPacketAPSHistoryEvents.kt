@@ -36,6 +36,10 @@ open class DanaRSPacketAPSHistoryEvents(
         var messageBuffer = arrayListOf<ByteArray>() // for reversing order of incoming messages
     }
 
+    // events of whole history are synced in one transaction when last record is received
+    private val historyEvents = mutableListOf<PumpSync.HistoryEvent>()
+    private val historyEventLogs = mutableListOf<(Boolean) -> String>()
+
     init {
         opCode = BleEncryption.DANAR_PACKET__OPCODE__APS_HISTORY_EVENTS
         if (from > dateUtil.now()) {
@@ -99,6 +103,7 @@ open class DanaRSPacketAPSHistoryEvents(
                 }
                 processMessage(message)
             }
+            syncHistoryEvents()
             danaPump.historyDoneReceived = true
         } else messageBuffer.add(data)
     }
@@ -135,130 +140,98 @@ open class DanaRSPacketAPSHistoryEvents(
         when (DanaPump.HistoryEntry.fromInt(recordCode)) {
             DanaPump.HistoryEntry.TEMP_START          -> {
                 val temporaryBasalInfo = temporaryBasalStorage.findTemporaryBasal(datetime, param1.toDouble())
-                val newRecord = pumpSync.syncTemporaryBasalWithPumpId(
-                    timestamp = datetime,
-                    rate = param1.toDouble(),
-                    duration = T.mins(param2.toLong()).msecs(),
-                    isAbsolute = false,
-                    type = temporaryBasalInfo?.type,
-                    pumpId = pumpId,
-                    pumpType = danaPump.pumpType(),
-                    pumpSerial = danaPump.serialNumber
-                )
-                aapsLogger.debug(
-                    LTag.PUMPCOMM,
-                    "[$pumpId] ${if (newRecord) "**NEW** " else ""}EVENT TEMP_START ($recordCode) ${dateUtil.dateAndTimeString(datetime)} ($datetime) Ratio: $param1% Duration: ${param2}min"
-                )
+                sync(
+                    PumpSync.HistoryEvent.TemporaryBasal(
+                        timestamp = datetime,
+                        rate = param1.toDouble(),
+                        duration = T.mins(param2.toLong()).msecs(),
+                        isAbsolute = false,
+                        type = temporaryBasalInfo?.type,
+                        pumpId = pumpId
+                    )
+                ) { newRecord -> "[$pumpId] ${if (newRecord) "**NEW** " else ""}EVENT TEMP_START ($recordCode) ${dateUtil.dateAndTimeString(datetime)} ($datetime) Ratio: $param1% Duration: ${param2}min" }
                 status = "TEMP_START " + dateUtil.timeString(datetime)
             }
 
             DanaPump.HistoryEntry.TEMP_STOP           -> {
-                val newRecord = pumpSync.syncStopTemporaryBasalWithPumpId(
-                    timestamp = datetime,
-                    endPumpId = pumpId,
-                    pumpType = danaPump.pumpType(),
-                    pumpSerial = danaPump.serialNumber
-                )
-                aapsLogger.debug(
-                    LTag.PUMPCOMM,
-                    "[$pumpId] ${if (newRecord) "**NEW** " else ""}EVENT TEMP_STOP ($recordCode) ${dateUtil.dateAndTimeString(datetime)} ($datetime)"
-                )
+                sync(
+                    PumpSync.HistoryEvent.StopTemporaryBasal(
+                        timestamp = datetime,
+                        endPumpId = pumpId
+                    )
+                ) { newRecord -> "[$pumpId] ${if (newRecord) "**NEW** " else ""}EVENT TEMP_STOP ($recordCode) ${dateUtil.dateAndTimeString(datetime)} ($datetime)" }
                 status = "TEMP_STOP " + dateUtil.timeString(datetime)
             }
 
             DanaPump.HistoryEntry.EXTENDED_START      -> {
-                val newRecord = pumpSync.syncExtendedBolusWithPumpId(
-                    timestamp = datetime,
-                    amount = param1 / 100.0,
-                    duration = T.mins(param2.toLong()).msecs(),
-                    isEmulatingTB = false,
-                    pumpId = pumpId,
-                    pumpType = danaPump.pumpType(),
-                    pumpSerial = danaPump.serialNumber
-                )
-                aapsLogger.debug(
-                    LTag.PUMPCOMM,
-                    "[$pumpId] ${if (newRecord) "**NEW** " else ""}EVENT EXTENDED_START ($recordCode) ${dateUtil.dateAndTimeString(datetime)} ($datetime) Amount: ${param1 / 100.0}U Duration: ${param2}min"
-                )
+                sync(
+                    PumpSync.HistoryEvent.ExtendedBolus(
+                        timestamp = datetime,
+                        amount = param1 / 100.0,
+                        duration = T.mins(param2.toLong()).msecs(),
+                        isEmulatingTB = false,
+                        pumpId = pumpId
+                    )
+                ) { newRecord -> "[$pumpId] ${if (newRecord) "**NEW** " else ""}EVENT EXTENDED_START ($recordCode) ${dateUtil.dateAndTimeString(datetime)} ($datetime) Amount: ${param1 / 100.0}U Duration: ${param2}min" }
                 status = "EXTENDED_START " + dateUtil.timeString(datetime)
             }
 
             DanaPump.HistoryEntry.EXTENDED_STOP       -> {
-                val newRecord = pumpSync.syncStopExtendedBolusWithPumpId(
-                    timestamp = datetime,
-                    endPumpId = pumpId,
-                    pumpType = danaPump.pumpType(),
-                    pumpSerial = danaPump.serialNumber
-                )
-                aapsLogger.debug(
-                    LTag.PUMPCOMM,
-                    "[$pumpId] ${if (newRecord) "**NEW** " else ""}EVENT EXTENDED_STOP ($recordCode) ${dateUtil.dateAndTimeString(datetime)} ($datetime) Delivered: ${param1 / 100.0}U RealDuration: ${param2}min"
-                )
+                sync(
+                    PumpSync.HistoryEvent.StopExtendedBolus(
+                        timestamp = datetime,
+                        endPumpId = pumpId
+                    )
+                ) { newRecord -> "[$pumpId] ${if (newRecord) "**NEW** " else ""}EVENT EXTENDED_STOP ($recordCode) ${dateUtil.dateAndTimeString(datetime)} ($datetime) Delivered: ${param1 / 100.0}U RealDuration: ${param2}min" }
                 status = "EXTENDED_STOP " + dateUtil.timeString(datetime)
             }
 
             DanaPump.HistoryEntry.BOLUS               -> {
                 val detailedBolusInfo = detailedBolusInfoStorage.findDetailedBolusInfo(datetime, param1 / 100.0)
-                val newRecord = pumpSync.syncBolusWithPumpId(
-                    timestamp = datetime,
-                    amount = param1 / 100.0,
-                    type = detailedBolusInfo?.bolusType,
-                    pumpId = pumpId,
-                    pumpType = danaPump.pumpType(),
-                    pumpSerial = danaPump.serialNumber
-                )
-                aapsLogger.debug(
-                    LTag.PUMPCOMM,
-                    "[$pumpId] ${if (newRecord) "**NEW** " else ""}EVENT BOLUS ($recordCode) ${dateUtil.dateAndTimeString(datetime)} ($datetime) Bolus: ${param1 / 100.0}U "
-                )
+                sync(
+                    PumpSync.HistoryEvent.Bolus(
+                        timestamp = datetime,
+                        amount = param1 / 100.0,
+                        type = detailedBolusInfo?.bolusType,
+                        pumpId = pumpId
+                    )
+                ) { newRecord -> "[$pumpId] ${if (newRecord) "**NEW** " else ""}EVENT BOLUS ($recordCode) ${dateUtil.dateAndTimeString(datetime)} ($datetime) Bolus: ${param1 / 100.0}U " }
                 status = "BOLUS " + dateUtil.timeString(datetime)
             }
 
             DanaPump.HistoryEntry.DUAL_BOLUS          -> {
                 val detailedBolusInfo = detailedBolusInfoStorage.findDetailedBolusInfo(datetime, param1 / 100.0)
-                val newRecord = pumpSync.syncBolusWithPumpId(
-                    timestamp = datetime,
-                    amount = param1 / 100.0,
-                    type = detailedBolusInfo?.bolusType,
-                    pumpId = pumpId,
-                    pumpType = danaPump.pumpType(),
-                    pumpSerial = danaPump.serialNumber
-                )
-                aapsLogger.debug(
-                    LTag.PUMPCOMM,
-                    "[$pumpId] ${if (newRecord) "**NEW** " else ""}EVENT DUAL_BOLUS ($recordCode) ${dateUtil.dateAndTimeString(datetime)} ($datetime) Bolus: ${param1 / 100.0}U Duration: ${param2}min"
-                )
+                sync(
+                    PumpSync.HistoryEvent.Bolus(
+                        timestamp = datetime,
+                        amount = param1 / 100.0,
+                        type = detailedBolusInfo?.bolusType,
+                        pumpId = pumpId
+                    )
+                ) { newRecord -> "[$pumpId] ${if (newRecord) "**NEW** " else ""}EVENT DUAL_BOLUS ($recordCode) ${dateUtil.dateAndTimeString(datetime)} ($datetime) Bolus: ${param1 / 100.0}U Duration: ${param2}min" }
                 status = "DUAL_BOLUS " + dateUtil.timeString(datetime)
             }
 
             DanaPump.HistoryEntry.DUAL_EXTENDED_START -> {
-                val newRecord = pumpSync.syncExtendedBolusWithPumpId(
-                    timestamp = datetime,
-                    amount = param1 / 100.0,
-                    duration = T.mins(param2.toLong()).msecs(),
-                    isEmulatingTB = false,
-                    pumpId = pumpId,
-                    pumpType = danaPump.pumpType(),
-                    pumpSerial = danaPump.serialNumber
-                )
-                aapsLogger.debug(
-                    LTag.PUMPCOMM,
-                    "[$pumpId] ${if (newRecord) "**NEW** " else ""}EVENT DUAL_EXTENDED_START ($recordCode) ${dateUtil.dateAndTimeString(datetime)} ($datetime) Amount: ${param1 / 100.0}U Duration: ${param2}min"
-                )
+                sync(
+                    PumpSync.HistoryEvent.ExtendedBolus(
+                        timestamp = datetime,
+                        amount = param1 / 100.0,
+                        duration = T.mins(param2.toLong()).msecs(),
+                        isEmulatingTB = false,
+                        pumpId = pumpId
+                    )
+                ) { newRecord -> "[$pumpId] ${if (newRecord) "**NEW** " else ""}EVENT DUAL_EXTENDED_START ($recordCode) ${dateUtil.dateAndTimeString(datetime)} ($datetime) Amount: ${param1 / 100.0}U Duration: ${param2}min" }
                 status = "DUAL_EXTENDED_START " + dateUtil.timeString(datetime)
             }
 
             DanaPump.HistoryEntry.DUAL_EXTENDED_STOP  -> {
-                val newRecord = pumpSync.syncStopExtendedBolusWithPumpId(
-                    timestamp = datetime,
-                    endPumpId = pumpId,
-                    pumpType = danaPump.pumpType(),
-                    pumpSerial = danaPump.serialNumber
-                )
-                aapsLogger.debug(
-                    LTag.PUMPCOMM,
-                    "[$pumpId] ${if (newRecord) "**NEW** " else ""}EVENT DUAL_EXTENDED_STOP ($recordCode) ${dateUtil.dateAndTimeString(datetime)} ($datetime) Delivered: ${param1 / 100.0}U RealDuration: ${param2}min"
-                )
+                sync(
+                    PumpSync.HistoryEvent.StopExtendedBolus(
+                        timestamp = datetime,
+                        endPumpId = pumpId
+                    )
+                ) { newRecord -> "[$pumpId] ${if (newRecord) "**NEW** " else ""}EVENT DUAL_EXTENDED_STOP ($recordCode) ${dateUtil.dateAndTimeString(datetime)} ($datetime) Delivered: ${param1 / 100.0}U RealDuration: ${param2}min" }
                 status = "DUAL_EXTENDED_STOP " + dateUtil.timeString(datetime)
             }
 
@@ -280,17 +253,13 @@ open class DanaRSPacketAPSHistoryEvents(
 
             DanaPump.HistoryEntry.REFILL              -> {
                 if (sp.getBoolean(R.string.key_rs_loginsulinchange, true)) {
-                    val newRecord = pumpSync.insertTherapyEventIfNewWithTimestamp(
-                        timestamp = datetime,
-                        type = DetailedBolusInfo.EventType.INSULIN_CHANGE,
-                        pumpId = pumpId,
-                        pumpType = danaPump.pumpType(),
-                        pumpSerial = danaPump.serialNumber
-                    )
-                    aapsLogger.debug(
-                        LTag.PUMPCOMM,
-                        "[$pumpId] ${if (newRecord) "**NEW** " else ""}EVENT REFILL ($recordCode) ${dateUtil.dateAndTimeString(datetime)} ($datetime) Amount: ${param1 / 100.0}U"
-                    )
+                    sync(
+                        PumpSync.HistoryEvent.TherapyEvent(
+                            timestamp = datetime,
+                            type = DetailedBolusInfo.EventType.INSULIN_CHANGE,
+                            pumpId = pumpId
+                        )
+                    ) { newRecord -> "[$pumpId] ${if (newRecord) "**NEW** " else ""}EVENT REFILL ($recordCode) ${dateUtil.dateAndTimeString(datetime)} ($datetime) Amount: ${param1 / 100.0}U" }
                 }
                 status = "REFILL " + dateUtil.timeString(datetime)
             }
@@ -312,33 +281,25 @@ open class DanaRSPacketAPSHistoryEvents(
             }
 
             DanaPump.HistoryEntry.CARBS               -> {
-                val newRecord = pumpSync.syncCarbsWithTimestamp(
-                    timestamp = datetime,
-                    amount = param1.toDouble(),
-                    pumpId = pumpId,
-                    pumpType = danaPump.pumpType(),
-                    pumpSerial = danaPump.serialNumber
-                )
-                aapsLogger.debug(
-                    LTag.PUMPCOMM,
-                    "[$pumpId] ${if (newRecord) "**NEW** " else ""}EVENT CARBS ($recordCode) ${dateUtil.dateAndTimeString(datetime)} ($datetime) Carbs: ${param1}g"
-                )
+                sync(
+                    PumpSync.HistoryEvent.Carbs(
+                        timestamp = datetime,
+                        amount = param1.toDouble(),
+                        pumpId = pumpId
+                    )
+                ) { newRecord -> "[$pumpId] ${if (newRecord) "**NEW** " else ""}EVENT CARBS ($recordCode) ${dateUtil.dateAndTimeString(datetime)} ($datetime) Carbs: ${param1}g" }
                 status = "CARBS " + dateUtil.timeString(datetime)
             }
 
             DanaPump.HistoryEntry.PRIME_CANNULA       -> {
                 if (sp.getBoolean(R.string.key_rs_logcanulachange, true)) {
-                    val newRecord = pumpSync.insertTherapyEventIfNewWithTimestamp(
-                        timestamp = datetime,
-                        type = DetailedBolusInfo.EventType.CANNULA_CHANGE,
-                        pumpId = pumpId,
-                        pumpType = danaPump.pumpType(),
-                        pumpSerial = danaPump.serialNumber
-                    )
-                    aapsLogger.debug(
-                        LTag.PUMPCOMM,
-                        "[$pumpId] ${if (newRecord) "**NEW** " else ""}EVENT PRIME_CANNULA($recordCode) ${dateUtil.dateAndTimeString(datetime)} ($datetime) Amount: ${param1 / 100.0}U"
-                    )
+                    sync(
+                        PumpSync.HistoryEvent.TherapyEvent(
+                            timestamp = datetime,
+                            type = DetailedBolusInfo.EventType.CANNULA_CHANGE,
+                            pumpId = pumpId
+                        )
+                    ) { newRecord -> "[$pumpId] ${if (newRecord) "**NEW** " else ""}EVENT PRIME_CANNULA($recordCode) ${dateUtil.dateAndTimeString(datetime)} ($datetime) Amount: ${param1 / 100.0}U" }
                 }
                 status = "PRIME_CANNULA " + dateUtil.timeString(datetime)
             }
@@ -364,5 +325,18 @@ open class DanaRSPacketAPSHistoryEvents(
         rxBus.send(EventPumpStatusChanged(rh.gs(R.string.processinghistory) + ": " + status))
     }
 
+    private fun sync(event: PumpSync.HistoryEvent, log: (newRecord: Boolean) -> String) {
+        historyEvents.add(event)
+        historyEventLogs.add(log)
+    }
+
+    private fun syncHistoryEvents() {
+        if (historyEvents.isEmpty()) return
+        pumpSync.syncPumpHistory(historyEvents, danaPump.pumpType(), danaPump.serialNumber)
+            .forEachIndexed { index, newRecord -> aapsLogger.debug(LTag.PUMPCOMM, historyEventLogs[index](newRecord)) }
+        historyEvents.clear()
+        historyEventLogs.clear()
+    }
+
     override val friendlyName: String = "APS_HISTORY_EVENTS"
 }
\ No newline at end of file
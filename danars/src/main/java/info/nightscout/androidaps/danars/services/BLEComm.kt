@@ -33,7 +33,9 @@ import info.nightscout.androidaps.utils.ToastUtils
 import info.nightscout.androidaps.utils.resources.ResourceHelper
 import info.nightscout.androidaps.utils.sharedPreferences.SP
 import java.util.*
+import java.util.concurrent.Executors
 import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
 import javax.inject.Inject
 import javax.inject.Singleton
 
@@ -55,20 +57,24 @@ class BLEComm @Inject internal constructor(
 
     companion object {
 
-        private const val WRITE_DELAY_MILLIS: Long = 50
+        private const val WRITE_TIMEOUT_MILLIS: Long = 50
+        private const val MAX_WRITE_SIZE = 20
         private const val UART_READ_UUID = "0000fff1-0000-1000-8000-00805f9b34fb"
         private const val UART_WRITE_UUID = "0000fff2-0000-1000-8000-00805f9b34fb"
         private const val UART_BLE5_UUID = "00002902-0000-1000-8000-00805f9b34fb"
-
-        private const val PACKET_START_BYTE = 0xA5.toByte()
-        private const val PACKET_END_BYTE = 0x5A.toByte()
-        private const val BLE5_PACKET_START_BYTE = 0xAA.toByte()
-        private const val BLE5_PACKET_END_BYTE = 0xEE.toByte()
     }
 
     private var scheduledDisconnection: ScheduledFuture<*>? = null
     private var processedMessage: DanaRSPacket? = null
-    private val mSendQueue = ArrayList<ByteArray>()
+
+    // All GATT writes are done on this thread. Send queue is accessed from it only
+    private val gattIO = Executors.newSingleThreadScheduledExecutor { runnable -> Thread(runnable, "DanaRSGattIO").also { it.isDaemon = true } }
+    private val sendQueue = ArrayDeque<ByteArray>() // circular buffer of chunks waiting for write
+    private var writeInProgress = false
+    private var writeTimeout: ScheduledFuture<*>? = null
+    private var writtenChunks = 0 // chunks accepted by stack since the queue was cleared, last one is the pending chunk
+    private var confirmedChunks = 0 // onCharacteristicWrite callbacks received since the queue was cleared
+
     private var bluetoothManager: BluetoothManager? = null
     private var bluetoothAdapter: BluetoothAdapter? = null
     private var connectDeviceName: String? = null
@@ -125,7 +131,8 @@ class BLEComm @Inject internal constructor(
         encryptedDataRead = false
         encryptedCommandSent = false
         isConnecting = true
-        bufferLength = 0
+        packetFramer.reset()
+        clearSendQueue()
         aapsLogger.debug(LTag.PUMPBTCOMM, "Trying to create a new connection from: $from")
         connectDeviceName = device.name
         bluetoothGatt = device.connectGatt(context, false, mGattCallback)
@@ -257,16 +264,8 @@ class BLEComm @Inject internal constructor(
         override fun onCharacteristicWrite(gatt: BluetoothGatt, characteristic: BluetoothGattCharacteristic, status: Int) {
             // for v3 after initial handshake it's encrypted - useless
             // aapsLogger.debug(LTag.PUMPBTCOMM, "onCharacteristicWrite: " + DanaRS_Packet.toHexString(characteristic.value))
-            Thread {
-                synchronized(mSendQueue) {
-                    // after message sent, check if there is the rest of the message waiting and send it
-                    if (mSendQueue.size > 0) {
-                        val bytes = mSendQueue[0]
-                        mSendQueue.removeAt(0)
-                        writeCharacteristicNoResponse(uartWriteBTGattChar, bytes)
-                    }
-                }
-            }.start()
+            // after chunk is sent, check if there is the rest of the message waiting and send it
+            gattIO.execute { onWriteConfirmed() }
         }
 
         override fun onDescriptorWrite(gatt: BluetoothGatt?, descriptor: BluetoothGattDescriptor?, status: Int) {
@@ -296,24 +295,84 @@ class BLEComm @Inject internal constructor(
         }
     }
 
-    @Synchronized
-    private fun writeCharacteristicNoResponse(characteristic: BluetoothGattCharacteristic, data: ByteArray) {
-        Thread(Runnable {
-            SystemClock.sleep(WRITE_DELAY_MILLIS)
-            if (bluetoothAdapter == null || bluetoothGatt == null) {
-                aapsLogger.error("BluetoothAdapter not initialized_ERROR")
-                isConnecting = false
-                isConnected = false
-                encryptedDataRead = false
-                encryptedCommandSent = false
-                return@Runnable
+    // Split to parts per 20 bytes max and queue. Next part is written after write of previous one is confirmed by onCharacteristicWrite
+    private fun writeCharacteristicNoResponse(data: ByteArray) {
+        gattIO.execute {
+            var offset = 0
+            while (offset < data.size) {
+                val chunkEnd = minOf(offset + MAX_WRITE_SIZE, data.size)
+                sendQueue.add(data.copyOfRange(offset, chunkEnd))
+                offset = chunkEnd
             }
-            characteristic.value = data
-            characteristic.writeType = BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE
-            //aapsLogger.debug("writeCharacteristic:" + DanaRS_Packet.toHexString(data))
-            bluetoothGatt?.writeCharacteristic(characteristic)
-        }).start()
-        SystemClock.sleep(50)
+            if (!writeInProgress) writeNext()
+        }
+    }
+
+    // called on gattIO thread only
+    private fun writeNext() {
+        writeTimeout?.cancel(false)
+        writeTimeout = null
+        val data = sendQueue.poll()
+        if (data == null) {
+            writeInProgress = false
+            return
+        }
+        val gatt = bluetoothGatt
+        if (bluetoothAdapter == null || gatt == null) {
+            aapsLogger.error("BluetoothAdapter not initialized_ERROR")
+            isConnecting = false
+            isConnected = false
+            encryptedDataRead = false
+            encryptedCommandSent = false
+            sendQueue.clear()
+            writeInProgress = false
+            return
+        }
+        val characteristic = uartWriteBTGattChar
+        characteristic.value = data
+        characteristic.writeType = BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE
+        //aapsLogger.debug("writeCharacteristic:" + DanaRS_Packet.toHexString(data))
+        writeInProgress = true
+        if (gatt.writeCharacteristic(characteristic)) {
+            val chunk = ++writtenChunks
+            writeTimeout = gattIO.schedule({ onWriteTimeout(chunk) }, WRITE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+        } else {
+            // stack is busy with previous write, it was not sent. Try the same chunk again later
+            sendQueue.addFirst(data)
+            writeTimeout = gattIO.schedule({ writeNext() }, WRITE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+        }
+    }
+
+    // called on gattIO thread only
+    private fun onWriteConfirmed() {
+        confirmedChunks++
+        when {
+            // late callback of a write from before the queue was cleared
+            confirmedChunks > writtenChunks -> confirmedChunks = writtenChunks
+            // late callback of a chunk which timed out. Chunk written after it is still pending
+            confirmedChunks < writtenChunks -> aapsLogger.debug(LTag.PUMPBTCOMM, "Ignoring late write callback")
+            writeInProgress                 -> writeNext()
+        }
+    }
+
+    // called on gattIO thread only
+    // Callback of the pending chunk is late or lost. Do not stall the queue, consider the chunk sent and continue
+    // with the next one. Chunk is not written again because the stack accepted it already
+    private fun onWriteTimeout(chunk: Int) {
+        if (chunk != writtenChunks || confirmedChunks >= chunk) return // stale, chunk was confirmed or queue was cleared
+        aapsLogger.debug(LTag.PUMPBTCOMM, "Write callback not received in $WRITE_TIMEOUT_MILLIS ms, writing next chunk")
+        writeNext()
+    }
+
+    private fun clearSendQueue() {
+        gattIO.execute {
+            writeTimeout?.cancel(false)
+            writeTimeout = null
+            sendQueue.clear()
+            writeInProgress = false
+            writtenChunks = 0
+            confirmedChunks = 0
+        }
     }
 
     private val uartReadBTGattChar: BluetoothGattCharacteristic
@@ -362,6 +421,7 @@ class BLEComm @Inject internal constructor(
             gatt.discoverServices()
         } else if (newState == BluetoothProfile.STATE_DISCONNECTED) {
             close()
+            clearSendQueue()
             isConnected = false
             isConnecting = false
             encryption = EncryptionType.ENCRYPTION_DEFAULT
@@ -372,26 +432,10 @@ class BLEComm @Inject internal constructor(
         }
     }
 
-    private val readBuffer = ByteArray(1024)
-    @Volatile private var bufferLength = 0
-
-    private fun addToReadBuffer(buffer: ByteArray) {
-        //log.debug("addToReadBuffer " + DanaRS_Packet.toHexString(buffer));
-        if (buffer.isEmpty()) return
-
-        synchronized(readBuffer) {
-            // Append incoming data to input buffer
-            System.arraycopy(buffer, 0, readBuffer, bufferLength, buffer.size)
-            bufferLength += buffer.size
-        }
-    }
+    private val packetFramer = PacketFramer(aapsLogger)
 
     private fun readDataParsing(receivedData: ByteArray) {
         //aapsLogger.debug(LTag.PUMPBTCOMM, "<<<<< readDataParsing " + DanaRS_Packet.toHexString(receivedData))
-        var packetIsValid = false
-        var isProcessing: Boolean
-        isProcessing = true
-        var inputBuffer: ByteArray?
 
         // decrypt 2nd level after successful connection
         val incomingBuffer =
@@ -401,108 +445,52 @@ class BLEComm @Inject internal constructor(
                     sp.putLong(R.string.key_rs_last_clear_key_request, 0L)
                 }
             else receivedData
-        addToReadBuffer(incomingBuffer)
+        if (!packetFramer.add(incomingBuffer)) aapsLogger.error(LTag.PUMPBTCOMM, "Input buffer overflow. Resetting buffer.")
         //aapsLogger.debug(LTag.PUMPBTCOMM, "incomingBuffer " + DanaRS_Packet.toHexString(incomingBuffer))
 
-        while (isProcessing) {
-            var length = 0
-            synchronized(readBuffer) {
-                // Find packet start [A5 A5] or [AA AA]
-                if (bufferLength >= 6) {
-                    for (idxStartByte in 0 until bufferLength - 2) {
-                        if (readBuffer[idxStartByte] == PACKET_START_BYTE && readBuffer[idxStartByte + 1] == PACKET_START_BYTE ||
-                            readBuffer[idxStartByte] == BLE5_PACKET_START_BYTE && readBuffer[idxStartByte + 1] == BLE5_PACKET_START_BYTE) {
-                            if (idxStartByte > 0) {
-                                // if buffer doesn't start with signature remove the leading trash
-                                aapsLogger.debug(LTag.PUMPBTCOMM, "Shifting the input buffer by $idxStartByte bytes")
-                                System.arraycopy(readBuffer, idxStartByte, readBuffer, 0, bufferLength - idxStartByte)
-                                bufferLength -= idxStartByte
-                                if (bufferLength < 0) bufferLength = 0
-                            }
-                            // A5 A5 LEN TYPE CODE PARAMS CHECKSUM1 CHECKSUM2 5A 5A    or
-                            // AA AA LEN TYPE CODE PARAMS CHECKSUM1 CHECKSUM2 EE EE
-                            //           ^---- LEN -----^
-                            // total packet length 2 + 1 + readBuffer[2] + 2 + 2
-                            length = readBuffer[2].toInt()
-                            // test if there is enough data loaded
-                            if (length + 7 > bufferLength)
-                                return
-                            // Verify packed end [5A 5A]
-                            if (readBuffer[length + 5] == PACKET_END_BYTE && readBuffer[length + 6] == PACKET_END_BYTE ||
-                                readBuffer[length + 5] == BLE5_PACKET_END_BYTE && readBuffer[length + 6] == BLE5_PACKET_END_BYTE) {
-                                packetIsValid = true
-                            } else {
-                                aapsLogger.error(LTag.PUMPBTCOMM, "Error in input data. Resetting buffer.")
-                                bufferLength = 0
-                            }
-                            break
-                        }
-                        break
-                    }
-                }
-            }
-            if (packetIsValid) {
-                inputBuffer = ByteArray(length + 7)
-                // copy packet to input buffer
-                System.arraycopy(readBuffer, 0, inputBuffer, 0, length + 7)
-                // Cut off the message from readBuffer
-                try {
-                    System.arraycopy(readBuffer, length + 7, readBuffer, 0, bufferLength - (length + 7))
-                } catch (e: Exception) {
-                    aapsLogger.error("length: " + length + "bufferLength: " + bufferLength)
-                    throw e
-                }
-                bufferLength -= length + 7
-                // now we have encrypted packet in inputBuffer
-
-                // decrypt the packet
-                val decrypted = bleEncryption.getDecryptedPacket(inputBuffer)
-                decrypted?.let { decryptedBuffer ->
-                    if (decryptedBuffer[0] == BleEncryption.DANAR_PACKET__TYPE_ENCRYPTION_RESPONSE.toByte()) {
-                        when (decryptedBuffer[1]) {
-                            // 1st packet exchange
-                            BleEncryption.DANAR_PACKET__OPCODE_ENCRYPTION__PUMP_CHECK.toByte()         ->
-                                processConnectResponse(decryptedBuffer)
-
-                            BleEncryption.DANAR_PACKET__OPCODE_ENCRYPTION__TIME_INFORMATION.toByte()   ->
-                                processEncryptionResponse(decryptedBuffer)
-
-                            BleEncryption.DANAR_PACKET__OPCODE_ENCRYPTION__CHECK_PASSKEY.toByte()      ->
-                                processPasskeyCheck(decryptedBuffer)
-
-                            BleEncryption.DANAR_PACKET__OPCODE_ENCRYPTION__PASSKEY_REQUEST.toByte()    ->
-                                processPairingRequest(decryptedBuffer)
-
-                            BleEncryption.DANAR_PACKET__OPCODE_ENCRYPTION__PASSKEY_RETURN.toByte()     ->
-                                processPairingRequest2(decryptedBuffer)
-
-                            BleEncryption.DANAR_PACKET__OPCODE_ENCRYPTION__GET_PUMP_CHECK.toByte()     -> {
-                                // not easy mode, request time info
-                                if (decryptedBuffer[2] == 0x05.toByte()) sendTimeInfo()
-                                // easy mode
-                                else sendEasyMenuCheck()
-                            }
-
-                            BleEncryption.DANAR_PACKET__OPCODE_ENCRYPTION__GET_EASYMENU_CHECK.toByte() ->
-                                processEasyMenuCheck(decryptedBuffer)
+        while (true) {
+            // now we have encrypted packet in inputBuffer
+            val inputBuffer = packetFramer.nextPacket() ?: break
+
+            // decrypt the packet
+            val decrypted = bleEncryption.getDecryptedPacket(inputBuffer)
+            decrypted?.let { decryptedBuffer ->
+                if (decryptedBuffer[0] == BleEncryption.DANAR_PACKET__TYPE_ENCRYPTION_RESPONSE.toByte()) {
+                    when (decryptedBuffer[1]) {
+                        // 1st packet exchange
+                        BleEncryption.DANAR_PACKET__OPCODE_ENCRYPTION__PUMP_CHECK.toByte()         ->
+                            processConnectResponse(decryptedBuffer)
+
+                        BleEncryption.DANAR_PACKET__OPCODE_ENCRYPTION__TIME_INFORMATION.toByte()   ->
+                            processEncryptionResponse(decryptedBuffer)
+
+                        BleEncryption.DANAR_PACKET__OPCODE_ENCRYPTION__CHECK_PASSKEY.toByte()      ->
+                            processPasskeyCheck(decryptedBuffer)
+
+                        BleEncryption.DANAR_PACKET__OPCODE_ENCRYPTION__PASSKEY_REQUEST.toByte()    ->
+                            processPairingRequest(decryptedBuffer)
+
+                        BleEncryption.DANAR_PACKET__OPCODE_ENCRYPTION__PASSKEY_RETURN.toByte()     ->
+                            processPairingRequest2(decryptedBuffer)
+
+                        BleEncryption.DANAR_PACKET__OPCODE_ENCRYPTION__GET_PUMP_CHECK.toByte()     -> {
+                            // not easy mode, request time info
+                            if (decryptedBuffer[2] == 0x05.toByte()) sendTimeInfo()
+                            // easy mode
+                            else sendEasyMenuCheck()
                         }
 
-                    } else {
-                        // Retrieve message code from received buffer and last message sent
-                        processMessage(decryptedBuffer)
+                        BleEncryption.DANAR_PACKET__OPCODE_ENCRYPTION__GET_EASYMENU_CHECK.toByte() ->
+                            processEasyMenuCheck(decryptedBuffer)
                     }
+
+                } else {
+                    // Retrieve message code from received buffer and last message sent
+                    processMessage(decryptedBuffer)
                 }
-                if (decrypted == null)
-                    throw IllegalStateException("Null decryptedInputBuffer")
-                packetIsValid = false
-                if (bufferLength < 6) {
-                    // stop the loop
-                    isProcessing = false
-                }
-            } else {
-                // stop the loop
-                isProcessing = false
             }
+            if (decrypted == null)
+                throw IllegalStateException("Null decryptedInputBuffer")
         }
     }
 
@@ -516,7 +504,7 @@ class BLEComm @Inject internal constructor(
         }
         val bytes = bleEncryption.getEncryptedPacket(BleEncryption.DANAR_PACKET__OPCODE_ENCRYPTION__PUMP_CHECK, null, deviceName)
         aapsLogger.debug(LTag.PUMPBTCOMM, ">>>>> " + "ENCRYPTION__PUMP_CHECK (0x00)" + " " + DanaRSPacket.toHexString(bytes))
-        writeCharacteristicNoResponse(uartWriteBTGattChar, bytes)
+        writeCharacteristicNoResponse(bytes)
     }
 
     // 1st packet response
@@ -580,7 +568,7 @@ class BLEComm @Inject internal constructor(
             // response PUMP : error status
         } else if (decryptedBuffer.size == 6 && decryptedBuffer[2] == 'P'.code.toByte() && decryptedBuffer[3] == 'U'.code.toByte() && decryptedBuffer[4] == 'M'.code.toByte() && decryptedBuffer[5] == 'P'.code.toByte()) {
             aapsLogger.debug(LTag.PUMPBTCOMM, "<<<<< " + "ENCRYPTION__PUMP_CHECK (PUMP)" + " " + DanaRSPacket.toHexString(decryptedBuffer))
-            mSendQueue.clear()
+            clearSendQueue()
             rxBus.send(EventPumpStatusChanged(EventPumpStatusChanged.Status.DISCONNECTED, rh.gs(R.string.pumperror)))
             pumpSync.insertAnnouncement(rh.gs(R.string.pumperror), null, danaPump.pumpType(), danaPump.serialNumber)
             val n = Notification(Notification.PUMP_ERROR, rh.gs(R.string.pumperror), Notification.URGENT)
@@ -588,12 +576,12 @@ class BLEComm @Inject internal constructor(
             // response BUSY: error status
         } else if (decryptedBuffer.size == 6 && decryptedBuffer[2] == 'B'.code.toByte() && decryptedBuffer[3] == 'U'.code.toByte() && decryptedBuffer[4] == 'S'.code.toByte() && decryptedBuffer[5] == 'Y'.code.toByte()) {
             aapsLogger.debug(LTag.PUMPBTCOMM, "<<<<< " + "ENCRYPTION__PUMP_CHECK (BUSY)" + " " + DanaRSPacket.toHexString(decryptedBuffer))
-            mSendQueue.clear()
+            clearSendQueue()
             rxBus.send(EventPumpStatusChanged(EventPumpStatusChanged.Status.DISCONNECTED, rh.gs(R.string.pumpbusy)))
         } else {
             // ERROR in response, wrong serial number
             aapsLogger.debug(LTag.PUMPBTCOMM, "<<<<< " + "ENCRYPTION__PUMP_CHECK (ERROR)" + " " + DanaRSPacket.toHexString(decryptedBuffer))
-            mSendQueue.clear()
+            clearSendQueue()
             rxBus.send(EventPumpStatusChanged(EventPumpStatusChanged.Status.DISCONNECTED, rh.gs(R.string.connectionerror)))
             danaRSPlugin.clearPairing()
             val n = Notification(Notification.WRONG_SERIAL_NUMBER, rh.gs(R.string.password_cleared), Notification.URGENT)
@@ -606,7 +594,7 @@ class BLEComm @Inject internal constructor(
         val encodedPairingKey = DanaRSPacket.hexToBytes(pairingKey)
         val bytes = bleEncryption.getEncryptedPacket(BleEncryption.DANAR_PACKET__OPCODE_ENCRYPTION__CHECK_PASSKEY, encodedPairingKey, null)
         aapsLogger.debug(LTag.PUMPBTCOMM, ">>>>> " + "ENCRYPTION__CHECK_PASSKEY" + " " + DanaRSPacket.toHexString(bytes))
-        writeCharacteristicNoResponse(uartWriteBTGattChar, bytes)
+        writeCharacteristicNoResponse(bytes)
     }
 
     // 2nd packet v1 response
@@ -643,14 +631,14 @@ class BLEComm @Inject internal constructor(
         val params = ByteArray(4) { 0.toByte() }
         val bytes: ByteArray = bleEncryption.getEncryptedPacket(BleEncryption.DANAR_PACKET__OPCODE_ENCRYPTION__TIME_INFORMATION, params, null)
         aapsLogger.debug(LTag.PUMPBTCOMM, ">>>>> " + "ENCRYPTION__TIME_INFORMATION BLE5" + " " + DanaRSPacket.toHexString(bytes))
-        writeCharacteristicNoResponse(uartWriteBTGattChar, bytes)
+        writeCharacteristicNoResponse(bytes)
     }
 
     private fun sendV3PairingInformation(requestNewPairing: Int) {
         val params = byteArrayOf(requestNewPairing.toByte())
         val bytes: ByteArray = bleEncryption.getEncryptedPacket(BleEncryption.DANAR_PACKET__OPCODE_ENCRYPTION__TIME_INFORMATION, params, null)
         aapsLogger.debug(LTag.PUMPBTCOMM, ">>>>> " + "ENCRYPTION__TIME_INFORMATION" + " " + DanaRSPacket.toHexString(bytes))
-        writeCharacteristicNoResponse(uartWriteBTGattChar, bytes)
+        writeCharacteristicNoResponse(bytes)
     }
 
     // 2nd packet response
@@ -704,7 +692,7 @@ class BLEComm @Inject internal constructor(
     private fun sendTimeInfo() {
         val bytes = bleEncryption.getEncryptedPacket(BleEncryption.DANAR_PACKET__OPCODE_ENCRYPTION__TIME_INFORMATION, null, null)
         aapsLogger.debug(LTag.PUMPBTCOMM, ">>>>> " + "ENCRYPTION__TIME_INFORMATION" + " " + DanaRSPacket.toHexString(bytes))
-        writeCharacteristicNoResponse(uartWriteBTGattChar, bytes)
+        writeCharacteristicNoResponse(bytes)
     }
 
     //2nd or 3rd packet v1 pairing doesn't exist
@@ -714,7 +702,7 @@ class BLEComm @Inject internal constructor(
         context.startActivity(Intent(context, PairingHelperActivity::class.java).also { it.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK) })
         val bytes = bleEncryption.getEncryptedPacket(BleEncryption.DANAR_PACKET__OPCODE_ENCRYPTION__PASSKEY_REQUEST, null, null)
         aapsLogger.debug(LTag.PUMPBTCOMM, ">>>>> " + "ENCRYPTION__PASSKEY_REQUEST" + " " + DanaRSPacket.toHexString(bytes))
-        writeCharacteristicNoResponse(uartWriteBTGattChar, bytes)
+        writeCharacteristicNoResponse(bytes)
     }
 
     // 3rd packet v3 : only after entering PIN codes
@@ -753,7 +741,7 @@ class BLEComm @Inject internal constructor(
     // 3rd packet Easy menu pump
     private fun sendEasyMenuCheck() {
         val bytes: ByteArray = bleEncryption.getEncryptedPacket(BleEncryption.DANAR_PACKET__OPCODE_ENCRYPTION__GET_EASYMENU_CHECK, null, null)
-        writeCharacteristicNoResponse(uartWriteBTGattChar, bytes)
+        writeCharacteristicNoResponse(bytes)
     }
 
     // 3rd packet Easy menu response
@@ -781,54 +769,12 @@ class BLEComm @Inject internal constructor(
         // aapsLogger.debug(LTag.PUMPBTCOMM, ">>>>> " + DanaRS_Packet.toHexString(bytes))
         if (encryption != EncryptionType.ENCRYPTION_DEFAULT)
             bytes = bleEncryption.encryptSecondLevelPacket(bytes)
-        // If there is another message not completely sent, add to queue only
-        if (mSendQueue.size > 0) {
-            // Split to parts per 20 bytes max
-            while (true) {
-                if (bytes.size > 20) {
-                    val addBytes = ByteArray(20)
-                    System.arraycopy(bytes, 0, addBytes, 0, addBytes.size)
-                    val reBytes = ByteArray(bytes.size - addBytes.size)
-                    System.arraycopy(bytes, addBytes.size, reBytes, 0, reBytes.size)
-                    bytes = reBytes
-                    synchronized(mSendQueue) { mSendQueue.add(addBytes) }
-                } else {
-                    synchronized(mSendQueue) { mSendQueue.add(bytes) }
-                    break
-                }
-            }
-        } else {
-            if (bytes.size > 20) {
-                // Cut first 20 bytes
-                val sendBytes = ByteArray(20)
-                System.arraycopy(bytes, 0, sendBytes, 0, sendBytes.size)
-                var reBytes = ByteArray(bytes.size - sendBytes.size)
-                System.arraycopy(bytes, sendBytes.size, reBytes, 0, reBytes.size)
-                bytes = reBytes
-                // and send
-                writeCharacteristicNoResponse(uartWriteBTGattChar, sendBytes)
-                // The rest split to parts per 20 bytes max
-                while (true) {
-                    if (bytes.size > 20) {
-                        val addBytes = ByteArray(20)
-                        System.arraycopy(bytes, 0, addBytes, 0, addBytes.size)
-                        reBytes = ByteArray(bytes.size - addBytes.size)
-                        System.arraycopy(bytes, addBytes.size, reBytes, 0, reBytes.size)
-                        bytes = reBytes
-                        synchronized(mSendQueue) { mSendQueue.add(addBytes) }
-                    } else {
-                        synchronized(mSendQueue) { mSendQueue.add(bytes) }
-                        break
-                    }
-                }
-            } else {
-                writeCharacteristicNoResponse(uartWriteBTGattChar, bytes)
-            }
-        }
+        writeCharacteristicNoResponse(bytes)
         // The rest from queue is send from onCharacteristicWrite (after sending 1st part)
         synchronized(message) {
             try {
-                message.waitMillis(5000)
+                // write is asynchronous, reply may be already processed
+                if (!message.isReceived) message.waitMillis(5000)
             } catch (e: InterruptedException) {
                 aapsLogger.error("sendMessage InterruptedException", e)
             }
@@ -0,0 +1,92 @@
+package info.nightscout.androidaps.danars.services
+
+import info.nightscout.androidaps.logging.AAPSLogger
+import info.nightscout.androidaps.logging.LTag
+
+/**
+ * Incremental framing of data received from pump
+ *
+ * A5 A5 LEN TYPE CODE PARAMS CHECKSUM1 CHECKSUM2 5A 5A    or
+ * AA AA LEN TYPE CODE PARAMS CHECKSUM1 CHECKSUM2 EE EE
+ *           ^---- LEN -----^
+ * total packet length 2 + 1 + LEN + 2 + 2
+ *
+ * Consumed packets only move start of data. Buffer is compacted only when new data doesn't fit at the end
+ * Not thread safe, it's used from GATT callback thread only
+ */
+class PacketFramer(private val aapsLogger: AAPSLogger, capacity: Int = 1024) {
+
+    companion object {
+
+        private const val PACKET_START_BYTE = 0xA5.toByte()
+        private const val PACKET_END_BYTE = 0x5A.toByte()
+        private const val BLE5_PACKET_START_BYTE = 0xAA.toByte()
+        private const val BLE5_PACKET_END_BYTE = 0xEE.toByte()
+
+        private const val MIN_PACKET_LENGTH = 6
+        private const val FRAME_LENGTH = 7
+    }
+
+    private val buffer = ByteArray(capacity)
+    private var start = 0
+    private var end = 0
+
+    val length: Int
+        get() = end - start
+
+    fun reset() {
+        start = 0
+        end = 0
+    }
+
+    /**
+     * Append received data
+     *
+     * @return false if data doesn't fit to buffer. Buffer is reset in this case
+     */
+    fun add(data: ByteArray): Boolean {
+        if (end + data.size > buffer.size) {
+            System.arraycopy(buffer, start, buffer, 0, length)
+            end -= start
+            start = 0
+            if (end + data.size > buffer.size) {
+                reset()
+                return false
+            }
+        }
+        System.arraycopy(data, 0, buffer, end, data.size)
+        end += data.size
+        return true
+    }
+
+    /**
+     * @return next complete packet or null if there is not enough data yet
+     */
+    fun nextPacket(): ByteArray? {
+        // Find packet start [A5 A5] or [AA AA]
+        var idxStartByte = start
+        while (idxStartByte < end - 1 && !isMarker(idxStartByte, PACKET_START_BYTE, BLE5_PACKET_START_BYTE)) idxStartByte++
+        if (idxStartByte > start) {
+            // if buffer doesn't start with signature remove the leading trash
+            aapsLogger.debug(LTag.PUMPBTCOMM, "Shifting the input buffer by ${idxStartByte - start} bytes")
+            start = idxStartByte
+        }
+        if (length < MIN_PACKET_LENGTH) return null
+        val packetLength = (buffer[start + 2].toInt() and 0xFF) + FRAME_LENGTH
+        // test if there is enough data loaded
+        if (packetLength > length) return null
+        // Verify packet end [5A 5A] or [EE EE]
+        if (!isMarker(start + packetLength - 2, PACKET_END_BYTE, BLE5_PACKET_END_BYTE)) {
+            aapsLogger.error(LTag.PUMPBTCOMM, "Error in input data. Resetting buffer.")
+            reset()
+            return null
+        }
+        val packet = buffer.copyOfRange(start, start + packetLength)
+        start += packetLength
+        if (start == end) reset()
+        return packet
+    }
+
+    private fun isMarker(index: Int, marker: Byte, ble5Marker: Byte): Boolean =
+        buffer[index] == marker && buffer[index + 1] == marker || buffer[index] == ble5Marker && buffer[index + 1] == ble5Marker
+}
@@ -0,0 +1,66 @@
+package info.nightscout.androidaps.danars.services
+
+import info.nightscout.androidaps.danars.comm.DanaRSPacket
+import info.nightscout.androidaps.logging.AAPSLoggerTest
+import org.junit.Assert
+import org.junit.Test
+
+class PacketFramerTest {
+
+    private val aapsLogger = AAPSLoggerTest()
+
+    // A5 A5 LEN TYPE CODE PARAMS CHECKSUM1 CHECKSUM2 5A 5A
+    private val packet = DanaRSPacket.hexToBytes("A5A504B2020A0B12345A5A")
+    private val ble5Packet = DanaRSPacket.hexToBytes("AAAA03B201011234EEEE")
+
+    @Test fun packetSplitToChunks() {
+        val sut = PacketFramer(aapsLogger)
+        Assert.assertTrue(sut.add(packet.copyOfRange(0, 5)))
+        Assert.assertNull(sut.nextPacket())
+        Assert.assertTrue(sut.add(packet.copyOfRange(5, packet.size)))
+        Assert.assertArrayEquals(packet, sut.nextPacket())
+        Assert.assertNull(sut.nextPacket())
+        Assert.assertEquals(0, sut.length)
+    }
+
+    @Test fun morePacketsInOneChunk() {
+        val sut = PacketFramer(aapsLogger)
+        sut.add(packet + ble5Packet + packet.copyOfRange(0, 3))
+        Assert.assertArrayEquals(packet, sut.nextPacket())
+        Assert.assertArrayEquals(ble5Packet, sut.nextPacket())
+        Assert.assertNull(sut.nextPacket())
+        Assert.assertEquals(3, sut.length)
+        sut.add(packet.copyOfRange(3, packet.size))
+        Assert.assertArrayEquals(packet, sut.nextPacket())
+    }
+
+    @Test fun leadingTrashIsRemoved() {
+        val sut = PacketFramer(aapsLogger)
+        sut.add(byteArrayOf(0x01, 0x02, 0x5A) + packet)
+        Assert.assertArrayEquals(packet, sut.nextPacket())
+        Assert.assertEquals(0, sut.length)
+    }
+
+    @Test fun wrongEndResetsBuffer() {
+        val sut = PacketFramer(aapsLogger)
+        val broken = packet.copyOf().also { it[it.size - 1] = 0x00 }
+        sut.add(broken + packet)
+        Assert.assertNull(sut.nextPacket())
+        Assert.assertEquals(0, sut.length)
+        sut.add(packet)
+        Assert.assertArrayEquals(packet, sut.nextPacket())
+    }
+
+    @Test fun bufferIsCompactedWhenFull() {
+        val sut = PacketFramer(aapsLogger, 32)
+        sut.add(packet.copyOfRange(0, 3))
+        // part of next packet stays in buffer, start of data keeps moving
+        repeat(100) {
+            Assert.assertTrue(sut.add(packet.copyOfRange(3, packet.size) + packet.copyOfRange(0, 3)))
+            Assert.assertArrayEquals(packet, sut.nextPacket())
+            Assert.assertEquals(3, sut.length)
+        }
+        Assert.assertFalse(sut.add(ByteArray(30)))
+        Assert.assertEquals(0, sut.length)
+    }
+}
@@ -0,0 +1,141 @@
+package info.nightscout.androidaps.database
+
+import android.content.Context
+import android.util.Log
+import androidx.room.Room
+import androidx.sqlite.db.SimpleSQLiteQuery
+import androidx.test.core.app.ApplicationProvider
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import info.nightscout.androidaps.database.entities.Bolus
+import info.nightscout.androidaps.database.entities.Carbs
+import info.nightscout.androidaps.database.entities.GlucoseValue
+import info.nightscout.androidaps.database.entities.TemporaryBasal
+import info.nightscout.androidaps.database.entities.TherapyEvent
+import org.junit.After
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.util.*
+
+/**
+ * Runs hot range queries on synthetic database with 3 years of data.
+ * Checks query plan uses composite index and logs latency of every query (tag RangeQueryBenchmark)
+ */
+@RunWith(AndroidJUnit4::class)
+class RangeQueryBenchmarkTest {
+
+    private lateinit var database: AppDatabase
+
+    private val now = 1640995200000L
+    private val years = 3
+    private val minute = 60 * 1000L
+    private val day = 24 * 60 * minute
+
+    private class RangeQuery(val name: String, val table: String, val sql: String, val args: Array<Any>, val run: () -> Int)
+
+    @Before
+    fun setUp() {
+        val context = ApplicationProvider.getApplicationContext<Context>()
+        database = Room.inMemoryDatabaseBuilder(context, AppDatabase::class.java).build()
+        fill()
+    }
+
+    @After
+    fun tearDown() {
+        database.close()
+    }
+
+    private fun fill() {
+        val random = Random(1)
+        val start = now - years * 365 * day
+        database.runInTransaction {
+            var time = start
+            while (time < now) {
+                val glucoseValue = GlucoseValue(timestamp = time, raw = null, value = 40.0 + random.nextInt(300), trendArrow = GlucoseValue.TrendArrow.FLAT, noise = null, sourceSensor = GlucoseValue.SourceSensor.DEXCOM_G6_NATIVE)
+                database.glucoseValueDao.insertNewEntry(glucoseValue)
+                // some records are edited by NS sync later, leaving historic copies
+                if (random.nextInt(30) == 0) database.glucoseValueDao.updateExistingEntry(glucoseValue.also { it.isValid = random.nextInt(3) != 0 })
+                if (time % (30 * minute) == 0L)
+                    database.temporaryBasalDao.insertNewEntry(TemporaryBasal(timestamp = time, type = TemporaryBasal.Type.NORMAL, isAbsolute = true, rate = random.nextDouble() * 2, duration = 30 * minute))
+                if (time % (4 * 60 * minute) == 0L) {
+                    val bolus = Bolus(timestamp = time, amount = random.nextDouble() * 5, type = Bolus.Type.NORMAL)
+                    database.bolusDao.insertNewEntry(bolus)
+                    if (random.nextInt(10) == 0) database.bolusDao.updateExistingEntry(bolus.also { it.amount += 0.1 })
+                    database.carbsDao.insertNewEntry(Carbs(timestamp = time, duration = 0, amount = random.nextInt(60).toDouble()))
+                }
+                if (time % (12 * 60 * minute) == 0L)
+                    database.therapyEventDao.insertNewEntry(TherapyEvent(timestamp = time, type = TherapyEvent.Type.FINGER_STICK_BG_VALUE, glucoseUnit = TherapyEvent.GlucoseUnit.MGDL, glucose = 100.0))
+                time += 5 * minute
+            }
+        }
+    }
+
+    private fun queries(): List<RangeQuery> {
+        val from = now - 8 * day
+        val start = now - day
+        return listOf(
+            RangeQuery(
+                "compatGetBgReadingsDataFromTime(start, end)", TABLE_GLUCOSE_VALUES,
+                "SELECT * FROM $TABLE_GLUCOSE_VALUES WHERE timestamp BETWEEN ? AND ? AND isValid = 1 AND referenceId IS NULL AND value >= 39 ORDER BY timestamp ASC", arrayOf<Any>(start, now)
+            ) { database.glucoseValueDao.compatGetBgReadingsDataFromTime(start, now).blockingGet().size },
+            RangeQuery(
+                "compatGetBgReadingsDataFromTime(from)", TABLE_GLUCOSE_VALUES,
+                "SELECT * FROM $TABLE_GLUCOSE_VALUES WHERE timestamp >= ? AND isValid = 1 AND referenceId IS NULL AND value >= 39 ORDER BY timestamp ASC", arrayOf<Any>(from)
+            ) { database.glucoseValueDao.compatGetBgReadingsDataFromTime(from).blockingGet().size },
+            RangeQuery(
+                "getBolusesFromTime(start, end)", TABLE_BOLUSES,
+                "SELECT * FROM $TABLE_BOLUSES WHERE isValid = 1 AND timestamp >= ? AND timestamp <= ? AND referenceId IS NULL ORDER BY id DESC", arrayOf<Any>(from, now)
+            ) { database.bolusDao.getBolusesFromTime(from, now).blockingGet().size },
+            RangeQuery(
+                "getCarbsFromTimeToTime", TABLE_CARBS,
+                "SELECT * FROM $TABLE_CARBS WHERE isValid = 1 AND timestamp >= ? AND timestamp <= ? AND referenceId IS NULL ORDER BY id DESC", arrayOf<Any>(from, now)
+            ) { database.carbsDao.getCarbsFromTimeToTime(from, now).blockingGet().size },
+            RangeQuery(
+                "getTemporaryBasalDataFromTime", TABLE_TEMPORARY_BASALS,
+                "SELECT * FROM $TABLE_TEMPORARY_BASALS WHERE timestamp >= ? AND isValid = 1 AND referenceId IS NULL ORDER BY timestamp ASC", arrayOf<Any>(from)
+            ) { database.temporaryBasalDao.getTemporaryBasalDataFromTime(from).blockingGet().size },
+            RangeQuery(
+                "getTherapyEventDataFromTime", TABLE_THERAPY_EVENTS,
+                "SELECT * FROM $TABLE_THERAPY_EVENTS WHERE timestamp >= ? AND isValid = 1 AND referenceId IS NULL ORDER BY timestamp ASC", arrayOf<Any>(from)
+            ) { database.therapyEventDao.getTherapyEventDataFromTime(from).blockingGet().size }
+        )
+    }
+
+    private fun queryPlan(sql: String, args: Array<Any>): String {
+        val plan = StringBuilder()
+        database.query(SimpleSQLiteQuery("EXPLAIN QUERY PLAN $sql", args)).use { cursor ->
+            while (cursor.moveToNext()) plan.append(cursor.getString(cursor.getColumnIndexOrThrow("detail"))).append("; ")
+        }
+        return plan.toString()
+    }
+
+    @Test
+    fun rangeQueriesUseCompositeIndexTest() {
+        for (query in queries()) {
+            val plan = queryPlan(query.sql, query.args)
+            Log.i(TAG, "${query.name}: $plan")
+            Assert.assertTrue("${query.name}: $plan", plan.contains("index_${query.table}_referenceId_isValid_timestamp"))
+        }
+    }
+
+    @Test
+    fun rangeQueriesLatencyTest() {
+        for (query in queries()) {
+            val size = query.run() // warm up
+            val times = LongArray(REPEAT) {
+                val start = System.nanoTime()
+                query.run()
+                System.nanoTime() - start
+            }.sorted()
+            Log.i(TAG, "${query.name}: $size records, median ${times[REPEAT / 2] / 1000} us, max ${times.last() / 1000} us")
+            Assert.assertTrue(query.name, size > 0)
+        }
+    }
+
+    companion object {
+
+        private const val TAG = "RangeQueryBenchmark"
+        private const val REPEAT = 20
+    }
+}
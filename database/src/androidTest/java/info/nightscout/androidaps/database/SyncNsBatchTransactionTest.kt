@@ -0,0 +1,77 @@
+package info.nightscout.androidaps.database
+
+import android.content.Context
+import androidx.room.Room
+import androidx.test.core.app.ApplicationProvider
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import info.nightscout.androidaps.database.entities.Bolus
+import info.nightscout.androidaps.database.entities.Carbs
+import info.nightscout.androidaps.database.entities.TotalDailyDose
+import info.nightscout.androidaps.database.transactions.SyncNsBatchTransaction
+import org.junit.After
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4::class)
+class SyncNsBatchTransactionTest {
+
+    private lateinit var database: AppDatabase
+    private lateinit var repository: AppRepository
+
+    @Before
+    fun setUp() {
+        val context = ApplicationProvider.getApplicationContext<Context>()
+        database = Room.inMemoryDatabaseBuilder(context, AppDatabase::class.java).build()
+        repository = AppRepository(database)
+    }
+
+    @After
+    fun tearDown() {
+        database.close()
+    }
+
+    private fun bolus(timestamp: Long, nsId: String, isValid: Boolean = true) =
+        Bolus(timestamp = timestamp, amount = 1.0, type = Bolus.Type.NORMAL, isValid = isValid).also { it.interfaceIDs.nightscoutId = nsId }
+
+    private fun carbs(timestamp: Long, nsId: String) =
+        Carbs(timestamp = timestamp, duration = 0, amount = 20.0).also { it.interfaceIDs.nightscoutId = nsId }
+
+    @Test
+    fun batchIsStoredInOneTransactionTest() {
+        val result = repository.runTransactionForResult(
+            SyncNsBatchTransaction(listOf(bolus(1000, "b1"), carbs(3000, "c1"), bolus(2000, "b2"), bolus(1000, "b1", isValid = false)))
+        ).blockingGet()
+
+        Assert.assertEquals(3, result.boluses.size)
+        Assert.assertEquals(1, result.boluses[0].inserted.size)
+        // later record of the same batch sees the earlier one
+        Assert.assertEquals(1, result.boluses[2].invalidated.size)
+        Assert.assertEquals(1, result.carbs[0].inserted.size)
+        Assert.assertEquals(1, repository.getBolusesDataFromTime(0, true).blockingGet().size)
+        Assert.assertEquals(1, repository.getCarbsDataFromTime(0, true).blockingGet().size)
+    }
+
+    @Test
+    fun splitCreatesBatchPerRecordTest() {
+        val batch = SyncNsBatchTransaction(listOf(bolus(1000, "b1"), carbs(3000, "c1"), bolus(2000, "b2")))
+        Assert.assertEquals(3, batch.size)
+        Assert.assertEquals(listOf(1, 1, 1), batch.split().map { it.size })
+    }
+
+    @Test
+    fun recordsOfFailedBatchAreStoredOneByOneTest() {
+        // TotalDailyDose is not synced from NS and fails the batch after bolus and carbs were inserted
+        val batch = SyncNsBatchTransaction(listOf(bolus(1000, "b1"), carbs(3000, "c1"), TotalDailyDose(timestamp = 4000)))
+        Assert.assertThrows(IllegalArgumentException::class.java) { repository.runTransactionForResult(batch).blockingGet() }
+        Assert.assertEquals(0, repository.getBolusesDataFromTime(0, true).blockingGet().size)
+
+        val singles = batch.split()
+        Assert.assertEquals(1, repository.runTransactionForResult(singles[0]).blockingGet().boluses[0].inserted.size)
+        Assert.assertEquals(1, repository.runTransactionForResult(singles[1]).blockingGet().carbs[0].inserted.size)
+        Assert.assertThrows(IllegalArgumentException::class.java) { repository.runTransactionForResult(singles[2]).blockingGet() }
+        Assert.assertEquals(1, repository.getBolusesDataFromTime(0, true).blockingGet().size)
+        Assert.assertEquals(1, repository.getCarbsDataFromTime(0, true).blockingGet().size)
+    }
+}
@@ -23,6 +23,12 @@ import kotlin.math.roundToInt
 
     private val changeSubject = PublishSubject.create<List<DBEntry>>()
 
+    /**
+     * Recent glucose values served without database reads
+     * 8 days to cover 7 days of TIR statistics from midnight
+     */
+    private val glucoseValueBuffer = GlucoseValueBuffer(8L * 24 * 60 * 60 * 1000)
+
     fun changeObservable(): Observable<List<DBEntry>> = changeSubject.subscribeOn(Schedulers.io())
 
     /**
@@ -37,6 +43,7 @@ import kotlin.math.roundToInt
                 transaction.run()
             }
         }.subscribeOn(Schedulers.io()).doOnComplete {
+            glucoseValueBuffer.update(changes, System.currentTimeMillis())
             changeSubject.onNext(changes)
         }
     }
@@ -53,22 +60,31 @@ import kotlin.math.roundToInt
                 transaction.run()
             })
         }.subscribeOn(Schedulers.io()).doOnSuccess {
+            glucoseValueBuffer.update(changes, System.currentTimeMillis())
             changeSubject.onNext(changes)
         }
     }
 
-    fun clearDatabases() = database.clearAllTables()
+    fun clearDatabases() {
+        database.clearAllTables()
+        glucoseValueBuffer.reset()
+    }
 
     //BG READINGS -- only valid records
     fun compatGetBgReadingsDataFromTime(timestamp: Long, ascending: Boolean): Single<List<GlucoseValue>> =
-        database.glucoseValueDao.compatGetBgReadingsDataFromTime(timestamp)
-            .map { if (!ascending) it.reversed() else it }
-            .subscribeOn(Schedulers.io())
+        compatGetBgReadingsDataFromTime(timestamp, Long.MAX_VALUE, ascending)
 
     fun compatGetBgReadingsDataFromTime(start: Long, end: Long, ascending: Boolean): Single<List<GlucoseValue>> =
-        database.glucoseValueDao.compatGetBgReadingsDataFromTime(start, end)
-            .map { if (!ascending) it.reversed() else it }
-            .subscribeOn(Schedulers.io())
+        Single.fromCallable<List<GlucoseValue>> {
+            val now = System.currentTimeMillis()
+            if (glucoseValueBuffer.covers(start, now)) {
+                glucoseValueBuffer.loadIfNeeded(now) { from -> database.glucoseValueDao.compatGetBgReadingsDataFromTime(from).blockingGet() }
+                glucoseValueBuffer.range(start, end, ascending)
+            } else {
+                val list = database.glucoseValueDao.compatGetBgReadingsDataFromTime(start, end).blockingGet()
+                if (!ascending) list.reversed() else list
+            }
+        }.subscribeOn(Schedulers.io())
 
     //BG READINGS -- including invalid/history records
     fun findBgReadingByNSIdSingle(nsId: String): Single<ValueWrapper<GlucoseValue>> =
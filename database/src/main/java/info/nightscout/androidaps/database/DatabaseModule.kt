@@ -27,6 +27,7 @@ open class DatabaseModule {
  //           .addMigrations(migration7to8)
  //           .addMigrations(migration11to12)
             .addMigrations(migration20to21)
+            .addMigrations(migration21to22)
             .addCallback(object : Callback() {
                 override fun onOpen(db: SupportSQLiteDatabase) {
                     super.onOpen(db)
@@ -69,4 +70,17 @@ open class DatabaseModule {
         }
     }
 
+    private val migration21to22 = object : Migration(21, 22) {
+        override fun migrate(database: SupportSQLiteDatabase) {
+            // Composite indexes for range queries of valid current records (isValid = 1 AND referenceId IS NULL AND timestamp ...)
+            for (table in listOf(
+                TABLE_BOLUSES, TABLE_BOLUS_CALCULATOR_RESULTS, TABLE_CARBS, TABLE_EFFECTIVE_PROFILE_SWITCHES, TABLE_EXTENDED_BOLUSES, TABLE_GLUCOSE_VALUES,
+                TABLE_OFFLINE_EVENTS, TABLE_PROFILE_SWITCHES, TABLE_TEMPORARY_BASALS, TABLE_TEMPORARY_TARGETS, TABLE_THERAPY_EVENTS
+            ))
+                database.execSQL("CREATE INDEX IF NOT EXISTS `index_${table}_referenceId_isValid_timestamp` ON `$table` (`referenceId`, `isValid`, `timestamp`)")
+            // Custom indexes must be dropped on migration to pass room schema checking after upgrade
+            dropCustomIndexes(database)
+        }
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,222 @@
+package info.nightscout.androidaps.database
+
+import info.nightscout.androidaps.database.entities.GlucoseValue
+import info.nightscout.androidaps.database.interfaces.DBEntry
+
+/**
+ * Process-wide in-memory copy of valid glucose values (valid, not historic, value >= 39)
+ * of last [retention] milliseconds sorted by timestamp.
+ *
+ * Timestamps, values, trend arrows and source sensors are kept in parallel primitive arrays,
+ * stored entities are touched only when a consumer needs the whole GlucoseValue.
+ *
+ * Loaded from database once and kept up to date from transaction changes,
+ * so a new CGM reading reaches every consumer without a database read.
+ *
+ * Arrays are never modified below end index. New readings are appended behind it,
+ * any other change (insertion, removal, compaction) creates new arrays.
+ * Thus returned [Range] is a zero-copy view which never changes.
+ * The only exception is a stored entity replaced by its newer version with the same
+ * timestamp, value, trend arrow and source sensor (ie. NS id was added).
+ *
+ * Returned records are shared and must not be modified
+ */
+class GlucoseValueBuffer(private val retention: Long) {
+
+    private var ids = LongArray(0)
+    private var timestamps = LongArray(0)
+    private var values = DoubleArray(0)
+    private var trendArrows = ByteArray(0)
+    private var sourceSensors = ByteArray(0)
+    private var records = arrayOfNulls<GlucoseValue>(0)
+    private var start = 0
+    private var end = 0
+
+    /**
+     * Oldest timestamp covered by the buffer. Queries starting before this time
+     * must go to the database
+     */
+    @Volatile var loadedFrom = Long.MAX_VALUE
+        private set
+
+    val size: Int
+        @Synchronized get() = end - start
+
+    /**
+     * @return true if buffer can serve data from time [from]
+     */
+    fun covers(from: Long, now: Long): Boolean = from >= now - retention
+
+    @Synchronized
+    fun reset() {
+        fill(emptyList())
+        loadedFrom = Long.MAX_VALUE
+    }
+
+    /**
+     * Load buffer if not loaded yet
+     *
+     * @param loader returns valid glucose values with timestamp >= from
+     */
+    @Synchronized
+    fun loadIfNeeded(now: Long, loader: (from: Long) -> List<GlucoseValue>) {
+        if (loadedFrom != Long.MAX_VALUE) return
+        val from = now - retention
+        fill(loader(from).filter { isCurrent(it, from) }.sortedBy { it.timestamp })
+        loadedFrom = from
+    }
+
+    /**
+     * Apply changes emitted by repository
+     */
+    @Synchronized
+    fun update(changes: List<DBEntry>, now: Long) {
+        if (loadedFrom == Long.MAX_VALUE) return
+        trim(now)
+        for ((index, entry) in changes.withIndex()) {
+            if (entry !is GlucoseValue) continue
+            if (!applyInPlace(entry)) {
+                // rebuild once for all remaining changes
+                rebuild(changes.subList(index, changes.size).filterIsInstance<GlucoseValue>())
+                return
+            }
+        }
+    }
+
+    /**
+     * @return view of glucose values with from <= timestamp <= to
+     */
+    @Synchronized
+    fun range(from: Long, to: Long, ascending: Boolean): Range {
+        val first = lowerBound(from)
+        val last = upperBound(to)
+        return Range(timestamps, values, trendArrows, sourceSensors, records, first, (last - first).coerceAtLeast(0), ascending)
+    }
+
+    /**
+     * Immutable view of a part of the buffer
+     */
+    class Range internal constructor(
+        private val timestamps: LongArray,
+        private val values: DoubleArray,
+        private val trendArrows: ByteArray,
+        private val sourceSensors: ByteArray,
+        private val records: Array<GlucoseValue?>,
+        private val offset: Int,
+        override val size: Int,
+        private val ascending: Boolean
+    ) : AbstractList<GlucoseValue>() {
+
+        private fun position(index: Int): Int {
+            if (index < 0 || index >= size) throw IndexOutOfBoundsException("index: $index, size: $size")
+            return if (ascending) offset + index else offset + size - 1 - index
+        }
+
+        fun timestampAt(index: Int): Long = timestamps[position(index)]
+        fun valueAt(index: Int): Double = values[position(index)]
+        fun trendArrowAt(index: Int): GlucoseValue.TrendArrow = TREND_ARROWS[trendArrows[position(index)].toInt()]
+        fun sourceSensorAt(index: Int): GlucoseValue.SourceSensor = SOURCE_SENSORS[sourceSensors[position(index)].toInt()]
+
+        override fun get(index: Int): GlucoseValue = records[position(index)]!!
+    }
+
+    private fun isCurrent(glucoseValue: GlucoseValue, from: Long): Boolean =
+        glucoseValue.isValid && glucoseValue.referenceId == null && glucoseValue.value >= 39 && glucoseValue.timestamp >= from
+
+    // drop values older than retention, no array is modified
+    private fun trim(now: Long) {
+        val from = now - retention
+        if (from <= loadedFrom) return
+        start = lowerBound(from)
+        loadedFrom = from
+    }
+
+    // @return false if change cannot be applied without touching data visible to existing views
+    private fun applyInPlace(glucoseValue: GlucoseValue): Boolean {
+        val current = isCurrent(glucoseValue, loadedFrom)
+        val index = indexOfId(glucoseValue.id)
+        if (index == -1) {
+            if (!current) return true
+            if (end != start && timestamps[end - 1] > glucoseValue.timestamp) return false
+            if (end == ids.size) return false
+            set(end, glucoseValue)
+            end++
+            return true
+        }
+        if (current && timestamps[index] == glucoseValue.timestamp && values[index] == glucoseValue.value &&
+            trendArrows[index] == glucoseValue.trendArrow.ordinal.toByte() && sourceSensors[index] == glucoseValue.sourceSensor.ordinal.toByte()) {
+            records[index] = glucoseValue
+            return true
+        }
+        return false
+    }
+
+    private fun rebuild(changes: List<GlucoseValue>) {
+        // the last change of a record wins
+        val latest = LinkedHashMap<Long, GlucoseValue>()
+        for (change in changes) latest[change.id] = change
+        val merged = ArrayList<GlucoseValue>(end - start + latest.size)
+        for (i in start until end) if (!latest.containsKey(ids[i])) merged.add(records[i]!!)
+        for (change in latest.values) if (isCurrent(change, loadedFrom)) merged.add(change)
+        merged.sortBy { it.timestamp }
+        fill(merged)
+    }
+
+    // always creates new arrays with some free space for appending
+    private fun fill(glucoseValues: List<GlucoseValue>) {
+        val capacity = glucoseValues.size * 2 + INITIAL_CAPACITY
+        ids = LongArray(capacity)
+        timestamps = LongArray(capacity)
+        values = DoubleArray(capacity)
+        trendArrows = ByteArray(capacity)
+        sourceSensors = ByteArray(capacity)
+        records = arrayOfNulls(capacity)
+        for ((i, glucoseValue) in glucoseValues.withIndex()) set(i, glucoseValue)
+        start = 0
+        end = glucoseValues.size
+    }
+
+    private fun set(index: Int, glucoseValue: GlucoseValue) {
+        ids[index] = glucoseValue.id
+        timestamps[index] = glucoseValue.timestamp
+        values[index] = glucoseValue.value
+        trendArrows[index] = glucoseValue.trendArrow.ordinal.toByte()
+        sourceSensors[index] = glucoseValue.sourceSensor.ordinal.toByte()
+        records[index] = glucoseValue
+    }
+
+    // changed records are usually the newest ones, search from the end
+    private fun indexOfId(id: Long): Int {
+        for (i in end - 1 downTo start) if (ids[i] == id) return i
+        return -1
+    }
+
+    // index of first value with timestamp >= time
+    private fun lowerBound(time: Long): Int {
+        var low = start
+        var high = end
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            if (timestamps[mid] < time) low = mid + 1 else high = mid
+        }
+        return low
+    }
+
+    // index of first value with timestamp > time
+    private fun upperBound(time: Long): Int {
+        var low = start
+        var high = end
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            if (timestamps[mid] <= time) low = mid + 1 else high = mid
+        }
+        return low
+    }
+
+    companion object {
+
+        private const val INITIAL_CAPACITY = 288 // 24h of 5 min data
+        private val TREND_ARROWS = GlucoseValue.TrendArrow.values()
+        private val SOURCE_SENSORS = GlucoseValue.SourceSensor.values()
+    }
+}
@@ -28,7 +28,8 @@ import java.util.*
         Index("pumpSerial"),
         Index("pumpType"),
         Index("referenceId"),
-        Index("timestamp")
+        Index("timestamp"),
+        Index("referenceId", "isValid", "timestamp")
     ]
 )
 data class Bolus(
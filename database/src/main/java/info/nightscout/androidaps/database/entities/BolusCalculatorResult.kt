@@ -22,7 +22,8 @@ import java.util.*
         Index("referenceId"),
         Index("timestamp"),
         Index("id"),
-        Index("isValid")
+        Index("isValid"),
+        Index("referenceId", "isValid", "timestamp")
     ]
 )
 data class BolusCalculatorResult(
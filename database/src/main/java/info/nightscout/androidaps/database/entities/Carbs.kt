@@ -21,7 +21,8 @@ import java.util.*
         Index("isValid"),
         Index("nightscoutId"),
         Index("referenceId"),
-        Index("timestamp")
+        Index("timestamp"),
+        Index("referenceId", "isValid", "timestamp")
     ])
 data class Carbs(
     @PrimaryKey(autoGenerate = true)
@@ -25,7 +25,8 @@ import java.util.*
         Index("id"),
         Index("referenceId"),
         Index("timestamp"),
-        Index("isValid")
+        Index("isValid"),
+        Index("referenceId", "isValid", "timestamp")
     ]
 )
 data class EffectiveProfileSwitch(
@@ -26,7 +26,8 @@ import java.util.*
         Index("pumpId"),
         Index("pumpType"),
         Index("referenceId"),
-        Index("timestamp")
+        Index("timestamp"),
+        Index("referenceId", "isValid", "timestamp")
     ]
 )
 data class ExtendedBolus(
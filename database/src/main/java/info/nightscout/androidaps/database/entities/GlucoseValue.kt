@@ -23,7 +23,8 @@ import java.util.*
         Index("nightscoutId"),
         Index("sourceSensor"),
         Index("referenceId"),
-        Index("timestamp")
+        Index("timestamp"),
+        Index("referenceId", "isValid", "timestamp")
     ]
 )
 data class GlucoseValue(
@@ -26,7 +26,8 @@ import java.util.*
         Index("timestamp"),
         Index("isValid"),
         Index("id"),
-        Index("nightscoutId")
+        Index("nightscoutId"),
+        Index("referenceId", "isValid", "timestamp")
     ]
 )
 data class ProfileSwitch(
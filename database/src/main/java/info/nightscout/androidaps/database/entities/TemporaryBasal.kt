@@ -25,7 +25,8 @@ import java.util.*
         Index("pumpSerial"),
         Index("temporaryId"),
         Index("referenceId"),
-        Index("timestamp")
+        Index("timestamp"),
+        Index("referenceId", "isValid", "timestamp")
     ])
 data class TemporaryBasal(
     @PrimaryKey(autoGenerate = true)
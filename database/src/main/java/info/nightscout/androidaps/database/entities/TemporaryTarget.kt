@@ -24,7 +24,8 @@ import java.util.*
         Index("isValid"),
         Index("nightscoutId"),
         Index("referenceId"),
-        Index("timestamp")
+        Index("timestamp"),
+        Index("referenceId", "isValid", "timestamp")
     ]
 )
 data class TemporaryTarget(
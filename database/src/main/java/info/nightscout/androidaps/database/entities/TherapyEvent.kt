@@ -25,7 +25,8 @@ import java.util.*
         Index("nightscoutId"),
         Index("isValid"),
         Index("referenceId"),
-        Index("timestamp")
+        Index("timestamp"),
+        Index("referenceId", "isValid", "timestamp")
     ]
 )
 data class TherapyEvent(
@@ -8,6 +8,6 @@ import info.nightscout.androidaps.database.entities.GlucoseValue
 class InsertGlucoseValueTransaction(val glucoseValue: GlucoseValue) : Transaction<Unit>() {
 
     override fun run() {
-        database.glucoseValueDao.insert(glucoseValue)
+        database.glucoseValueDao.insertNewEntry(glucoseValue)
     }
 }
\ No newline at end of file
@@ -0,0 +1,61 @@
+package info.nightscout.androidaps.database.transactions
+
+import info.nightscout.androidaps.database.entities.*
+import info.nightscout.androidaps.database.interfaces.TraceableDBEntry
+
+/**
+ * Sync batch of records received from NS in one database transaction
+ * Every record is processed the same way as by its own SyncNs*Transaction,
+ * in order of receiving
+ */
+class SyncNsBatchTransaction(
+    private val records: List<TraceableDBEntry>
+) : Transaction<SyncNsBatchTransaction.TransactionResult>() {
+
+    val size: Int
+        get() = records.size
+
+    override fun run(): TransactionResult {
+        val result = TransactionResult()
+        records.forEach { record ->
+            when (record) {
+                is Bolus                  -> result.boluses.add(nested(SyncNsBolusTransaction(record)))
+                is Carbs                  -> result.carbs.add(nested(SyncNsCarbsTransaction(record)))
+                is TemporaryTarget        -> result.temporaryTargets.add(nested(SyncNsTemporaryTargetTransaction(record)))
+                is EffectiveProfileSwitch -> result.effectiveProfileSwitches.add(nested(SyncNsEffectiveProfileSwitchTransaction(record)))
+                is BolusCalculatorResult  -> result.bolusCalculatorResults.add(nested(SyncNsBolusCalculatorResultTransaction(record)))
+                is TherapyEvent           -> result.therapyEvents.add(nested(SyncNsTherapyEventTransaction(record)))
+                is ExtendedBolus          -> result.extendedBoluses.add(nested(SyncNsExtendedBolusTransaction(record)))
+                is TemporaryBasal         -> result.temporaryBasals.add(nested(SyncNsTemporaryBasalTransaction(record)))
+                is ProfileSwitch          -> result.profileSwitches.add(nested(SyncNsProfileSwitchTransaction(record)))
+                is OfflineEvent           -> result.offlineEvents.add(nested(SyncNsOfflineEventTransaction(record)))
+                else                      -> throw IllegalArgumentException("Unsupported record ${record.javaClass.simpleName}")
+            }
+        }
+        return result
+    }
+
+    /**
+     * Split to batches of one record. Used when whole batch fails
+     * so one broken record doesn't block the rest.
+     * Records received from NS are new entities (id 0), id assigned by insert of rolled back batch is cleared
+     */
+    fun split(): List<SyncNsBatchTransaction> = records.map { record ->
+        record.id = 0
+        SyncNsBatchTransaction(listOf(record))
+    }
+
+    class TransactionResult {
+
+        val boluses = mutableListOf<SyncNsBolusTransaction.TransactionResult>()
+        val carbs = mutableListOf<SyncNsCarbsTransaction.TransactionResult>()
+        val temporaryTargets = mutableListOf<SyncNsTemporaryTargetTransaction.TransactionResult>()
+        val effectiveProfileSwitches = mutableListOf<SyncNsEffectiveProfileSwitchTransaction.TransactionResult>()
+        val bolusCalculatorResults = mutableListOf<SyncNsBolusCalculatorResultTransaction.TransactionResult>()
+        val therapyEvents = mutableListOf<SyncNsTherapyEventTransaction.TransactionResult>()
+        val extendedBoluses = mutableListOf<SyncNsExtendedBolusTransaction.TransactionResult>()
+        val temporaryBasals = mutableListOf<SyncNsTemporaryBasalTransaction.TransactionResult>()
+        val profileSwitches = mutableListOf<SyncNsProfileSwitchTransaction.TransactionResult>()
+        val offlineEvents = mutableListOf<SyncNsOfflineEventTransaction.TransactionResult>()
+    }
+}
@@ -0,0 +1,16 @@
+package info.nightscout.androidaps.database.transactions
+
+/**
+ * Sync batch of records read from pump history in one database transaction
+ * Transactions are executed in given order (history order matters, ie. TBR start before its end)
+ * and results are returned in the same order
+ */
+class SyncPumpHistoryBatchTransaction(
+    val transactions: List<Transaction<*>>
+) : Transaction<List<Any?>>() {
+
+    val size: Int
+        get() = transactions.size
+
+    override fun run(): List<Any?> = transactions.map { nested(it) }
+}
@@ -15,4 +15,11 @@ abstract class Transaction<T> {
 
     internal lateinit var database: DelegatedAppDatabase
 
+    /**
+     * Executes other Transaction within this one (changes are collected to the same list)
+     */
+    protected fun <R> nested(transaction: Transaction<R>): R {
+        transaction.database = database
+        return transaction.run()
+    }
 }
\ No newline at end of file
@@ -0,0 +1,187 @@
+package info.nightscout.androidaps.database
+
+import info.nightscout.androidaps.database.entities.GlucoseValue
+import info.nightscout.androidaps.database.entities.TemporaryTarget
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Test
+
+class GlucoseValueBufferTest {
+
+    private val retention = 60 * 60 * 1000L
+    private val now = 100 * retention
+    private val windowStart = now - retention
+
+    private lateinit var sut: GlucoseValueBuffer
+    private var loaderCalls = 0
+    private var loadedFrom = 0L
+
+    @Before
+    fun prepare() {
+        sut = GlucoseValueBuffer(retention)
+        loaderCalls = 0
+    }
+
+    private fun gv(id: Long, timestamp: Long, value: Double = 100.0, isValid: Boolean = true, referenceId: Long? = null) =
+        GlucoseValue(
+            id = id, timestamp = timestamp, isValid = isValid, referenceId = referenceId, raw = null, value = value,
+            trendArrow = GlucoseValue.TrendArrow.FLAT, noise = null, sourceSensor = GlucoseValue.SourceSensor.DEXCOM_G6_NATIVE
+        )
+
+    private fun load(vararg glucoseValues: GlucoseValue) {
+        sut.loadIfNeeded(now) { from ->
+            loaderCalls++
+            loadedFrom = from
+            glucoseValues.toList()
+        }
+    }
+
+    private fun timestamps(range: GlucoseValueBuffer.Range) = (0 until range.size).map { range.timestampAt(it) }
+
+    @Test
+    fun newValuesAreAppendedInOrder() {
+        load(gv(1, windowStart + 1000), gv(2, windowStart + 2000))
+        sut.update(listOf(gv(3, windowStart + 3000, 110.0)), now)
+        sut.update(listOf(gv(4, windowStart + 4000, 120.0), gv(5, windowStart + 5000, 130.0)), now)
+
+        val ascending = sut.range(windowStart, now, true)
+        Assert.assertEquals(listOf(1000L, 2000L, 3000L, 4000L, 5000L).map { windowStart + it }, timestamps(ascending))
+        Assert.assertEquals(listOf(1L, 2L, 3L, 4L, 5L), ascending.map { it.id })
+        Assert.assertEquals(130.0, ascending.valueAt(4), 0.0)
+        Assert.assertEquals(GlucoseValue.TrendArrow.FLAT, ascending.trendArrowAt(4))
+        Assert.assertEquals(GlucoseValue.SourceSensor.DEXCOM_G6_NATIVE, ascending.sourceSensorAt(4))
+
+        val descending = sut.range(windowStart, now, false)
+        Assert.assertEquals(listOf(5L, 4L, 3L, 2L, 1L), descending.map { it.id })
+
+        // value older than the newest one is inserted at its position
+        sut.update(listOf(gv(6, windowStart + 2500)), now)
+        Assert.assertEquals(listOf(1000L, 2000L, 2500L, 3000L, 4000L, 5000L).map { windowStart + it }, timestamps(sut.range(windowStart, now, true)))
+    }
+
+    @Test
+    fun otherChangesAreIgnored() {
+        load(gv(1, windowStart + 1000))
+        sut.update(listOf(TemporaryTarget(timestamp = windowStart + 2000, reason = TemporaryTarget.Reason.CUSTOM, highTarget = 100.0, lowTarget = 100.0, duration = 0)), now)
+        Assert.assertEquals(1, sut.size)
+    }
+
+    @Test
+    fun bufferIsLoadedFromRepositoryOnce() {
+        // not loaded yet, changes are not collected
+        sut.update(listOf(gv(9, windowStart + 9000)), now)
+        Assert.assertEquals(Long.MAX_VALUE, sut.loadedFrom)
+
+        // unsorted and containing records which must not be served
+        load(
+            gv(3, windowStart + 3000),
+            gv(1, windowStart + 1000),
+            gv(4, windowStart + 4000, isValid = false),
+            gv(5, windowStart + 5000, referenceId = 3),
+            gv(6, windowStart + 6000, value = 38.0),
+            gv(7, windowStart - 1),
+            gv(2, windowStart + 2000)
+        )
+        Assert.assertEquals(1, loaderCalls)
+        Assert.assertEquals(windowStart, loadedFrom)
+        Assert.assertEquals(windowStart, sut.loadedFrom)
+        Assert.assertEquals(listOf(1L, 2L, 3L), sut.range(0, Long.MAX_VALUE, true).map { it.id })
+
+        load(gv(10, windowStart + 10000))
+        Assert.assertEquals(1, loaderCalls)
+
+        sut.reset()
+        Assert.assertEquals(0, sut.size)
+        load(gv(10, windowStart + 10000))
+        Assert.assertEquals(2, loaderCalls)
+        Assert.assertEquals(listOf(10L), sut.range(0, Long.MAX_VALUE, true).map { it.id })
+    }
+
+    @Test
+    fun changedValuesAreMergedToLoadedData() {
+        load(gv(1, windowStart + 1000), gv(2, windowStart + 2000), gv(3, windowStart + 3000))
+
+        // invalidated, replaced by history record, changed value and new value in one transaction
+        sut.update(
+            listOf(
+                gv(1, windowStart + 1000, isValid = false),
+                gv(2, windowStart + 2000, referenceId = 10),
+                gv(10, windowStart + 2000, value = 105.0),
+                gv(3, windowStart + 3000, value = 140.0),
+                gv(4, windowStart + 4000)
+            ), now
+        )
+        val range = sut.range(windowStart, now, true)
+        Assert.assertEquals(listOf(10L, 3L, 4L), range.map { it.id })
+        Assert.assertEquals(105.0, range.valueAt(0), 0.0)
+        Assert.assertEquals(140.0, range.valueAt(1), 0.0)
+
+        // the last change of the same record wins
+        sut.update(listOf(gv(4, windowStart + 4000, value = 150.0), gv(4, windowStart + 4000, isValid = false)), now)
+        Assert.assertEquals(listOf(10L, 3L), sut.range(windowStart, now, true).map { it.id })
+    }
+
+    @Test
+    fun valuesOutsideOfWindowAreTrimmed() {
+        Assert.assertTrue(sut.covers(windowStart, now))
+        Assert.assertFalse(sut.covers(windowStart - 1, now))
+
+        load(gv(1, windowStart), gv(2, windowStart + 1000), gv(3, windowStart + 2000))
+        Assert.assertEquals(3, sut.size)
+
+        // window boundary is inclusive
+        sut.update(emptyList(), now + 1000)
+        Assert.assertEquals(windowStart + 1000, sut.loadedFrom)
+        Assert.assertEquals(listOf(2L, 3L), sut.range(0, Long.MAX_VALUE, true).map { it.id })
+
+        sut.update(emptyList(), now + 1001)
+        Assert.assertEquals(listOf(3L), sut.range(0, Long.MAX_VALUE, true).map { it.id })
+
+        // window never moves back
+        sut.update(emptyList(), now)
+        Assert.assertEquals(windowStart + 1001, sut.loadedFrom)
+        Assert.assertEquals(1, sut.size)
+
+        // late value older than window is not stored
+        sut.update(listOf(gv(4, windowStart + 1001), gv(5, windowStart + 1000)), now + 1001)
+        Assert.assertEquals(listOf(4L, 3L), sut.range(0, Long.MAX_VALUE, true).map { it.id })
+    }
+
+    @Test
+    fun rangeIsLimitedByTimes() {
+        load(gv(1, windowStart + 1000), gv(2, windowStart + 2000), gv(3, windowStart + 3000))
+
+        Assert.assertEquals(listOf(2L), sut.range(windowStart + 2000, windowStart + 2000, true).map { it.id })
+        Assert.assertEquals(listOf(3L, 2L), sut.range(windowStart + 1001, now, false).map { it.id })
+        Assert.assertEquals(0, sut.range(windowStart + 2001, windowStart + 2999, true).size)
+        Assert.assertEquals(0, sut.range(windowStart + 3000, windowStart + 1000, true).size)
+    }
+
+    @Test
+    fun returnedRangeNeverChanges() {
+        load(gv(1, windowStart + 1000), gv(2, windowStart + 2000))
+        val range = sut.range(windowStart, now, true)
+        val descending = sut.range(windowStart, now, false)
+
+        // append behind the view
+        sut.update(listOf(gv(3, windowStart + 3000)), now)
+        // insertion, invalidation and value change require new arrays
+        sut.update(listOf(gv(4, windowStart + 1500)), now)
+        sut.update(listOf(gv(1, windowStart + 1000, isValid = false)), now)
+        sut.update(listOf(gv(2, windowStart + 2000, value = 200.0)), now)
+        // trim
+        sut.update(emptyList(), now + 2500)
+        // reload
+        sut.reset()
+        load(gv(5, windowStart + 5000))
+
+        Assert.assertEquals(2, range.size)
+        Assert.assertEquals(listOf(windowStart + 1000, windowStart + 2000), timestamps(range))
+        Assert.assertEquals(listOf(1L, 2L), range.map { it.id })
+        Assert.assertEquals(100.0, range.valueAt(1), 0.0)
+        Assert.assertTrue(range[0].isValid)
+        Assert.assertEquals(listOf(2L, 1L), descending.map { it.id })
+        Assert.assertThrows(IndexOutOfBoundsException::class.java) { range.timestampAt(2) }
+        Assert.assertThrows(IndexOutOfBoundsException::class.java) { range[-1] }
+    }
+}
@@ -0,0 +1,45 @@
+package info.nightscout.androidaps.diaconn.pumplog
+
+import info.nightscout.androidaps.diaconn.packet.BigLogInquireResponsePacket
+import org.junit.Test
+
+/**
+ * Decoding throughput of the recorded big log dump of PumplogDecodeTest straight from the packet buffer
+ *
+ * Run by ./gradlew -Pbenchmark :diaconn:testFullDebugUnitTest
+ */
+class PumplogDecodeBenchmark {
+
+    private val decode = PumplogDecodeTest()
+
+    @Test fun throughput() {
+        val dump = decode.dump
+        val buffer = decode.packetBuffer(dump)
+
+        fun run(iterations: Int): Long {
+            var sum = 0L
+            for (i in 0 until iterations) {
+                val logStart = (i % dump.size) * BigLogInquireResponsePacket.LOG_ENTRY_SIZE
+                buffer.position(logStart + 3)
+                sum += when (PumplogUtil.getKind(buffer.get(logStart + 7))) {
+                    LOG_INJECT_MEAL_SUCCESS.LOG_KIND -> LOG_INJECT_MEAL_SUCCESS.parse(buffer).timestamp
+                    LOG_TB_START_V3.LOG_KIND         -> LOG_TB_START_V3.parse(buffer).timestamp
+                    else                             -> LOG_ALARM_BATTERY.parse(buffer).timestamp
+                }
+            }
+            return sum
+        }
+
+        run(WARMUP_ITERATIONS)
+        val start = System.nanoTime()
+        run(ITERATIONS)
+        val elapsed = System.nanoTime() - start
+        println("Pump log decode: ${ITERATIONS * 1_000_000_000L / elapsed} logs/s, ${elapsed / ITERATIONS} ns/log")
+    }
+
+    companion object {
+
+        private const val WARMUP_ITERATIONS = 50_000
+        private const val ITERATIONS = 500_000
+    }
+}
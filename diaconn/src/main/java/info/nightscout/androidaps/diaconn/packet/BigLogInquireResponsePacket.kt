@@ -13,6 +13,7 @@ import info.nightscout.androidaps.interfaces.ActivePlugin
 import info.nightscout.androidaps.interfaces.PumpDescription
 import info.nightscout.androidaps.interfaces.PumpSync
 import info.nightscout.androidaps.logging.LTag
+import info.nightscout.androidaps.logging.debug
 import info.nightscout.androidaps.plugins.bus.RxBus
 import info.nightscout.androidaps.plugins.pump.common.bolusInfo.DetailedBolusInfoStorage
 import info.nightscout.androidaps.plugins.pump.common.bolusInfo.TemporaryBasalStorage
@@ -20,7 +21,6 @@ import info.nightscout.androidaps.plugins.pump.common.defs.PumpType
 import info.nightscout.androidaps.utils.T
 import info.nightscout.androidaps.utils.resources.ResourceHelper
 import info.nightscout.androidaps.utils.sharedPreferences.SP
-import org.apache.commons.lang3.time.DateUtils
 import org.joda.time.DateTime
 import javax.inject.Inject
 
@@ -42,6 +42,8 @@ class BigLogInquireResponsePacket(
     @Inject lateinit var diaconnHistoryRecordDao: DiaconnHistoryRecordDao
     var result = 0// 조회결과
     private var pumpDesc = PumpDescription(PumpType.DIACONN_G8)
+    private val historyEvents = mutableListOf<PumpSync.HistoryEvent>()
+    private val historyEventLogs = mutableListOf<(Boolean) -> String>()
     init {
         msgType = 0xb2.toByte()
         aapsLogger.debug(LTag.PUMPCOMM, "BigLogInquireResponsePacket init")
@@ -68,51 +70,36 @@ class BigLogInquireResponsePacket(
         dailyMaxvalInfo[""] = mutableMapOf()
 
         // 15 byte를 로그갯수만큼 돌기.
+        var logStart = bufferData.position()
         for(i in 0 until logLength) {
+            bufferData.position(logStart)
+            logStart += LOG_ENTRY_SIZE
             val wrapingCount = getByteToInt(bufferData) // 1byte
             val logNum =  getShortToInt(bufferData)  // 2byte
-            // log Data Parsing
-            val logdata = byteArrayOf(
-                PumplogUtil.getByte(bufferData),
-                PumplogUtil.getByte(bufferData),
-                PumplogUtil.getByte(bufferData),
-                PumplogUtil.getByte(bufferData),
-                PumplogUtil.getByte(bufferData),
-                PumplogUtil.getByte(bufferData),
-                PumplogUtil.getByte(bufferData),
-                PumplogUtil.getByte(bufferData),
-                PumplogUtil.getByte(bufferData),
-                PumplogUtil.getByte(bufferData),
-                PumplogUtil.getByte(bufferData),
-                PumplogUtil.getByte(bufferData)
-            )
+            // log Data Parsing: 12 bytes are decoded directly from packet buffer
 
             diaconnG8Pump.apsWrappingCount = wrapingCount
             diaconnG8Pump.apslastLogNum  = logNum
-            sp.putInt(rh.gs(R.string.apslastLogNum), logNum)
-            sp.putInt(rh.gs(R.string.apsWrappingCount), wrapingCount)
 
             // process Log to DB
-            val logDataToHexString = toNarrowHex(logdata)
-            val pumplogKind: Byte = PumplogUtil.getKind(logDataToHexString)
+            val pumplogKind: Byte = PumplogUtil.getKind(bufferData.get(bufferData.position() + 4))
             var status: String
             val diaconnG8HistoryRecord = DiaconnHistoryRecord(0)
             when(pumplogKind) {
 
                 LOG_INJECT_MEAL_SUCCESS.LOG_KIND -> {
-                    val logItem = LOG_INJECT_MEAL_SUCCESS.parse(logDataToHexString)
-                    aapsLogger.debug(LTag.PUMPCOMM, "$logItem ")
-                    val logStartDate = DateUtils.parseDate(logItem.dttm, "yyyy-MM-dd HH:mm:ss")
-                    val logDateTime = logStartDate.time
+                    val logItem = LOG_INJECT_MEAL_SUCCESS.parse(bufferData)
+                    aapsLogger.debug(LTag.PUMPCOMM) { "$logItem " }
+                    val logDateTime = logItem.timestamp
                     val detailedBolusInfo = detailedBolusInfoStorage.findDetailedBolusInfo(logDateTime, logItem.injectAmount / 100.0)
-                    val newRecord = pumpSync.syncBolusWithPumpId(
-                        timestamp = logDateTime,
-                        amount = logItem.injectAmount / 100.0,
-                        type = detailedBolusInfo?.bolusType,
-                        pumpId = logDateTime,
-                        pumpType = PumpType.DIACONN_G8,
-                        pumpSerial = diaconnG8Pump.serialNo.toString())
-                    aapsLogger.debug(LTag.PUMPCOMM, (if (newRecord) "**NEW** " else "") + "EVENT MEALBOLUS (" + pumplogKind + ") " + dateUtil.dateAndTimeString(logDateTime) + " (" + logDateTime + ")" + " Bolus: " + logItem.injectAmount / 100.0 + "U ")
+                    sync(
+                        PumpSync.HistoryEvent.Bolus(
+                            timestamp = logDateTime,
+                            amount = logItem.injectAmount / 100.0,
+                            type = detailedBolusInfo?.bolusType,
+                            pumpId = logDateTime
+                        )
+                    ) { newRecord -> (if (newRecord) "**NEW** " else "") + "EVENT MEALBOLUS (" + pumplogKind + ") " + dateUtil.dateAndTimeString(logDateTime) + " (" + logDateTime + ")" + " Bolus: " + logItem.injectAmount / 100.0 + "U " }
                     diaconnG8HistoryRecord.code = RecordTypes.RECORD_TYPE_BOLUS
                     diaconnG8HistoryRecord.timestamp = logDateTime
                     diaconnG8HistoryRecord.value = logItem.injectAmount / 100.0
@@ -124,19 +111,18 @@ class BigLogInquireResponsePacket(
                 }
 
                 LOG_INJECT_MEAL_FAIL.LOG_KIND -> {
-                    val logItem = LOG_INJECT_MEAL_FAIL.parse(logDataToHexString)
-                    aapsLogger.debug(LTag.PUMPCOMM, "$logItem ")
-                    val logStartDate = DateUtils.parseDate(logItem.dttm, "yyyy-MM-dd HH:mm:ss")
-                    val logDateTime = logStartDate.time
+                    val logItem = LOG_INJECT_MEAL_FAIL.parse(bufferData)
+                    aapsLogger.debug(LTag.PUMPCOMM) { "$logItem " }
+                    val logDateTime = logItem.timestamp
                     val detailedBolusInfo = detailedBolusInfoStorage.findDetailedBolusInfo(logDateTime, logItem.injectAmount / 100.0)
-                    val newRecord = pumpSync.syncBolusWithPumpId(
-                        timestamp = logDateTime,
-                        amount = logItem.injectAmount / 100.0,
-                        type = detailedBolusInfo?.bolusType,
-                        pumpId = logDateTime,
-                        pumpType = PumpType.DIACONN_G8,
-                        pumpSerial = diaconnG8Pump.serialNo.toString())
-                    aapsLogger.debug(LTag.PUMPCOMM, (if (newRecord) "**NEW** " else "") + "EVENT MEALBOLUS (" + pumplogKind + ") " + dateUtil.dateAndTimeString(logDateTime) + " (" + logDateTime + ")" + " Bolus: " + logItem.injectAmount / 100.0 + "U ")
+                    sync(
+                        PumpSync.HistoryEvent.Bolus(
+                            timestamp = logDateTime,
+                            amount = logItem.injectAmount / 100.0,
+                            type = detailedBolusInfo?.bolusType,
+                            pumpId = logDateTime
+                        )
+                    ) { newRecord -> (if (newRecord) "**NEW** " else "") + "EVENT MEALBOLUS (" + pumplogKind + ") " + dateUtil.dateAndTimeString(logDateTime) + " (" + logDateTime + ")" + " Bolus: " + logItem.injectAmount / 100.0 + "U " }
                     diaconnG8HistoryRecord.code = RecordTypes.RECORD_TYPE_BOLUS
                     diaconnG8HistoryRecord.timestamp = logDateTime
                     diaconnG8HistoryRecord.value = if ((logItem.injectAmount / 100.0) < 0) 0.0 else (logItem.injectAmount / 100.0)
@@ -148,20 +134,19 @@ class BigLogInquireResponsePacket(
                 }
 
                 LOG_INJECT_NORMAL_SUCCESS.LOG_KIND -> {
-                    val logItem = LOG_INJECT_NORMAL_SUCCESS.parse(logDataToHexString)
-                    aapsLogger.debug(LTag.PUMPCOMM, "$logItem ")
+                    val logItem = LOG_INJECT_NORMAL_SUCCESS.parse(bufferData)
+                    aapsLogger.debug(LTag.PUMPCOMM) { "$logItem " }
 
-                    val logStartDate = DateUtils.parseDate(logItem.dttm, "yyyy-MM-dd HH:mm:ss")
-                    val logDateTime = logStartDate.time
+                    val logDateTime = logItem.timestamp
                     val detailedBolusInfo = detailedBolusInfoStorage.findDetailedBolusInfo(logDateTime, logItem.injectAmount / 100.0)
-                    val newRecord = pumpSync.syncBolusWithPumpId(
-                        timestamp = logDateTime,
-                        amount = logItem.injectAmount / 100.0,
-                        type = detailedBolusInfo?.bolusType,
-                        pumpId = logDateTime,
-                        pumpType = PumpType.DIACONN_G8,
-                        pumpSerial = diaconnG8Pump.serialNo.toString())
-                    aapsLogger.debug(LTag.PUMPCOMM, (if (newRecord) "**NEW** " else "") + "EVENT BOLUS (" + pumplogKind + ") " + dateUtil.dateAndTimeString(logDateTime) + " (" + logDateTime + ")" + " Bolus: " + logItem.injectAmount / 100.0 + "U ")
+                    sync(
+                        PumpSync.HistoryEvent.Bolus(
+                            timestamp = logDateTime,
+                            amount = logItem.injectAmount / 100.0,
+                            type = detailedBolusInfo?.bolusType,
+                            pumpId = logDateTime
+                        )
+                    ) { newRecord -> (if (newRecord) "**NEW** " else "") + "EVENT BOLUS (" + pumplogKind + ") " + dateUtil.dateAndTimeString(logDateTime) + " (" + logDateTime + ")" + " Bolus: " + logItem.injectAmount / 100.0 + "U " }
                     diaconnG8HistoryRecord.code = RecordTypes.RECORD_TYPE_BOLUS
                     diaconnG8HistoryRecord.timestamp = logDateTime
                     diaconnG8HistoryRecord.value = logItem.injectAmount / 100.0
@@ -173,21 +158,20 @@ class BigLogInquireResponsePacket(
                 }
 
                 LOG_INJECT_NORMAL_FAIL.LOG_KIND -> {
-                    val logItem = LOG_INJECT_NORMAL_FAIL.parse(logDataToHexString)
-                    aapsLogger.debug(LTag.PUMPCOMM, "$logItem ")
-                    val logStartDate = DateUtils.parseDate(logItem.dttm, "yyyy-MM-dd HH:mm:ss")
-                    val logDateTime = logStartDate.time
+                    val logItem = LOG_INJECT_NORMAL_FAIL.parse(bufferData)
+                    aapsLogger.debug(LTag.PUMPCOMM) { "$logItem " }
+                    val logDateTime = logItem.timestamp
 
                     // APS DB process
                     val detailedBolusInfo = detailedBolusInfoStorage.findDetailedBolusInfo(logDateTime, logItem.injectAmount / 100.0)
-                    val newRecord = pumpSync.syncBolusWithPumpId(
-                        timestamp = logDateTime,
-                        amount = logItem.injectAmount / 100.0,
-                        type = detailedBolusInfo?.bolusType,
-                        pumpId = logDateTime,
-                        pumpType = PumpType.DIACONN_G8,
-                        pumpSerial = diaconnG8Pump.serialNo.toString())
-                    aapsLogger.debug(LTag.PUMPCOMM, (if (newRecord) "**NEW** " else "") + "EVENT BOLUS (" + pumplogKind + ") " + dateUtil.dateAndTimeString(logDateTime) + " (" + logDateTime + ")" + " Bolus: " + logItem.injectAmount / 100.0 + "U ")
+                    sync(
+                        PumpSync.HistoryEvent.Bolus(
+                            timestamp = logDateTime,
+                            amount = logItem.injectAmount / 100.0,
+                            type = detailedBolusInfo?.bolusType,
+                            pumpId = logDateTime
+                        )
+                    ) { newRecord -> (if (newRecord) "**NEW** " else "") + "EVENT BOLUS (" + pumplogKind + ") " + dateUtil.dateAndTimeString(logDateTime) + " (" + logDateTime + ")" + " Bolus: " + logItem.injectAmount / 100.0 + "U " }
                     // Diaconn History Process
                     diaconnG8HistoryRecord.code = RecordTypes.RECORD_TYPE_BOLUS
                     diaconnG8HistoryRecord.timestamp = logDateTime
@@ -200,19 +184,18 @@ class BigLogInquireResponsePacket(
                 }
 
                 LOG_SET_SQUARE_INJECTION.LOG_KIND -> {
-                    val logItem = LOG_SET_SQUARE_INJECTION.parse(logDataToHexString)
-                    aapsLogger.debug(LTag.PUMPCOMM, "$logItem ")
-                    val logStartDate = DateUtils.parseDate(logItem.dttm, "yyyy-MM-dd HH:mm:ss")
-                    val logDateTime = logStartDate.time
-                    val newRecord = pumpSync.syncExtendedBolusWithPumpId(
-                        timestamp = logDateTime,
-                        amount = logItem.setAmount / 100.0,
-                        duration = T.mins((logItem.getInjectTime() * 10).toLong()).msecs(),
-                        isEmulatingTB = false,
-                        pumpId = logDateTime,
-                        pumpType = PumpType.DIACONN_G8,
-                        pumpSerial = diaconnG8Pump.serialNo.toString())
-                    aapsLogger.debug(LTag.PUMPCOMM, (if (newRecord) "**NEW** " else "") + "EVENT EXTENDEDSTART (" + pumplogKind + ") " + dateUtil.dateAndTimeString(logDateTime) + " (" + logDateTime + ")" + " Amount: " + logItem.setAmount / 100.0 + "U Duration: " + logItem.getInjectTime() * 10 + "min")
+                    val logItem = LOG_SET_SQUARE_INJECTION.parse(bufferData)
+                    aapsLogger.debug(LTag.PUMPCOMM) { "$logItem " }
+                    val logDateTime = logItem.timestamp
+                    sync(
+                        PumpSync.HistoryEvent.ExtendedBolus(
+                            timestamp = logDateTime,
+                            amount = logItem.setAmount / 100.0,
+                            duration = T.mins((logItem.getInjectTime() * 10).toLong()).msecs(),
+                            isEmulatingTB = false,
+                            pumpId = logDateTime
+                        )
+                    ) { newRecord -> (if (newRecord) "**NEW** " else "") + "EVENT EXTENDEDSTART (" + pumplogKind + ") " + dateUtil.dateAndTimeString(logDateTime) + " (" + logDateTime + ")" + " Amount: " + logItem.setAmount / 100.0 + "U Duration: " + logItem.getInjectTime() * 10 + "min" }
                     diaconnG8HistoryRecord.code = RecordTypes.RECORD_TYPE_BOLUS
                     diaconnG8HistoryRecord.timestamp = logDateTime
                     diaconnG8HistoryRecord.value = logItem.setAmount / 100.0
@@ -224,10 +207,9 @@ class BigLogInquireResponsePacket(
                 }
 
                 LOG_INJECT_SQUARE_SUCCESS.LOG_KIND -> {
-                    val logItem = LOG_INJECT_SQUARE_SUCCESS.parse(logDataToHexString)
-                    aapsLogger.debug(LTag.PUMPCOMM, "$logItem ")
-                    val logStartDate = DateUtils.parseDate(logItem.dttm, "yyyy-MM-dd HH:mm:ss")
-                    val logDateTime = logStartDate.time
+                    val logItem = LOG_INJECT_SQUARE_SUCCESS.parse(bufferData)
+                    aapsLogger.debug(LTag.PUMPCOMM) { "$logItem " }
+                    val logDateTime = logItem.timestamp
                     diaconnG8HistoryRecord.code = RecordTypes.RECORD_TYPE_BOLUS
                     diaconnG8HistoryRecord.timestamp = logDateTime
                     diaconnG8HistoryRecord.duration = logItem.getInjectTime()
@@ -238,16 +220,15 @@ class BigLogInquireResponsePacket(
                 }
 
                 LOG_INJECT_SQUARE_FAIL.LOG_KIND -> {
-                    val logItem = LOG_INJECT_SQUARE_FAIL.parse(logDataToHexString)
-                    aapsLogger.debug(LTag.PUMPCOMM, "$logItem ")
-                    val logStartDate = DateUtils.parseDate(logItem.dttm, "yyyy-MM-dd HH:mm:ss")
-                    val logDateTime = logStartDate.time
-                    val newRecord = pumpSync.syncStopExtendedBolusWithPumpId(
-                        timestamp = logDateTime,
-                        endPumpId = logDateTime,
-                        pumpType = PumpType.DIACONN_G8,
-                        pumpSerial = diaconnG8Pump.serialNo.toString())
-                    aapsLogger.debug(LTag.PUMPCOMM, (if (newRecord) "**NEW** " else "") + "EVENT EXTENDEDSTOP (" + pumplogKind + ") " + dateUtil.dateAndTimeString(logDateTime) + " (" + logDateTime + ")" + " Delivered: " + logItem.injectAmount / 100.0 + "U RealDuration: " + logItem.getInjectTime() + "min")
+                    val logItem = LOG_INJECT_SQUARE_FAIL.parse(bufferData)
+                    aapsLogger.debug(LTag.PUMPCOMM) { "$logItem " }
+                    val logDateTime = logItem.timestamp
+                    sync(
+                        PumpSync.HistoryEvent.StopExtendedBolus(
+                            timestamp = logDateTime,
+                            endPumpId = logDateTime
+                        )
+                    ) { newRecord -> (if (newRecord) "**NEW** " else "") + "EVENT EXTENDEDSTOP (" + pumplogKind + ") " + dateUtil.dateAndTimeString(logDateTime) + " (" + logDateTime + ")" + " Delivered: " + logItem.injectAmount / 100.0 + "U RealDuration: " + logItem.getInjectTime() + "min" }
                     diaconnG8HistoryRecord.code = RecordTypes.RECORD_TYPE_BOLUS
                     diaconnG8HistoryRecord.timestamp = logDateTime
                     diaconnG8HistoryRecord.value = logItem.injectAmount / 100.0
@@ -259,21 +240,20 @@ class BigLogInquireResponsePacket(
                 }
 
                 LOG_SET_DUAL_INJECTION.LOG_KIND -> {
-                    val logItem = LOG_SET_DUAL_INJECTION.parse(logDataToHexString)
-                    aapsLogger.debug(LTag.PUMPCOMM, "$logItem ")
-                    val logStartDate = DateUtils.parseDate(logItem.dttm, "yyyy-MM-dd HH:mm:ss")
-                    val logDateTime = logStartDate.time
+                    val logItem = LOG_SET_DUAL_INJECTION.parse(bufferData)
+                    aapsLogger.debug(LTag.PUMPCOMM) { "$logItem " }
+                    val logDateTime = logItem.timestamp
 
                     // dual square 처리.
-                    val newRecord = pumpSync.syncExtendedBolusWithPumpId(
-                        timestamp = logDateTime,
-                        amount = logItem.setSquareAmount / 100.0,
-                        duration = T.mins((logItem.getInjectTime() * 10).toLong()).msecs(),
-                        isEmulatingTB = false,
-                        pumpId = logDateTime,
-                        pumpType = PumpType.DIACONN_G8,
-                        pumpSerial = diaconnG8Pump.serialNo.toString())
-                    aapsLogger.debug(LTag.PUMPCOMM, (if (newRecord) "**NEW** " else "") + "EVENT EXTENDEDSTART (" + pumplogKind + ") " + dateUtil.dateAndTimeString(logDateTime) + " (" + logDateTime + ")" + " Amount: " + logItem.setSquareAmount / 100.0 + "U Duration: " + logItem.getInjectTime() * 10 + "min")
+                    sync(
+                        PumpSync.HistoryEvent.ExtendedBolus(
+                            timestamp = logDateTime,
+                            amount = logItem.setSquareAmount / 100.0,
+                            duration = T.mins((logItem.getInjectTime() * 10).toLong()).msecs(),
+                            isEmulatingTB = false,
+                            pumpId = logDateTime
+                        )
+                    ) { newRecord -> (if (newRecord) "**NEW** " else "") + "EVENT EXTENDEDSTART (" + pumplogKind + ") " + dateUtil.dateAndTimeString(logDateTime) + " (" + logDateTime + ")" + " Amount: " + logItem.setSquareAmount / 100.0 + "U Duration: " + logItem.getInjectTime() * 10 + "min" }
                     diaconnG8HistoryRecord.code = RecordTypes.RECORD_TYPE_BOLUS
                     diaconnG8HistoryRecord.timestamp = logDateTime
                     diaconnG8HistoryRecord.value = logItem.setSquareAmount / 100.0
@@ -286,19 +266,18 @@ class BigLogInquireResponsePacket(
                 }
 
                 LOG_INJECTION_DUAL_NORMAL.LOG_KIND -> {
-                    val logItem = LOG_INJECTION_DUAL_NORMAL.parse(logDataToHexString)
-                    aapsLogger.debug(LTag.PUMPCOMM, "$logItem ")
-                    val logStartDate = DateUtils.parseDate(logItem.dttm, "yyyy-MM-dd HH:mm:ss")
-                    val logDateTime = logStartDate.time
+                    val logItem = LOG_INJECTION_DUAL_NORMAL.parse(bufferData)
+                    aapsLogger.debug(LTag.PUMPCOMM) { "$logItem " }
+                    val logDateTime = logItem.timestamp
                     val detailedBolusInfo = detailedBolusInfoStorage.findDetailedBolusInfo(logDateTime, logItem.injectAmount / 100.0)
-                    val newRecord = pumpSync.syncBolusWithPumpId(
-                        timestamp = logDateTime,
-                        amount = logItem.injectAmount / 100.0,
-                        type = detailedBolusInfo?.bolusType,
-                        pumpId = logDateTime,
-                        pumpType = PumpType.DIACONN_G8,
-                        pumpSerial = diaconnG8Pump.serialNo.toString())
-                    aapsLogger.debug(LTag.PUMPCOMM, (if (newRecord) "**NEW** " else "") + "EVENT DUALBOLUS (" + pumplogKind + ") " + dateUtil.dateAndTimeString(logDateTime) + " (" + logDateTime + ")" + " Bolus: " + logItem.injectAmount / 100.0 + "U Duration: " + logItem.getInjectTime() + "min")
+                    sync(
+                        PumpSync.HistoryEvent.Bolus(
+                            timestamp = logDateTime,
+                            amount = logItem.injectAmount / 100.0,
+                            type = detailedBolusInfo?.bolusType,
+                            pumpId = logDateTime
+                        )
+                    ) { newRecord -> (if (newRecord) "**NEW** " else "") + "EVENT DUALBOLUS (" + pumplogKind + ") " + dateUtil.dateAndTimeString(logDateTime) + " (" + logDateTime + ")" + " Bolus: " + logItem.injectAmount / 100.0 + "U Duration: " + logItem.getInjectTime() + "min" }
 
                     diaconnG8Pump.lastBolusAmount = logItem.injectAmount / 100.0
                     diaconnG8Pump.lastBolusTime = logDateTime
@@ -315,10 +294,9 @@ class BigLogInquireResponsePacket(
                 }
 
                 LOG_INJECT_DUAL_SUCCESS.LOG_KIND -> {
-                    val logItem = LOG_INJECT_DUAL_SUCCESS.parse(logDataToHexString)
-                    aapsLogger.debug(LTag.PUMPCOMM, "$logItem ")
-                    val logStartDate = DateUtils.parseDate(logItem.dttm, "yyyy-MM-dd HH:mm:ss")
-                    val logDateTime = logStartDate.time
+                    val logItem = LOG_INJECT_DUAL_SUCCESS.parse(bufferData)
+                    aapsLogger.debug(LTag.PUMPCOMM) { "$logItem " }
+                    val logDateTime = logItem.timestamp
 
                     diaconnG8HistoryRecord.code = RecordTypes.RECORD_TYPE_BOLUS
                     diaconnG8HistoryRecord.timestamp = logDateTime
@@ -331,16 +309,15 @@ class BigLogInquireResponsePacket(
                 }
 
                 LOG_INJECT_DUAL_FAIL.LOG_KIND -> {
-                    val logItem = LOG_INJECT_DUAL_FAIL.parse(logDataToHexString)
-                    aapsLogger.debug(LTag.PUMPCOMM, "$logItem ")
-                    val logStartDate = DateUtils.parseDate(logItem.dttm, "yyyy-MM-dd HH:mm:ss")
-                    val logDateTime = logStartDate.time
-                    val newRecord = pumpSync.syncStopExtendedBolusWithPumpId(
-                        timestamp = logDateTime,
-                        endPumpId = logDateTime,
-                        pumpType = PumpType.DIACONN_G8,
-                        pumpSerial = diaconnG8Pump.serialNo.toString())
-                    aapsLogger.debug(LTag.PUMPCOMM, (if (newRecord) "**NEW** " else "") + "EVENT EXTENDEDSTOP (" + pumplogKind + ") " + dateUtil.dateAndTimeString(logDateTime) + " (" + logDateTime + ")" + " Delivered: " + logItem.injectSquareAmount / 100.0 + "U RealDuration: " + logItem.getInjectTime() + "min")
+                    val logItem = LOG_INJECT_DUAL_FAIL.parse(bufferData)
+                    aapsLogger.debug(LTag.PUMPCOMM) { "$logItem " }
+                    val logDateTime = logItem.timestamp
+                    sync(
+                        PumpSync.HistoryEvent.StopExtendedBolus(
+                            timestamp = logDateTime,
+                            endPumpId = logDateTime
+                        )
+                    ) { newRecord -> (if (newRecord) "**NEW** " else "") + "EVENT EXTENDEDSTOP (" + pumplogKind + ") " + dateUtil.dateAndTimeString(logDateTime) + " (" + logDateTime + ")" + " Delivered: " + logItem.injectSquareAmount / 100.0 + "U RealDuration: " + logItem.getInjectTime() + "min" }
 
                     diaconnG8HistoryRecord.code = RecordTypes.RECORD_TYPE_BOLUS
                     diaconnG8HistoryRecord.timestamp = logDateTime
@@ -353,10 +330,9 @@ class BigLogInquireResponsePacket(
                 }
 
                 LOG_INJECTION_1HOUR_BASAL.LOG_KIND -> {
-                    val logItem = LOG_INJECTION_1HOUR_BASAL.parse(logDataToHexString)
-                    aapsLogger.debug(LTag.PUMPCOMM, "$logItem ")
-                    val logStartDate = DateUtils.parseDate(logItem.dttm, "yyyy-MM-dd HH:mm:ss")
-                    val logDateTime = logStartDate.time
+                    val logItem = LOG_INJECTION_1HOUR_BASAL.parse(bufferData)
+                    aapsLogger.debug(LTag.PUMPCOMM) { "$logItem " }
+                    val logDateTime = logItem.timestamp
                     diaconnG8HistoryRecord.code = RecordTypes.RECORD_TYPE_BASALHOUR
                     diaconnG8HistoryRecord.timestamp = logDateTime
                     diaconnG8HistoryRecord.value = logItem.beforeAmount / 100.0
@@ -366,10 +342,9 @@ class BigLogInquireResponsePacket(
                 }
 
                 LOG_SUSPEND_V2.LOG_KIND -> {
-                    val logItem = LOG_SUSPEND_V2.parse(logDataToHexString)
-                    aapsLogger.debug(LTag.PUMPCOMM, "$logItem ")
-                    val logStartDate = DateUtils.parseDate(logItem.dttm, "yyyy-MM-dd HH:mm:ss")
-                    val logDateTime = logStartDate.time
+                    val logItem = LOG_SUSPEND_V2.parse(bufferData)
+                    aapsLogger.debug(LTag.PUMPCOMM) { "$logItem " }
+                    val logDateTime = logItem.timestamp
                     diaconnG8HistoryRecord.code = RecordTypes.RECORD_TYPE_SUSPEND
                     diaconnG8HistoryRecord.timestamp = logDateTime
                     diaconnG8HistoryRecord.stringValue = rh.gs(R.string.diaconn_g8_lgosuspend, logItem.getBasalPattern())
@@ -378,10 +353,9 @@ class BigLogInquireResponsePacket(
                 }
 
                 LOG_SUSPEND_RELEASE_V2.LOG_KIND -> {
-                    val logItem = LOG_SUSPEND_RELEASE_V2.parse(logDataToHexString)
-                    aapsLogger.debug(LTag.PUMPCOMM, "$logItem ")
-                    val logStartDate = DateUtils.parseDate(logItem.dttm, "yyyy-MM-dd HH:mm:ss")
-                    val logDateTime = logStartDate.time
+                    val logItem = LOG_SUSPEND_RELEASE_V2.parse(bufferData)
+                    aapsLogger.debug(LTag.PUMPCOMM) { "$logItem " }
+                    val logDateTime = logItem.timestamp
                     diaconnG8HistoryRecord.code = RecordTypes.RECORD_TYPE_SUSPEND
                     diaconnG8HistoryRecord.timestamp = logDateTime
                     diaconnG8HistoryRecord.stringValue = rh.gs(R.string.diaconn_g8_lgorelease, logItem.getBasalPattern())
@@ -390,19 +364,17 @@ class BigLogInquireResponsePacket(
                 }
 
                 LOG_CHANGE_INJECTOR_SUCCESS.LOG_KIND -> {
-                    val logItem = LOG_CHANGE_INJECTOR_SUCCESS.parse(logDataToHexString)
-                    aapsLogger.debug(LTag.PUMPCOMM, "$logItem ")
-                    val logStartDate = DateUtils.parseDate(logItem.dttm, "yyyy-MM-dd HH:mm:ss")
-                    val logDateTime = logStartDate.time
+                    val logItem = LOG_CHANGE_INJECTOR_SUCCESS.parse(bufferData)
+                    aapsLogger.debug(LTag.PUMPCOMM) { "$logItem " }
+                    val logDateTime = logItem.timestamp
                     if (sp.getBoolean(R.string.key_diaconn_g8_loginsulinchange, true)) {
-                        val newRecord = pumpSync.insertTherapyEventIfNewWithTimestamp(
-                            timestamp = logDateTime,
-                            type = DetailedBolusInfo.EventType.INSULIN_CHANGE,
-                            pumpId = logDateTime,
-                            pumpType = PumpType.DIACONN_G8,
-                            pumpSerial = diaconnG8Pump.serialNo.toString()
-                        )
-                        aapsLogger.debug(LTag.PUMPCOMM, (if (newRecord) "**NEW** " else "") + "EVENT INSULINCHANGE(" + pumplogKind + ") " + dateUtil.dateAndTimeString(logDateTime) + " (" + logDateTime + ")" + " Amount: " + logItem.remainAmount / 100.0 + "U")
+                        sync(
+                            PumpSync.HistoryEvent.TherapyEvent(
+                                timestamp = logDateTime,
+                                type = DetailedBolusInfo.EventType.INSULIN_CHANGE,
+                                pumpId = logDateTime
+                            )
+                        ) { newRecord -> (if (newRecord) "**NEW** " else "") + "EVENT INSULINCHANGE(" + pumplogKind + ") " + dateUtil.dateAndTimeString(logDateTime) + " (" + logDateTime + ")" + " Amount: " + logItem.remainAmount / 100.0 + "U" }
                     }
                     diaconnG8HistoryRecord.code = RecordTypes.RECORD_TYPE_REFILL
                     diaconnG8HistoryRecord.timestamp = logDateTime
@@ -413,20 +385,18 @@ class BigLogInquireResponsePacket(
                 }
 
                 LOG_CHANGE_TUBE_SUCCESS.LOG_KIND -> {
-                    val logItem = LOG_CHANGE_TUBE_SUCCESS.parse(logDataToHexString)
-                    aapsLogger.debug(LTag.PUMPCOMM, "$logItem ")
-                    val logStartDate = DateUtils.parseDate(logItem.dttm, "yyyy-MM-dd HH:mm:ss")
-                    val logDateTime = logStartDate.time
+                    val logItem = LOG_CHANGE_TUBE_SUCCESS.parse(bufferData)
+                    aapsLogger.debug(LTag.PUMPCOMM) { "$logItem " }
+                    val logDateTime = logItem.timestamp
                     if (sp.getBoolean(R.string.key_diaconn_g8_logtubechange, true)) {
-                        val newRecord = pumpSync.insertTherapyEventIfNewWithTimestamp(
-                            timestamp = logDateTime,
-                            type = DetailedBolusInfo.EventType.NOTE,
-                            note = rh.gs(R.string.diaconn_g8_logtubeprime, logItem.primeAmount / 100.0),
-                            pumpId = logDateTime,
-                            pumpType = PumpType.DIACONN_G8,
-                            pumpSerial = diaconnG8Pump.serialNo.toString()
-                        )
-                        aapsLogger.debug(LTag.PUMPCOMM, (if (newRecord) "**NEW** " else "") + "EVENT TUBECHANGE(" + pumplogKind + ") " + dateUtil.dateAndTimeString(logDateTime) + " (" + logDateTime + ")" + " Amount: " + logItem.primeAmount / 100.0 + "U")
+                        sync(
+                            PumpSync.HistoryEvent.TherapyEvent(
+                                timestamp = logDateTime,
+                                type = DetailedBolusInfo.EventType.NOTE,
+                                note = rh.gs(R.string.diaconn_g8_logtubeprime, logItem.primeAmount / 100.0),
+                                pumpId = logDateTime
+                            )
+                        ) { newRecord -> (if (newRecord) "**NEW** " else "") + "EVENT TUBECHANGE(" + pumplogKind + ") " + dateUtil.dateAndTimeString(logDateTime) + " (" + logDateTime + ")" + " Amount: " + logItem.primeAmount / 100.0 + "U" }
                     }
 
 
@@ -439,10 +409,9 @@ class BigLogInquireResponsePacket(
                 }
 
                 LOG_INJECTION_1DAY.LOG_KIND -> { // Daily Bolus Log
-                    val logItem = LOG_INJECTION_1DAY.parse(logDataToHexString)
-                    aapsLogger.debug(LTag.PUMPCOMM, "$logItem ")
-                    val logStartDate = DateUtils.parseDate(logItem.dttm, "yyyy-MM-dd HH:mm:ss")
-                    val logDateTime = logStartDate.time
+                    val logItem = LOG_INJECTION_1DAY.parse(bufferData)
+                    aapsLogger.debug(LTag.PUMPCOMM) { "$logItem " }
+                    val logDateTime = logItem.timestamp
 
                     diaconnG8HistoryRecord.code = RecordTypes.RECORD_TYPE_DAILY
                     diaconnG8HistoryRecord.timestamp = DateTime(logDateTime).withTimeAtStartOfDay().millis
@@ -472,24 +441,23 @@ class BigLogInquireResponsePacket(
                     diaconnHistoryRecordDao.createOrUpdate(diaconnG8HistoryRecord)
 
                     //If it is a TDD, store it for stats also.
-                    pumpSync.createOrUpdateTotalDailyDose(
-                        timestamp = diaconnG8HistoryRecord.timestamp,
-                        bolusAmount = diaconnG8HistoryRecord.dailyBolus,
-                        basalAmount = diaconnG8HistoryRecord.dailyBasal,
-                        totalAmount = 0.0,
-                        pumpId = null,
-                        pumpType = PumpType.DIACONN_G8,
-                        diaconnG8Pump.serialNo.toString()
-                    )
+                    sync(
+                        PumpSync.HistoryEvent.TotalDailyDose(
+                            timestamp = diaconnG8HistoryRecord.timestamp,
+                            bolusAmount = diaconnG8HistoryRecord.dailyBolus,
+                            basalAmount = diaconnG8HistoryRecord.dailyBasal,
+                            totalAmount = 0.0,
+                            pumpId = null
+                        )
+                    ) { newRecord -> (if (newRecord) "**NEW** " else "") + "EVENT TDD " + dateUtil.dateAndTimeString(diaconnG8HistoryRecord.timestamp) }
 
                     status = "DAILYBOLUS " + dateUtil.timeString(logDateTime)
                 }
 
                 LOG_INJECTION_1DAY_BASAL.LOG_KIND -> { // Daily Basal Log
-                    val logItem = LOG_INJECTION_1DAY_BASAL.parse(logDataToHexString)
-                    aapsLogger.debug(LTag.PUMPCOMM, "$logItem ")
-                    val logStartDate = DateUtils.parseDate(logItem.dttm, "yyyy-MM-dd HH:mm:ss")
-                    val logDateTime = logStartDate.time
+                    val logItem = LOG_INJECTION_1DAY_BASAL.parse(bufferData)
+                    aapsLogger.debug(LTag.PUMPCOMM) { "$logItem " }
+                    val logDateTime = logItem.timestamp
 
                     diaconnG8HistoryRecord.code = RecordTypes.RECORD_TYPE_DAILY
                     diaconnG8HistoryRecord.timestamp = DateTime(logDateTime).withTimeAtStartOfDay().millis
@@ -534,19 +502,17 @@ class BigLogInquireResponsePacket(
                 }
 
                 LOG_CHANGE_NEEDLE_SUCCESS.LOG_KIND -> {
-                    val logItem = LOG_CHANGE_NEEDLE_SUCCESS.parse(logDataToHexString)
-                    aapsLogger.debug(LTag.PUMPCOMM, "$logItem ")
-                    val logStartDate = DateUtils.parseDate(logItem.dttm, "yyyy-MM-dd HH:mm:ss")
-                    val logDateTime = logStartDate.time
+                    val logItem = LOG_CHANGE_NEEDLE_SUCCESS.parse(bufferData)
+                    aapsLogger.debug(LTag.PUMPCOMM) { "$logItem " }
+                    val logDateTime = logItem.timestamp
                     if (sp.getBoolean(R.string.key_diaconn_g8_logneedlechange, true)) {
-                        val newRecord = pumpSync.insertTherapyEventIfNewWithTimestamp(
-                            timestamp = logDateTime,
-                            type = DetailedBolusInfo.EventType.CANNULA_CHANGE,
-                            pumpId = logDateTime,
-                            pumpType = PumpType.DIACONN_G8,
-                            pumpSerial = diaconnG8Pump.serialNo.toString()
-                        )
-                        aapsLogger.debug(LTag.PUMPCOMM,  (if (newRecord) "**NEW** " else "") + "EVENT NEEDLECHANGE(" + pumplogKind + ") " + dateUtil.dateAndTimeString(logDateTime) + " (" + logDateTime + ")" + " Amount: " + logItem.remainAmount / 100.0 + "U")
+                        sync(
+                            PumpSync.HistoryEvent.TherapyEvent(
+                                timestamp = logDateTime,
+                                type = DetailedBolusInfo.EventType.CANNULA_CHANGE,
+                                pumpId = logDateTime
+                            )
+                        ) { newRecord -> (if (newRecord) "**NEW** " else "") + "EVENT NEEDLECHANGE(" + pumplogKind + ") " + dateUtil.dateAndTimeString(logDateTime) + " (" + logDateTime + ")" + " Amount: " + logItem.remainAmount / 100.0 + "U" }
                     }
 
                     diaconnG8HistoryRecord.code = RecordTypes.RECORD_TYPE_REFILL
@@ -558,11 +524,10 @@ class BigLogInquireResponsePacket(
                 }
 
                 LOG_TB_START_V3.LOG_KIND -> {
-                    val logItem = LOG_TB_START_V3.parse(logDataToHexString)
-                    aapsLogger.debug(LTag.PUMPCOMM, "$logItem ")
+                    val logItem = LOG_TB_START_V3.parse(bufferData)
+                    aapsLogger.debug(LTag.PUMPCOMM) { "$logItem " }
 
-                    val logStartDate = DateUtils.parseDate(logItem.dttm, "yyyy-MM-dd HH:mm:ss")
-                    val logDateTime = logStartDate.time
+                    val logDateTime = logItem.timestamp
                     var absoluteRate = 0.0
                     if (logItem.getTbInjectRateRatio() >= 50000) {
                         val tempBasalPercent = logItem.getTbInjectRateRatio() - 50000
@@ -574,16 +539,16 @@ class BigLogInquireResponsePacket(
                     }
 
                     val temporaryBasalInfo = temporaryBasalStorage.findTemporaryBasal(logDateTime, absoluteRate)
-                    val newRecord = pumpSync.syncTemporaryBasalWithPumpId(
-                        timestamp = logDateTime,
-                        rate = absoluteRate,
-                        duration = T.mins((logItem.tbTime * 15).toLong()).msecs(),
-                        isAbsolute = true,
-                        type = temporaryBasalInfo?.type,
-                        pumpId = logDateTime,
-                        pumpType = PumpType.DIACONN_G8,
-                        pumpSerial = diaconnG8Pump.serialNo.toString())
-                   aapsLogger.debug(LTag.PUMPCOMM, (if (newRecord) "**NEW** " else "") + "EVENT TEMPSTART (" + pumplogKind + ") " + dateUtil.dateAndTimeString(logDateTime) + " (" + logDateTime + ")" + " Ratio: " + absoluteRate + "U Duration: " + logItem.tbTime * 15 + "min")
+                    sync(
+                        PumpSync.HistoryEvent.TemporaryBasal(
+                            timestamp = logDateTime,
+                            rate = absoluteRate,
+                            duration = T.mins((logItem.tbTime * 15).toLong()).msecs(),
+                            isAbsolute = true,
+                            type = temporaryBasalInfo?.type,
+                            pumpId = logDateTime
+                        )
+                    ) { newRecord -> (if (newRecord) "**NEW** " else "") + "EVENT TEMPSTART (" + pumplogKind + ") " + dateUtil.dateAndTimeString(logDateTime) + " (" + logDateTime + ")" + " Ratio: " + absoluteRate + "U Duration: " + logItem.tbTime * 15 + "min" }
 
                     diaconnG8HistoryRecord.code = RecordTypes.RECORD_TYPE_TB
                     diaconnG8HistoryRecord.timestamp = logDateTime
@@ -595,10 +560,9 @@ class BigLogInquireResponsePacket(
                 }
 
                 LOG_TB_STOP_V3.LOG_KIND -> {
-                    val logItem = LOG_TB_STOP_V3.parse(logDataToHexString)
-                    aapsLogger.debug(LTag.PUMPCOMM, "$logItem ")
-                    val logStartDate = DateUtils.parseDate(logItem.dttm, "yyyy-MM-dd HH:mm:ss")
-                    val logDateTime = logStartDate.time
+                    val logItem = LOG_TB_STOP_V3.parse(bufferData)
+                    aapsLogger.debug(LTag.PUMPCOMM) { "$logItem " }
+                    val logDateTime = logItem.timestamp
                     var absoluteRate = 0.0
                     if (logItem.getTbInjectRateRatio() >= 50000) {
                         val tempBasalPercent = logItem.getTbInjectRateRatio() - 50000
@@ -608,12 +572,12 @@ class BigLogInquireResponsePacket(
                         absoluteRate = (logItem.getTbInjectRateRatio() - 1000) / 100.0
                     }
 
-                    val newRecord = pumpSync.syncStopTemporaryBasalWithPumpId(
-                        timestamp = logDateTime,
-                        endPumpId = dateUtil.now(),
-                        pumpType = PumpType.DIACONN_G8,
-                        pumpSerial = diaconnG8Pump.serialNo.toString())
-                    aapsLogger.debug(LTag.PUMPCOMM, (if (newRecord) "**NEW** " else "") + "EVENT TEMPSTOP (" + pumplogKind + ") " + dateUtil.dateAndTimeString(logDateTime) + " (" + logDateTime + ")")
+                    sync(
+                        PumpSync.HistoryEvent.StopTemporaryBasal(
+                            timestamp = logDateTime,
+                            endPumpId = dateUtil.now()
+                        )
+                    ) { newRecord -> (if (newRecord) "**NEW** " else "") + "EVENT TEMPSTOP (" + pumplogKind + ") " + dateUtil.dateAndTimeString(logDateTime) + " (" + logDateTime + ")" }
 
 
                     diaconnG8HistoryRecord.code = RecordTypes.RECORD_TYPE_TB
@@ -625,10 +589,9 @@ class BigLogInquireResponsePacket(
                 }
 
                 LOG_ALARM_BATTERY.LOG_KIND -> { // BATTERY SHORTAGE ALARM
-                    val logItem = LOG_ALARM_BATTERY.parse(logDataToHexString)
-                    aapsLogger.debug(LTag.PUMPCOMM, "$logItem ")
-                    val logStartDate = DateUtils.parseDate(logItem.dttm, "yyyy-MM-dd HH:mm:ss")
-                    val logDateTime = logStartDate.time
+                    val logItem = LOG_ALARM_BATTERY.parse(bufferData)
+                    aapsLogger.debug(LTag.PUMPCOMM) { "$logItem " }
+                    val logDateTime = logItem.timestamp
 
                     diaconnG8HistoryRecord.code = RecordTypes.RECORD_TYPE_ALARM
                     diaconnG8HistoryRecord.timestamp = logDateTime
@@ -638,11 +601,10 @@ class BigLogInquireResponsePacket(
                 }
 
                 LOG_ALARM_BLOCK.LOG_KIND -> { // INJECTION BLOCKED ALARM
-                    val logItem = LOG_ALARM_BLOCK.parse(logDataToHexString)
-                    aapsLogger.debug(LTag.PUMPCOMM, "$logItem ")
+                    val logItem = LOG_ALARM_BLOCK.parse(bufferData)
+                    aapsLogger.debug(LTag.PUMPCOMM) { "$logItem " }
 
-                    val logStartDate = DateUtils.parseDate(logItem.dttm, "yyyy-MM-dd HH:mm:ss")
-                    val logDateTime = logStartDate.time
+                    val logDateTime = logItem.timestamp
 
                     diaconnG8HistoryRecord.code = RecordTypes.RECORD_TYPE_ALARM
                     diaconnG8HistoryRecord.timestamp = logDateTime
@@ -653,11 +615,10 @@ class BigLogInquireResponsePacket(
                 }
 
                 LOG_ALARM_SHORTAGE.LOG_KIND -> { // INSULIN SHORTAGE ALARM
-                    val logItem = LOG_ALARM_SHORTAGE.parse(logDataToHexString)
-                    aapsLogger.debug(LTag.PUMPCOMM, "$logItem ")
+                    val logItem = LOG_ALARM_SHORTAGE.parse(bufferData)
+                    aapsLogger.debug(LTag.PUMPCOMM) { "$logItem " }
 
-                    val logStartDate = DateUtils.parseDate(logItem.dttm, "yyyy-MM-dd HH:mm:ss")
-                    val logDateTime = logStartDate.time
+                    val logDateTime = logItem.timestamp
 
                     diaconnG8HistoryRecord.code = RecordTypes.RECORD_TYPE_ALARM
                     diaconnG8HistoryRecord.timestamp = logDateTime
@@ -668,11 +629,10 @@ class BigLogInquireResponsePacket(
                 }
 
                 LOG_RESET_SYS_V3.LOG_KIND -> {
-                    val logItem = LOG_RESET_SYS_V3.parse(logDataToHexString)
-                    aapsLogger.debug(LTag.PUMPCOMM, "$logItem ")
+                    val logItem = LOG_RESET_SYS_V3.parse(bufferData)
+                    aapsLogger.debug(LTag.PUMPCOMM) { "$logItem " }
 
-                    val logStartDate = DateUtils.parseDate(logItem.dttm, "yyyy-MM-dd HH:mm:ss")
-                    val logDateTime = logStartDate.time
+                    val logDateTime = logItem.timestamp
 
                     diaconnG8HistoryRecord.code = RecordTypes.RECORD_TYPE_ALARM
                     diaconnG8HistoryRecord.timestamp = logDateTime
@@ -680,14 +640,13 @@ class BigLogInquireResponsePacket(
                     diaconnHistoryRecordDao.createOrUpdate(diaconnG8HistoryRecord)
                     if (logItem.reason == 3.toByte()) {
                         if (sp.getBoolean(R.string.key_diaconn_g8_logbatterychange, true)) {
-                            val newRecord = pumpSync.insertTherapyEventIfNewWithTimestamp(
-                                timestamp = logDateTime,
-                                type = DetailedBolusInfo.EventType.PUMP_BATTERY_CHANGE,
-                                pumpId = logDateTime,
-                                pumpType = PumpType.DIACONN_G8,
-                                pumpSerial = diaconnG8Pump.serialNo.toString()
-                            )
-                            aapsLogger.debug(LTag.PUMPCOMM,  (if (newRecord) "**NEW** " else "") + "EVENT BATTERYCHANGE(" + pumplogKind + ") " + dateUtil.dateAndTimeString(logDateTime) + " (" + logDateTime + ")" + " remainAmount: " + logItem.batteryRemain.toInt() + "%")
+                            sync(
+                                PumpSync.HistoryEvent.TherapyEvent(
+                                    timestamp = logDateTime,
+                                    type = DetailedBolusInfo.EventType.PUMP_BATTERY_CHANGE,
+                                    pumpId = logDateTime
+                                )
+                            ) { newRecord -> (if (newRecord) "**NEW** " else "") + "EVENT BATTERYCHANGE(" + pumplogKind + ") " + dateUtil.dateAndTimeString(logDateTime) + " (" + logDateTime + ")" + " remainAmount: " + logItem.batteryRemain.toInt() + "%" }
                         }
                     }
                     status = "RESET " + dateUtil.timeString(logDateTime)
@@ -701,12 +660,37 @@ class BigLogInquireResponsePacket(
             }
             rxBus.send(EventPumpStatusChanged(rh.gs(R.string.processinghistory) + ": " + status))
         }
+        // all logs of packet are synced in one transaction
+        // last log number is stored after that so logs are requested again if it fails
+        syncHistoryEvents()
+        if (logLength > 0) {
+            sp.putInt(rh.gs(R.string.apslastLogNum), diaconnG8Pump.apslastLogNum)
+            sp.putInt(rh.gs(R.string.apsWrappingCount), diaconnG8Pump.apsWrappingCount)
+        }
+    }
+
+    private fun sync(event: PumpSync.HistoryEvent, log: (newRecord: Boolean) -> String) {
+        historyEvents.add(event)
+        historyEventLogs.add(log)
+    }
+
+    private fun syncHistoryEvents() {
+        if (historyEvents.isEmpty()) return
+        pumpSync.syncPumpHistory(historyEvents, PumpType.DIACONN_G8, diaconnG8Pump.serialNo.toString())
+            .forEachIndexed { index, newRecord -> aapsLogger.debug(LTag.PUMPCOMM, historyEventLogs[index](newRecord)) }
+        historyEvents.clear()
+        historyEventLogs.clear()
     }
 
     override fun getFriendlyName(): String {
         return "BIG_LOG_INQUIRE_RESPONSE"
     }
 
+    companion object {
+
+        const val LOG_ENTRY_SIZE = 15 // wrapping count 1 byte + log number 2 bytes + log 12 bytes
+    }
+
     private fun getReasonName(logKind: Byte, reason: Byte): String{
         val logInjectNormalFail: Byte = 0x0B
         val logInjectSquareFail: Byte = 0x0E
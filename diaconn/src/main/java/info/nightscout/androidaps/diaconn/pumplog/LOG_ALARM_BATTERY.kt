@@ -1,14 +1,12 @@
 package info.nightscout.androidaps.diaconn.pumplog
 
 import java.nio.ByteBuffer
-import java.nio.ByteOrder
 
 /*
 * Battery Shortage Alarm Log
 */
 class LOG_ALARM_BATTERY private constructor(
-    val data: String,
-    val dttm: String,
+    val timestamp: Long,
     typeAndKind: Byte,    // 1=INFO, 2=WARNING, 3=MAJOR, 4=CRITICAL
     private val alarmLevel: Byte,    // 1=OCCUR, 2=STOP
     private val ack: Byte,
@@ -21,8 +19,7 @@ class LOG_ALARM_BATTERY private constructor(
     override fun toString(): String {
         val sb = StringBuilder("LOG_ALARM_BATTERY{")
         sb.append("LOG_KIND=").append(LOG_KIND.toInt())
-        sb.append(", data='").append(data).append('\'')
-        sb.append(", dttm='").append(dttm).append('\'')
+        sb.append(", timestamp=").append(timestamp)
         sb.append(", type=").append(type.toInt())
         sb.append(", kind=").append(kind.toInt())
         sb.append(", alarmLevel=").append(alarmLevel.toInt())
@@ -35,13 +32,9 @@ class LOG_ALARM_BATTERY private constructor(
     companion object {
 
         const val LOG_KIND: Byte = 0x28
-        fun parse(data: String): LOG_ALARM_BATTERY {
-            val bytes = PumplogUtil.hexStringToByteArray(data)
-            val buffer = ByteBuffer.wrap(bytes)
-            buffer.order(ByteOrder.LITTLE_ENDIAN)
+        fun parse(buffer: ByteBuffer): LOG_ALARM_BATTERY {
             return LOG_ALARM_BATTERY(
-                data,
-                PumplogUtil.getDttm(buffer),
+                PumplogUtil.getTimestamp(buffer),
                 PumplogUtil.getByte(buffer),
                 PumplogUtil.getByte(buffer),
                 PumplogUtil.getByte(buffer),
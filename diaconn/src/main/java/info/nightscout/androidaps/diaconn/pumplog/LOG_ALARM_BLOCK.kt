@@ -1,14 +1,12 @@
 package info.nightscout.androidaps.diaconn.pumplog
 
 import java.nio.ByteBuffer
-import java.nio.ByteOrder
 
 /*
 * Injection Blocked Alarm Log
 */
 class LOG_ALARM_BLOCK private constructor(
-    val data: String,
-    val dttm: String,
+    val timestamp: Long,
     typeAndKind: Byte, // 1=INFO, 2=WARNING, 3=MAJOR, 4=CRITICAL
     val alarmLevel: Byte,     // 1=OCCUR
     val ack: Byte,
@@ -23,8 +21,7 @@ class LOG_ALARM_BLOCK private constructor(
     override fun toString(): String {
         val sb = StringBuilder("LOG_ALARM_BLOCK{")
         sb.append("LOG_KIND=").append(LOG_KIND.toInt())
-        sb.append(", data='").append(data).append('\'')
-        sb.append(", dttm='").append(dttm).append('\'')
+        sb.append(", timestamp=").append(timestamp)
         sb.append(", type=").append(type.toInt())
         sb.append(", kind=").append(kind.toInt())
         sb.append(", alarmLevel=").append(alarmLevel.toInt())
@@ -39,13 +36,9 @@ class LOG_ALARM_BLOCK private constructor(
     companion object {
 
         const val LOG_KIND: Byte = 0x29
-        fun parse(data: String): LOG_ALARM_BLOCK {
-            val bytes = PumplogUtil.hexStringToByteArray(data)
-            val buffer = ByteBuffer.wrap(bytes)
-            buffer.order(ByteOrder.LITTLE_ENDIAN)
+        fun parse(buffer: ByteBuffer): LOG_ALARM_BLOCK {
             return LOG_ALARM_BLOCK(
-                data,
-                PumplogUtil.getDttm(buffer),
+                PumplogUtil.getTimestamp(buffer),
                 PumplogUtil.getByte(buffer),
                 PumplogUtil.getByte(buffer),
                 PumplogUtil.getByte(buffer),
@@ -1,14 +1,12 @@
 package info.nightscout.androidaps.diaconn.pumplog
 
 import java.nio.ByteBuffer
-import java.nio.ByteOrder
 
 /*
 * Insulin shortage alarm
 */
 class LOG_ALARM_SHORTAGE private constructor(
-    val data: String,
-    val dttm: String,
+    val timestamp: Long,
     typeAndKind: Byte, // 1=INFO, 2=WARNING, 3=MAJOR, 4=CRITICAL
     val alarmLevel: Byte, // 1=OCCUR, 2=STOP
     val ack: Byte,     // (1~100U)
@@ -22,8 +20,7 @@ class LOG_ALARM_SHORTAGE private constructor(
     override fun toString(): String {
         val sb = StringBuilder("LOG_ALARM_SHORTAGE{")
         sb.append("LOG_KIND=").append(LOG_KIND.toInt())
-        sb.append(", data='").append(data).append('\'')
-        sb.append(", dttm='").append(dttm).append('\'')
+        sb.append(", timestamp=").append(timestamp)
         sb.append(", type=").append(type.toInt())
         sb.append(", kind=").append(kind.toInt())
         sb.append(", alarmLevel=").append(alarmLevel.toInt())
@@ -37,13 +34,9 @@ class LOG_ALARM_SHORTAGE private constructor(
     companion object {
 
         const val LOG_KIND: Byte = 0x2A
-        fun parse(data: String): LOG_ALARM_SHORTAGE {
-            val bytes = PumplogUtil.hexStringToByteArray(data)
-            val buffer = ByteBuffer.wrap(bytes)
-            buffer.order(ByteOrder.LITTLE_ENDIAN)
+        fun parse(buffer: ByteBuffer): LOG_ALARM_SHORTAGE {
             return LOG_ALARM_SHORTAGE(
-                data,
-                PumplogUtil.getDttm(buffer),
+                PumplogUtil.getTimestamp(buffer),
                 PumplogUtil.getByte(buffer),
                 PumplogUtil.getByte(buffer),
                 PumplogUtil.getByte(buffer),
@@ -1,14 +1,12 @@
 package info.nightscout.androidaps.diaconn.pumplog
 
 import java.nio.ByteBuffer
-import java.nio.ByteOrder
 
 /*
 * 튜브 공기빼기 성공
 */
 class LOG_CHANGE_TUBE_SUCCESS private constructor(
-    val data: String,
-    val dttm: String,
+    val timestamp: Long,
     typeAndKind: Byte,    //  47.5=4750
     val primeAmount: Short,    //  47.5=4750
     val remainAmount: Short,
@@ -21,8 +19,7 @@ class LOG_CHANGE_TUBE_SUCCESS private constructor(
     override fun toString(): String {
         val sb = StringBuilder("LOG_CHANGE_TUBE_SUCCESS{")
         sb.append("LOG_KIND=").append(LOG_KIND.toInt())
-        sb.append(", data='").append(data).append('\'')
-        sb.append(", dttm='").append(dttm).append('\'')
+        sb.append(", timestamp=").append(timestamp)
         sb.append(", type=").append(type.toInt())
         sb.append(", kind=").append(kind.toInt())
         sb.append(", primeAmount=").append(primeAmount.toInt())
@@ -35,13 +32,9 @@ class LOG_CHANGE_TUBE_SUCCESS private constructor(
     companion object {
 
         const val LOG_KIND: Byte = 0x18
-        fun parse(data: String): LOG_CHANGE_TUBE_SUCCESS {
-            val bytes = PumplogUtil.hexStringToByteArray(data)
-            val buffer = ByteBuffer.wrap(bytes)
-            buffer.order(ByteOrder.LITTLE_ENDIAN)
+        fun parse(buffer: ByteBuffer): LOG_CHANGE_TUBE_SUCCESS {
             return LOG_CHANGE_TUBE_SUCCESS(
-                data,
-                PumplogUtil.getDttm(buffer),
+                PumplogUtil.getTimestamp(buffer),
                 PumplogUtil.getByte(buffer),
                 PumplogUtil.getShort(buffer),
                 PumplogUtil.getShort(buffer),
@@ -1,14 +1,12 @@
 package info.nightscout.androidaps.diaconn.pumplog
 
 import java.nio.ByteBuffer
-import java.nio.ByteOrder
 
 /*
 * 1시간 단위 기저 주입량
 */
 class LOG_INJECTION_1HOUR_BASAL private constructor(
-    val data: String,
-    val dttm: String,
+    val timestamp: Long,
     typeAndKind: Byte,
     tbBeforeAmount: Short,
     tbAfterAmount: Short,
@@ -27,8 +25,7 @@ class LOG_INJECTION_1HOUR_BASAL private constructor(
     override fun toString(): String {
         val sb = StringBuilder("LOG_INJECTION_1HOUR_BASAL{")
         sb.append("LOG_KIND=").append(LOG_KIND.toInt())
-        sb.append(", data='").append(data).append('\'')
-        sb.append(", dttm='").append(dttm).append('\'')
+        sb.append(", timestamp=").append(timestamp)
         sb.append(", type=").append(type.toInt())
         sb.append(", kind=").append(kind.toInt())
         sb.append(", tbBeforeAmount=").append(beforeAmount.toInt())
@@ -42,13 +39,9 @@ class LOG_INJECTION_1HOUR_BASAL private constructor(
     companion object {
 
         const val LOG_KIND: Byte = 0x2C
-        fun parse(data: String): LOG_INJECTION_1HOUR_BASAL {
-            val bytes = PumplogUtil.hexStringToByteArray(data)
-            val buffer = ByteBuffer.wrap(bytes)
-            buffer.order(ByteOrder.LITTLE_ENDIAN)
+        fun parse(buffer: ByteBuffer): LOG_INJECTION_1HOUR_BASAL {
             return LOG_INJECTION_1HOUR_BASAL(
-                data,
-                PumplogUtil.getDttm(buffer),
+                PumplogUtil.getTimestamp(buffer),
                 PumplogUtil.getByte(buffer),
                 PumplogUtil.getShort(buffer),
                 PumplogUtil.getShort(buffer),
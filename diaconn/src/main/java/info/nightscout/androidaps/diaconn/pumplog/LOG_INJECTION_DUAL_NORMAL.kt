@@ -2,14 +2,12 @@ package info.nightscout.androidaps.diaconn.pumplog
 
 import okhttp3.internal.and
 import java.nio.ByteBuffer
-import java.nio.ByteOrder
 
 /*
 * 듀얼(일반) 주입량: 듀얼(일반) 주입 완료 시 기록하는 방식
 */
 class LOG_INJECTION_DUAL_NORMAL private constructor(
-    val data: String,
-    val dttm: String,
+    val timestamp: Long,
     typeAndKind: Byte,    // 설정량 47.5=4750
     val setAmount: Short,    // 주입량 47.5=4750
     val injectAmount: Short,    // 1분 단위 주입 시간 Ex) 124 = 124분 = 2시간 4분
@@ -26,8 +24,7 @@ class LOG_INJECTION_DUAL_NORMAL private constructor(
     override fun toString(): String {
         val sb = StringBuilder("LOG_INJECTION_DUAL_NORMAL{")
         sb.append("LOG_KIND=").append(LOG_KIND.toInt())
-        sb.append(", data='").append(data).append('\'')
-        sb.append(", dttm='").append(dttm).append('\'')
+        sb.append(", timestamp=").append(timestamp)
         sb.append(", type=").append(type.toInt())
         sb.append(", kind=").append(kind.toInt())
         sb.append(", setAmount=").append(setAmount.toInt())
@@ -41,13 +38,9 @@ class LOG_INJECTION_DUAL_NORMAL private constructor(
     companion object {
 
         const val LOG_KIND: Byte = 0x35
-        fun parse(data: String): LOG_INJECTION_DUAL_NORMAL {
-            val bytes = PumplogUtil.hexStringToByteArray(data)
-            val buffer = ByteBuffer.wrap(bytes)
-            buffer.order(ByteOrder.LITTLE_ENDIAN)
+        fun parse(buffer: ByteBuffer): LOG_INJECTION_DUAL_NORMAL {
             return LOG_INJECTION_DUAL_NORMAL(
-                data,
-                PumplogUtil.getDttm(buffer),
+                PumplogUtil.getTimestamp(buffer),
                 PumplogUtil.getByte(buffer),
                 PumplogUtil.getShort(buffer),
                 PumplogUtil.getShort(buffer),
@@ -2,14 +2,12 @@ package info.nightscout.androidaps.diaconn.pumplog
 
 import okhttp3.internal.and
 import java.nio.ByteBuffer
-import java.nio.ByteOrder
 
 /*
 * 듀얼주입 성공
 */
 class LOG_INJECT_DUAL_SUCCESS private constructor(
-    val data: String,
-    val dttm: String,
+    val timestamp: Long,
     typeAndKind: Byte, // 47.5=4750
     val injectNormAmount: Short, // 47.5=4750
     val injectSquareAmount: Short, // 1분단위 주입시간(124=124분=2시간4분)
@@ -26,8 +24,7 @@ class LOG_INJECT_DUAL_SUCCESS private constructor(
     override fun toString(): String {
         val sb = StringBuilder("LOG_INJECT_DUAL_SUCCESS{")
         sb.append("LOG_KIND=").append(LOG_KIND.toInt())
-        sb.append(", data='").append(data).append('\'')
-        sb.append(", dttm='").append(dttm).append('\'')
+        sb.append(", timestamp=").append(timestamp)
         sb.append(", type=").append(type.toInt())
         sb.append(", kind=").append(kind.toInt())
         sb.append(", injectNormAmount=").append(injectNormAmount.toInt())
@@ -41,13 +38,9 @@ class LOG_INJECT_DUAL_SUCCESS private constructor(
     companion object {
 
         const val LOG_KIND: Byte = 0x10
-        fun parse(data: String): LOG_INJECT_DUAL_SUCCESS {
-            val bytes = PumplogUtil.hexStringToByteArray(data)
-            val buffer = ByteBuffer.wrap(bytes)
-            buffer.order(ByteOrder.LITTLE_ENDIAN)
+        fun parse(buffer: ByteBuffer): LOG_INJECT_DUAL_SUCCESS {
             return LOG_INJECT_DUAL_SUCCESS(
-                data,
-                PumplogUtil.getDttm(buffer),
+                PumplogUtil.getTimestamp(buffer),
                 PumplogUtil.getByte(buffer),
                 PumplogUtil.getShort(buffer),
                 PumplogUtil.getShort(buffer),
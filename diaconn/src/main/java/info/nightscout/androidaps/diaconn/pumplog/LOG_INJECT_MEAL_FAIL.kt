@@ -2,14 +2,12 @@ package info.nightscout.androidaps.diaconn.pumplog
 
 import okhttp3.internal.and
 import java.nio.ByteBuffer
-import java.nio.ByteOrder
 
 /*
 * 식사주입 실패
 */
 class LOG_INJECT_MEAL_FAIL private constructor(
-    val data: String,
-    val dttm: String,
+    val timestamp: Long,
     typeAndKind: Byte,     // 47.5=4750
     private val setAmount: Short,     // 47.5=4750
     val injectAmount: Short,     // 1분단위 주입시간(124=124분=2시간4분)
@@ -28,8 +26,7 @@ class LOG_INJECT_MEAL_FAIL private constructor(
     override fun toString(): String {
         val sb = StringBuilder("LOG_INJECT_MEAL_FAIL{")
         sb.append("LOG_KIND=").append(LOG_KIND.toInt())
-        sb.append(", data='").append(data).append('\'')
-        sb.append(", dttm='").append(dttm).append('\'')
+        sb.append(", timestamp=").append(timestamp)
         sb.append(", type=").append(type.toInt())
         sb.append(", kind=").append(kind.toInt())
         sb.append(", setAmount=").append(setAmount.toInt())
@@ -44,13 +41,9 @@ class LOG_INJECT_MEAL_FAIL private constructor(
     companion object {
 
         const val LOG_KIND: Byte = 0x09
-        fun parse(data: String): LOG_INJECT_MEAL_FAIL {
-            val bytes = PumplogUtil.hexStringToByteArray(data)
-            val buffer = ByteBuffer.wrap(bytes)
-            buffer.order(ByteOrder.LITTLE_ENDIAN)
+        fun parse(buffer: ByteBuffer): LOG_INJECT_MEAL_FAIL {
             return LOG_INJECT_MEAL_FAIL(
-                data,
-                PumplogUtil.getDttm(buffer),
+                PumplogUtil.getTimestamp(buffer),
                 PumplogUtil.getByte(buffer),
                 PumplogUtil.getShort(buffer),
                 PumplogUtil.getShort(buffer),
@@ -2,14 +2,12 @@ package info.nightscout.androidaps.diaconn.pumplog
 
 import okhttp3.internal.and
 import java.nio.ByteBuffer
-import java.nio.ByteOrder
 
 /*
 * 스퀘어주입 실패
 */
 class LOG_INJECT_SQUARE_FAIL private constructor(
-    val data: String,
-    val dttm: String,
+    val timestamp: Long,
     typeAndKind: Byte,    // 47.5=4750
     val injectAmount: Short,    // 1분단위 주입시간(124=124분=2시간4분)
     private val injectTime: Byte,    // 1=주입막힘, 2=배터리잔량부족, 3=약물부족, 4=사용자중지, 5=시스템리셋, 6=기타, 7=긴급정지
@@ -27,8 +25,7 @@ class LOG_INJECT_SQUARE_FAIL private constructor(
     override fun toString(): String {
         val sb = StringBuilder("LOG_INJECT_SQUARE_FAIL{")
         sb.append("LOG_KIND=").append(LOG_KIND.toInt())
-        sb.append(", data='").append(data).append('\'')
-        sb.append(", dttm='").append(dttm).append('\'')
+        sb.append(", timestamp=").append(timestamp)
         sb.append(", type=").append(type.toInt())
         sb.append(", kind=").append(kind.toInt())
         sb.append(", injectAmount=").append(injectAmount.toInt())
@@ -42,13 +39,9 @@ class LOG_INJECT_SQUARE_FAIL private constructor(
     companion object {
 
         const val LOG_KIND: Byte = 0x0E
-        fun parse(data: String): LOG_INJECT_SQUARE_FAIL {
-            val bytes = PumplogUtil.hexStringToByteArray(data)
-            val buffer = ByteBuffer.wrap(bytes)
-            buffer.order(ByteOrder.LITTLE_ENDIAN)
+        fun parse(buffer: ByteBuffer): LOG_INJECT_SQUARE_FAIL {
             return LOG_INJECT_SQUARE_FAIL(
-                data,
-                PumplogUtil.getDttm(buffer),
+                PumplogUtil.getTimestamp(buffer),
                 PumplogUtil.getByte(buffer),
                 PumplogUtil.getShort(buffer),
                 PumplogUtil.getByte(buffer),
@@ -2,14 +2,12 @@ package info.nightscout.androidaps.diaconn.pumplog
 
 import okhttp3.internal.and
 import java.nio.ByteBuffer
-import java.nio.ByteOrder
 
 /*
 * 스퀘어주입 성공
 */
 class LOG_INJECT_SQUARE_SUCCESS private constructor(
-    val data: String,
-    val dttm: String,
+    val timestamp: Long,
     typeAndKind: Byte,    // 47.5=4750
     val injectAmount: Short,    // 1분단위 주입시간(124=124분=2시간4분)
     private val injectTime: Byte,
@@ -25,8 +23,7 @@ class LOG_INJECT_SQUARE_SUCCESS private constructor(
     override fun toString(): String {
         val sb = StringBuilder("LOG_INJECT_SQUARE_SUCCESS{")
         sb.append("LOG_KIND=").append(LOG_KIND.toInt())
-        sb.append(", data='").append(data).append('\'')
-        sb.append(", dttm='").append(dttm).append('\'')
+        sb.append(", timestamp=").append(timestamp)
         sb.append(", type=").append(type.toInt())
         sb.append(", kind=").append(kind.toInt())
         sb.append(", injectAmount=").append(injectAmount.toInt())
@@ -39,13 +36,9 @@ class LOG_INJECT_SQUARE_SUCCESS private constructor(
     companion object {
 
         const val LOG_KIND: Byte = 0x0D
-        fun parse(data: String): LOG_INJECT_SQUARE_SUCCESS {
-            val bytes = PumplogUtil.hexStringToByteArray(data)
-            val buffer = ByteBuffer.wrap(bytes)
-            buffer.order(ByteOrder.LITTLE_ENDIAN)
+        fun parse(buffer: ByteBuffer): LOG_INJECT_SQUARE_SUCCESS {
             return LOG_INJECT_SQUARE_SUCCESS(
-                data,
-                PumplogUtil.getDttm(buffer),
+                PumplogUtil.getTimestamp(buffer),
                 PumplogUtil.getByte(buffer),
                 PumplogUtil.getShort(buffer),
                 PumplogUtil.getByte(buffer),
@@ -1,14 +1,12 @@
 package info.nightscout.androidaps.diaconn.pumplog
 
 import java.nio.ByteBuffer
-import java.nio.ByteOrder
 
 /*
  * System Reset Log
  */
 class LOG_RESET_SYS_V3 private constructor(
-    val data: String,
-    val dttm: String,
+    val timestamp: Long,
     typeAndKind: Byte,
     val batteryRemain: Byte,
     val reason: Byte,  // 사유(1:공장초기화 후 리셋, 2:긴급정지 해제 후 리셋, 3:사용자 배터리 교체 후 리셋, 4:캘리브레이션 후 리셋, 9:예상치 못한 시스템 리셋)
@@ -22,8 +20,7 @@ class LOG_RESET_SYS_V3 private constructor(
     override fun toString(): String {
         val sb = StringBuilder("LOG_RESET_SYS_V3{")
         sb.append("LOG_KIND=").append(LOG_KIND.toInt())
-        sb.append(", data='").append(data).append('\'')
-        sb.append(", dttm='").append(dttm).append('\'')
+        sb.append(", timestamp=").append(timestamp)
         sb.append(", type=").append(type.toInt())
         sb.append(", kind=").append(kind.toInt())
         sb.append(", batteryRemain=").append(batteryRemain.toInt())
@@ -37,13 +34,9 @@ class LOG_RESET_SYS_V3 private constructor(
     companion object {
 
         const val LOG_KIND: Byte = 0x01
-        fun parse(data: String): LOG_RESET_SYS_V3 {
-            val bytes = PumplogUtil.hexStringToByteArray(data)
-            val buffer = ByteBuffer.wrap(bytes)
-            buffer.order(ByteOrder.LITTLE_ENDIAN)
+        fun parse(buffer: ByteBuffer): LOG_RESET_SYS_V3 {
             return LOG_RESET_SYS_V3(
-                data,
-                PumplogUtil.getDttm(buffer),
+                PumplogUtil.getTimestamp(buffer),
                 PumplogUtil.getByte(buffer),
                 PumplogUtil.getByte(buffer),
                 PumplogUtil.getByte(buffer),
@@ -2,14 +2,12 @@ package info.nightscout.androidaps.diaconn.pumplog
 
 import okhttp3.internal.and
 import java.nio.ByteBuffer
-import java.nio.ByteOrder
 
 /*
 * 듀얼주입 설정(시작)
 */
 class LOG_SET_DUAL_INJECTION private constructor(
-    val data: String,
-    val dttm: String,
+    val timestamp: Long,
     typeAndKind: Byte,
     val setNormAmount: Short, // 47.5=4750
     val setSquareAmount: Short, // 47.5=4750
@@ -26,8 +24,7 @@ class LOG_SET_DUAL_INJECTION private constructor(
     override fun toString(): String {
         val sb = StringBuilder("LOG_SET_DUAL_INJECTION{")
         sb.append("LOG_KIND=").append(LOG_KIND.toInt())
-        sb.append(", data='").append(data).append('\'')
-        sb.append(", dttm='").append(dttm).append('\'')
+        sb.append(", timestamp=").append(timestamp)
         sb.append(", type=").append(type.toInt())
         sb.append(", kind=").append(kind.toInt())
         sb.append(", setNormAmount=").append(setNormAmount.toInt())
@@ -41,13 +38,9 @@ class LOG_SET_DUAL_INJECTION private constructor(
     companion object {
 
         const val LOG_KIND: Byte = 0x0F
-        fun parse(data: String): LOG_SET_DUAL_INJECTION {
-            val bytes = PumplogUtil.hexStringToByteArray(data)
-            val buffer = ByteBuffer.wrap(bytes)
-            buffer.order(ByteOrder.LITTLE_ENDIAN)
+        fun parse(buffer: ByteBuffer): LOG_SET_DUAL_INJECTION {
             return LOG_SET_DUAL_INJECTION(
-                data,
-                PumplogUtil.getDttm(buffer),
+                PumplogUtil.getTimestamp(buffer),
                 PumplogUtil.getByte(buffer),
                 PumplogUtil.getShort(buffer),
                 PumplogUtil.getShort(buffer),
@@ -2,14 +2,12 @@ package info.nightscout.androidaps.diaconn.pumplog
 
 import okhttp3.internal.and
 import java.nio.ByteBuffer
-import java.nio.ByteOrder
 
 /*
 * 스퀘어주입 설정(시작)
 */
 class LOG_SET_SQUARE_INJECTION private constructor(
-    val data: String,
-    val dttm: String,
+    val timestamp: Long,
     typeAndKind: Byte,    // 47.5=4750
     val setAmount: Short,    // 1~30(10분 단위 값 의미)
     private val injectTime: Byte,
@@ -25,8 +23,7 @@ class LOG_SET_SQUARE_INJECTION private constructor(
     override fun toString(): String {
         val sb = StringBuilder("LOG_SET_SQUARE_INJECTION{")
         sb.append("LOG_KIND=").append(LOG_KIND.toInt())
-        sb.append(", data='").append(data).append('\'')
-        sb.append(", dttm='").append(dttm).append('\'')
+        sb.append(", timestamp=").append(timestamp)
         sb.append(", type=").append(type.toInt())
         sb.append(", kind=").append(kind.toInt())
         sb.append(", setAmount=").append(setAmount.toInt())
@@ -39,13 +36,9 @@ class LOG_SET_SQUARE_INJECTION private constructor(
     companion object {
 
         const val LOG_KIND: Byte = 0x0C
-        fun parse(data: String): LOG_SET_SQUARE_INJECTION {
-            val bytes = PumplogUtil.hexStringToByteArray(data)
-            val buffer = ByteBuffer.wrap(bytes)
-            buffer.order(ByteOrder.LITTLE_ENDIAN)
+        fun parse(buffer: ByteBuffer): LOG_SET_SQUARE_INJECTION {
             return LOG_SET_SQUARE_INJECTION(
-                data,
-                PumplogUtil.getDttm(buffer),
+                PumplogUtil.getTimestamp(buffer),
                 PumplogUtil.getByte(buffer),
                 PumplogUtil.getShort(buffer),
                 PumplogUtil.getByte(buffer),
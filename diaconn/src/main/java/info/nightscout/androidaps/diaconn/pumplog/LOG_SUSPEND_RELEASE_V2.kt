@@ -1,14 +1,12 @@
 package info.nightscout.androidaps.diaconn.pumplog
 
 import java.nio.ByteBuffer
-import java.nio.ByteOrder
 
 /*
 * 일시정지 중지 (기저정지 해제)
 */
 class LOG_SUSPEND_RELEASE_V2 private constructor(
-    val data: String,
-    val dttm: String,
+    val timestamp: Long,
     typeAndKind: Byte,
     batteryRemain: Byte,
     patternType: Byte
@@ -23,8 +21,7 @@ class LOG_SUSPEND_RELEASE_V2 private constructor(
     override fun toString(): String {
         val sb = StringBuilder("LOG_SUSPEND_RELEASE_V2{")
         sb.append("LOG_KIND=").append(LOG_KIND.toInt())
-        sb.append(", data='").append(data).append('\'')
-        sb.append(", dttm='").append(dttm).append('\'')
+        sb.append(", timestamp=").append(timestamp)
         sb.append(", type=").append(type.toInt())
         sb.append(", kind=").append(kind.toInt())
         sb.append(", batteryRemain=").append(batteryRemain.toInt())
@@ -48,13 +45,9 @@ class LOG_SUSPEND_RELEASE_V2 private constructor(
     companion object {
 
         const val LOG_KIND: Byte = 0x04
-        fun parse(data: String): LOG_SUSPEND_RELEASE_V2 {
-            val bytes = PumplogUtil.hexStringToByteArray(data)
-            val buffer = ByteBuffer.wrap(bytes)
-            buffer.order(ByteOrder.LITTLE_ENDIAN)
+        fun parse(buffer: ByteBuffer): LOG_SUSPEND_RELEASE_V2 {
             return LOG_SUSPEND_RELEASE_V2(
-                data,
-                PumplogUtil.getDttm(buffer),
+                PumplogUtil.getTimestamp(buffer),
                 PumplogUtil.getByte(buffer),
                 PumplogUtil.getByte(buffer),
                 PumplogUtil.getByte(buffer)
@@ -1,12 +1,9 @@
 package info.nightscout.androidaps.diaconn.pumplog;
 
-import android.annotation.SuppressLint;
-
 import org.apache.commons.lang3.RegExUtils;
 import org.apache.commons.lang3.StringUtils;
 
 import java.nio.ByteBuffer;
-import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.TimeZone;
 
@@ -15,40 +12,39 @@ import java.util.TimeZone;
  */
 public class PumplogUtil {
 	/*
-	 * 바이트버퍼에서 4바이트 날짜를 구한다.
+	 * 날짜가 설정되지 않은 펌프 시간 (ffffffff)
+	 */
+	public static final long NO_PUMP_TIME = 0xffffffffL;
+
+	/*
+	 * 바이트버퍼에서 4바이트 펌프 시간을 구한다. (버퍼는 LITTLE_ENDIAN)
 	 * @param buffer 바이트버퍼
-	 * @return GMT 날짜 문자열
+	 * @return 1970.1.1이후 경과한 초
 	 */
-    @SuppressLint("SimpleDateFormat")
-	public static String getDttm(ByteBuffer buffer) {
-		byte b0 = buffer.get();
-		byte b1 = buffer.get();
-		byte b2 = buffer.get();
-		byte b3 = buffer.get();
-		long pumpTime = Long.parseLong(String.format("%02x%02x%02x%02x", b3, b2, b1, b0), 16);
-		long epochTime = new Date(0).getTime(); // 1970-01-01
-		SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-		sdf.setTimeZone(TimeZone.getTimeZone("UCT"));
-		return sdf.format(new Date(epochTime + pumpTime * 1000));
+	public static long getPumpTime(ByteBuffer buffer) {
+		return buffer.getInt() & 0xffffffffL;
 	}
 
 	/*
-	 * 바이트버퍼에서 4바이트 날짜를 구한다.
-	 * @param data 로그데이터
-	 * @return GMT 날짜 문자열
+	 * 바이트버퍼에서 4바이트 날짜를 구한다. (버퍼는 LITTLE_ENDIAN)
+	 * @param buffer 바이트버퍼
+	 * @return 로컬 타임존 기준 epoch 밀리초
 	 */
-    @SuppressLint("SimpleDateFormat")
-	public static String getDttm(String data) {
-		byte[] bytes = PumplogUtil.hexStringToByteArray(data);
-		byte b0 = bytes[0];
-		byte b1 = bytes[1];
-		byte b2 = bytes[2];
-		byte b3 = bytes[3];
-		long pumpTime = Long.parseLong(String.format("%02x%02x%02x%02x", b3, b2, b1, b0), 16);
-		long epochTime = new Date(0).getTime(); // 1970-01-01
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-		sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
-		return sdf.format(new Date(epochTime + pumpTime * 1000));
+	public static long getTimestamp(ByteBuffer buffer) {
+		return pumpTimeToTimestamp(getPumpTime(buffer));
+	}
+
+	/*
+	 * 펌프 시간을 epoch 밀리초로 변환한다.
+	 * 펌프는 로컬 시간을 GMT 기준 초로 저장하므로 로컬 타임존의 오프셋을 뺀다.
+	 * (GMT 날짜 문자열을 로컬 타임존으로 파싱한 결과와 같음)
+	 * @param pumpTime 1970.1.1이후 경과한 초
+	 * @return epoch 밀리초
+	 */
+	public static long pumpTimeToTimestamp(long pumpTime) {
+		long wallTime = pumpTime * 1000;
+		TimeZone timeZone = TimeZone.getDefault();
+		return wallTime - timeZone.getOffset(wallTime - timeZone.getRawOffset());
 	}
 
 	/*
@@ -78,27 +74,6 @@ public class PumplogUtil {
 		return buffer.getInt();
 	}
 
-	/*
-	 * 로그데이터에서 로그 타입 바이트를 구한다.
-	 * @param data 로그데이터
-	 * @return byte
-	 */
-	public static byte getType(String data) {
-		byte[] bytes = hexStringToByteArray(data);
-		return getType(bytes[4]);
-	}
-
-	/*
-	 * 로그데이터에서 로그 종류 바이트를 구한다.
-	 * @param data 로그데이터
-	 * @return byte
-	 */
-	public static byte getKind(String data) {
-		byte[] bytes = hexStringToByteArray(data);
-		//System.out.println("byte=" + Arrays.toString(bytes));
-		return getKind(bytes[4]);
-	}
-
 	/*
 	 * 바이트 데이터에서 로그 타입 부분을 추출 한다.
 	 * @param b 바이트
@@ -0,0 +1,97 @@
+package info.nightscout.androidaps.diaconn.pumplog
+
+import info.nightscout.androidaps.diaconn.packet.BigLogInquireResponsePacket
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.text.SimpleDateFormat
+import java.util.*
+
+/**
+ * Decoding of recorded big log dumps (wrapping count 1 byte + log number 2 bytes + log 12 bytes per entry)
+ * straight from the packet buffer. Dump is shared with PumplogDecodeBenchmark
+ */
+class PumplogDecodeTest {
+
+    private lateinit var defaultTimeZone: TimeZone
+
+    // recorded logs: meal bolus 4.75U, TBR start 1.44U/h 2h, battery alarm (8 bytes + padding)
+    internal val dump = listOf(
+        "01" + "2a00" + "40a4bc61" + "48" + "8e01" + "db01" + "05" + "01" + "4b",
+        "01" + "2b00" + "c4a7bc61" + "12" + "08" + "7804" + "10a7bc61",
+        "01" + "2c00" + "80b2bc61" + "28" + "01" + "00" + "4b" + "ffffffff"
+    )
+
+    @Before fun setUp() {
+        defaultTimeZone = TimeZone.getDefault()
+        TimeZone.setDefault(TimeZone.getTimeZone("Europe/Prague"))
+    }
+
+    @After fun tearDown() {
+        TimeZone.setDefault(defaultTimeZone)
+    }
+
+    internal fun packetBuffer(logs: List<String>): ByteBuffer {
+        val bytes = PumplogUtil.hexStringToByteArray(logs.joinToString(separator = ""))
+        return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN)
+    }
+
+    // what the hex string decoder did: format as GMT and parse back in local time zone
+    @Suppress("SimpleDateFormat")
+    private fun legacyTimestamp(pumpTime: Long): Long {
+        val gmt = SimpleDateFormat("yyyy-MM-dd HH:mm:ss").apply { timeZone = TimeZone.getTimeZone("GMT") }
+        return SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse(gmt.format(Date(pumpTime * 1000)))!!.time
+    }
+
+    @Test fun decodeRecordedDump() {
+        val buffer = packetBuffer(dump)
+        var logStart = buffer.position()
+        val kinds = mutableListOf<Byte>()
+        for (i in dump.indices) {
+            buffer.position(logStart)
+            logStart += BigLogInquireResponsePacket.LOG_ENTRY_SIZE
+            buffer.get()
+            assertEquals(0x2a + i, buffer.short.toInt())
+            val kind = PumplogUtil.getKind(buffer.get(buffer.position() + 4))
+            kinds.add(kind)
+            when (kind) {
+                LOG_INJECT_MEAL_SUCCESS.LOG_KIND -> {
+                    val log = LOG_INJECT_MEAL_SUCCESS.parse(buffer)
+                    assertEquals(legacyTimestamp(0x61bca440), log.timestamp)
+                    assertEquals(475, log.injectAmount.toInt())
+                    assertEquals(5, log.getInjectTime())
+                    assertEquals(1, log.type.toInt())
+                }
+
+                LOG_TB_START_V3.LOG_KIND         -> {
+                    val log = LOG_TB_START_V3.parse(buffer)
+                    assertEquals(legacyTimestamp(0x61bca7c4), log.timestamp)
+                    assertEquals(8, log.tbTime.toInt())
+                    assertEquals(1144, log.getTbInjectRateRatio())
+                }
+
+                LOG_ALARM_BATTERY.LOG_KIND       -> {
+                    val log = LOG_ALARM_BATTERY.parse(buffer)
+                    assertEquals(legacyTimestamp(0x61bcb280), log.timestamp)
+                    assertEquals(75, log.batteryRemain.toInt())
+                }
+            }
+        }
+        assertEquals(listOf(LOG_INJECT_MEAL_SUCCESS.LOG_KIND, LOG_TB_START_V3.LOG_KIND, LOG_ALARM_BATTERY.LOG_KIND), kinds)
+    }
+
+    @Test fun timestampMatchesLegacyParsing() {
+        // one sample per hour of 2021, skipping the hours where local time is ambiguous or missing
+        val zone = TimeZone.getDefault()
+        val start = 1609459200L // 2021-01-01 00:00:00
+        for (hour in 0 until 365 * 24) {
+            val pumpTime = start + hour * 3600L + 1234
+            val legacy = legacyTimestamp(pumpTime)
+            if (zone.getOffset(legacy) != zone.getOffset(legacy - 3_600_000) || zone.getOffset(legacy) != zone.getOffset(legacy + 3_600_000)) continue
+            assertEquals(legacy, PumplogUtil.pumpTimeToTimestamp(pumpTime))
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package info.nightscout.androidaps.plugins.pump.insight.satl;
+
+import org.junit.Test;
+
+import info.nightscout.androidaps.plugins.pump.insight.utils.crypto.SatlCipher;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * CPU cost per packet of receiving recorded SATL traffic (see SatlMessageTest):
+ * framing from 64 byte reads, MAC check and decryption.
+ * <p>
+ * Run by ./gradlew -Pbenchmark :insight:testFullDebugUnitTest
+ */
+public class SatlMessageBenchmark {
+
+    private static final int ROUNDS = 20;
+
+    @Test
+    public void receiveCostPerPacket() throws Exception {
+        byte[] traffic = SatlMessageTest.recordedTraffic();
+        SatlCipher cipher = new SatlCipher(SatlMessageTest.KEY);
+        for (int i = 0; i < ROUNDS; i++) // warm up
+            assertEquals(SatlMessageTest.PACKETS, SatlMessageTest.receive(traffic, cipher).size());
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) SatlMessageTest.receive(traffic, cipher);
+        long elapsed = System.nanoTime() - start;
+        System.out.println("SATL receive: " + elapsed / (ROUNDS * SatlMessageTest.PACKETS) / 1000.0 + " us/packet");
+    }
+}
@@ -153,6 +153,8 @@ public class LocalInsightPlugin extends PumpPluginBase implements Pump, Constrai
     private InsightAlertService alertService;
     private InsightConnectionService connectionService;
     private long timeOffset;
+    // collected while processing history and synced at once
+    private final List<PumpSync.HistoryEvent> pumpSyncEvents = new ArrayList<>();
     private final ServiceConnection serviceConnection = new ServiceConnection() {
         @Override
         public void onServiceConnected(ComponentName name, IBinder binder) {
@@ -1175,6 +1177,7 @@ public class LocalInsightPlugin extends PumpPluginBase implements Pump, Constrai
     }
 
     private void processHistoryEvents(String serial, List<HistoryEvent> historyEvents) {
+        pumpSyncEvents.clear();
         List<TemporaryBasal> temporaryBasals = new ArrayList<>();
         List<InsightPumpID> pumpStartedEvents = new ArrayList<>();
         for (HistoryEvent historyEvent : historyEvents)
@@ -1207,24 +1210,24 @@ public class LocalInsightPlugin extends PumpPluginBase implements Pump, Constrai
         temporaryBasals.sort((o1, o2) -> (int) (o1.getTimestamp() - o2.getTimestamp()));
         for (TemporaryBasal temporaryBasal : temporaryBasals) {
             if (temporaryBasal.getDuration() == 0L) {                    // for Stop TBR event duration = 0L
-                pumpSync.syncStopTemporaryBasalWithPumpId(
+                pumpSyncEvents.add(new PumpSync.HistoryEvent.StopTemporaryBasal(
                             temporaryBasal.getTimestamp(),
-                            temporaryBasal.getPumpId(),
-                            PumpType.ACCU_CHEK_INSIGHT,
-                            serial);
+                            temporaryBasal.getPumpId()));
             }
             if (temporaryBasal.getRate() != 100.0){
-                pumpSync.syncTemporaryBasalWithPumpId(
+                pumpSyncEvents.add(new PumpSync.HistoryEvent.TemporaryBasal(
                         temporaryBasal.getTimestamp(),
                         temporaryBasal.getRate(),
                         temporaryBasal.getDuration(),
                         temporaryBasal.isAbsolute(),
                         temporaryBasal.getType(),
-                        temporaryBasal.getPumpId(),
-                        PumpType.ACCU_CHEK_INSIGHT,
-                        serial);
+                        temporaryBasal.getPumpId()));
             }
         }
+        // whole history read is synced in one transaction
+        if (!pumpSyncEvents.isEmpty())
+            pumpSync.syncPumpHistory(pumpSyncEvents, PumpType.ACCU_CHEK_INSIGHT, serial);
+        pumpSyncEvents.clear();
     }
 
     private boolean processHistoryEvent(String serial, List<TemporaryBasal> temporaryBasals, List<InsightPumpID> pumpStartedEvents, HistoryEvent event) {
@@ -1274,14 +1277,12 @@ public class LocalInsightPlugin extends PumpPluginBase implements Pump, Constrai
         calendar.set(Calendar.YEAR, event.getTotalYear());
         calendar.set(Calendar.MONTH, event.getTotalMonth() - 1);
         calendar.set(Calendar.DAY_OF_MONTH, event.getTotalDay());
-        pumpSync.createOrUpdateTotalDailyDose(
+        pumpSyncEvents.add(new PumpSync.HistoryEvent.TotalDailyDose(
                 calendar.getTimeInMillis(),
                 event.getBolusTotal(),
                 event.getBasalTotal(),
                 0.0, // will be calculated automatically
-                event.getEventPosition(),
-                PumpType.ACCU_CHEK_INSIGHT,
-                serial);
+                event.getEventPosition()));
     }
 
     private void processTubeFilledEvent(String serial, TubeFilledEvent event) {
@@ -1395,24 +1396,20 @@ public class LocalInsightPlugin extends PumpPluginBase implements Pump, Constrai
         insightDbHelper.createOrUpdate(bolusID);
 
         if (event.getBolusType() == BolusType.STANDARD || event.getBolusType() == BolusType.MULTIWAVE) {
-            pumpSync.syncBolusWithPumpId(
+            pumpSyncEvents.add(new PumpSync.HistoryEvent.Bolus(
                     bolusID.getTimestamp(),
                     event.getImmediateAmount(),
                     null,
-                    bolusID.getId(),
-                    PumpType.ACCU_CHEK_INSIGHT,
-                    serial);
+                    bolusID.getId()));
         }
         if ((event.getBolusType() == BolusType.EXTENDED || event.getBolusType() == BolusType.MULTIWAVE)) {
             if (profileFunction.getProfile(bolusID.getTimestamp()) != null)
-                pumpSync.syncExtendedBolusWithPumpId(
+                pumpSyncEvents.add(new PumpSync.HistoryEvent.ExtendedBolus(
                         bolusID.getTimestamp(),
                         event.getExtendedAmount(),
                         T.Companion.mins(event.getDuration()).msecs(),
                         isFakingTempsByExtendedBoluses(),
-                        bolusID.getId(),
-                        PumpType.ACCU_CHEK_INSIGHT,
-                        serial);
+                        bolusID.getId()));
         }
     }
 
@@ -1434,26 +1431,22 @@ public class LocalInsightPlugin extends PumpPluginBase implements Pump, Constrai
         insightDbHelper.createOrUpdate(bolusID);
         bolusID = insightDbHelper.getInsightBolusID(serial, event.getBolusID(), startTimestamp); // Line added to get id
         if (event.getBolusType() == BolusType.STANDARD || event.getBolusType() == BolusType.MULTIWAVE) {
-            pumpSync.syncBolusWithPumpId(
+            pumpSyncEvents.add(new PumpSync.HistoryEvent.Bolus(
                     bolusID.getTimestamp(),
                     event.getImmediateAmount(),
                     null,
-                    bolusID.getId(),
-                    PumpType.ACCU_CHEK_INSIGHT,
-                    serial);
+                    bolusID.getId()));
             lastBolusTimestamp = bolusID.getTimestamp();
             lastBolusAmount = event.getImmediateAmount();
         }
         if (event.getBolusType() == BolusType.EXTENDED || event.getBolusType() == BolusType.MULTIWAVE) {
             if (event.getDuration() > 0 && profileFunction.getProfile(bolusID.getTimestamp()) != null)
-                    pumpSync.syncExtendedBolusWithPumpId(
+                    pumpSyncEvents.add(new PumpSync.HistoryEvent.ExtendedBolus(
                             bolusID.getTimestamp(),
                             event.getExtendedAmount(),
                             timestamp - startTimestamp,
                             isFakingTempsByExtendedBoluses(),
-                            bolusID.getId(),
-                            PumpType.ACCU_CHEK_INSIGHT,
-                            serial);
+                            bolusID.getId()));
         }
     }
 
@@ -1557,7 +1550,7 @@ public class LocalInsightPlugin extends PumpPluginBase implements Pump, Constrai
     }
 
     private void logNote(long date, String note) {
-        pumpSync.insertTherapyEventIfNewWithTimestamp(date, DetailedBolusInfo.EventType.NOTE, note, null, PumpType.ACCU_CHEK_INSIGHT, serialNumber());
+        pumpSyncEvents.add(new PumpSync.HistoryEvent.TherapyEvent(date, DetailedBolusInfo.EventType.NOTE, note, null));
     }
 
     private long parseRelativeDate(int year, int month, int day, int hour, int minute, int second, int relativeHour, int relativeMinute, int relativeSecond) {
@@ -1574,7 +1567,7 @@ public class LocalInsightPlugin extends PumpPluginBase implements Pump, Constrai
     }
 
     private void uploadCareportalEvent(long date, DetailedBolusInfo.EventType event) {
-        pumpSync.insertTherapyEventIfNewWithTimestamp(date, event, null, null, PumpType.ACCU_CHEK_INSIGHT, serialNumber());
+        pumpSyncEvents.add(new PumpSync.HistoryEvent.TherapyEvent(date, event, null, null));
     }
 
     @NonNull @Override
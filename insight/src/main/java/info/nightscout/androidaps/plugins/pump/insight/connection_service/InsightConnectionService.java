@@ -85,6 +85,7 @@ import info.nightscout.androidaps.plugins.pump.insight.utils.PairingDataStorage;
 import info.nightscout.androidaps.plugins.pump.insight.utils.crypto.Cryptograph;
 import info.nightscout.androidaps.plugins.pump.insight.utils.crypto.DerivedKeys;
 import info.nightscout.androidaps.plugins.pump.insight.utils.crypto.KeyPair;
+import info.nightscout.androidaps.plugins.pump.insight.utils.crypto.SatlCipher;
 import info.nightscout.androidaps.utils.sharedPreferences.SP;
 
 public class InsightConnectionService extends DaggerService implements ConnectionEstablisher.Callback, InputStreamReader.Callback, OutputStreamWriter.Callback {
@@ -114,6 +115,9 @@ public class InsightConnectionService extends DaggerService implements Connectio
     private OutputStreamWriter outputStreamWriter;
     private KeyRequest keyRequest;
     private final ByteBuf buffer = new ByteBuf(BUFFER_SIZE);
+    // engines for pairingDataStorage keys, recreated when keys change
+    private SatlCipher incomingCipher;
+    private SatlCipher outgoingCipher;
     private String verificationString;
     private KeyPair keyPair;
     private byte[] randomBytes;
@@ -460,7 +464,7 @@ public class InsightConnectionService extends DaggerService implements Connectio
         this.buffer.putBytes(buffer, bytesRead);
         try {
             while (SatlMessage.hasCompletePacket(this.buffer)) {
-                SatlMessage satlMessage = SatlMessage.deserialize(this.buffer, pairingDataStorage.getLastNonceReceived(), pairingDataStorage.getIncomingKey());
+                SatlMessage satlMessage = SatlMessage.deserialize(this.buffer, pairingDataStorage.getLastNonceReceived(), getIncomingCipher());
                 if (pairingDataStorage.getIncomingKey() != null
                         && pairingDataStorage.getLastNonceReceived() != null
                         && !pairingDataStorage.getLastNonceReceived().isSmallerThan(satlMessage.getNonce())) {
@@ -472,6 +476,20 @@ public class InsightConnectionService extends DaggerService implements Connectio
         }
     }
 
+    private SatlCipher getIncomingCipher() {
+        byte[] key = pairingDataStorage.getIncomingKey();
+        if (key == null) return null;
+        if (incomingCipher == null || incomingCipher.getKey() != key) incomingCipher = new SatlCipher(key);
+        return incomingCipher;
+    }
+
+    private SatlCipher getOutgoingCipher() {
+        byte[] key = pairingDataStorage.getOutgoingKey();
+        if (key == null) return null;
+        if (outgoingCipher == null || outgoingCipher.getKey() != key) outgoingCipher = new SatlCipher(key);
+        return outgoingCipher;
+    }
+
     private byte[] prepareSatlMessage(SatlMessage satlMessage) {
         satlMessage.setCommID(pairingDataStorage.getCommId());
         Nonce nonce = pairingDataStorage.getLastNonceSent();
@@ -480,7 +498,7 @@ public class InsightConnectionService extends DaggerService implements Connectio
             pairingDataStorage.setLastNonceSent(nonce);
             satlMessage.setNonce(nonce);
         }
-        ByteBuf serialized = satlMessage.serialize(satlMessage.getClass(), pairingDataStorage.getOutgoingKey());
+        ByteBuf serialized = satlMessage.serialize(satlMessage.getClass(), getOutgoingCipher());
         if (timeoutTimer != null) timeoutTimer.interrupt();
         timeoutTimer = DelayedActionThread.runDelayed("TimeoutTimer", RESPONSE_TIMEOUT, () -> {
             timeoutTimer = null;
@@ -13,11 +13,13 @@ import info.nightscout.androidaps.plugins.pump.insight.ids.SatlCommandIDs;
 import info.nightscout.androidaps.plugins.pump.insight.utils.ByteBuf;
 import info.nightscout.androidaps.plugins.pump.insight.utils.Nonce;
 import info.nightscout.androidaps.plugins.pump.insight.utils.crypto.Cryptograph;
+import info.nightscout.androidaps.plugins.pump.insight.utils.crypto.SatlCipher;
 
 public abstract class SatlMessage {
 
     private static final long PREAMBLE = 4293840008L;
     private static final byte VERSION = 0x20;
+    private static final int MIN_PACKET_LENGTH = 29;
 
     private Nonce nonce;
     private long commID = 0;
@@ -31,10 +33,10 @@ public abstract class SatlMessage {
 
     }
 
-    public ByteBuf serialize(Class<? extends SatlMessage> clazz, byte[] key) {
+    public ByteBuf serialize(Class<? extends SatlMessage> clazz, SatlCipher cipher) {
         ByteBuf byteBuf;
-        if (nonce == null || key == null) byteBuf = serializeCRC(clazz);
-        else byteBuf = serializeCTR(nonce.getProductionalBytes(), key, SatlCommandIDs.IDS.getID(clazz));
+        if (nonce == null || cipher == null) byteBuf = serializeCRC(clazz);
+        else byteBuf = serializeCTR(nonce.getProductionalBytes(), cipher, SatlCommandIDs.IDS.getID(clazz));
         satlContent = byteBuf.getBytes(8, byteBuf.getSize() - 16);
         return byteBuf;
     }
@@ -57,9 +59,9 @@ public abstract class SatlMessage {
         return byteBuf;
     }
 
-    private ByteBuf serializeCTR(ByteBuf nonce, byte[] key, byte commandId) {
-        ByteBuf data = getData();
-        ByteBuf encryptedData = ByteBuf.from(Cryptograph.encryptDataCTR(data.getBytes(), key, nonce.getBytes()));
+    private ByteBuf serializeCTR(ByteBuf nonce, SatlCipher cipher, byte commandId) {
+        byte[] data = getData().getBytes();
+        ByteBuf encryptedData = ByteBuf.from(Cryptograph.encryptDataCTR(data, cipher, nonce.getBytes()));
         int length = 29 + encryptedData.getSize();
         ByteBuf byteBuf = new ByteBuf(length + 8);
         byteBuf.putUInt32LE(PREAMBLE);
@@ -71,20 +73,27 @@ public abstract class SatlMessage {
         byteBuf.putUInt32LE(commID);
         byteBuf.putByteBuf(nonce);
         byteBuf.putByteBuf(encryptedData);
-        byteBuf.putBytes(Cryptograph.produceCCMTag(byteBuf.getBytes(16, 13), data.getBytes(), byteBuf.getBytes(8, 21), key));
+        byteBuf.putBytes(Cryptograph.produceCCMTag(byteBuf.getBytes(16, 13), data, byteBuf.getBytes(8, 21), cipher));
         return byteBuf;
     }
 
-    public static SatlMessage deserialize(ByteBuf data, Nonce lastNonce, byte[] key) throws InvalidMacTrailerException, InvalidSatlCRCException, InvalidNonceException, InvalidPreambleException, InvalidPacketLengthsException, IncompatibleSatlVersionException, InvalidSatlCommandException {
+    /**
+     * Takes one complete packet (see {@link #hasCompletePacket(ByteBuf)}) out of the receive buffer and parses it
+     */
+    public static SatlMessage deserialize(ByteBuf buffer, Nonce lastNonce, SatlCipher cipher) throws InvalidMacTrailerException, InvalidSatlCRCException, InvalidNonceException, InvalidPreambleException, InvalidPacketLengthsException, IncompatibleSatlVersionException, InvalidSatlCommandException {
+        int packetLength = buffer.getUInt16LE(4);
+        if (packetLength < MIN_PACKET_LENGTH) throw new InvalidPacketLengthsException();
+        // the receive buffer is shifted once per packet, not once per field
+        ByteBuf data = ByteBuf.from(buffer.readBytes(packetLength + 8));
         SatlMessage satlMessage;
         byte[] satlContent = data.getBytes(8, data.getSize() - 16);
-        if (key == null) satlMessage = deserializeCRC(data);
-        else satlMessage = deserializeCTR(data, lastNonce, key);
+        if (cipher == null) satlMessage = deserializeCRC(data);
+        else satlMessage = deserializeCTR(data, lastNonce, cipher);
         satlMessage.setSatlContent(satlContent);
         return satlMessage;
     }
 
-    private static SatlMessage deserializeCTR(ByteBuf data, Nonce lastNonce, byte[] key) throws InvalidMacTrailerException, InvalidNonceException, InvalidPreambleException, InvalidPacketLengthsException, IncompatibleSatlVersionException, InvalidSatlCommandException {
+    private static SatlMessage deserializeCTR(ByteBuf data, Nonce lastNonce, SatlCipher cipher) throws InvalidMacTrailerException, InvalidNonceException, InvalidPreambleException, InvalidPacketLengthsException, IncompatibleSatlVersionException, InvalidSatlCommandException {
         long preamble = data.readUInt32LE();
         int packetLength = data.readUInt16LE();
         int packetLengthXOR = data.readUInt16LE() ^ 65535;
@@ -95,11 +104,12 @@ public abstract class SatlMessage {
         int dataLength = data.readUInt16LE();
         long commId = data.readUInt32LE();
         byte[] nonce = data.readBytes(13);
+        if (dataLength != data.getSize() - 8) throw new InvalidPacketLengthsException();
         byte[] payload = data.readBytes(dataLength);
         byte[] trailer = data.readBytes(8);
         Nonce parsedNonce = Nonce.fromProductionalBytes(nonce);
-        payload = Cryptograph.encryptDataCTR(payload, key, nonce);
-        if (!Arrays.equals(trailer, Cryptograph.produceCCMTag(nonce, payload, header, key))) throw new InvalidMacTrailerException();
+        payload = Cryptograph.encryptDataCTR(payload, cipher, nonce);
+        if (!Arrays.equals(trailer, Cryptograph.produceCCMTag(nonce, payload, header, cipher))) throw new InvalidMacTrailerException();
         if (!lastNonce.isSmallerThan(parsedNonce)) throw new InvalidNonceException();
         if (preamble != PREAMBLE) throw new InvalidPreambleException();
         if (packetLength != packetLengthXOR) throw new InvalidPacketLengthsException();
@@ -127,6 +137,7 @@ public abstract class SatlMessage {
         int dataLength = data.readUInt16LE();
         long commId = data.readUInt32LE();
         byte[] nonce = data.readBytes(13);
+        if (dataLength != data.getSize() - 8) throw new InvalidPacketLengthsException();
         byte[] payload = data.readBytes(dataLength - 2);
         int crc = data.readUInt16LE();
         data.shift(8);
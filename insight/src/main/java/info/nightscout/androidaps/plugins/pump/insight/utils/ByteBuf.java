@@ -21,7 +21,8 @@ public class ByteBuf {
     }
 
     public void shift(int offset) {
-        System.arraycopy(bytes, offset, bytes, 0, bytes.length - offset);
+        // only the used part, bytes behind size are never read
+        System.arraycopy(bytes, offset, bytes, 0, Math.max(0, size - offset));
         size -= offset;
     }
 
@@ -109,7 +110,7 @@ public class ByteBuf {
 
 
     public void putByteBuf(ByteBuf byteBuf) {
-        putBytes(byteBuf.getBytes(), byteBuf.getSize());
+        putBytes(byteBuf.bytes, byteBuf.size);
     }
 
 
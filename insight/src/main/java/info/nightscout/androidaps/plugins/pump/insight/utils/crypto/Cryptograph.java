@@ -7,13 +7,10 @@ import org.spongycastle.crypto.digests.MD5Digest;
 import org.spongycastle.crypto.digests.SHA1Digest;
 import org.spongycastle.crypto.encodings.OAEPEncoding;
 import org.spongycastle.crypto.engines.RSAEngine;
-import org.spongycastle.crypto.engines.TwofishEngine;
 import org.spongycastle.crypto.generators.RSAKeyPairGenerator;
 import org.spongycastle.crypto.macs.HMac;
-import org.spongycastle.crypto.modes.CBCBlockCipher;
 import org.spongycastle.crypto.params.AsymmetricKeyParameter;
 import org.spongycastle.crypto.params.KeyParameter;
-import org.spongycastle.crypto.params.ParametersWithIV;
 import org.spongycastle.crypto.params.RSAKeyGenerationParameters;
 import org.spongycastle.crypto.params.RSAKeyParameters;
 import org.spongycastle.crypto.params.RSAPrivateCrtKeyParameters;
@@ -136,45 +133,25 @@ public class Cryptograph {
         return combined;
     }
 
-    private static byte[] produceCCMPrimitive(byte headerByte, byte[] nonce, short number) {
-        ByteBuf byteBuf = new ByteBuf(16);
-        byteBuf.putByte(headerByte);
-        byteBuf.putBytes(nonce);
-        byteBuf.putShort(number);
-        return byteBuf.getBytes();
-    }
-
-    private static byte[] produceIV(byte[] nonce, short payloadSize) {
-        return produceCCMPrimitive((byte) 0x59, nonce, payloadSize);
+    private static void produceCCMPrimitive(byte[] block, byte headerByte, byte[] nonce, short number) {
+        block[0] = headerByte;
+        System.arraycopy(nonce, 0, block, 1, nonce.length);
+        block[14] = (byte) (number >> 8);
+        block[15] = (byte) number;
     }
 
-    private static byte[] produceCTRBlock(byte[] nonce, short counter) {
-        return produceCCMPrimitive((byte) 0x01, nonce, counter);
-    }
-
-    private static byte[] blockCipherZeroPad(byte[] input) {
-        int modulus = input.length % 16;
-        if (modulus == 0) return input;
-        byte[] append = new byte[16 - modulus];
-        for (int i = 0; i < 16 - modulus; i++) {
-            append[i] = 0x00;
+    public static byte[] encryptDataCTR(byte[] data, SatlCipher cipher, byte[] nonce) {
+        byte[] result = new byte[data.length];
+        byte[] counterBlock = new byte[SatlCipher.BLOCK_SIZE];
+        byte[] keyStream = new byte[SatlCipher.BLOCK_SIZE];
+        for (int offset = 0, counter = 1; offset < data.length; offset += SatlCipher.BLOCK_SIZE, counter++) {
+            produceCCMPrimitive(counterBlock, (byte) 0x01, nonce, (short) counter);
+            cipher.encryptBlock(counterBlock, keyStream);
+            int length = Math.min(SatlCipher.BLOCK_SIZE, data.length - offset);
+            for (int i = 0; i < length; i++)
+                result[offset + i] = (byte) (data[offset + i] ^ keyStream[i]);
         }
-        return combine(input, append);
-    }
-
-    public static byte[] encryptDataCTR(byte[] data, byte[] key, byte[] nonce) {
-        byte[] padded = blockCipherZeroPad(data);
-        int length = padded.length >> 4;
-        byte[] result = new byte[length * 16];
-        TwofishEngine engine = new TwofishEngine();
-        engine.init(true, new KeyParameter(key));
-        for (int i = 0; i < length; i++) {
-            engine.processBlock(produceCTRBlock(nonce, (short) (i + 1)), 0, result, i * 16);
-        }
-        byte[] xor = byteArrayXOR(padded, result);
-        byte[] copy = new byte[Math.min(data.length, xor.length)];
-        System.arraycopy(xor, 0, copy, 0, copy.length);
-        return copy;
+        return result;
     }
 
     private static byte[] processHeader(byte[] header) {
@@ -185,24 +162,30 @@ public class Cryptograph {
         return byteBuf.getBytes();
     }
 
-    public static byte[] produceCCMTag(byte[] nonce, byte[] payload, byte[] header, byte[] key) {
-        TwofishEngine engine = new TwofishEngine();
-        engine.init(true, new KeyParameter(key));
-        byte[] initializationVector = new byte[engine.getBlockSize()];
-        engine.processBlock(produceIV(nonce, (short) payload.length), 0, initializationVector, 0);
-        CBCBlockCipher cbc = new CBCBlockCipher(new TwofishEngine());
-        cbc.init(true, new ParametersWithIV(new KeyParameter(key), initializationVector));
-        byte[] processedHeader = blockCipherZeroPad(processHeader(header));
-        byte[] processedPayload = blockCipherZeroPad(payload);
-        byte[] combine = combine(processedHeader, blockCipherZeroPad(processedPayload));
-        byte[] result = new byte[combine.length];
-        for (int i = 0; i < combine.length / 16; i++)
-            cbc.processBlock(combine, i * 16, result, i * 16);
-        byte[] result2 = new byte[8];
-        System.arraycopy(result, result.length - 16, result2, 0, 8);
-        byte[] ctr = new byte[engine.getBlockSize()];
-        engine.processBlock(produceCTRBlock(nonce, (short) 0), 0, ctr, 0);
-        return byteArrayXOR(result2, ctr);
+    // CBC-MAC over zero padded data, state holds the last cipher block
+    private static void cbcMac(SatlCipher cipher, byte[] state, byte[] data) {
+        for (int offset = 0; offset < data.length; offset += SatlCipher.BLOCK_SIZE) {
+            int length = Math.min(SatlCipher.BLOCK_SIZE, data.length - offset);
+            for (int i = 0; i < length; i++)
+                state[i] ^= data[offset + i];
+            cipher.encryptBlock(state, state);
+        }
+    }
+
+    public static byte[] produceCCMTag(byte[] nonce, byte[] payload, byte[] header, SatlCipher cipher) {
+        byte[] block = new byte[SatlCipher.BLOCK_SIZE];
+        byte[] state = new byte[SatlCipher.BLOCK_SIZE];
+        produceCCMPrimitive(block, (byte) 0x59, nonce, (short) payload.length);
+        cipher.encryptBlock(block, state);
+        cbcMac(cipher, state, processHeader(header));
+        cbcMac(cipher, state, payload);
+        produceCCMPrimitive(block, (byte) 0x01, nonce, (short) 0);
+        byte[] ctr = new byte[SatlCipher.BLOCK_SIZE];
+        cipher.encryptBlock(block, ctr);
+        byte[] tag = new byte[8];
+        for (int i = 0; i < tag.length; i++)
+            tag[i] = (byte) (state[i] ^ ctr[i]);
+        return tag;
     }
 
     public static int calculateCRC(byte[] bytes) {
@@ -0,0 +1,30 @@
+package info.nightscout.androidaps.plugins.pump.insight.utils.crypto;
+
+import org.spongycastle.crypto.engines.TwofishEngine;
+import org.spongycastle.crypto.params.KeyParameter;
+
+/**
+ * Twofish engine initialized for one SATL key.
+ * The key schedule is computed once per derived key instead of for every message.
+ * Not thread safe, one instance per direction of a connection.
+ */
+public class SatlCipher {
+
+    static final int BLOCK_SIZE = 16;
+
+    private final byte[] key;
+    private final TwofishEngine engine = new TwofishEngine();
+
+    public SatlCipher(byte[] key) {
+        this.key = key;
+        engine.init(true, new KeyParameter(key));
+    }
+
+    public byte[] getKey() {
+        return this.key;
+    }
+
+    void encryptBlock(byte[] in, byte[] out) {
+        engine.processBlock(in, 0, out, 0);
+    }
+}
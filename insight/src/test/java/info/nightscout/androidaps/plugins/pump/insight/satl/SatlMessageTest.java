@@ -0,0 +1,114 @@
+package info.nightscout.androidaps.plugins.pump.insight.satl;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import info.nightscout.androidaps.plugins.pump.insight.utils.ByteBuf;
+import info.nightscout.androidaps.plugins.pump.insight.utils.Nonce;
+import info.nightscout.androidaps.plugins.pump.insight.utils.crypto.SatlCipher;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Encrypted SATL traffic as it comes from the socket: packets split into arbitrary reads,
+ * framed from the receive buffer, checked and decrypted.
+ * Encrypted traffic in src/test/res/satl/data_messages.bin was recorded from the implementation
+ * before SatlCipher: {@link #PACKETS} DataMessages with payloads of history read size (up to ~200 bytes
+ * per packet) generated by Random(42), nonces counted from zero.
+ */
+public class SatlMessageTest {
+
+    static final byte[] KEY = {
+            0x12, 0x34, 0x56, 0x78, (byte) 0x9a, (byte) 0xbc, (byte) 0xde, (byte) 0xf0,
+            0x0f, 0x1e, 0x2d, 0x3c, 0x4b, 0x5a, 0x69, 0x78
+    };
+    static final int PACKETS = 500;
+
+    private final Random random = new Random(42);
+
+    static byte[] recordedTraffic() throws IOException {
+        return Files.readAllBytes(new File("src/test/res/satl/data_messages.bin").toPath());
+    }
+
+    private List<byte[]> payloads() {
+        List<byte[]> payloads = new ArrayList<>();
+        for (int i = 0; i < PACKETS; i++) {
+            byte[] payload = new byte[8 + random.nextInt(200)];
+            random.nextBytes(payload);
+            payloads.add(payload);
+        }
+        return payloads;
+    }
+
+    private byte[] record(List<byte[]> payloads, SatlCipher cipher) {
+        ByteBuf traffic = new ByteBuf(payloads.size() * 300);
+        Nonce nonce = new Nonce();
+        for (byte[] payload : payloads) {
+            DataMessage message = new DataMessage();
+            message.setData(ByteBuf.from(payload));
+            if (cipher != null) {
+                nonce.increment();
+                message.setNonce(nonce);
+            }
+            traffic.putByteBuf(message.serialize(DataMessage.class, cipher));
+        }
+        return traffic.getBytes();
+    }
+
+    static List<byte[]> receive(byte[] traffic, SatlCipher cipher) throws Exception {
+        List<byte[]> received = new ArrayList<>();
+        ByteBuf buffer = new ByteBuf(1024);
+        Nonce lastNonce = new Nonce();
+        byte[] read = new byte[64];
+        for (int offset = 0; offset < traffic.length; offset += read.length) {
+            int length = Math.min(read.length, traffic.length - offset);
+            System.arraycopy(traffic, offset, read, 0, length);
+            buffer.putBytes(read, length);
+            while (SatlMessage.hasCompletePacket(buffer)) {
+                DataMessage message = (DataMessage) SatlMessage.deserialize(buffer, lastNonce, cipher);
+                if (cipher != null) lastNonce = message.getNonce();
+                received.add(message.getData().getBytes());
+            }
+        }
+        return received;
+    }
+
+    @Test
+    public void encryptedTrafficIsFramedAndDecrypted() throws Exception {
+        List<byte[]> payloads = payloads();
+        List<byte[]> received = receive(recordedTraffic(), new SatlCipher(KEY));
+        assertEquals(payloads.size(), received.size());
+        for (int i = 0; i < payloads.size(); i++)
+            assertArrayEquals(payloads.get(i), received.get(i));
+    }
+
+    @Test
+    public void encryptedTrafficMatchesRecording() throws Exception {
+        assertArrayEquals(recordedTraffic(), record(payloads(), new SatlCipher(KEY)));
+    }
+
+    @Test
+    public void sentTrafficIsFramedAndDecrypted() throws Exception {
+        List<byte[]> payloads = payloads();
+        List<byte[]> received = receive(record(payloads, new SatlCipher(KEY)), new SatlCipher(KEY));
+        assertEquals(payloads.size(), received.size());
+        for (int i = 0; i < payloads.size(); i++)
+            assertArrayEquals(payloads.get(i), received.get(i));
+    }
+
+    @Test
+    public void crcTrafficIsFramed() throws Exception {
+        List<byte[]> payloads = payloads();
+        List<byte[]> received = receive(record(payloads, null), null);
+        assertEquals(payloads.size(), received.size());
+        for (int i = 0; i < payloads.size(); i++)
+            assertArrayEquals(payloads.get(i), received.get(i));
+    }
+}
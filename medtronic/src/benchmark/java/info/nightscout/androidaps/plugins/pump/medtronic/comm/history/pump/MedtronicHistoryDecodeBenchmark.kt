@@ -0,0 +1,43 @@
+package info.nightscout.androidaps.plugins.pump.medtronic.comm.history.pump
+
+import org.junit.Before
+import org.junit.Test
+
+/**
+ * Throughput of RF frame (4b6b) -> history page -> records over the recorded page
+ * of MedtronicHistoryDecodeUTest
+ *
+ * Run by ./gradlew -Pbenchmark :medtronic:testFullDebugUnitTest
+ */
+class MedtronicHistoryDecodeBenchmark {
+
+    private val decode = MedtronicHistoryDecodeUTest()
+
+    @Before fun setup() {
+        decode.setup()
+    }
+
+    @Test fun historyReadThroughput() {
+        val rfFrame = decode.encoding.encode4b6b(decode.recordedPage)
+
+        fun run(pages: Int): Int {
+            var records = 0
+            for (i in 0 until pages) {
+                records += decode.readPage(rfFrame).size
+            }
+            return records
+        }
+
+        run(WARMUP_PAGES)
+        val start = System.nanoTime()
+        val records = run(PAGES)
+        val elapsed = System.nanoTime() - start
+        println("History read: ${elapsed / PAGES / 1000} us/page, ${records * 1_000_000_000L / elapsed} records/s")
+    }
+
+    companion object {
+
+        private const val WARMUP_PAGES = 200
+        private const val PAGES = 1_000
+    }
+}
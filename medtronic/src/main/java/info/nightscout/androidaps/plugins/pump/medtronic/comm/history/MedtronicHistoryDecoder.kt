@@ -28,26 +28,24 @@ abstract class MedtronicHistoryDecoder<T : MedtronicHistoryEntry?>(var aapsLogge
 
     // TODO_ extend this to also use bigger pages (for now we support only 1024 pages)
     @Throws(RuntimeException::class)
-    private fun checkPage(page: RawHistoryPage): MutableList<Byte> {
+    private fun checkPage(page: RawHistoryPage): ByteArray {
         if (!medtronicUtil.isModelSet) {
             aapsLogger.error(LTag.PUMPCOMM, "Device Type is not defined.")
-            return mutableListOf()
+            return byteArrayOf()
         }
         return if (page.data.size != 1024) {
-            page.data.toMutableList()
+            page.data
         } else if (page.isChecksumOK) {
-            page.onlyData.toMutableList()
+            page.onlyData
         } else {
-            mutableListOf()
+            byteArrayOf()
         }
     }
 
+    // records are decoded while they are created
     fun processPageAndCreateRecords(rawHistoryPage: RawHistoryPage): MutableList<T> {
         val dataClear = checkPage(rawHistoryPage)
         val records: MutableList<T> = createRecords(dataClear)
-        for (record in records) {
-            decodeRecord(record)
-        }
         runPostDecodeTasks()
         return records
     }
@@ -14,7 +14,7 @@ import info.nightscout.androidaps.plugins.pump.common.utils.StringUtil
  */
 abstract class MedtronicHistoryEntry : MedtronicHistoryEntryInterface {
 
-    lateinit var rawData: List<Byte>
+    lateinit var rawData: ByteArray
 
     protected var sizes = IntArray(3)
 
@@ -63,39 +63,15 @@ abstract class MedtronicHistoryEntry : MedtronicHistoryEntryInterface {
 
     abstract fun isEntryTypeSet(): Boolean
 
-    override fun setData(listRawData: MutableList<Byte>, doNotProcess: Boolean) {
+    override fun setData(listRawData: ByteArray, doNotProcess: Boolean) {
         rawData = listRawData
 
         // System.out.println("Head: " + sizes[0] + ", dates: " + sizes[1] +
         // ", body=" + sizes[2]);
         if (!doNotProcess) {
-            head = ByteArray(headLength - 1)
-            for (i in 1 until headLength) {
-                head[i - 1] = listRawData[i]
-            }
-            if (dateTimeLength > 0) {
-                datetime = ByteArray(dateTimeLength)
-                var i = headLength
-                var j = 0
-                while (j < dateTimeLength) {
-                    datetime[j] = listRawData[i]
-                    i++
-                    j++
-                }
-            } else
-                datetime = byteArrayOf()
-
-            if (bodyLength > 0) {
-                body = ByteArray(bodyLength)
-                var i = headLength + dateTimeLength
-                var j = 0
-                while (j < bodyLength) {
-                    body[j] = listRawData[i]
-                    i++
-                    j++
-                }
-            } else
-                body = byteArrayOf()
+            head = listRawData.copyOfRange(1, headLength)
+            datetime = if (dateTimeLength > 0) listRawData.copyOfRange(headLength, headLength + dateTimeLength) else byteArrayOf()
+            body = if (bodyLength > 0) listRawData.copyOfRange(headLength + dateTimeLength, headLength + dateTimeLength + bodyLength) else byteArrayOf()
         }
         return
     }
@@ -6,6 +6,6 @@ package info.nightscout.androidaps.plugins.pump.medtronic.comm.history
 interface MedtronicHistoryEntryInterface {
 
     val entryTypeName: String
-    fun setData(listRawData: MutableList<Byte>, doNotProcess: Boolean)
+    fun setData(listRawData: ByteArray, doNotProcess: Boolean)
     val dateLength: Int
 }
\ No newline at end of file
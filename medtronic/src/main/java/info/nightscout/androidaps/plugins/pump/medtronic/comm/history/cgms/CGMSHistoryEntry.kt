@@ -38,7 +38,7 @@ class CGMSHistoryEntry : MedtronicHistoryEntry() {
         return entryType != CGMSHistoryEntryType.UnknownOpCode
     }
 
-    override fun setData(listRawData: MutableList<Byte>, doNotProcess: Boolean) {
+    override fun setData(listRawData: ByteArray, doNotProcess: Boolean) {
         if (entryType.schemaSet) {
             super.setData(listRawData, doNotProcess)
         } else {
@@ -2,6 +2,7 @@ package info.nightscout.androidaps.plugins.pump.medtronic.comm.history.cgms
 
 import info.nightscout.androidaps.logging.AAPSLogger
 import info.nightscout.androidaps.logging.LTag
+import info.nightscout.androidaps.logging.debug
 import info.nightscout.androidaps.plugins.pump.common.utils.ByteUtil
 import info.nightscout.androidaps.plugins.pump.common.utils.DateTimeUtil
 import info.nightscout.androidaps.plugins.pump.medtronic.comm.history.MedtronicHistoryDecoder
@@ -10,7 +11,6 @@ import info.nightscout.androidaps.plugins.pump.medtronic.comm.history.cgms.CGMSH
 import info.nightscout.androidaps.plugins.pump.medtronic.util.MedtronicUtil
 import okhttp3.internal.and
 import org.joda.time.LocalDateTime
-import java.util.*
 
 /**
  * This file was taken from GGC - GNU Gluco Control (ggc.sourceforge.net), application for diabetes
@@ -70,9 +70,8 @@ class MedtronicCGMSHistoryDecoder constructor(
 
     override fun postProcess() {}
 
-    override fun createRecords(dataClearInput: MutableList<Byte>): MutableList<CGMSHistoryEntry> {
-        dataClearInput.reverse()
-        val dataClear = dataClearInput //reverseList(dataClearInput, Byte::class.java)
+    override fun createRecords(dataClearInput: ByteArray): MutableList<CGMSHistoryEntry> {
+        val dataClear = dataClearInput.reversedArray()
         prepareStatistics()
         var counter = 0
         val outList: MutableList<CGMSHistoryEntry> = mutableListOf()
@@ -92,20 +91,16 @@ class MedtronicCGMSHistoryDecoder constructor(
                     val pe = CGMSHistoryEntry()
                     pe.setEntryType(CGMSHistoryEntryType.None)
                     pe.opCode = opCode.toByte()
-                    pe.setData(Arrays.asList(opCode.toByte()), false)
+                    pe.setData(byteArrayOf(opCode.toByte()), false)
                     outList.add(pe)
                 } else {
                     // System.out.println("OpCode: " + opCode);
-                    val listRawData: MutableList<Byte> = ArrayList()
-                    listRawData.add(opCode.toByte())
-                    for (j in 0 until entryType.totalLength - 1) {
-                        listRawData.add(dataClear[counter])
-                        counter++
-                    }
+                    val recordStart = counter - 1
+                    counter = maxOf(counter, recordStart + entryType.totalLength)
                     val pe = CGMSHistoryEntry()
                     pe.setEntryType(entryType)
                     pe.opCode = opCode.toByte()
-                    pe.setData(listRawData, false)
+                    pe.setData(dataClear.copyOfRange(recordStart, counter), false)
 
                     // System.out.println("Record: " + pe);
                     outList.add(pe)
@@ -113,7 +108,7 @@ class MedtronicCGMSHistoryDecoder constructor(
             } else {
                 val pe = CGMSHistoryEntry()
                 pe.setEntryType(CGMSHistoryEntryType.GlucoseSensorData)
-                pe.setData(Arrays.asList(opCode.toByte()), false)
+                pe.setData(byteArrayOf(opCode.toByte()), false)
                 outList.add(pe)
             }
         } while (counter < dataClear.size)
@@ -134,7 +129,7 @@ class MedtronicCGMSHistoryDecoder constructor(
             } else {
                 if (dateTime != null) entry.setDateTime(dateTime, getIndex)
             }
-            aapsLogger.debug(LTag.PUMPCOMM, "Record: {}", entry)
+            aapsLogger.debug(LTag.PUMPCOMM) { "Record: $entry" }
         }
         return reversedOutList
     }
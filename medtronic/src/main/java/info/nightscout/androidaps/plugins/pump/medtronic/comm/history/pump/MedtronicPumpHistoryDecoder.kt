@@ -37,11 +37,10 @@ class MedtronicPumpHistoryDecoder @Inject constructor(
     //private var tbrPreviousRecord: PumpHistoryEntry? = null
     private var changeTimeRecord: PumpHistoryEntry? = null
 
-    override fun createRecords(dataClearInput: MutableList<Byte>): MutableList<PumpHistoryEntry> {
+    override fun createRecords(dataClearInput: ByteArray): MutableList<PumpHistoryEntry> {
         prepareStatistics()
         var counter = 0
         var record = 0
-        var incompletePacket: Boolean
         val outList: MutableList<PumpHistoryEntry> = mutableListOf()
         var skipped: String? = null
         if (dataClearInput.size == 0) {
@@ -51,7 +50,6 @@ class MedtronicPumpHistoryDecoder @Inject constructor(
         do {
             val opCode: Int = dataClearInput[counter].toInt()
             var special = false
-            incompletePacket = false
             var skippedRecords = false
             if (opCode == 0) {
                 counter++
@@ -75,36 +73,23 @@ class MedtronicPumpHistoryDecoder @Inject constructor(
             if (counter >= 1022) {
                 break
             }
-            val listRawData: MutableList<Byte> = ArrayList()
-            listRawData.add(opCode.toByte())
             if (entryType === PumpHistoryEntryType.UnabsorbedInsulin
                 || entryType === PumpHistoryEntryType.UnabsorbedInsulin512) {
                 val elements: Int = dataClearInput[counter].toInt()
-                listRawData.add(elements.toByte())
                 counter++
                 val els = getUnsignedInt(elements)
-                for (k in 0 until els - 2) {
-                    if (counter < 1022) {
-                        listRawData.add(dataClearInput[counter])
-                        counter++
-                    }
-                }
+                counter = maxOf(counter, minOf(counter + els - 2, 1022, dataClearInput.size))
                 special = true
             } else {
-                for (j in 0 until entryType.getTotalLength(medtronicUtil.medtronicPumpModel) - 1) {
-                    try {
-                        listRawData.add(dataClearInput[counter])
-                        counter++
-                    } catch (ex: Exception) {
-                        aapsLogger.error(LTag.PUMPBTCOMM, "OpCode: " + ByteUtil.shortHexString(opCode.toByte()) + ", Invalid package: "
-                            + ByteUtil.getHex(listRawData))
-                        // throw ex;
-                        incompletePacket = true
-                        break
-                    }
+                val recordEnd = maxOf(counter, pe.offset + entryType.getTotalLength(medtronicUtil.medtronicPumpModel))
+                if (recordEnd > dataClearInput.size) {
+                    aapsLogger.error(LTag.PUMPBTCOMM, "OpCode: " + ByteUtil.shortHexString(opCode.toByte()) + ", Invalid package: "
+                        + ByteUtil.getHex(dataClearInput.copyOfRange(pe.offset, dataClearInput.size)))
+                    break
                 }
-                if (incompletePacket) break
+                counter = recordEnd
             }
+            val rawData = dataClearInput.copyOfRange(pe.offset, counter)
             if (entryType === PumpHistoryEntryType.None) {
                 aapsLogger.error(LTag.PUMPBTCOMM, "Error in code. We should have not come into this branch.")
             } else {
@@ -112,7 +97,7 @@ class MedtronicPumpHistoryDecoder @Inject constructor(
                     pe.opCode = opCode.toByte()
                 }
                 if (entryType.getHeadLength(medtronicUtil.medtronicPumpModel) == 0) special = true
-                pe.setData(listRawData, special)
+                pe.setData(rawData, special)
                 val decoded = decodeRecord(pe)
                 if (decoded === RecordDecodeStatus.OK || decoded === RecordDecodeStatus.Ignored) {
                     //Log.i(TAG, "#" + record + " " + decoded.getDescription() + " " + pe);
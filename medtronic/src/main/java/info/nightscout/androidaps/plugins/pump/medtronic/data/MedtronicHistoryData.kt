@@ -63,6 +63,12 @@ class MedtronicHistoryData @Inject constructor(
     private var lastIdUsed: Long = 0
     private var gson: Gson = GsonBuilder().excludeFieldsWithoutExposeAnnotation().create()
 
+    // entries for PumpSync collected while processing new history
+    private val historyEvents: MutableList<PumpSync.HistoryEvent> = mutableListOf()
+    private val historyEventLogs: MutableList<(Boolean) -> String> = mutableListOf()
+    // local state changes done only after collected entries are synced
+    private val afterHistorySync: MutableList<() -> Unit> = mutableListOf()
+
     /**
      * Add New History entries
      *
@@ -295,6 +301,9 @@ class MedtronicHistoryData @Inject constructor(
      * Process History Data: Boluses(Treatments), TDD, TBRs, Suspend-Resume (or other pump stops: battery, prime)
      */
     fun processNewHistoryData() {
+        historyEvents.clear()
+        historyEventLogs.clear()
+        afterHistorySync.clear()
 
         // Prime (for resetting autosense)
         val primeRecords: MutableList<PumpHistoryEntry> = getFilteredItems(PumpHistoryEntryType.Prime)
@@ -374,6 +383,30 @@ class MedtronicHistoryData @Inject constructor(
                 throw ex
             }
         }
+
+        // all processed entries are synced in one transaction
+        try {
+            syncHistoryEvents()
+        } catch (ex: Exception) {
+            aapsLogger.error(LTag.PUMP, "ProcessHistoryData: Error syncing history entries: " + ex.message, ex)
+            throw ex
+        }
+    }
+
+    private fun sync(event: PumpSync.HistoryEvent, log: (result: Boolean) -> String) {
+        historyEvents.add(event)
+        historyEventLogs.add(log)
+    }
+
+    private fun syncHistoryEvents() {
+        if (historyEvents.isNotEmpty())
+            pumpSync.syncPumpHistory(historyEvents, medtronicPumpStatus.pumpType, medtronicPumpStatus.serialNumber)
+                .forEachIndexed { index, result -> aapsLogger.debug(LTag.PUMP, historyEventLogs[index](result)) }
+        historyEvents.clear()
+        historyEventLogs.clear()
+        // not reached if sync failed, entries are processed again with next history read
+        afterHistorySync.forEach { it() }
+        afterHistorySync.clear()
     }
 
     private fun processPrime(primeRecords: List<PumpHistoryEntry>) {
@@ -424,18 +457,16 @@ class MedtronicHistoryData @Inject constructor(
     private fun uploadCareportalEventIfFoundInHistory(historyRecord: PumpHistoryEntry, eventSP: String, eventType: DetailedBolusInfo.EventType) {
         val lastPrimeFromAAPS = sp.getLong(eventSP, 0L)
         if (historyRecord.atechDateTime != lastPrimeFromAAPS) {
-            val result = pumpSync.insertTherapyEventIfNewWithTimestamp(
+            sync(PumpSync.HistoryEvent.TherapyEvent(
                 DateTimeUtil.toMillisFromATD(historyRecord.atechDateTime),
                 eventType, null,
-                historyRecord.pumpId,
-                medtronicPumpStatus.pumpType,
-                medtronicPumpStatus.serialNumber)
-
-            aapsLogger.debug(LTag.PUMP, String.format(Locale.ROOT, "insertTherapyEventIfNewWithTimestamp [date=%d, eventType=%s, pumpId=%d, pumpSerial=%s] - Result: %b",
-                historyRecord.atechDateTime, eventType, historyRecord.pumpId,
-                medtronicPumpStatus.serialNumber, result))
+                historyRecord.pumpId)) { result ->
+                String.format(Locale.ROOT, "insertTherapyEventIfNewWithTimestamp [date=%d, eventType=%s, pumpId=%d, pumpSerial=%s] - Result: %b",
+                    historyRecord.atechDateTime, eventType, historyRecord.pumpId,
+                    medtronicPumpStatus.serialNumber, result)
+            }
 
-            sp.putLong(eventSP, historyRecord.atechDateTime)
+            afterHistorySync.add { sp.putLong(eventSP, historyRecord.atechDateTime) }
         }
     }
 
@@ -448,15 +479,13 @@ class MedtronicHistoryData @Inject constructor(
         for (tdd in tdds) {
             val totalsDTO = tdd.decodedData["Object"] as DailyTotalsDTO
 
-            pumpSync.createOrUpdateTotalDailyDose(
+            sync(PumpSync.HistoryEvent.TotalDailyDose(
                 DateTimeUtil.toMillisFromATD(tdd.atechDateTime),
                 totalsDTO.insulinBolus,
                 totalsDTO.insulinBasal,
                 totalsDTO.insulinTotal,
-                tdd.pumpId,
-                medtronicPumpStatus.pumpType,
-                medtronicPumpStatus.serialNumber
-            )
+                tdd.pumpId
+            )) { result -> "createOrUpdateTotalDailyDose [date=${tdd.atechDateTime}, pumpId=${tdd.pumpId}] - Result: $result" }
         }
     }
 
@@ -499,38 +528,35 @@ class MedtronicHistoryData @Inject constructor(
                 if (entryWithTempId != null) {
                     //aapsLogger.debug(LTag.PUMP, String.format("DD: entryWithTempId.bolusData=%s", if (entryWithTempId.bolusData == null) "null" else entryWithTempId.bolusData))
 
-                    temporaryId = entryWithTempId.temporaryId
-                    pumpSyncStorage.removeBolusWithTemporaryId(temporaryId)
+                    val tempId = entryWithTempId.temporaryId
+                    temporaryId = tempId
+                    afterHistorySync.add { pumpSyncStorage.removeBolusWithTemporaryId(tempId) }
                     boluses.remove(entryWithTempId)
                     type = entryWithTempId.bolusType
                 }
             }
 
             if (temporaryId != null) {
-                val result = pumpSync.syncBolusWithTempId(
+                sync(PumpSync.HistoryEvent.BolusWithTempId(
                     tryToGetByLocalTime(bolus.atechDateTime),
                     deliveredAmount,
                     temporaryId,
                     type,
-                    bolus.pumpId,
-                    medtronicPumpStatus.pumpType,
-                    medtronicPumpStatus.serialNumber)
-
-                aapsLogger.debug(LTag.PUMP, String.format(Locale.ENGLISH, "syncBolusWithTempId [date=%d, temporaryId=%d, pumpId=%d, insulin=%.2f, pumpSerial=%s] - Result: %b",
-                    bolus.atechDateTime, temporaryId, bolus.pumpId, deliveredAmount,
-                    medtronicPumpStatus.serialNumber, result))
+                    bolus.pumpId)) { result ->
+                    String.format(Locale.ENGLISH, "syncBolusWithTempId [date=%d, temporaryId=%d, pumpId=%d, insulin=%.2f, pumpSerial=%s] - Result: %b",
+                        bolus.atechDateTime, temporaryId, bolus.pumpId, deliveredAmount,
+                        medtronicPumpStatus.serialNumber, result)
+                }
             } else {
-                val result = pumpSync.syncBolusWithPumpId(
+                sync(PumpSync.HistoryEvent.Bolus(
                     tryToGetByLocalTime(bolus.atechDateTime),
                     deliveredAmount,
                     type,
-                    bolus.pumpId,
-                    medtronicPumpStatus.pumpType,
-                    medtronicPumpStatus.serialNumber)
-
-                aapsLogger.debug(LTag.PUMP, String.format(Locale.ENGLISH, "syncBolusWithPumpId [date=%d, pumpId=%d, insulin=%.2f, pumpSerial=%s] - Result: %b",
-                    bolus.atechDateTime, bolus.pumpId, deliveredAmount,
-                    medtronicPumpStatus.serialNumber, result))
+                    bolus.pumpId)) { result ->
+                    String.format(Locale.ENGLISH, "syncBolusWithPumpId [date=%d, pumpId=%d, insulin=%.2f, pumpSerial=%s] - Result: %b",
+                        bolus.atechDateTime, bolus.pumpId, deliveredAmount,
+                        medtronicPumpStatus.serialNumber, result)
+                }
             }
 
             addCarbs(bolus)
@@ -540,18 +566,16 @@ class MedtronicHistoryData @Inject constructor(
     private fun addExtendedBolus(bolus: PumpHistoryEntry, bolusDTO: BolusDTO, isMultiwave: Boolean) {
         val durationMs: Long = bolusDTO.duration * 60L * 1000L
 
-        val result = pumpSync.syncExtendedBolusWithPumpId(
+        sync(PumpSync.HistoryEvent.ExtendedBolus(
             tryToGetByLocalTime(bolus.atechDateTime),
             bolusDTO.deliveredAmount,
             durationMs,
             false,
-            bolus.pumpId,
-            medtronicPumpStatus.pumpType,
-            medtronicPumpStatus.serialNumber)
-
-        aapsLogger.debug(LTag.PUMP, String.format(Locale.ENGLISH, "syncExtendedBolusWithPumpId [date=%d, amount=%.2f, duration=%d, pumpId=%d, pumpSerial=%s, multiwave=%b] - Result: %b",
-            bolus.atechDateTime, bolusDTO.deliveredAmount, bolusDTO.duration, bolus.pumpId,
-            medtronicPumpStatus.serialNumber, isMultiwave, result))
+            bolus.pumpId)) { result ->
+            String.format(Locale.ENGLISH, "syncExtendedBolusWithPumpId [date=%d, amount=%.2f, duration=%d, pumpId=%d, pumpSerial=%s, multiwave=%b] - Result: %b",
+                bolus.atechDateTime, bolusDTO.deliveredAmount, bolusDTO.duration, bolus.pumpId,
+                medtronicPumpStatus.serialNumber, isMultiwave, result)
+        }
     }
 
     private fun addCarbs(bolus: PumpHistoryEntry) {
@@ -645,20 +669,17 @@ class MedtronicHistoryData @Inject constructor(
                             "pumpId=${tempBasalProcessDTO.pumpId}, pumpType=${medtronicPumpStatus.pumpType}, " +
                             "pumpSerial=${medtronicPumpStatus.serialNumber}]")
 
-                        val result = pumpSync.syncTemporaryBasalWithTempId(
+                        sync(PumpSync.HistoryEvent.TemporaryBasalWithTempId(
                             tryToGetByLocalTime(tempBasalProcessDTO.atechDateTime),
                             tbrEntry.insulinRate,
                             tempBasalProcessDTO.durationAsSeconds * 1000L,
                             !tbrEntry.isPercent,
                             entryWithTempId.temporaryId,
                             PumpSync.TemporaryBasalType.NORMAL,
-                            tempBasalProcessDTO.pumpId,
-                            medtronicPumpStatus.pumpType,
-                            medtronicPumpStatus.serialNumber)
-
-                        aapsLogger.debug(LTag.PUMP, "syncTemporaryBasalWithTempId - Result: $result")
+                            tempBasalProcessDTO.pumpId)) { result -> "syncTemporaryBasalWithTempId - Result: $result" }
 
-                        pumpSyncStorage.removeTemporaryBasalWithTemporaryId(entryWithTempId.temporaryId)
+                        val tempId = entryWithTempId.temporaryId
+                        afterHistorySync.add { pumpSyncStorage.removeTemporaryBasalWithTemporaryId(tempId) }
                         tbrRecords.remove(entryWithTempId)
 
                         entryWithTempId.pumpId = tempBasalProcessDTO.pumpId
@@ -679,17 +700,13 @@ class MedtronicHistoryData @Inject constructor(
                             "pumpId=${tempBasalProcessDTO.pumpId}, rate=${tbrEntry.insulinRate} U, " +
                             "duration=${tempBasalProcessDTO.durationAsSeconds} s, pumpSerial=${medtronicPumpStatus.serialNumber}]")
 
-                        val result = pumpSync.syncTemporaryBasalWithPumpId(
+                        sync(PumpSync.HistoryEvent.TemporaryBasal(
                             tryToGetByLocalTime(tempBasalProcessDTO.atechDateTime),
                             tbrEntry.insulinRate,
                             tempBasalProcessDTO.durationAsSeconds * 1000L,
                             !tbrEntry.isPercent,
                             PumpSync.TemporaryBasalType.NORMAL,
-                            tempBasalProcessDTO.pumpId,
-                            medtronicPumpStatus.pumpType,
-                            medtronicPumpStatus.serialNumber)
-
-                        aapsLogger.debug(LTag.PUMP, "syncTemporaryBasalWithPumpId - Result: $result")
+                            tempBasalProcessDTO.pumpId)) { result -> "syncTemporaryBasalWithPumpId - Result: $result" }
 
                         if (medtronicPumpStatus.runningTBR != null) {
                             if (!isTBRActive(medtronicPumpStatus.runningTBR!!)) {
@@ -810,17 +827,13 @@ class MedtronicHistoryData @Inject constructor(
                 "pumpId=${tempBasalProcess.itemOne.pumpId}, " +
                 "pumpSerial=${medtronicPumpStatus.serialNumber}]")
 
-            val result = pumpSync.syncTemporaryBasalWithPumpId(
+            sync(PumpSync.HistoryEvent.TemporaryBasal(
                 tryToGetByLocalTime(tempBasalProcess.itemOne.atechDateTime),
                 0.0,
                 tempBasalProcess.durationAsSeconds * 1000L,
                 true,
                 PumpSync.TemporaryBasalType.PUMP_SUSPEND,
-                tempBasalProcess.itemOne.pumpId,
-                medtronicPumpStatus.pumpType,
-                medtronicPumpStatus.serialNumber)
-
-            aapsLogger.debug(LTag.PUMP, "syncTemporaryBasalWithPumpId: Result: $result")
+                tempBasalProcess.itemOne.pumpId)) { result -> "syncTemporaryBasalWithPumpId: Result: $result" }
         }
     }
 
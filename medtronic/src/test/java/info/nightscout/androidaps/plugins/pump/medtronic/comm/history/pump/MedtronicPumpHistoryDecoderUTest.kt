@@ -54,7 +54,7 @@ class MedtronicPumpHistoryDecoderUTest : TestBase() {
 
         PumpHistoryEntry phe = new PumpHistoryEntry();
         phe.setEntryType(entryType);
-        phe.setData(ByteUtil.getListFromByteArray(data), false);
+        phe.setData(data, false);
 
         decoder.decodeRecord(phe);
 
@@ -72,7 +72,7 @@ class MedtronicPumpHistoryDecoderUTest : TestBase() {
 
         PumpHistoryEntry phe = new PumpHistoryEntry();
         phe.setEntryType(entryType);
-        phe.setData(ByteUtil.getListFromByteArray(data), false);
+        phe.setData(data, false);
 
         decoder.decodeRecord(phe);
 
@@ -157,7 +157,7 @@ class MedtronicPumpHistoryDecoderUTest : TestBase() {
 
         PumpHistoryEntry phe = new PumpHistoryEntry();
         phe.setEntryType(entryType);
-        phe.setData(ByteUtil.getListFromByteArray(data), false);
+        phe.setData(data, false);
 
         System.out.println("EntryType: " + entryType);
 
@@ -0,0 +1,90 @@
+package info.nightscout.androidaps.plugins.pump.omnipod.dash.driver.comm.endecrypt
+
+import info.nightscout.androidaps.logging.AAPSLogger
+import info.nightscout.androidaps.plugins.pump.omnipod.dash.driver.comm.Id
+import info.nightscout.androidaps.plugins.pump.omnipod.dash.driver.comm.message.MessagePacket
+import info.nightscout.androidaps.plugins.pump.omnipod.dash.driver.comm.message.MessageType
+import info.nightscout.androidaps.plugins.pump.omnipod.dash.driver.comm.packet.PayloadJoiner
+import info.nightscout.androidaps.plugins.pump.omnipod.dash.driver.comm.packet.PayloadSplitter
+import org.junit.Test
+import org.mockito.Mockito.mock
+import org.spongycastle.crypto.engines.AESEngine
+import org.spongycastle.crypto.modes.CCMBlockCipher
+import org.spongycastle.crypto.params.AEADParameters
+import org.spongycastle.crypto.params.KeyParameter
+import org.spongycastle.util.encoders.Hex
+import java.util.*
+
+/**
+ * Throughput of encrypt -> split -> join -> decrypt of the whole message path.
+ * Correctness of the path is checked by MessagePipelineTest.
+ * Logger is a mock so debug messages are not built, as on a phone with PUMPBTCOMM logging disabled
+ *
+ * Run by ./gradlew -Pbenchmark :omnipod-dash:testFullDebugUnitTest
+ */
+class MessagePipelineBenchmark {
+
+    private val aapsLogger = mock(AAPSLogger::class.java)
+    private val noncePrefix = Hex.decode("dda23c090a0a0a0a")
+    private val ck = Hex.decode("ba1283744b6de9fab6d9b77d95a71d6e")
+    private val podCipher = CCMBlockCipher(AESEngine())
+    private val podHeader = ByteArray(MessagePacket.HEADER_SIZE)
+
+    private fun message(payload: ByteArray, sequenceNumber: Int) = MessagePacket(
+        type = MessageType.ENCRYPTED,
+        source = Id.fromLong(136326824),
+        destination = Id.fromLong(136326825),
+        payload = payload,
+        sequenceNumber = sequenceNumber.toByte(),
+        eqos = 1
+    )
+
+    private fun transfer(msg: MessagePacket): MessagePacket {
+        val packets = PayloadSplitter(msg.asByteArray()).splitInPackets().map { it.toByteArray() }
+        val joiner = PayloadJoiner(packets[0])
+        for (packet in packets.subList(1, packets.size)) {
+            joiner.accumulate(packet)
+        }
+        return MessagePacket.parse(joiner.finalize())
+    }
+
+    // what the pod does with messages from us
+    private fun podDecrypt(msg: MessagePacket, podNonce: Nonce): ByteArray {
+        msg.writeHeader(podHeader)
+        podCipher.init(false, AEADParameters(KeyParameter(ck), 64, podNonce.increment(true), podHeader))
+        val ret = ByteArray(msg.payload.size - 8)
+        podCipher.processPacket(msg.payload, 0, msg.payload.size, ret, 0)
+        return ret
+    }
+
+    @Test fun throughput() {
+        val random = Random(42)
+        val enDecrypt = EnDecrypt(aapsLogger, Nonce(noncePrefix, 0), ck)
+        val podNonce = Nonce(noncePrefix, 0)
+        val commands = Array(16) { ByteArray(20 + it * 10).also { c -> random.nextBytes(c) } }
+
+        fun run(iterations: Int): Long {
+            var bytes = 0L
+            for (i in 0 until iterations) {
+                val command = commands[i % commands.size]
+                bytes += podDecrypt(transfer(enDecrypt.encrypt(message(command, i))), podNonce).size
+            }
+            return bytes
+        }
+
+        run(WARMUP_ITERATIONS)
+        val start = System.nanoTime()
+        val bytes = run(ITERATIONS)
+        val elapsed = System.nanoTime() - start
+        println(
+            "Message pipeline: ${ITERATIONS * 1_000_000_000L / elapsed} messages/s, " +
+                "${bytes * 1_000_000_000L / elapsed / 1024} kB/s"
+        )
+    }
+
+    companion object {
+
+        private const val WARMUP_ITERATIONS = 5_000
+        private const val ITERATIONS = 20_000
+    }
+}
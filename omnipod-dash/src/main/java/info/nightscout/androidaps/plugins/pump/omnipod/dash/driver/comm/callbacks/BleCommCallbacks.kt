@@ -8,6 +8,7 @@ import android.bluetooth.BluetoothProfile
 import info.nightscout.androidaps.extensions.toHex
 import info.nightscout.androidaps.logging.AAPSLogger
 import info.nightscout.androidaps.logging.LTag
+import info.nightscout.androidaps.logging.debug
 import info.nightscout.androidaps.plugins.pump.omnipod.dash.driver.comm.io.CharacteristicType.Companion.byValue
 import info.nightscout.androidaps.plugins.pump.omnipod.dash.driver.comm.io.IncomingPackets
 import info.nightscout.androidaps.plugins.pump.omnipod.dash.driver.comm.session.DisconnectHandler
@@ -121,12 +122,11 @@ class BleCommCallbacks(
         val payload = characteristic.value
         val characteristicType = byValue(characteristic.uuid.toString())
 
-        aapsLogger.debug(
-            LTag.PUMPBTCOMM,
+        aapsLogger.debug(LTag.PUMPBTCOMM) {
             "OnCharacteristicChanged with char/value " +
                 characteristicType + "/" +
                 payload.toHex()
-        )
+        }
 
         val insertResult = incomingPackets.byCharacteristicType(characteristicType).add(payload)
         if (!insertResult) {
@@ -177,7 +177,7 @@ class BleCommCallbacks(
                 WriteConfirmationError("onWrite received Null: UUID=$uuid, value=${value?.toHex()} status=$status")
 
             status == BluetoothGatt.GATT_SUCCESS -> {
-                aapsLogger.debug(LTag.PUMPBTCOMM, "OnWrite value " + value.toHex())
+                aapsLogger.debug(LTag.PUMPBTCOMM) { "OnWrite value " + value.toHex() }
                 WriteConfirmationSuccess(uuid.toString(), value)
             }
 
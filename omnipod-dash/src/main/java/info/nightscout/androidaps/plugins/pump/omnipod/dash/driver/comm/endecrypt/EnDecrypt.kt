@@ -3,57 +3,48 @@ package info.nightscout.androidaps.plugins.pump.omnipod.dash.driver.comm.endecry
 import info.nightscout.androidaps.extensions.toHex
 import info.nightscout.androidaps.logging.AAPSLogger
 import info.nightscout.androidaps.logging.LTag
+import info.nightscout.androidaps.logging.debug
 import info.nightscout.androidaps.plugins.pump.omnipod.dash.driver.comm.message.MessagePacket
 import org.spongycastle.crypto.engines.AESEngine
 import org.spongycastle.crypto.modes.CCMBlockCipher
 import org.spongycastle.crypto.params.AEADParameters
 import org.spongycastle.crypto.params.KeyParameter
 
-class EnDecrypt(private val aapsLogger: AAPSLogger, private val nonce: Nonce, private val ck: ByteArray) {
+/**
+ * Not thread safe. One instance is used by one session, messages are processed one by one
+ */
+class EnDecrypt(private val aapsLogger: AAPSLogger, private val nonce: Nonce, ck: ByteArray) {
 
-    val engine = AESEngine()
-    val cipher = CCMBlockCipher(engine)
+    private val cipher = CCMBlockCipher(AESEngine())
+    private val key = KeyParameter(ck)
+
+    // associated data, reused for every message
+    private val header = ByteArray(MessagePacket.HEADER_SIZE)
 
     fun decrypt(msg: MessagePacket): MessagePacket {
         val payload = msg.payload
-        val header = msg.asByteArray().copyOfRange(0, 16)
+        msg.writeHeader(header)
 
         val n = nonce.increment(false)
-        aapsLogger.debug(LTag.PUMPBTCOMM, "Decrypt header ${header.toHex()} payload: ${payload.toHex()}")
-        aapsLogger.debug(LTag.PUMPBTCOMM, "Decrypt NONCE ${n.toHex()}")
-        cipher.init(
-            false,
-            AEADParameters(
-                KeyParameter(ck),
-                MAC_SIZE * 8, // in bits
-                n,
-                header
-            )
-        )
+        aapsLogger.debug(LTag.PUMPBTCOMM) { "Decrypt header ${header.toHex()} payload: ${payload.toHex()}" }
+        aapsLogger.debug(LTag.PUMPBTCOMM) { "Decrypt NONCE ${n.toHex()}" }
+        cipher.init(false, AEADParameters(key, MAC_SIZE * 8, n, header)) // MAC size in bits
         val decryptedPayload = ByteArray(payload.size - MAC_SIZE)
         cipher.processPacket(payload, 0, payload.size, decryptedPayload, 0)
-        aapsLogger.debug(LTag.PUMPBTCOMM, "Decrypted payload ${decryptedPayload.toHex()}")
+        aapsLogger.debug(LTag.PUMPBTCOMM) { "Decrypted payload ${decryptedPayload.toHex()}" }
         return msg.copy(payload = decryptedPayload)
     }
 
     fun encrypt(headerMessage: MessagePacket): MessagePacket {
         val payload = headerMessage.payload
-        val header = headerMessage.asByteArray(true).copyOfRange(0, 16)
+        headerMessage.writeHeader(header, forEncryption = true)
 
         val n = nonce.increment(true)
-        aapsLogger.debug(LTag.PUMPBTCOMM, "Encrypt header ${header.toHex()} payload: ${payload.toHex()}")
-        aapsLogger.debug(LTag.PUMPBTCOMM, "Encrypt NONCE ${n.toHex()}")
+        aapsLogger.debug(LTag.PUMPBTCOMM) { "Encrypt header ${header.toHex()} payload: ${payload.toHex()}" }
+        aapsLogger.debug(LTag.PUMPBTCOMM) { "Encrypt NONCE ${n.toHex()}" }
         val encryptedPayload = ByteArray(payload.size + MAC_SIZE)
 
-        cipher.init(
-            true,
-            AEADParameters(
-                KeyParameter(ck),
-                MAC_SIZE * 8, // in bits
-                n,
-                header
-            )
-        )
+        cipher.init(true, AEADParameters(key, MAC_SIZE * 8, n, header)) // MAC size in bits
         cipher.processPacket(payload, 0, payload.size, encryptedPayload, 0)
 
         return headerMessage.copy(payload = encryptedPayload)
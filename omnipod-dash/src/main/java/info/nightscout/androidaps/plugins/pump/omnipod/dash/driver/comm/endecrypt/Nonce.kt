@@ -1,23 +1,30 @@
 package info.nightscout.androidaps.plugins.pump.omnipod.dash.driver.comm.endecrypt
 
-import java.nio.ByteBuffer
-
 data class Nonce(val prefix: ByteArray, var sqn: Long) {
     init {
-        require(prefix.size == 8) { "Nonce prefix should be 8 bytes long" }
+        require(prefix.size == PREFIX_SIZE) { "Nonce prefix should be 8 bytes long" }
     }
 
+    /**
+     * @return prefix followed by lowest 5 bytes of incremented [sqn], highest bit set for messages from the pod
+     */
     fun increment(podReceiving: Boolean): ByteArray {
         sqn++
-        val ret = ByteBuffer.allocate(8)
-            .putLong(sqn)
-            .array()
-            .copyOfRange(3, 8)
+        val ret = prefix.copyOf(PREFIX_SIZE + SQN_SIZE)
+        for (i in 0 until SQN_SIZE) {
+            ret[PREFIX_SIZE + i] = (sqn ushr (8 * (SQN_SIZE - 1 - i))).toByte()
+        }
         if (podReceiving) {
-            ret[0] = (ret[0].toInt() and 127).toByte()
+            ret[PREFIX_SIZE] = (ret[PREFIX_SIZE].toInt() and 127).toByte()
         } else {
-            ret[0] = (ret[0].toInt() or 128).toByte()
+            ret[PREFIX_SIZE] = (ret[PREFIX_SIZE].toInt() or 128).toByte()
         }
-        return prefix + ret
+        return ret
+    }
+
+    companion object {
+
+        private const val PREFIX_SIZE = 8
+        private const val SQN_SIZE = 5
     }
 }
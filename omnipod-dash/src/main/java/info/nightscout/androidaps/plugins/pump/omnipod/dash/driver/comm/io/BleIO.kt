@@ -8,6 +8,7 @@ import android.bluetooth.BluetoothGattDescriptor
 import info.nightscout.androidaps.extensions.toHex
 import info.nightscout.androidaps.logging.AAPSLogger
 import info.nightscout.androidaps.logging.LTag
+import info.nightscout.androidaps.logging.debug
 import info.nightscout.androidaps.plugins.pump.omnipod.dash.driver.comm.callbacks.BleCommCallbacks
 import info.nightscout.androidaps.plugins.pump.omnipod.dash.driver.comm.callbacks.WriteConfirmationError
 import info.nightscout.androidaps.plugins.pump.omnipod.dash.driver.comm.callbacks.WriteConfirmationSuccess
@@ -56,7 +57,7 @@ open class BleIO(
      */
     @Suppress("ReturnCount")
     fun sendAndConfirmPacket(payload: ByteArray): BleSendResult {
-        aapsLogger.debug(LTag.PUMPBTCOMM, "BleIO: Sending on $type: ${payload.toHex()}")
+        aapsLogger.debug(LTag.PUMPBTCOMM) { "BleIO: Sending on $type: ${payload.toHex()}" }
         val set = characteristic.setValue(payload)
         if (!set) {
             return BleSendErrorSending("Could set setValue on $type")
@@ -3,9 +3,9 @@ package info.nightscout.androidaps.plugins.pump.omnipod.dash.driver.comm.message
 import info.nightscout.androidaps.extensions.toHex
 import info.nightscout.androidaps.logging.AAPSLogger
 import info.nightscout.androidaps.logging.LTag
+import info.nightscout.androidaps.logging.debug
 import info.nightscout.androidaps.plugins.pump.omnipod.dash.driver.comm.command.*
 import info.nightscout.androidaps.plugins.pump.omnipod.dash.driver.comm.io.*
-import info.nightscout.androidaps.plugins.pump.omnipod.dash.driver.comm.packet.BlePacket
 import info.nightscout.androidaps.plugins.pump.omnipod.dash.driver.comm.packet.PayloadJoiner
 import info.nightscout.androidaps.plugins.pump.omnipod.dash.driver.comm.packet.PayloadSplitter
 
@@ -53,13 +53,14 @@ class MessageIO(
         }
 
         val payload = msg.asByteArray()
-        aapsLogger.debug(LTag.PUMPBTCOMM, "Sending message: ${payload.toHex()}")
+        aapsLogger.debug(LTag.PUMPBTCOMM) { "Sending message: ${payload.toHex()}" }
         val splitter = PayloadSplitter(payload)
-        val packets = splitter.splitInPackets()
+        // serialized once, also used for resending after NACK
+        val packets = splitter.splitInPackets().map { it.toByteArray() }
 
         for ((index, packet) in packets.withIndex()) {
-            aapsLogger.debug(LTag.PUMPBTCOMM, "Sending DATA: ${packet.toByteArray().toHex()}")
-            val sendResult = dataBleIO.sendAndConfirmPacket(packet.toByteArray())
+            aapsLogger.debug(LTag.PUMPBTCOMM) { "Sending DATA: ${packet.toHex()}" }
+            val sendResult = dataBleIO.sendAndConfirmPacket(packet)
             val ret = handleSendResult(sendResult, index, packets)
             if (ret !is MessageSendSuccess) {
                 return ret
@@ -149,7 +150,7 @@ class MessageIO(
         }
     }
 
-    private fun handleSendResult(sendResult: BleSendResult, index: Int, packets: List<BlePacket>): MessageSendResult {
+    private fun handleSendResult(sendResult: BleSendResult, index: Int, packets: List<ByteArray>): MessageSendResult {
         return when {
             sendResult is BleSendSuccess ->
                 MessageSendSuccess
@@ -160,7 +161,7 @@ class MessageIO(
         }
     }
 
-    private fun peekForNack(index: Int, packets: List<BlePacket>): MessageSendResult {
+    private fun peekForNack(index: Int, packets: List<ByteArray>): MessageSendResult {
         val peekCmd = cmdBleIO.peekCommand()
             ?: return MessageSendSuccess
 
@@ -171,7 +172,7 @@ class MessageIO(
                 if (received == null) {
                     MessageSendErrorSending(received.toString())
                 } else {
-                    val sendResult = dataBleIO.sendAndConfirmPacket(packets[receivedCmd.idx.toInt()].toByteArray())
+                    val sendResult = dataBleIO.sendAndConfirmPacket(packets[receivedCmd.idx.toInt()])
                     handleSendResult(sendResult, index, packets)
                 }
             }
@@ -26,8 +26,19 @@ data class MessagePacket(
 ) {
 
     fun asByteArray(forEncryption: Boolean = false): ByteArray {
-        val bb = ByteBuffer.allocate(16 + payload.size)
-        bb.put(MAGIC_PATTERN.toByteArray())
+        val ret = ByteArray(HEADER_SIZE + payload.size)
+        writeHeader(ret, forEncryption)
+        System.arraycopy(payload, 0, ret, HEADER_SIZE, payload.size)
+        return ret
+    }
+
+    /**
+     * Writes [HEADER_SIZE] bytes of header to the beginning of [dest]
+     * Used as associated data for encryption without building the whole message
+     */
+    fun writeHeader(dest: ByteArray, forEncryption: Boolean = false) {
+        val bb = ByteBuffer.wrap(dest, 0, HEADER_SIZE)
+        bb.put(MAGIC_BYTES)
 
         val f1 = Flag()
         f1.set(0, this.version.toInt() and 4 != 0)
@@ -60,25 +71,18 @@ data class MessagePacket(
 
         bb.put(this.source.address)
         bb.put(this.destination.address)
-
-        bb.put(this.payload)
-
-        val ret = ByteArray(bb.position())
-        bb.flip()
-        bb.get(ret)
-
-        return ret
     }
 
     companion object {
 
         private const val MAGIC_PATTERN = "TW" // all messages start with this string
-        private const val HEADER_SIZE = 16
+        private val MAGIC_BYTES = MAGIC_PATTERN.toByteArray()
+        const val HEADER_SIZE = 16
 
         fun parse(payload: ByteArray): MessagePacket {
             payload.assertSizeAtLeast(HEADER_SIZE)
 
-            if (payload.copyOfRange(0, 2).decodeToString() != MAGIC_PATTERN) {
+            if (payload[0] != MAGIC_BYTES[0] || payload[1] != MAGIC_BYTES[1]) {
                 throw CouldNotParseMessageException(payload)
             }
             val f1 = Flag(payload[2].toInt() and 0xff)
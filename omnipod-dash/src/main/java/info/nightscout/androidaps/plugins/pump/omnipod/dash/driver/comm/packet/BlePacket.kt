@@ -101,7 +101,10 @@ data class FirstBlePacket(
 data class MiddleBlePacket(val index: Byte, override val payload: ByteArray) : BlePacket() {
 
     override fun toByteArray(): ByteArray {
-        return byteArrayOf(index) + payload
+        val ret = ByteArray(1 + payload.size)
+        ret[0] = index
+        System.arraycopy(payload, 0, ret, 1, payload.size)
+        return ret
     }
 
     companion object {
@@ -171,7 +174,11 @@ data class LastOptionalPlusOneBlePacket(
 ) : BlePacket() {
 
     override fun toByteArray(): ByteArray {
-        return byteArrayOf(index, size) + payload + ByteArray(MAX_SIZE - payload.size - 2)
+        val ret = ByteArray(MAX_SIZE)
+        ret[0] = index
+        ret[1] = size
+        System.arraycopy(payload, 0, ret, HEADER_SIZE, payload.size)
+        return ret
     }
 
     companion object {
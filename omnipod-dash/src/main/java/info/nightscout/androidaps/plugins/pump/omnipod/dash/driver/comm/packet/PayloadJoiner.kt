@@ -2,8 +2,6 @@ package info.nightscout.androidaps.plugins.pump.omnipod.dash.driver.comm.packet
 
 import info.nightscout.androidaps.plugins.pump.omnipod.dash.driver.comm.message.CrcMismatchException
 import info.nightscout.androidaps.plugins.pump.omnipod.dash.driver.comm.message.IncorrectPacketException
-import java.nio.ByteBuffer
-import java.util.*
 
 class PayloadJoiner(private val firstPacket: ByteArray) {
 
@@ -11,7 +9,7 @@ class PayloadJoiner(private val firstPacket: ByteArray) {
     val fullFragments: Int
     var crc: Long = 0
     private var expectedIndex = 0
-    private val fragments: MutableList<BlePacket> = LinkedList<BlePacket>()
+    private val fragments: MutableList<BlePacket> = ArrayList()
 
     init {
         val firstPacket = FirstBlePacket.parse(firstPacket)
@@ -53,16 +51,17 @@ class PayloadJoiner(private val firstPacket: ByteArray) {
     }
 
     fun finalize(): ByteArray {
-        val payloads = fragments.map { x -> x.payload }
-        val totalLen = payloads.fold(0, { acc, elem -> acc + elem.size })
-        val bb = ByteBuffer.allocate(totalLen)
-        payloads.map { p -> bb.put(p) }
-        bb.flip()
-        val bytes = bb.array()
-        if (bytes.crc32() != crc) {
-            throw CrcMismatchException(bytes.crc32(), crc, bytes)
+        val bytes = ByteArray(fragments.sumOf { it.payload.size })
+        var position = 0
+        for (fragment in fragments) {
+            System.arraycopy(fragment.payload, 0, bytes, position, fragment.payload.size)
+            position += fragment.payload.size
         }
-        return bytes.copyOfRange(0, bytes.size)
+        val actualCrc = bytes.crc32()
+        if (actualCrc != crc) {
+            throw CrcMismatchException(actualCrc, crc, bytes)
+        }
+        return bytes
     }
 }
 
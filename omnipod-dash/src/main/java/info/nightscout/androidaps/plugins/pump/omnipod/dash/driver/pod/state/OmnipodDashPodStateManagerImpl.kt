@@ -1,10 +1,12 @@
 package info.nightscout.androidaps.plugins.pump.omnipod.dash.driver.pod.state
 
+import android.content.Context
 import android.os.SystemClock
 import com.google.gson.Gson
 import info.nightscout.androidaps.data.DetailedBolusInfo
 import info.nightscout.androidaps.logging.AAPSLogger
 import info.nightscout.androidaps.logging.LTag
+import info.nightscout.androidaps.logging.debug
 import info.nightscout.androidaps.plugins.bus.RxBus
 import info.nightscout.androidaps.plugins.pump.omnipod.dash.EventOmnipodDashPumpValuesChanged
 import info.nightscout.androidaps.plugins.pump.omnipod.dash.R
@@ -16,15 +18,20 @@ import info.nightscout.androidaps.plugins.pump.omnipod.dash.driver.pod.response.
 import info.nightscout.androidaps.plugins.pump.omnipod.dash.driver.pod.response.DefaultStatusResponse
 import info.nightscout.androidaps.plugins.pump.omnipod.dash.driver.pod.response.SetUniqueIdResponse
 import info.nightscout.androidaps.plugins.pump.omnipod.dash.driver.pod.response.VersionResponse
+import info.nightscout.androidaps.plugins.pump.common.utils.AtomicStateFile
+import info.nightscout.androidaps.utils.rx.AapsSchedulers
 import info.nightscout.androidaps.utils.sharedPreferences.SP
 import io.reactivex.Completable
 import io.reactivex.Maybe
 import io.reactivex.Single
+import java.io.File
+import java.io.IOException
 import java.io.Serializable
 import java.time.Duration
 import java.time.Instant
 import java.time.ZonedDateTime
 import java.util.*
+import java.util.concurrent.TimeUnit
 import javax.inject.Inject
 import javax.inject.Singleton
 
@@ -32,9 +39,15 @@ import javax.inject.Singleton
 class OmnipodDashPodStateManagerImpl @Inject constructor(
     private val logger: AAPSLogger,
     private val sharedPreferences: SP,
-    private val rxBus: RxBus
+    private val rxBus: RxBus,
+    private val aapsSchedulers: AapsSchedulers,
+    context: Context
 ) : OmnipodDashPodStateManager {
 
+    private val gson = Gson()
+    private val stateFile = AtomicStateFile(File(context.filesDir, STATE_FILE_NAME), STATE_VERSION)
+    private var lastStored: ByteArray? = null
+    private var storePending = false
     private var podState: PodState
 
     init {
@@ -135,7 +148,7 @@ class OmnipodDashPodStateManagerImpl @Inject constructor(
         get() = TimeZone.getTimeZone(podState.timeZone)
         set(tz) {
             podState.timeZone = tz.toZoneId().normalized().id
-            store()
+            storeLater()
         }
 
     override val sameTimeZone: Boolean
@@ -269,7 +282,7 @@ class OmnipodDashPodStateManagerImpl @Inject constructor(
         get() = podState.alarmSynced
         set(value) {
             podState.alarmSynced = value
-            store()
+            storeLater()
         }
 
     override var bluetoothConnectionState: OmnipodDashPodStateManager.BluetoothConnectionState
@@ -584,7 +597,7 @@ class OmnipodDashPodStateManagerImpl @Inject constructor(
 
         podState.lastUpdatedSystem = System.currentTimeMillis()
 
-        store()
+        storeLater()
         rxBus.send(EventOmnipodDashPumpValuesChanged())
     }
 
@@ -657,23 +670,63 @@ class OmnipodDashPodStateManagerImpl @Inject constructor(
         store()
     }
 
+    /**
+     * Write state to disk before returning.
+     * Used for everything needed to talk to the pod safely after restart: activation, sequence numbers,
+     * keys, delivery state and commands.
+     * If state file cannot be written state goes to preferences (and is taken from there by [load])
+     */
+    @Synchronized
     private fun store() {
+        storePending = false
+        val serialized = gson.toJson(podState).toByteArray(Charsets.UTF_8)
+        if (Arrays.equals(serialized, lastStored)) return
         try {
-            val serialized = Gson().toJson(podState)
-            logger.debug(LTag.PUMP, "Storing Pod state: $serialized")
-            sharedPreferences.putString(R.string.key_omnipod_dash_pod_state, serialized)
-        } catch (ex: Exception) {
-            logger.error(LTag.PUMP, "Failed to store Pod state", ex)
+            stateFile.write(serialized)
+            if (sharedPreferences.contains(R.string.key_omnipod_dash_pod_state))
+                sharedPreferences.remove(R.string.key_omnipod_dash_pod_state)
+            logger.debug(LTag.PUMP) { "Stored Pod state: ${serialized.size} bytes" }
+        } catch (ex: IOException) {
+            logger.error(LTag.PUMP, "Failed to write Pod state file, storing to preferences", ex)
+            stateFile.delete()
+            sharedPreferences.putString(R.string.key_omnipod_dash_pod_state, String(serialized, Charsets.UTF_8))
         }
+        lastStored = serialized
+    }
+
+    /**
+     * Informational changes are collected and written once after [STORE_DELAY_MS]
+     * (or earlier with next [store])
+     */
+    @Synchronized
+    private fun storeLater() {
+        if (storePending) return
+        storePending = true
+        aapsSchedulers.io.scheduleDirect({
+            synchronized(this) { if (storePending) store() }
+        }, STORE_DELAY_MS, TimeUnit.MILLISECONDS)
     }
 
     private fun load(): PodState {
+        // Preferences are removed with every successful write of state file so if present they are newer:
+        // state stored by previous versions, fallback after failed write or state imported with settings
         if (sharedPreferences.contains(R.string.key_omnipod_dash_pod_state)) {
             try {
-                return Gson().fromJson(
+                val podState = gson.fromJson(
                     sharedPreferences.getString(R.string.key_omnipod_dash_pod_state, ""),
                     PodState::class.java
-                )
+                ) ?: throw IllegalStateException("Empty Pod state")
+                this.podState = podState
+                store()
+                return podState
+            } catch (ex: Exception) {
+                logger.error(LTag.PUMP, "Failed to deserialize Pod state", ex)
+            }
+        }
+        stateFile.read()?.let { stored ->
+            try {
+                return gson.fromJson(String(stored, Charsets.UTF_8), PodState::class.java)
+                    .also { lastStored = stored }
             } catch (ex: Exception) {
                 logger.error(LTag.PUMP, "Failed to deserialize Pod state", ex)
             }
@@ -731,4 +784,11 @@ class OmnipodDashPodStateManagerImpl @Inject constructor(
         var activeCommand: OmnipodDashPodStateManager.ActiveCommand? = null
         var lastBolus: OmnipodDashPodStateManager.LastBolus? = null
     }
+
+    companion object {
+
+        private const val STATE_FILE_NAME = "omnipod_dash_pod_state"
+        private const val STATE_VERSION = 1
+        private const val STORE_DELAY_MS = 1000L
+    }
 }
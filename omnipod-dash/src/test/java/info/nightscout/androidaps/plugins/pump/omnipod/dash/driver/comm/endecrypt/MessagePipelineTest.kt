@@ -0,0 +1,64 @@
+package info.nightscout.androidaps.plugins.pump.omnipod.dash.driver.comm.endecrypt
+
+import info.nightscout.androidaps.extensions.toHex
+import info.nightscout.androidaps.logging.AAPSLogger
+import info.nightscout.androidaps.plugins.pump.omnipod.dash.driver.comm.message.MessagePacket
+import info.nightscout.androidaps.plugins.pump.omnipod.dash.driver.comm.packet.PayloadJoiner
+import info.nightscout.androidaps.plugins.pump.omnipod.dash.driver.comm.packet.PayloadSplitter
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import org.mockito.Mockito.mock
+import org.spongycastle.util.encoders.Hex
+
+/**
+ * encrypt -> split -> join -> decrypt of the whole message path checked against messages captured from a pod.
+ * Logger is a mock so debug messages are not built, as on a phone with PUMPBTCOMM logging disabled
+ */
+class MessagePipelineTest {
+
+    private val aapsLogger = mock(AAPSLogger::class.java)
+
+    private fun transfer(bytes: ByteArray): ByteArray {
+        val packets = PayloadSplitter(bytes).splitInPackets().map { it.toByteArray() }
+        val joiner = PayloadJoiner(packets[0])
+        for (packet in packets.subList(1, packets.size)) {
+            joiner.accumulate(packet)
+        }
+        return joiner.finalize()
+    }
+
+    @Test fun sentCommandMatchesCapturedMessage() {
+        val enDecrypt = EnDecrypt(aapsLogger, Nonce(Hex.decode("dda23c090a0a0a0a"), 0), Hex.decode("ba1283744b6de9fab6d9b77d95a71d6e"))
+        val captured = Hex.decode(
+            "54571101070003400242000002420001" +
+                "e09158bcb0285a81bf30635f3a17ee73f0afbb3286bc524a8a66" +
+                "fb1bc5b001e56543"
+        )
+        val command = Hex.decode("53302e303d000effffffff00060704ffffffff82b22c47302e30")
+        val msg = MessagePacket.parse(captured).copy(payload = command) // copy for the headers
+
+        assertEquals(captured.toHex(), transfer(enDecrypt.encrypt(msg).asByteArray()).toHex())
+    }
+
+    @Test fun receivedResponseMatchesCapturedPayload() {
+        val enDecrypt = EnDecrypt(aapsLogger, Nonce(Hex.decode("6cff5d18b7616cae"), 22), Hex.decode("55799fd26664cbf6e476525e2dee52c6"))
+        val captured = Hex.decode(
+            "545711a10c16030008202ea908202ea8" +
+                "347cb97b385d45a3c40e404c55715ef3c3865017367e623c" +
+                "7d0b469e81cdfd9a"
+        )
+        val response = "302e303d001208202ea91c0a1d050016b00000000bff01fe"
+
+        assertEquals(response, enDecrypt.decrypt(MessagePacket.parse(transfer(captured))).payload.toHex())
+    }
+
+    @Test fun nonceMatchesKnownValues() {
+        val prefix = "6cff5d18b7616cae"
+        val nonce = Nonce(Hex.decode(prefix), 22)
+        assertEquals(prefix + "8000000017", nonce.increment(false).toHex())
+        assertEquals(prefix + "0000000018", nonce.increment(true).toHex())
+        val high = Nonce(Hex.decode(prefix), 0x92345678ffL)
+        assertEquals(prefix + "9234567900", high.increment(false).toHex())
+        assertEquals(prefix + "1234567901", high.increment(true).toHex())
+    }
+}
@@ -0,0 +1,119 @@
+package info.nightscout.androidaps.plugins.pump.omnipod.dash.driver.pod.state
+
+import android.content.Context
+import com.google.gson.Gson
+import info.nightscout.androidaps.logging.AAPSLoggerTest
+import info.nightscout.androidaps.plugins.bus.RxBus
+import info.nightscout.androidaps.plugins.pump.omnipod.dash.R
+import info.nightscout.androidaps.plugins.pump.omnipod.dash.driver.pod.definition.ActivationProgress
+import info.nightscout.androidaps.utils.rx.AapsSchedulers
+import info.nightscout.androidaps.utils.rx.TestAapsSchedulers
+import info.nightscout.androidaps.utils.sharedPreferences.SP
+import io.reactivex.Scheduler
+import io.reactivex.plugins.RxJavaPlugins
+import io.reactivex.schedulers.Schedulers
+import io.reactivex.schedulers.TestScheduler
+import org.junit.After
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.mockito.Mockito.`when`
+import org.mockito.Mockito.mock
+import org.mockito.Mockito.never
+import org.mockito.Mockito.verify
+import java.io.File
+import java.util.*
+import java.util.concurrent.TimeUnit
+
+class OmnipodDashPodStateManagerImplTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private val aapsLogger = AAPSLoggerTest()
+    private val sp: SP = mock(SP::class.java)
+    private val context: Context = mock(Context::class.java)
+    private val io = TestScheduler()
+    private val aapsSchedulers = object : AapsSchedulers {
+        override val main: Scheduler = Schedulers.trampoline()
+        override val io: Scheduler = this@OmnipodDashPodStateManagerImplTest.io
+        override val cpu: Scheduler = Schedulers.trampoline()
+    }
+    private var scheduled = 0
+
+    @Before
+    fun prepare() {
+        `when`(context.filesDir).thenReturn(folder.root)
+        RxJavaPlugins.setScheduleHandler { scheduled++; it }
+    }
+
+    @After
+    fun cleanup() {
+        RxJavaPlugins.reset()
+    }
+
+    private fun createManager() =
+        OmnipodDashPodStateManagerImpl(aapsLogger, sp, RxBus(TestAapsSchedulers(), aapsLogger), aapsSchedulers, context)
+
+    @Test
+    fun migrateStateFromPreferences() {
+        val stored = OmnipodDashPodStateManagerImpl.PodState().apply {
+            activationProgress = ActivationProgress.COMPLETED
+            uniqueId = 17L
+            messageSequenceNumber = 5
+        }
+        `when`(sp.contains(R.string.key_omnipod_dash_pod_state)).thenReturn(true)
+        `when`(sp.getString(R.string.key_omnipod_dash_pod_state, "")).thenReturn(Gson().toJson(stored))
+
+        val migrated = createManager()
+        Assert.assertEquals(17L, migrated.uniqueId)
+        verify(sp).remove(R.string.key_omnipod_dash_pod_state)
+
+        // next start reads state file only
+        `when`(sp.contains(R.string.key_omnipod_dash_pod_state)).thenReturn(false)
+        val reloaded = createManager()
+        Assert.assertTrue(reloaded.isActivationCompleted)
+        Assert.assertEquals(17L, reloaded.uniqueId)
+        Assert.assertEquals(5.toShort(), reloaded.messageSequenceNumber)
+    }
+
+    @Test
+    fun fallbackToPreferencesWhenStateFileCannotBeWritten() {
+        `when`(context.filesDir).thenReturn(File(folder.root, "missing"))
+        val manager = createManager()
+        manager.uniqueId = 17L
+
+        val expected = OmnipodDashPodStateManagerImpl.PodState().apply { uniqueId = 17L }
+        verify(sp).putString(R.string.key_omnipod_dash_pod_state, Gson().toJson(expected))
+        verify(sp, never()).remove(R.string.key_omnipod_dash_pod_state)
+    }
+
+    @Test
+    fun informationalChangesAreCoalescedToOneDelayedWrite() {
+        val manager = createManager()
+        manager.uniqueId = 17L
+        scheduled = 0
+
+        manager.timeZone = TimeZone.getTimeZone("Europe/Amsterdam")
+        manager.alarmSynced = true
+        Assert.assertEquals(1, scheduled)
+        Assert.assertFalse(createManager().alarmSynced)
+
+        io.advanceTimeBy(1, TimeUnit.SECONDS)
+        val reloaded = createManager()
+        Assert.assertTrue(reloaded.alarmSynced)
+        Assert.assertEquals("Europe/Amsterdam", reloaded.timeZone.id)
+        Assert.assertEquals(17L, reloaded.uniqueId)
+    }
+
+    @Test
+    fun immediateWriteIncludesPendingInformationalChanges() {
+        val manager = createManager()
+        manager.alarmSynced = true
+        manager.activationProgress = ActivationProgress.SET_UNIQUE_ID
+
+        Assert.assertTrue(createManager().alarmSynced)
+    }
+}
@@ -43,6 +43,7 @@ public abstract class ErosPodStateManager {
     private final AAPSLogger aapsLogger;
     private final Gson gsonInstance;
     private PodState podState;
+    private String lastStoredPodState;
 
     protected ErosPodStateManager(AAPSLogger aapsLogger) {
         this.aapsLogger = aapsLogger;
@@ -648,10 +649,14 @@ public abstract class ErosPodStateManager {
         runnable.run();
     }
 
-    public void storePodState() {
+    public synchronized void storePodState() {
         String podState = gsonInstance.toJson(this.podState);
-        aapsLogger.debug(LTag.PUMP, "storePodState: storing podState: {}", podState);
+        if (podState.equals(lastStoredPodState)) {
+            return;
+        }
+        aapsLogger.debug(LTag.PUMP, () -> "storePodState: storing podState (" + podState.length() + " chars)");
         storePodState(podState);
+        lastStoredPodState = podState;
     }
 
     protected abstract void storePodState(String podState);
@@ -661,6 +666,7 @@ public abstract class ErosPodStateManager {
     // Should be called after initializing the object
     public final void loadPodState() {
         podState = null;
+        lastStoredPodState = null;
 
         String storedPodState = readPodState();
 
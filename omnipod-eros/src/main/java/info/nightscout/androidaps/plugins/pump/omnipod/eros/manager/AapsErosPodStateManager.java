@@ -1,12 +1,20 @@
 package info.nightscout.androidaps.plugins.pump.omnipod.eros.manager;
 
+import android.content.Context;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import info.nightscout.androidaps.logging.AAPSLogger;
+import info.nightscout.androidaps.logging.LTag;
 import info.nightscout.androidaps.plugins.bus.RxBus;
 import info.nightscout.androidaps.plugins.general.overview.events.EventDismissNotification;
 import info.nightscout.androidaps.plugins.general.overview.notifications.Notification;
+import info.nightscout.androidaps.plugins.pump.common.utils.AtomicStateFile;
 import info.nightscout.androidaps.plugins.pump.omnipod.eros.definition.OmnipodErosStorageKeys;
 import info.nightscout.androidaps.plugins.pump.omnipod.eros.driver.manager.ErosPodStateManager;
 import info.nightscout.androidaps.plugins.pump.omnipod.eros.event.EventOmnipodErosActiveAlertsChanged;
@@ -17,24 +25,50 @@ import info.nightscout.androidaps.utils.sharedPreferences.SP;
 
 @Singleton
 public class AapsErosPodStateManager extends ErosPodStateManager {
+    private static final String STATE_FILE_NAME = "omnipod_eros_pod_state";
+    private static final int STATE_VERSION = 1;
+
+    private final AAPSLogger aapsLogger;
     private final SP sp;
     private final RxBus rxBus;
+    private final AtomicStateFile stateFile;
 
     @Inject
-    public AapsErosPodStateManager(AAPSLogger aapsLogger, SP sp, RxBus rxBus) {
+    public AapsErosPodStateManager(AAPSLogger aapsLogger, SP sp, RxBus rxBus, Context context) {
         super(aapsLogger);
+        this.aapsLogger = aapsLogger;
         this.sp = sp;
         this.rxBus = rxBus;
+        this.stateFile = new AtomicStateFile(new File(context.getFilesDir(), STATE_FILE_NAME), STATE_VERSION);
     }
 
     @Override
     protected String readPodState() {
-        return sp.getString(OmnipodErosStorageKeys.Preferences.POD_STATE, "");
+        // Preferences are removed with every successful write of state file so if present they are newer:
+        // state stored by previous versions, fallback after failed write or state imported with settings.
+        // Moved to file with next store
+        if (sp.contains(OmnipodErosStorageKeys.Preferences.POD_STATE)) {
+            return sp.getString(OmnipodErosStorageKeys.Preferences.POD_STATE, "");
+        }
+        byte[] stored = stateFile.read();
+        if (stored != null) {
+            return new String(stored, StandardCharsets.UTF_8);
+        }
+        return "";
     }
 
     @Override
     protected void storePodState(String podState) {
-        sp.putString(OmnipodErosStorageKeys.Preferences.POD_STATE, podState);
+        try {
+            stateFile.write(podState.getBytes(StandardCharsets.UTF_8));
+            if (sp.contains(OmnipodErosStorageKeys.Preferences.POD_STATE)) {
+                sp.remove(OmnipodErosStorageKeys.Preferences.POD_STATE);
+            }
+        } catch (IOException ex) {
+            aapsLogger.error(LTag.PUMP, "Failed to write Pod state file, storing to preferences", ex);
+            stateFile.delete();
+            sp.putString(OmnipodErosStorageKeys.Preferences.POD_STATE, podState);
+        }
     }
 
     @Override protected void onUncertainTbrRecovered() {
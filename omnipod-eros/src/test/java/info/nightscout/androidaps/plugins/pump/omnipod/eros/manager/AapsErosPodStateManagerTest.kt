@@ -1,5 +1,6 @@
 package info.nightscout.androidaps.plugins.pump.omnipod.eros.manager
 
+import android.content.Context
 import info.nightscout.androidaps.TestBase
 import info.nightscout.androidaps.plugins.bus.RxBus
 import info.nightscout.androidaps.plugins.pump.omnipod.eros.driver.definition.FirmwareVersion
@@ -12,21 +13,33 @@ import org.joda.time.DateTimeZone
 import org.joda.time.Duration
 import org.junit.After
 import org.junit.Assert
+import org.junit.Before
+import org.junit.Rule
 import org.junit.Test
+import org.junit.rules.TemporaryFolder
 import org.mockito.Mock
+import org.mockito.Mockito.`when`
 
 class AapsErosPodStateManagerTest : TestBase() {
 
     @Mock lateinit var sp: SP
+    @Mock lateinit var context: Context
+
+    @get:Rule
+    val folder = TemporaryFolder()
 
     private val rxBus = RxBus(TestAapsSchedulers(), aapsLogger)
 
+    @Before fun mockFilesDir() {
+        `when`(context.filesDir).thenReturn(folder.root)
+    }
+
     @Test fun times() {
         val timeZone = DateTimeZone.UTC
         DateTimeZone.setDefault(timeZone)
         val now = DateTime(2020, 1, 1, 1, 2, 3, timeZone)
         DateTimeUtils.setCurrentMillisFixed(now.millis)
-        val podStateManager = AapsErosPodStateManager(aapsLogger, sp, rxBus)
+        val podStateManager = AapsErosPodStateManager(aapsLogger, sp, rxBus, context)
         podStateManager.initState(0x0)
         podStateManager.setInitializationParameters(
             0, 0, FirmwareVersion(1, 1, 1),
@@ -45,7 +58,7 @@ class AapsErosPodStateManagerTest : TestBase() {
         DateTimeZone.setDefault(timeZone)
         val now = DateTime(2020, 1, 1, 1, 2, 3, timeZone)
         DateTimeUtils.setCurrentMillisFixed(now.millis)
-        val podStateManager = AapsErosPodStateManager(aapsLogger, sp, rxBus)
+        val podStateManager = AapsErosPodStateManager(aapsLogger, sp, rxBus, context)
         podStateManager.initState(0x0)
         podStateManager.setInitializationParameters(
             0, 0, FirmwareVersion(1, 1, 1),
@@ -69,7 +82,7 @@ class AapsErosPodStateManagerTest : TestBase() {
         DateTimeZone.setDefault(timeZone)
         val now = DateTime(2020, 1, 1, 1, 2, 3, timeZone)
         DateTimeUtils.setCurrentMillisFixed(now.millis)
-        val podStateManager = AapsErosPodStateManager(aapsLogger, sp, rxBus)
+        val podStateManager = AapsErosPodStateManager(aapsLogger, sp, rxBus, context)
         podStateManager.initState(0x0)
         podStateManager.setInitializationParameters(
             0, 0, FirmwareVersion(1, 1, 1),
@@ -0,0 +1,73 @@
+package info.nightscout.androidaps.plugins.pump.common.utils
+
+import java.io.DataInputStream
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.util.zip.CRC32
+
+/**
+ * Pump state persisted in own file.
+ *
+ * File is never modified in place: new content is written to temporary file, synced to disk
+ * and renamed over the old one. After crash there is either old or new state, never a mix.
+ * Content is prefixed by header (magic, [version], length, crc32) and file of other version
+ * or with broken checksum is ignored.
+ */
+class AtomicStateFile(private val file: File, private val version: Int) {
+
+    private val tmpFile = File(file.path + ".tmp")
+
+    fun exists(): Boolean = file.exists()
+
+    @Throws(IOException::class)
+    fun write(payload: ByteArray) {
+        val crc = CRC32().also { it.update(payload) }.value
+        val header = ByteBuffer.allocate(HEADER_SIZE)
+            .putInt(MAGIC)
+            .putInt(version)
+            .putInt(payload.size)
+            .putInt(crc.toInt())
+            .array()
+        FileOutputStream(tmpFile).use { out ->
+            out.write(header)
+            out.write(payload)
+            out.flush()
+            out.fd.sync()
+        }
+        if (!tmpFile.renameTo(file)) throw IOException("Failed to rename $tmpFile to $file")
+    }
+
+    /**
+     * @return stored payload or null if there is no valid state of this version
+     */
+    fun read(): ByteArray? {
+        if (!file.exists()) return null
+        return try {
+            DataInputStream(file.inputStream().buffered()).use { input ->
+                if (input.readInt() != MAGIC) return null
+                if (input.readInt() != version) return null
+                val size = input.readInt()
+                val crc = input.readInt()
+                if (size < 0 || size > file.length()) return null
+                val payload = ByteArray(size).also { input.readFully(it) }
+                if (CRC32().also { it.update(payload) }.value.toInt() != crc) return null
+                payload
+            }
+        } catch (e: IOException) {
+            null
+        }
+    }
+
+    fun delete() {
+        file.delete()
+        tmpFile.delete()
+    }
+
+    companion object {
+
+        private const val MAGIC = 0x41505353 // "APSS"
+        private const val HEADER_SIZE = 16
+    }
+}
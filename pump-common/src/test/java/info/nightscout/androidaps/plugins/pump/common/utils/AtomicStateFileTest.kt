@@ -0,0 +1,43 @@
+package info.nightscout.androidaps.plugins.pump.common.utils
+
+import org.junit.Assert
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.io.RandomAccessFile
+
+class AtomicStateFileTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    @Test
+    fun writtenStateIsReadBackTest() {
+        val file = File(folder.root, "state")
+        val sut = AtomicStateFile(file, 1)
+        Assert.assertNull(sut.read())
+        sut.write(byteArrayOf(1, 2, 3))
+        sut.write(byteArrayOf(4, 5))
+        Assert.assertArrayEquals(byteArrayOf(4, 5), sut.read())
+        Assert.assertFalse(File(folder.root, "state.tmp").exists())
+    }
+
+    @Test
+    fun otherVersionIsIgnoredTest() {
+        val file = File(folder.root, "state")
+        AtomicStateFile(file, 1).write(byteArrayOf(1, 2, 3))
+        Assert.assertNull(AtomicStateFile(file, 2).read())
+    }
+
+    @Test
+    fun corruptedStateIsIgnoredTest() {
+        val file = File(folder.root, "state")
+        val sut = AtomicStateFile(file, 1)
+        sut.write(byteArrayOf(1, 2, 3))
+        RandomAccessFile(file, "rw").use { it.seek(file.length() - 1); it.write(9) }
+        Assert.assertNull(sut.read())
+        RandomAccessFile(file, "rw").use { it.setLength(10) }
+        Assert.assertNull(sut.read())
+    }
+}
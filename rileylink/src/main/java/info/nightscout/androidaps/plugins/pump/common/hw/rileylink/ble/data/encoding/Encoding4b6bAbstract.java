@@ -2,6 +2,8 @@ package info.nightscout.androidaps.plugins.pump.common.hw.rileylink.ble.data.enc
 
 import org.slf4j.Logger;
 
+import java.util.Arrays;
+
 import info.nightscout.androidaps.plugins.pump.common.hw.rileylink.ble.RileyLinkCommunicationException;
 import info.nightscout.androidaps.plugins.pump.common.utils.ByteUtil;
 
@@ -23,6 +25,18 @@ public abstract class Encoding4b6bAbstract implements Encoding4b6b {
 
     // 21, 49, 50, 35, 52, 37, 38, 22, 26, 25, 42, 11, 44, 13, 14, 28
 
+    /**
+     * Reverse of encode4b6bList, indexed by the 6 bit code. -1 for codes that are not valid.
+     */
+    private static final byte[] decode4b6bTable = new byte[64];
+
+    static {
+        Arrays.fill(decode4b6bTable, (byte) -1);
+        for (int i = 0; i < encode4b6bList.length; i++) {
+            decode4b6bTable[encode4b6bList[i]] = (byte) i;
+        }
+    }
+
     @Override public abstract byte[] encode4b6b(byte[] data);
 
 
@@ -40,14 +54,12 @@ public abstract class Encoding4b6bAbstract implements Encoding4b6b {
     }
 
 
-    /* O(n) lookup. Run on an O(n) translation of a byte-stream, gives O(n**2) performance. Sigh. */
+    /* O(1) lookup of the nibble for a 6 bit code, -1 if the code is not valid. */
     public static int encode4b6bListIndex(byte b) {
-        for (int i = 0; i < encode4b6bList.length; i++) {
-            if (b == encode4b6bList[i]) {
-                return i;
-            }
+        if (b < 0 || b >= decode4b6bTable.length) {
+            return -1;
         }
-        return -1;
+        return decode4b6bTable[b];
     }
 
 
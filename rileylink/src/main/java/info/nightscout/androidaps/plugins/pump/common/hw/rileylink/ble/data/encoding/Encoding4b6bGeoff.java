@@ -2,8 +2,7 @@ package info.nightscout.androidaps.plugins.pump.common.hw.rileylink.ble.data.enc
 
 import org.slf4j.Logger;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 import java.util.Locale;
 
 import info.nightscout.androidaps.logging.StacktraceLoggerWrapper;
@@ -24,25 +23,24 @@ public class Encoding4b6bGeoff extends Encoding4b6bAbstract {
         // if ((data.length % 2) != 0) {
         // LOG.error("Warning: data is odd number of bytes");
         // }
-        // use arraylists because byte[] is annoying.
-        List<Byte> inData = ByteUtil.getListFromByteArray(data);
-        List<Byte> outData = new ArrayList<>();
+        // every byte gives 12 bits, odd length gets one more byte with the 0x14 marker
+        byte[] outData = new byte[(data.length * 3 + 1) / 2];
+        int j = 0;
 
         int acc = 0;
         int bitcount = 0;
         int i;
-        for (i = 0; i < inData.size(); i++) {
+        for (i = 0; i < data.length; i++) {
             acc <<= 6;
-            acc |= encode4b6bList[(inData.get(i) >> 4) & 0x0f];
+            acc |= encode4b6bList[(data[i] >> 4) & 0x0f];
             bitcount += 6;
 
             acc <<= 6;
-            acc |= encode4b6bList[inData.get(i) & 0x0f];
+            acc |= encode4b6bList[data[i] & 0x0f];
             bitcount += 6;
 
             while (bitcount >= 8) {
-                byte outByte = (byte) (acc >> (bitcount - 8) & 0xff);
-                outData.add(outByte);
+                outData[j++] = (byte) (acc >> (bitcount - 8) & 0xff);
                 bitcount -= 8;
                 acc &= (0xffff >> (16 - bitcount));
             }
@@ -51,22 +49,11 @@ public class Encoding4b6bGeoff extends Encoding4b6bAbstract {
             acc <<= 6;
             acc |= 0x14; // marks uneven packet boundary.
             bitcount += 6;
-            if (bitcount >= 8) {
-                byte outByte = (byte) ((acc >> (bitcount - 8)) & 0xff);
-                outData.add(outByte);
-                bitcount -= 8;
-                // acc &= (0xffff >> (16 - bitcount));
-            }
-            while (bitcount >= 8) {
-                outData.add((byte) 0);
-                bitcount -= 8;
-            }
+            // 4 bits left + 6 bits of marker, exactly one more byte
+            outData[j] = (byte) ((acc >> (bitcount - 8)) & 0xff);
         }
 
-        // convert back to byte[]
-        byte[] rval = ByteUtil.getByteArrayFromList(outData);
-
-        return rval;
+        return outData;
 
     }
 
@@ -80,15 +67,11 @@ public class Encoding4b6bGeoff extends Encoding4b6bAbstract {
      */
     @Override public byte[] decode4b6b(byte[] raw) throws RileyLinkCommunicationException {
 
-        StringBuilder errorMessageBuilder = new StringBuilder();
-
-        errorMessageBuilder.append("Input data: " + ByteUtil.shortHexString(raw) + "\n");
-
-        if ((raw.length % 2) != 0) {
-            errorMessageBuilder.append("Warn: odd number of bytes.\n");
-        }
+        // only built when decoding fails
+        StringBuilder errorMessageBuilder = null;
 
-        byte[] rval = new byte[]{};
+        byte[] rval = new byte[raw.length * 2 / 3];
+        int j = 0;
         int availableBits = 0;
         int codingErrors = 0;
         int x = 0;
@@ -110,8 +93,7 @@ public class Encoding4b6bGeoff extends Encoding4b6bAbstract {
                 int lowIndex = encode4b6bListIndex((byte) (lowcode));
                 // special case at end of transmission on uneven boundaries:
                 if ((highIndex >= 0) && (lowIndex >= 0)) {
-                    byte decoded = (byte) ((highIndex << 4) + lowIndex);
-                    rval = ByteUtil.concat(rval, decoded);
+                    rval[j++] = (byte) ((highIndex << 4) + lowIndex);
                     /*
                      * LOG.debug(String.format(
                      * "i=%d,x=0x%08X,0x%02X->0x%02X, 0x%02X->0x%02X, result: 0x%02X, %d bits remaining, errors %d, bytes remaining: %s"
@@ -122,6 +104,7 @@ public class Encoding4b6bGeoff extends Encoding4b6bAbstract {
                      */
                 } else {
                     // LOG.debug(String.format("i=%d,x=%08X, coding error: highcode=0x%02X, lowcode=0x%02X, %d bits remaining",i,x,highcode,lowcode,availableBits));
+                    if (errorMessageBuilder == null) errorMessageBuilder = new StringBuilder();
                     errorMessageBuilder.append(String.format(Locale.ENGLISH,
                             "decode4b6b: i=%d,x=%08X, coding error: highcode=0x%02X, lowcode=0x%02X, %d bits remaining.\n",
                             i, x, highcode, lowcode, availableBits));
@@ -139,6 +122,7 @@ public class Encoding4b6bGeoff extends Encoding4b6bAbstract {
             } else {
                 // LOG.error("decode4b6b: failed clean decode -- extra bits available (not marker)(" + availableBits +
                 // ")");
+                if (errorMessageBuilder == null) errorMessageBuilder = new StringBuilder();
                 errorMessageBuilder.append("decode4b6b: failed clean decode -- extra bits available (not marker)("
                         + availableBits + ")\n");
                 codingErrors++;
@@ -149,11 +133,13 @@ public class Encoding4b6bGeoff extends Encoding4b6bAbstract {
 
         if (codingErrors > 0) {
             // LOG.error("decode4b6b: " + codingErrors + " coding errors encountered.");
+            errorMessageBuilder.insert(0, "Input data: " + ByteUtil.shortHexString(raw) + "\n"
+                    + ((raw.length % 2) != 0 ? "Warn: odd number of bytes.\n" : ""));
             errorMessageBuilder.append("decode4b6b: " + codingErrors + " coding errors encountered.");
             writeError(LOG, raw, errorMessageBuilder.toString());
             throw new RileyLinkCommunicationException(RileyLinkBLEError.CodingErrors, errorMessageBuilder.toString());
         }
-        return rval;
+        return j == rval.length ? rval : Arrays.copyOf(rval, j);
     }
 
     // public static RFTools.DecodeResponseDto decode4b6bWithoutException(byte[] raw) {
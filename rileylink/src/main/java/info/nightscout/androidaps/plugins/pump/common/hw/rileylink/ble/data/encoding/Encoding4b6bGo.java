@@ -2,8 +2,7 @@ package info.nightscout.androidaps.plugins.pump.common.hw.rileylink.ble.data.enc
 
 import org.slf4j.Logger;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 import info.nightscout.androidaps.logging.StacktraceLoggerWrapper;
 import info.nightscout.androidaps.plugins.pump.common.hw.rileylink.ble.RileyLinkCommunicationException;
@@ -17,7 +16,7 @@ import info.nightscout.androidaps.plugins.pump.common.utils.ByteUtil;
 public class Encoding4b6bGo extends Encoding4b6bAbstract {
 
     public static final Logger LOG = StacktraceLoggerWrapper.getLogger(Encoding4b6bGo.class);
-    private static Map<Short, Short> decodeGoMap;
+    private static short[] decodeGoTable;
 
 
     @Override public byte[] encode4b6b(byte[] src) {
@@ -57,12 +56,11 @@ public class Encoding4b6bGo extends Encoding4b6bAbstract {
     @Override public byte[] decode4b6b(byte[] src) throws RileyLinkCommunicationException {
         int n = src.length;
 
-        if (decodeGoMap == null)
+        if (decodeGoTable == null)
             initDecodeGo();
 
         StringBuilder errorMessageBuilder = new StringBuilder();
 
-        errorMessageBuilder.append("Input data: " + ByteUtil.getHex(src) + "\n");
         int codingErrors = 0;
 
         // Check for valid packet length.
@@ -102,6 +100,7 @@ public class Encoding4b6bGo extends Encoding4b6bAbstract {
         }
 
         if (codingErrors > 0) {
+            errorMessageBuilder.insert(0, "Input data: " + ByteUtil.getHex(src) + "\n");
             errorMessageBuilder.append("decode4b6b: " + codingErrors + " coding errors encountered.");
             writeError(LOG, dst, errorMessageBuilder.toString());
             throw new RileyLinkCommunicationException(RileyLinkBLEError.CodingErrors, errorMessageBuilder.toString());
@@ -125,39 +124,40 @@ public class Encoding4b6bGo extends Encoding4b6bAbstract {
 
     public static void initDecodeGo() {
 
-        decodeGoMap = new HashMap<>();
-
-        putToMap(0x0B, 0x0B);
-        putToMap(0x0D, 0x0D);
-        putToMap(0x0E, 0x0E);
-        putToMap(0x15, 0x00);
-        putToMap(0x16, 0x07);
-        putToMap(0x19, 0x09);
-        putToMap(0x1A, 0x08);
-        putToMap(0x1C, 0x0F);
-        putToMap(0x23, 0x03);
-        putToMap(0x25, 0x05);
-        putToMap(0x26, 0x06);
-        putToMap(0x2A, 0x0A);
-        putToMap(0x2C, 0x0C);
-        putToMap(0x31, 0x01);
-        putToMap(0x32, 0x02);
-        putToMap(0x34, 0x04);
+        short[] table = new short[64];
+        Arrays.fill(table, (short)0xff);
+
+        putToMap(table, 0x0B, 0x0B);
+        putToMap(table, 0x0D, 0x0D);
+        putToMap(table, 0x0E, 0x0E);
+        putToMap(table, 0x15, 0x00);
+        putToMap(table, 0x16, 0x07);
+        putToMap(table, 0x19, 0x09);
+        putToMap(table, 0x1A, 0x08);
+        putToMap(table, 0x1C, 0x0F);
+        putToMap(table, 0x23, 0x03);
+        putToMap(table, 0x25, 0x05);
+        putToMap(table, 0x26, 0x06);
+        putToMap(table, 0x2A, 0x0A);
+        putToMap(table, 0x2C, 0x0C);
+        putToMap(table, 0x31, 0x01);
+        putToMap(table, 0x32, 0x02);
+        putToMap(table, 0x34, 0x04);
+
+        decodeGoTable = table;
 
     }
 
 
     private static short decode6b_goMap(int value) {
-        short val = (short)value;
-        if (decodeGoMap.containsKey(val))
-            return decodeGoMap.get(val);
-        else
+        if (value < 0 || value >= decodeGoTable.length)
             return (short)0xff;
+        return decodeGoTable[value];
     }
 
 
-    private static void putToMap(int val1, int val2) {
-        decodeGoMap.put((short)val1, (short)val2);
+    private static void putToMap(short[] table, int val1, int val2) {
+        table[val1] = (short)val2;
     }
 
 }
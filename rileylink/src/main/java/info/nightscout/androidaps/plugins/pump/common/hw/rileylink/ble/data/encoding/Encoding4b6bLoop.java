@@ -2,14 +2,12 @@ package info.nightscout.androidaps.plugins.pump.common.hw.rileylink.ble.data.enc
 
 import org.slf4j.Logger;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 import info.nightscout.androidaps.logging.StacktraceLoggerWrapper;
 import info.nightscout.androidaps.plugins.pump.common.hw.rileylink.ble.RileyLinkCommunicationException;
-import info.nightscout.androidaps.plugins.pump.common.utils.ByteUtil;
 
 /**
  * Created by andy on 11/24/18.
@@ -35,7 +33,8 @@ public class Encoding4b6bLoop extends Encoding4b6bAbstract {
      */
     @Override public byte[] encode4b6b(byte[] data) {
 
-        List<Byte> buffer = new ArrayList<Byte>();
+        byte[] buffer = new byte[(data.length * 3 + 1) / 2];
+        int j = 0;
         int bitAccumulator = 0x0;
         int bitcount = 0;
 
@@ -56,7 +55,7 @@ public class Encoding4b6bLoop extends Encoding4b6bAbstract {
             bitcount += 6;
 
             while (bitcount >= 8) {
-                buffer.add((byte)((bitAccumulator >> (bitcount - 8)) & 0xff));
+                buffer[j++] = (byte)((bitAccumulator >> (bitcount - 8)) & 0xff);
                 bitcount -= 8;
                 bitAccumulator &= (0xffff >> (16 - bitcount));
             }
@@ -64,10 +63,10 @@ public class Encoding4b6bLoop extends Encoding4b6bAbstract {
 
         if (bitcount > 0) {
             bitAccumulator <<= (8 - bitcount);
-            buffer.add((byte)((bitAccumulator | 0x5) & 0xff));
+            buffer[j] = (byte)((bitAccumulator | 0x5) & 0xff);
         }
 
-        return ByteUtil.getByteArrayFromList(buffer);
+        return buffer;
     }
 
 
@@ -79,7 +78,8 @@ public class Encoding4b6bLoop extends Encoding4b6bAbstract {
      * @throws RileyLinkCommunicationException
      */
     @Override public byte[] decode4b6b(byte[] data) throws RileyLinkCommunicationException {
-        List<Byte> buffer = new ArrayList<Byte>();
+        byte[] buffer = new byte[data.length * 2 / 3];
+        int j = 0;
         int availBits = 0;
         int bitAccumulator = 0;
 
@@ -114,13 +114,13 @@ public class Encoding4b6bLoop extends Encoding4b6bAbstract {
                 }
 
                 int decoded = ((hiNibble << 4) + loNibble);
-                buffer.add((byte)decoded);
+                buffer[j++] = (byte)decoded;
                 availBits -= 12;
                 bitAccumulator = bitAccumulator & (0xffff >> (16 - availBits));
             }
         }
 
-        return ByteUtil.getByteArrayFromList(buffer);
+        return Arrays.copyOf(buffer, j);
     }
 
 
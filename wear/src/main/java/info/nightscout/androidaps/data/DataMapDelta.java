@@ -0,0 +1,134 @@
+package info.nightscout.androidaps.data;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.wearable.DataMap;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import info.nightscout.androidaps.interaction.utils.Constants;
+
+/**
+ * Applies basals and BG payloads from phone to last stored ones.
+ * <p>
+ * Basals: phone sends full payload after resend request and then only added/changed items and keys
+ * of removed ones, numbered by "seq" and based on "baseSeq".
+ * BG: watch keeps readings of the graph window. Resend request carries time of the last reading
+ * stored without a gap and phone answers with newer "entries" only. New readings are numbered
+ * the same way as basals.
+ * Must match WearSyncState and WatchUpdaterService in phone app
+ */
+public class DataMapDelta {
+
+    public static final int SYNC_VERSION = 1;
+    public static final long READINGS_WINDOW = 5 * Constants.HOUR_IN_MS;
+
+    private static final String[] LISTS = {"basals", "temps", "boluses"};
+
+    public static boolean isDelta(DataMap dataMap) {
+        return dataMap.getInt("syncVersion", 0) >= SYNC_VERSION && !dataMap.getBoolean("full", true);
+    }
+
+    /**
+     * @return true if payload follows directly after previous one
+     */
+    public static boolean follows(@Nullable DataMap previous, DataMap dataMap) {
+        return previous != null && previous.containsKey("seq") && previous.getLong("seq") == dataMap.getLong("baseSeq", -1);
+    }
+
+    /**
+     * @return full basals payload or null if some delta has been missed and full resend is needed
+     */
+    @Nullable public static DataMap merge(@Nullable DataMap stored, DataMap dataMap) {
+        if (!isDelta(dataMap)) return dataMap;
+        if (!follows(stored, dataMap)) return null;
+
+        DataMap merged = new DataMap();
+        for (String list : LISTS) {
+            Map<String, DataMap> items = new LinkedHashMap<>();
+            ArrayList<DataMap> previous = stored.getDataMapArrayList(list);
+            if (previous != null)
+                for (DataMap item : previous) items.put(key(list, item), item);
+            ArrayList<String> removed = dataMap.getStringArrayList("removed_" + list);
+            if (removed != null)
+                for (String key : removed) items.remove(key);
+            ArrayList<DataMap> updated = dataMap.getDataMapArrayList(list);
+            if (updated != null)
+                for (DataMap item : updated) items.put(key(list, item), item);
+            ArrayList<DataMap> result = new ArrayList<>(items.values());
+            String timeKey = list.equals("boluses") ? "date" : "starttime";
+            Collections.sort(result, (a, b) -> Long.compare(a.getLong(timeKey), b.getLong(timeKey)));
+            merged.putDataMapArrayList(list, result);
+        }
+        ArrayList<DataMap> predictions = dataMap.containsKey("predictions") ? dataMap.getDataMapArrayList("predictions") : stored.getDataMapArrayList("predictions");
+        merged.putDataMapArrayList("predictions", predictions != null ? predictions : new ArrayList<>());
+        merged.putInt("syncVersion", SYNC_VERSION);
+        merged.putBoolean("full", true);
+        merged.putLong("seq", dataMap.getLong("seq"));
+        return merged;
+    }
+
+    /**
+     * @return payload of resend request: sync version and time of last stored reading (0 if none)
+     */
+    public static byte[] resendRequest(@Nullable DataMap readings) {
+        return ByteBuffer.allocate(1 + 8).put((byte) SYNC_VERSION).putLong(lastReadingTime(readings)).array();
+    }
+
+    public static long lastReadingTime(@Nullable DataMap readings) {
+        ArrayList<DataMap> entries = readings != null ? readings.getDataMapArrayList("entries") : null;
+        return entries == null || entries.isEmpty() ? 0 : entries.get(entries.size() - 1).getLong("timestamp");
+    }
+
+    /**
+     * Applies BG payload (single reading or list of "entries") to stored readings
+     *
+     * @param windowStart readings older than this are dropped
+     * @return readings to be stored or null if some reading has been missed and resend is needed
+     */
+    @Nullable public static DataMap mergeReadings(@Nullable DataMap stored, DataMap dataMap, long windowStart) {
+        ArrayList<DataMap> entries = dataMap.getDataMapArrayList("entries");
+        boolean delta = isDelta(dataMap);
+        // list answers resend request for newer readings, single reading must follow previous payload
+        if (delta && (stored == null || entries == null && !follows(stored, dataMap))) return null;
+
+        Map<Long, DataMap> readings = new TreeMap<>();
+        ArrayList<DataMap> previous = stored != null ? stored.getDataMapArrayList("entries") : null;
+        if (previous != null && (delta || entries == null))
+            for (DataMap reading : previous) readings.put(reading.getLong("timestamp"), reading);
+        if (entries != null)
+            for (DataMap entry : entries) readings.put(entry.getLong("timestamp"), reading(entry));
+        else
+            readings.put(dataMap.getLong("timestamp"), reading(dataMap));
+
+        ArrayList<DataMap> result = new ArrayList<>();
+        for (DataMap reading : readings.values())
+            if (reading.getLong("timestamp") >= windowStart) result.add(reading);
+        DataMap merged = new DataMap();
+        merged.putDataMapArrayList("entries", result);
+        if (dataMap.containsKey("seq")) merged.putLong("seq", dataMap.getLong("seq"));
+        return merged;
+    }
+
+    // only values needed for graph are stored
+    private static DataMap reading(DataMap dataMap) {
+        DataMap reading = new DataMap();
+        reading.putDouble("sgvDouble", dataMap.getDouble("sgvDouble"));
+        reading.putDouble("high", dataMap.getDouble("high"));
+        reading.putDouble("low", dataMap.getDouble("low"));
+        reading.putLong("timestamp", dataMap.getLong("timestamp"));
+        if (dataMap.containsKey("color")) reading.putInt("color", dataMap.getInt("color"));
+        return reading;
+    }
+
+    private static String key(String list, DataMap item) {
+        if (list.equals("boluses"))
+            return item.getLong("date") + (item.getDouble("carbs") > 0 ? "c" : "b");
+        return String.valueOf(item.getLong("starttime"));
+    }
+}
@@ -172,8 +172,9 @@ public class ListenerService extends WearableListenerService implements GoogleAp
                                     // simple send as is payloads
 
                                     case WEARABLE_RESEND_PATH:
+                                        // announce supported sync version and last stored reading, phone sends deltas then
                                         Wearable.MessageApi.sendMessage(googleApiClient, node.getId(),
-                                                WEARABLE_RESEND_PATH, null);
+                                                WEARABLE_RESEND_PATH, DataMapDelta.resendRequest(new Persistence().getDataMap(RawDisplayData.READINGS_PERSISTENCE_KEY)));
                                         break;
                                     case WEARABLE_DATA_PATH:
                                     case WEARABLE_CANCELBOLUS_PATH:
@@ -519,7 +520,13 @@ public class ListenerService extends WearableListenerService implements GoogleAp
                     Persistence.storeDataMap(RawDisplayData.STATUS_PERSISTENCE_KEY, dataMap);
                     LocalBroadcastManager.getInstance(this).sendBroadcast(messageIntent);
                 } else if (path.equals(BASAL_DATA_PATH)) {
-                    dataMap = DataMapItem.fromDataItem(event.getDataItem()).getDataMap();
+                    dataMap = DataMapDelta.merge(new Persistence().getDataMap(RawDisplayData.BASALS_PERSISTENCE_KEY),
+                            DataMapItem.fromDataItem(event.getDataItem()).getDataMap());
+                    if (dataMap == null) {
+                        // missed some change
+                        requestData();
+                        continue;
+                    }
                     Intent messageIntent = new Intent();
                     messageIntent.setAction(Intent.ACTION_SEND);
                     messageIntent.putExtra("basals", dataMap.toBundle());
@@ -544,6 +551,18 @@ public class ListenerService extends WearableListenerService implements GoogleAp
                     cancelNotificationRequest(actionstring);
                 } else {
                     dataMap = DataMapItem.fromDataItem(event.getDataItem()).getDataMap();
+                    DataMap readings = DataMapDelta.mergeReadings(new Persistence().getDataMap(RawDisplayData.READINGS_PERSISTENCE_KEY), dataMap,
+                            WearUtil.timestamp() - DataMapDelta.READINGS_WINDOW);
+                    if (readings == null) {
+                        // missed some reading, phone sends readings newer than the last stored one
+                        requestData();
+                        // partial list, graph is updated by the answer
+                        if (dataMap.containsKey("entries")) continue;
+                    } else {
+                        Persistence.storeDataMap(RawDisplayData.READINGS_PERSISTENCE_KEY, readings);
+                        // watchfaces replace graph by whole list
+                        if (dataMap.containsKey("entries")) dataMap.putDataMapArrayList("entries", readings.getDataMapArrayList("entries"));
+                    }
                     Intent messageIntent = new Intent();
                     messageIntent.setAction(Intent.ACTION_SEND);
                     messageIntent.putExtra("data", dataMap.toBundle());
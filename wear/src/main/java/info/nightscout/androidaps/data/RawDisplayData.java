@@ -25,6 +25,8 @@ public class RawDisplayData {
     static final String DATA_PERSISTENCE_KEY = "raw_data";
     static final String BASALS_PERSISTENCE_KEY = "raw_basals";
     static final String STATUS_PERSISTENCE_KEY = "raw_status";
+    // readings of graph window kept by ListenerService, watchfaces get them in "entries" of DATA_PERSISTENCE_KEY
+    static final String READINGS_PERSISTENCE_KEY = "raw_readings";
 
     // data bundle
     public long sgvLevel = 0;
@@ -0,0 +1,199 @@
+package info.nightscout.androidaps.data;
+
+import com.google.android.gms.wearable.DataMap;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DataMapDeltaTest {
+
+    private DataMap basal(long start, long end, double amount) {
+        DataMap dm = new DataMap();
+        dm.putLong("starttime", start);
+        dm.putLong("endtime", end);
+        dm.putDouble("amount", amount);
+        return dm;
+    }
+
+    private DataMap bolus(long date, double bolus, double carbs) {
+        DataMap dm = new DataMap();
+        dm.putLong("date", date);
+        dm.putDouble("bolus", bolus);
+        dm.putDouble("carbs", carbs);
+        return dm;
+    }
+
+    private DataMap full(long seq) {
+        DataMap dm = new DataMap();
+        dm.putDataMapArrayList("basals", new ArrayList<>(Arrays.asList(basal(1000, 2000, 1.0), basal(2000, 3000, 1.5))));
+        dm.putDataMapArrayList("temps", new ArrayList<>());
+        dm.putDataMapArrayList("boluses", new ArrayList<>(Arrays.asList(bolus(1500, 2.0, 0), bolus(1500, 0, 20))));
+        dm.putDataMapArrayList("predictions", new ArrayList<>());
+        dm.putInt("syncVersion", DataMapDelta.SYNC_VERSION);
+        dm.putBoolean("full", true);
+        dm.putLong("seq", seq);
+        return dm;
+    }
+
+    private DataMap delta(long baseSeq) {
+        DataMap dm = new DataMap();
+        dm.putInt("syncVersion", DataMapDelta.SYNC_VERSION);
+        dm.putBoolean("full", false);
+        dm.putLong("baseSeq", baseSeq);
+        dm.putLong("seq", baseSeq + 1);
+        return dm;
+    }
+
+    @Test
+    public void fullAndLegacyPayloadIsTakenAsIs() {
+        DataMap full = full(5);
+        assertSame(full, DataMapDelta.merge(null, full));
+        DataMap legacy = new DataMap();
+        legacy.putDataMapArrayList("basals", new ArrayList<>());
+        assertSame(legacy, DataMapDelta.merge(full, legacy));
+        assertFalse(DataMapDelta.isDelta(legacy));
+    }
+
+    @Test
+    public void deltaIsMergedToStored() {
+        DataMap delta = delta(5);
+        delta.putDataMapArrayList("basals", new ArrayList<>(Arrays.asList(basal(2000, 3300, 1.5), basal(500, 1000, 0.8))));
+        delta.putStringArrayList("removed_boluses", new ArrayList<>(Arrays.asList("1500c")));
+
+        DataMap merged = DataMapDelta.merge(full(5), delta);
+
+        assertEquals(6, merged.getLong("seq"));
+        ArrayList<DataMap> basals = merged.getDataMapArrayList("basals");
+        assertEquals(3, basals.size());
+        assertEquals(500, basals.get(0).getLong("starttime"));
+        assertEquals(3300, basals.get(2).getLong("endtime"));
+        ArrayList<DataMap> boluses = merged.getDataMapArrayList("boluses");
+        assertEquals(1, boluses.size());
+        assertEquals(2.0, boluses.get(0).getDouble("bolus"), 0.001);
+        assertEquals(0, merged.getDataMapArrayList("temps").size());
+        assertFalse(DataMapDelta.isDelta(merged));
+    }
+
+    @Test
+    public void missedDeltaRequiresFullResend() {
+        assertNull(DataMapDelta.merge(full(5), delta(6)));
+        assertNull(DataMapDelta.merge(null, delta(5)));
+        assertTrue(DataMapDelta.follows(full(5), delta(5)));
+    }
+
+    private DataMap reading(long timestamp, double sgv) {
+        DataMap dm = new DataMap();
+        dm.putDouble("sgvDouble", sgv);
+        dm.putDouble("high", 180);
+        dm.putDouble("low", 70);
+        dm.putLong("timestamp", timestamp);
+        dm.putString("delta", "+1");
+        return dm;
+    }
+
+    private DataMap readings(boolean full, long baseSeq, DataMap... entries) {
+        DataMap dm = reading(entries.length > 0 ? entries[entries.length - 1].getLong("timestamp") : 0, 100);
+        dm.putDataMapArrayList("entries", new ArrayList<>(Arrays.asList(entries)));
+        dm.putInt("syncVersion", DataMapDelta.SYNC_VERSION);
+        dm.putBoolean("full", full);
+        dm.putLong("baseSeq", baseSeq);
+        dm.putLong("seq", baseSeq + 1);
+        return dm;
+    }
+
+    private DataMap single(long baseSeq, long timestamp, double sgv) {
+        DataMap dm = reading(timestamp, sgv);
+        dm.putInt("syncVersion", DataMapDelta.SYNC_VERSION);
+        dm.putBoolean("full", false);
+        dm.putLong("baseSeq", baseSeq);
+        dm.putLong("seq", baseSeq + 1);
+        return dm;
+    }
+
+    private long[] timestamps(DataMap stored) {
+        ArrayList<DataMap> entries = stored.getDataMapArrayList("entries");
+        long[] ret = new long[entries.size()];
+        for (int i = 0; i < ret.length; i++) ret[i] = entries.get(i).getLong("timestamp");
+        return ret;
+    }
+
+    @Test
+    public void fullReadingsReplaceStored() {
+        DataMap stored = DataMapDelta.mergeReadings(null, readings(true, 5, reading(1000, 100), reading(2000, 110)), 0);
+        stored = DataMapDelta.mergeReadings(stored, readings(true, 9, reading(3000, 120)), 0);
+        assertArrayEquals(new long[]{3000}, timestamps(stored));
+        assertEquals(10, stored.getLong("seq"));
+        // only graph values are stored
+        assertFalse(stored.getDataMapArrayList("entries").get(0).containsKey("delta"));
+        assertEquals(3000, DataMapDelta.lastReadingTime(stored));
+        assertEquals(0, DataMapDelta.lastReadingTime(null));
+    }
+
+    @Test
+    public void newReadingsAreAppended() {
+        DataMap stored = DataMapDelta.mergeReadings(null, readings(true, 5, reading(1000, 100), reading(2000, 110)), 0);
+        stored = DataMapDelta.mergeReadings(stored, single(6, 3000, 120), 0);
+        assertArrayEquals(new long[]{1000, 2000, 3000}, timestamps(stored));
+        assertEquals(7, stored.getLong("seq"));
+
+        // answer to resend request contains newer readings only
+        stored = DataMapDelta.mergeReadings(stored, readings(false, 20, reading(4000, 130), reading(5000, 140)), 0);
+        assertArrayEquals(new long[]{1000, 2000, 3000, 4000, 5000}, timestamps(stored));
+        assertEquals(21, stored.getLong("seq"));
+        // empty answer just moves seq
+        stored = DataMapDelta.mergeReadings(stored, readings(false, 30), 0);
+        assertEquals(5, timestamps(stored).length);
+        assertEquals(31, stored.getLong("seq"));
+
+        // changed value of the same reading
+        stored = DataMapDelta.mergeReadings(stored, single(31, 5000, 145), 0);
+        assertEquals(5, timestamps(stored).length);
+        assertEquals(145, stored.getDataMapArrayList("entries").get(4).getDouble("sgvDouble"), 0.001);
+    }
+
+    @Test
+    public void readingsOutOfWindowAreDropped() {
+        DataMap stored = DataMapDelta.mergeReadings(null, readings(true, 5, reading(1000, 100), reading(2000, 110)), 0);
+        stored = DataMapDelta.mergeReadings(stored, single(6, 3000, 120), 2000);
+        assertArrayEquals(new long[]{2000, 3000}, timestamps(stored));
+    }
+
+    @Test
+    public void missedReadingRequiresResend() {
+        DataMap stored = DataMapDelta.mergeReadings(null, readings(true, 5, reading(1000, 100)), 0);
+        assertNull(DataMapDelta.mergeReadings(stored, single(7, 3000, 120), 0));
+        assertNull(DataMapDelta.mergeReadings(null, single(5, 3000, 120), 0));
+        // newer readings cannot be applied to nothing
+        assertNull(DataMapDelta.mergeReadings(null, readings(false, 5, reading(3000, 120)), 0));
+    }
+
+    @Test
+    public void legacyReadingsAreStored() {
+        DataMap full = new DataMap();
+        full.putDataMapArrayList("entries", new ArrayList<>(Arrays.asList(reading(1000, 100), reading(2000, 110))));
+        DataMap stored = DataMapDelta.mergeReadings(null, full, 0);
+        stored = DataMapDelta.mergeReadings(stored, reading(3000, 120), 0);
+        assertArrayEquals(new long[]{1000, 2000, 3000}, timestamps(stored));
+        assertFalse(stored.containsKey("seq"));
+    }
+
+    @Test
+    public void resendRequestCarriesLastReadingTime() {
+        DataMap stored = DataMapDelta.mergeReadings(null, readings(true, 5, reading(1000, 100), reading(1234567890123L, 110)), 0);
+        ByteBuffer request = ByteBuffer.wrap(DataMapDelta.resendRequest(stored));
+        assertEquals(DataMapDelta.SYNC_VERSION, request.get());
+        assertEquals(1234567890123L, request.getLong());
+        assertEquals(9, DataMapDelta.resendRequest(null).length);
+        assertEquals(0, ByteBuffer.wrap(DataMapDelta.resendRequest(null), 1, 8).getLong());
+    }
+}